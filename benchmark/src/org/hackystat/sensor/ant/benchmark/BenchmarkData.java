@@ -0,0 +1,189 @@
+package org.hackystat.sensor.ant.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Produces scaled up data sets for the benchmarks by copying the files in testdata/ a
+ * given number of times into a scratch directory.
+ *
+ * @author agent
+ */
+public final class BenchmarkData {
+
+  /** Matches qualified Java class and package names, such as org.hackystat.Foo or a.b. */
+  private static final Pattern QUALIFIED_NAME =
+    Pattern.compile("[a-z][a-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)+");
+
+  /** Private constructor for utility class. */
+  private BenchmarkData() {
+    // do nothing
+  }
+
+  /**
+   * Copies each XML file in sourceDir into a fresh scratch directory the given number of times.
+   *
+   * @param sourceDir The testdata subdirectory containing the XML report files.
+   * @param copies The number of copies to make of each file.
+   * @return The list of copied files.
+   * @throws IOException If the files cannot be copied.
+   */
+  public static List<File> scaleXmlFiles(File sourceDir, int copies) throws IOException {
+    File scratchDir = makeScratchDir(sourceDir.getName());
+    List<File> scaled = new ArrayList<File>();
+    File[] files = sourceDir.listFiles();
+    for (int i = 0; i < copies; i++) {
+      for (File file : files) {
+        if (file.getName().endsWith(".xml")) {
+          File copy = new File(scratchDir, i + "-" + file.getName());
+          copy(file, copy);
+          scaled.add(copy);
+        }
+      }
+    }
+    return scaled;
+  }
+
+  /**
+   * Creates a scratch source tree for the reports in sourceDir, so that sensors which map class
+   * and package names to source files find a file for each one. Every qualified name in the
+   * reports gets an empty .java file at its class path (a/b/C.java) and an empty Package.java in
+   * its package directory (a/b/C/Package.java), since the names may denote either.
+   *
+   * @param sourceDir The testdata subdirectory containing the XML report files.
+   * @return The root of the source tree.
+   * @throws IOException If the reports cannot be read or the tree cannot be created.
+   */
+  public static File makeSourceTree(File sourceDir) throws IOException {
+    File root = makeScratchDir(sourceDir.getName() + "-src");
+    for (File file : sourceDir.listFiles()) {
+      if (file.getName().endsWith(".xml")) {
+        Matcher matcher = QUALIFIED_NAME.matcher(read(file));
+        while (matcher.find()) {
+          String path = matcher.group().replace('.', '/');
+          createEmptyFile(root, path + ".java");
+          createEmptyFile(root, path + "/Package.java");
+        }
+      }
+    }
+    return root;
+  }
+
+  /**
+   * Creates an empty scratch directory under java.io.tmpdir that is deleted on exit.
+   *
+   * @param name A name used as the prefix of the directory.
+   * @return The directory.
+   * @throws IOException If the directory cannot be created.
+   */
+  public static File makeScratchDir(String name) throws IOException {
+    File dir = File.createTempFile("hackystat-bench-" + name, "");
+    if (!dir.delete() || !dir.mkdirs()) {
+      throw new IOException("Could not create scratch directory: " + dir);
+    }
+    dir.deleteOnExit();
+    return dir;
+  }
+
+  /**
+   * Deletes a directory and everything in it, for scratch trees too large to register each file
+   * for deletion on exit.
+   *
+   * @param dir The directory.
+   * @throws IOException If a file cannot be deleted.
+   */
+  public static void deleteTree(File dir) throws IOException {
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteTree(child);
+      }
+    }
+    if (!dir.delete() && dir.exists()) {
+      throw new IOException("Could not delete: " + dir);
+    }
+  }
+
+  /**
+   * Creates an empty file and any missing parent directories under root, all deleted on exit.
+   *
+   * @param root The root directory.
+   * @param path The relative path of the file, using '/' as the separator.
+   * @throws IOException If the file cannot be created.
+   */
+  private static void createEmptyFile(File root, String path) throws IOException {
+    File dir = root;
+    String[] names = path.split("/");
+    for (int i = 0; i < names.length - 1; i++) {
+      dir = new File(dir, names[i]);
+      if (!dir.exists()) {
+        if (!dir.mkdir()) {
+          throw new IOException("Could not create directory: " + dir);
+        }
+        // Registered before its contents, so it is deleted after them.
+        dir.deleteOnExit();
+      }
+    }
+    File file = new File(dir, names[names.length - 1]);
+    if (file.createNewFile()) {
+      file.deleteOnExit();
+    }
+  }
+
+  /**
+   * Reads a file into a string.
+   *
+   * @param file The file.
+   * @return The contents.
+   * @throws IOException If the file cannot be read.
+   */
+  private static String read(File file) throws IOException {
+    Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+    try {
+      StringBuilder contents = new StringBuilder();
+      char[] buffer = new char[8192];
+      int n;
+      while ((n = reader.read(buffer)) > 0) {
+        contents.append(buffer, 0, n);
+      }
+      return contents.toString();
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Copies a file.
+   *
+   * @param from The source.
+   * @param to The destination, which is deleted on exit.
+   * @throws IOException If problems occur.
+   */
+  private static void copy(File from, File to) throws IOException {
+    InputStream in = new FileInputStream(from);
+    OutputStream out = new FileOutputStream(to);
+    try {
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        out.write(buffer, 0, n);
+      }
+    }
+    finally {
+      in.close();
+      out.close();
+    }
+    to.deleteOnExit();
+  }
+}
@@ -0,0 +1,92 @@
+package org.hackystat.sensor.ant.benchmark;
+
+import java.io.File;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+
+import org.hackystat.sensor.ant.util.JAXBContextRegistry;
+
+/**
+ * Measures the per-file cost of unmarshalling scaled up copies of the testdata/ reports, first
+ * with a new JAXBContext per file (the original sensor behavior), then through the shared
+ * JAXBContextRegistry.
+ * <p>
+ * Usage: java JAXBContextBenchmark &lt;testdata dir&gt; &lt;copies per file&gt;
+ *
+ * @author agent
+ */
+public final class JAXBContextBenchmark {
+
+  /** The report directories in testdata/ and their ObjectFactory classes. */
+  private static final Object[][] REPORTS = {
+    { "junit", org.hackystat.sensor.ant.junit.jaxb.ObjectFactory.class },
+    { "checkstyle", org.hackystat.sensor.ant.checkstyle.jaxb.ObjectFactory.class },
+    { "emma", org.hackystat.sensor.ant.emma.jaxb.ObjectFactory.class },
+    { "findbugs", org.hackystat.sensor.ant.findbugs.jaxb.ObjectFactory.class },
+    { "javancss", org.hackystat.sensor.ant.javancss.jaxb.ObjectFactory.class },
+    { "jdepend", org.hackystat.sensor.ant.jdepend.jaxb.ObjectFactory.class },
+  };
+
+  /** Private constructor for command line class. */
+  private JAXBContextBenchmark() {
+    // do nothing
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args The testdata directory and the number of copies of each file.
+   * @throws Exception If problems occur.
+   */
+  public static void main(String[] args) throws Exception {
+    File testdata = new File(args[0]);
+    int copies = Integer.parseInt(args[1]);
+    System.out.printf("%-12s %8s %16s %16s%n", "report", "files", "new ctx (us)", "registry (us)");
+    for (Object[] report : REPORTS) {
+      Class<?> objectFactory = (Class<?>) report[1];
+      List<File> files = BenchmarkData.scaleXmlFiles(new File(testdata, (String) report[0]),
+          copies);
+      // Warm up both paths before timing.
+      runNewContext(objectFactory, files.subList(0, Math.min(files.size(), 20)));
+      runRegistry(objectFactory, files);
+      long before = runNewContext(objectFactory, files);
+      long after = runRegistry(objectFactory, files);
+      System.out.printf("%-12s %8d %16.1f %16.1f%n", report[0], files.size(),
+          before / 1000.0 / files.size(), after / 1000.0 / files.size());
+    }
+  }
+
+  /**
+   * Unmarshals each file with a freshly created JAXBContext.
+   * @param objectFactory The ObjectFactory.
+   * @param files The files.
+   * @return Elapsed nanoseconds.
+   * @throws Exception If problems occur.
+   */
+  private static long runNewContext(Class<?> objectFactory, List<File> files) throws Exception {
+    long start = System.nanoTime();
+    for (File file : files) {
+      JAXBContext context = JAXBContext.newInstance(objectFactory);
+      Unmarshaller unmarshaller = context.createUnmarshaller();
+      unmarshaller.unmarshal(file);
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Unmarshals each file through the JAXBContextRegistry.
+   * @param objectFactory The ObjectFactory.
+   * @param files The files.
+   * @return Elapsed nanoseconds.
+   * @throws Exception If problems occur.
+   */
+  private static long runRegistry(Class<?> objectFactory, List<File> files) throws Exception {
+    long start = System.nanoTime();
+    for (File file : files) {
+      JAXBContextRegistry.unmarshal(objectFactory, file);
+    }
+    return System.nanoTime() - start;
+  }
+}
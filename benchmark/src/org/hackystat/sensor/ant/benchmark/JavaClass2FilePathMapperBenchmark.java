@@ -0,0 +1,120 @@
+package org.hackystat.sensor.ant.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.hackystat.sensor.ant.util.JavaClass2FilePathMapper;
+
+/**
+ * Measures class name to source file lookups at monorepo scale. A synthetic source tree of the
+ * requested number of files is spread over a few hundred packages in several modules, and the
+ * lookups are a mix of top level, inner, and anonymous classes plus some classes with no source.
+ * The indexed JavaClass2FilePathMapper is compared against the linear endsWith() scan it
+ * replaced. Since the linear scan is far too slow to run over every lookup, it is timed over a
+ * sample and reported per lookup.
+ * <p>
+ * Usage: java JavaClass2FilePathMapperBenchmark &lt;source files&gt; &lt;lookups&gt;
+ *
+ * @author agent
+ */
+public final class JavaClass2FilePathMapperBenchmark {
+
+  /** The number of lookups timed against the linear scan. */
+  private static final int LINEAR_SAMPLE = 500;
+
+  /** Private constructor for command line class. */
+  private JavaClass2FilePathMapperBenchmark() {
+    // do nothing
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args The number of source files and the number of lookups.
+   */
+  public static void main(String[] args) {
+    int numFiles = Integer.parseInt(args[0]);
+    int numLookups = Integer.parseInt(args[1]);
+    Random random = new Random(42);
+    Set<String> files = new LinkedHashSet<String>();
+    List<String> classes = new ArrayList<String>();
+    for (int i = 0; files.size() < numFiles; i++) {
+      String module = "module" + (i % 40);
+      String pkg = "org.hackystat.m" + (i % 40) + ".p" + (i % 300);
+      String name = "Class" + i;
+      files.add("/monorepo/" + module + "/src/" + pkg.replace('.', '/') + "/" + name + ".java");
+      classes.add(pkg + "." + name);
+    }
+    List<String> lookups = new ArrayList<String>(numLookups);
+    for (int i = 0; i < numLookups; i++) {
+      String className = classes.get(random.nextInt(classes.size()));
+      switch (i % 10) {
+      case 0:
+        lookups.add(className + "$Inner");
+        break;
+      case 1:
+        lookups.add(className + "$1");
+        break;
+      case 2:
+        lookups.add("com.example.Missing" + i);
+        break;
+      default:
+        lookups.add(className);
+      }
+    }
+
+    long start = System.nanoTime();
+    JavaClass2FilePathMapper mapper = new JavaClass2FilePathMapper(files);
+    long build = System.nanoTime() - start;
+    start = System.nanoTime();
+    int found = 0;
+    for (String lookup : lookups) {
+      if (mapper.getFilePath(lookup) != null) {
+        found++;
+      }
+    }
+    long indexed = System.nanoTime() - start;
+
+    List<String> canonical = new ArrayList<String>(files.size());
+    for (String file : files) {
+      canonical.add(file.substring(0, file.length() - 5));
+    }
+    int sample = Math.min(LINEAR_SAMPLE, lookups.size());
+    start = System.nanoTime();
+    for (int i = 0; i < sample; i++) {
+      linearScan(canonical, lookups.get(i));
+    }
+    long linear = System.nanoTime() - start;
+
+    System.out.printf("source files: %d, lookups: %d (%d found)%n", files.size(), lookups.size(),
+        found);
+    System.out.printf("index build: %.1f ms%n", build / 1e6);
+    System.out.printf("indexed lookup: %.2f us/lookup, %.1f ms total%n",
+        indexed / 1e3 / lookups.size(), indexed / 1e6);
+    System.out.printf("linear lookup: %.2f us/lookup, ~%.1f ms projected total%n",
+        linear / 1e3 / sample, linear / 1e6 / sample * lookups.size());
+  }
+
+  /**
+   * The original lookup: the first canonical file name ending with the class path.
+   * @param canonical The canonical file names, without the .java extension.
+   * @param className The class name.
+   * @return The matching canonical file name, or null.
+   */
+  private static String linearScan(List<String> canonical, String className) {
+    String searchString = className.replace('.', '/');
+    int dollar = searchString.indexOf('$');
+    if (dollar >= 0) {
+      searchString = searchString.substring(0, dollar);
+    }
+    for (String name : canonical) {
+      if (name.endsWith(searchString)) {
+        return name;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,99 @@
+package org.hackystat.sensor.ant.benchmark;
+
+import java.io.File;
+
+import org.hackystat.sensor.ant.svn.CommitRecord;
+import org.hackystat.sensor.ant.svn.CommitRecordEntry;
+import org.hackystat.sensor.ant.svn.SVNCommitProcessor;
+import org.tmatesoft.svn.core.SVNURL;
+
+/**
+ * Measures the end-to-end throughput of the SVN sensor's commit processing against a synthetic
+ * repository made by SvnRepositoryGenerator, read through a file url so that no server or
+ * network is involved. Each thread count is run twice on the same state directory: cold, with
+ * an empty file revision cache, and warm, with the cache filled by the cold run. Every entry's
+ * statistics are read, as SvnSensor reads them.
+ * <p>
+ * Usage: java SvnCommitProcessorBenchmark &lt;revisions&gt; &lt;threads&gt;...
+ *
+ * @author agent
+ */
+public final class SvnCommitProcessorBenchmark {
+
+  /** Private constructor for command line class. */
+  private SvnCommitProcessorBenchmark() {
+    // do nothing
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args The number of revisions, followed by the thread counts to measure.
+   * @throws Exception If problems occur.
+   */
+  public static void main(String[] args) throws Exception {
+    int revisions = Integer.parseInt(args[0]);
+    File repositoryDir = BenchmarkData.makeScratchDir("svnrepo");
+    try {
+      long start = System.nanoTime();
+      SVNURL url = SvnRepositoryGenerator.generate(repositoryDir, revisions, 42);
+      System.out.printf("Generated %d revisions in %.1f s: %s%n", revisions,
+          (System.nanoTime() - start) / 1e9, url);
+      System.out.printf("%-8s %-5s %10s %10s %10s %12s%n", "threads", "cache", "entries",
+          "lines", "ms", "revisions/s");
+      for (int i = 1; i < args.length; i++) {
+        int threads = Integer.parseInt(args[i]);
+        File stateDir = BenchmarkData.makeScratchDir("svnstate");
+        try {
+          run(url, stateDir, threads, "cold");
+          run(url, stateDir, threads, "warm");
+        }
+        finally {
+          BenchmarkData.deleteTree(stateDir);
+        }
+      }
+    }
+    finally {
+      BenchmarkData.deleteTree(repositoryDir);
+    }
+  }
+
+  /**
+   * Processes all revisions once and prints the time taken.
+   *
+   * @param url The repository url.
+   * @param stateDir The state directory, which holds the file revision cache.
+   * @param threads The number of threads.
+   * @param label The label of the run.
+   * @throws Exception If processing fails.
+   */
+  private static void run(SVNURL url, File stateDir, int threads, String label)
+    throws Exception {
+    SVNCommitProcessor processor = new SVNCommitProcessor(url.toString(), null, null);
+    try {
+      processor.setStateDirectory(stateDir);
+      processor.setThreads(threads);
+      // The number of entries and the lines they changed, which should not vary between runs.
+      final long[] totals = new long[2];
+      long latest = processor.getLatestRevision();
+      long start = System.nanoTime();
+      processor.processCommitRecords(1, latest, new SVNCommitProcessor.CommitRecordHandler() {
+        public void handleCommitRecord(CommitRecord commitRecord) throws Exception {
+          for (CommitRecordEntry entry : commitRecord.getCommitRecordEntries()) {
+            totals[0]++;
+            if (entry.isFile() && entry.isTextFile()) {
+              totals[1] += entry.getLinesAdded() + entry.getLinesDeleted();
+            }
+          }
+        }
+      });
+      long elapsed = System.nanoTime() - start;
+      System.out.printf("%-8d %-5s %10d %10d %10d %12.1f%n", threads, label, totals[0],
+          totals[1], elapsed / 1000000, latest / (elapsed / 1e9));
+      System.out.println("  " + processor.getStatistics());
+    }
+    finally {
+      processor.close();
+    }
+  }
+}
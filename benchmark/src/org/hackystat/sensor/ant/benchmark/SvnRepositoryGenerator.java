@@ -0,0 +1,336 @@
+package org.hackystat.sensor.ant.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+/**
+ * Generates a synthetic Subversion repository on the local file system, so that the SVN sensor
+ * can be measured without a server. The first revision adds twenty source files to /trunk, and
+ * every later revision makes one kind of change, chosen at random: it adds a source file or a
+ * binary file, deletes a file, renames a file (with or without a change), rewrites a large part
+ * of a file, or makes a few small edits to a few files. Commit authors rotate and commit dates
+ * are ten minutes apart, so the same seed always produces the same repository.
+ * <p>
+ * Usage: java SvnRepositoryGenerator &lt;new directory&gt; &lt;revisions&gt; [seed]
+ *
+ * @author agent
+ */
+public final class SvnRepositoryGenerator {
+
+  /** The commit date of revision 0, in milliseconds. */
+  private static final long BASE_TIME = 1200000000000L;
+
+  /** The time between commits, in milliseconds. */
+  private static final long COMMIT_INTERVAL = 10L * 60L * 1000L;
+
+  /** The commit authors, in turn. */
+  private static final String[] AUTHORS = { "alice", "bob", "carol" };
+
+  /** The random numbers. */
+  private final Random random;
+
+  /** The contents of the files in the head revision, by path relative to the root. */
+  private final Map<String, byte[]> files = new TreeMap<String, byte[]>();
+
+  /** The paths of the binary files in the head revision. */
+  private final Set<String> binaryFiles = new HashSet<String>();
+
+  /** The number of the next file to add. */
+  private int nextFile = 0;
+
+  /**
+   * Creates a generator.
+   *
+   * @param seed The seed of the random numbers.
+   */
+  private SvnRepositoryGenerator(long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Generates a repository from the command line, printing its url.
+   *
+   * @param args The directory of the new repository, the number of revisions, and optionally
+   * the seed.
+   * @throws Exception If the repository cannot be created.
+   */
+  public static void main(String[] args) throws Exception {
+    long seed = (args.length > 2) ? Long.parseLong(args[2]) : 42;
+    System.out.println(generate(new File(args[0]), Integer.parseInt(args[1]), seed));
+  }
+
+  /**
+   * Creates a repository in a new directory and commits the given number of revisions.
+   *
+   * @param dir The directory, which must not exist or be empty.
+   * @param revisions The number of revisions.
+   * @param seed The seed of the random numbers.
+   * @return The file url of the repository root.
+   * @throws SVNException If the repository cannot be created.
+   */
+  public static SVNURL generate(File dir, int revisions, long seed) throws SVNException {
+    FSRepositoryFactory.setup();
+    // Revision properties are enabled so that commit dates can be set.
+    SVNURL url = SVNRepositoryFactory.createLocalRepository(dir, true, false);
+    SVNRepository repository = SVNRepositoryFactory.create(url);
+    try {
+      SvnRepositoryGenerator generator = new SvnRepositoryGenerator(seed);
+      for (int revision = 1; revision <= revisions; revision++) {
+        generator.commit(repository, revision);
+      }
+    }
+    finally {
+      repository.closeSession();
+    }
+    return url;
+  }
+
+  /**
+   * Commits one revision.
+   *
+   * @param repository The session to the repository.
+   * @param revision The number of the revision.
+   * @throws SVNException If the commit fails.
+   */
+  private void commit(SVNRepository repository, int revision) throws SVNException {
+    repository.setAuthenticationManager(new BasicAuthenticationManager(
+        AUTHORS[revision % AUTHORS.length], ""));
+    ISVNEditor editor = repository.getCommitEditor("Commit " + revision, null);
+    editor.openRoot(-1);
+    if (revision == 1) {
+      editor.addDir("trunk", null, -1);
+      for (int i = 0; i < 20; i++) {
+        this.addFile(editor, false);
+      }
+    }
+    else {
+      editor.openDir("trunk", -1);
+      this.change(editor, revision);
+    }
+    editor.closeDir();
+    editor.closeDir();
+    SVNCommitInfo info = editor.closeEdit();
+    Date date = new Date(BASE_TIME + revision * COMMIT_INTERVAL);
+    repository.setRevisionPropertyValue(info.getNewRevision(), SVNRevisionProperty.DATE,
+        SVNPropertyValue.create(SVNDate.formatDate(date)));
+  }
+
+  /**
+   * Makes one kind of change in an open /trunk.
+   *
+   * @param editor The commit editor.
+   * @param revision The number of the revision being committed.
+   * @throws SVNException If the change cannot be sent.
+   */
+  private void change(ISVNEditor editor, int revision) throws SVNException {
+    List<String> paths = new ArrayList<String>(this.files.keySet());
+    String path = paths.get(this.random.nextInt(paths.size()));
+    switch (this.random.nextInt(20)) {
+    case 0:
+      this.addFile(editor, false);
+      break;
+    case 1:
+      this.addFile(editor, true);
+      break;
+    case 2:
+      if (paths.size() > 5) {
+        editor.deleteEntry(path, -1);
+        this.files.remove(path);
+        this.binaryFiles.remove(path);
+      }
+      break;
+    case 3:
+      this.renameFile(editor, path, revision - 1, this.random.nextBoolean());
+      break;
+    case 4:
+      editor.openFile(path, -1);
+      this.editFile(editor, path, 2000);
+      break;
+    default:
+      // Distinct files, since a file can only be opened once in a commit.
+      Collections.shuffle(paths, this.random);
+      int count = Math.min(1 + this.random.nextInt(3), paths.size());
+      for (int i = 0; i < count; i++) {
+        editor.openFile(paths.get(i), -1);
+        this.editFile(editor, paths.get(i), 10);
+      }
+    }
+  }
+
+  /**
+   * Adds a source file of up to 250 lines, or a binary file of up to 6 KB.
+   *
+   * @param editor The commit editor, with /trunk open.
+   * @param isBinary True to add a binary file.
+   * @throws SVNException If the file cannot be sent.
+   */
+  private void addFile(ISVNEditor editor, boolean isBinary) throws SVNException {
+    String path = "trunk/File" + (this.nextFile++) + (isBinary ? ".bin" : ".java");
+    byte[] content;
+    if (isBinary) {
+      content = new byte[1000 + this.random.nextInt(5000)];
+      this.random.nextBytes(content);
+    }
+    else {
+      List<String> lines = new ArrayList<String>();
+      int count = 20 + this.random.nextInt(230);
+      for (int i = 0; i < count; i++) {
+        lines.add(this.line());
+      }
+      content = toContent(lines);
+    }
+    editor.addFile(path, null, -1);
+    if (isBinary) {
+      editor.changeFileProperty(path, "svn:mime-type",
+          SVNPropertyValue.create("application/octet-stream"));
+      this.binaryFiles.add(path);
+    }
+    this.sendContent(editor, path, content);
+  }
+
+  /**
+   * Renames a file by copying it and deleting the original.
+   *
+   * @param editor The commit editor, with /trunk open.
+   * @param path The path of the file.
+   * @param revision The revision to copy from.
+   * @param isChanged True to also change the copy.
+   * @throws SVNException If the rename cannot be sent.
+   */
+  private void renameFile(ISVNEditor editor, String path, long revision, boolean isChanged)
+    throws SVNException {
+    String newPath = "trunk/File" + (this.nextFile++) + path.substring(path.lastIndexOf('.'));
+    editor.addFile(newPath, "/" + path, revision);
+    this.files.put(newPath, this.files.remove(path));
+    if (this.binaryFiles.remove(path)) {
+      this.binaryFiles.add(newPath);
+    }
+    if (isChanged) {
+      this.editFile(editor, newPath, 3);
+    }
+    else {
+      editor.closeFile(newPath, null);
+    }
+    editor.deleteEntry(path, -1);
+  }
+
+  /**
+   * Edits an open file: inserts, deletes or replaces up to the given number of lines of a
+   * source file, or changes one byte of a binary file.
+   *
+   * @param editor The commit editor, with the file open.
+   * @param path The path of the file.
+   * @param maxEdits The maximum number of lines to edit.
+   * @throws SVNException If the change cannot be sent.
+   */
+  private void editFile(ISVNEditor editor, String path, int maxEdits) throws SVNException {
+    byte[] content = this.files.get(path).clone();
+    if (this.binaryFiles.contains(path)) {
+      content[this.random.nextInt(content.length)]++;
+    }
+    else {
+      List<String> lines = toLines(content);
+      int edits = 1 + this.random.nextInt(maxEdits);
+      for (int i = 0; i < edits; i++) {
+        int position = lines.isEmpty() ? 0 : this.random.nextInt(lines.size());
+        int kind = this.random.nextInt(3);
+        if (kind == 0 || lines.isEmpty()) {
+          lines.add(position, this.line());
+        }
+        else if (kind == 1) {
+          lines.remove(position);
+        }
+        else {
+          lines.set(position, this.line());
+        }
+      }
+      content = toContent(lines);
+    }
+    this.sendContent(editor, path, content);
+  }
+
+  /**
+   * Sends the new content of an open file as a delta against its old content, and closes it.
+   *
+   * @param editor The commit editor, with the file open.
+   * @param path The path of the file.
+   * @param content The new content.
+   * @throws SVNException If the content cannot be sent.
+   */
+  private void sendContent(ISVNEditor editor, String path, byte[] content)
+    throws SVNException {
+    byte[] oldContent = this.files.get(path);
+    editor.applyTextDelta(path, null);
+    SVNDeltaGenerator deltaGenerator = new SVNDeltaGenerator();
+    String checksum = (oldContent == null)
+        ? deltaGenerator.sendDelta(path, new ByteArrayInputStream(content), editor, true)
+        : deltaGenerator.sendDelta(path, new ByteArrayInputStream(oldContent), 0,
+            new ByteArrayInputStream(content), editor, true);
+    editor.closeFile(path, checksum);
+    this.files.put(path, content);
+  }
+
+  /**
+   * Returns a random source line, sometimes blank.
+   *
+   * @return The line.
+   */
+  private String line() {
+    if (this.random.nextInt(8) == 0) {
+      return "";
+    }
+    return "    value" + this.random.nextInt(1000) + " = compute(" + this.random.nextInt(50)
+        + ");";
+  }
+
+  /**
+   * Joins lines into the content of a file.
+   *
+   * @param lines The lines.
+   * @return The content.
+   */
+  private static byte[] toContent(List<String> lines) {
+    StringBuilder builder = new StringBuilder();
+    for (String line : lines) {
+      builder.append(line).append('\n');
+    }
+    return builder.toString().getBytes();
+  }
+
+  /**
+   * Splits the content of a file into lines.
+   *
+   * @param content The content, in which every line ends with a newline.
+   * @return The lines.
+   */
+  private static List<String> toLines(byte[] content) {
+    List<String> lines = new ArrayList<String>(Arrays.asList(new String(content).split("\n",
+        -1)));
+    // The empty string after the last newline.
+    lines.remove(lines.size() - 1);
+    return lines;
+  }
+}
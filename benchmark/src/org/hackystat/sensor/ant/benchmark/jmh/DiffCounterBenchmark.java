@@ -0,0 +1,211 @@
+package org.hackystat.sensor.ant.benchmark.jmh;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.jrcs.diff.Delta;
+import org.apache.commons.jrcs.diff.Diff;
+import org.apache.commons.jrcs.diff.Revision;
+import org.hackystat.sensor.ant.vcs.GenericDiffCounter;
+import org.hackystat.sensor.ant.vcs.GenericSizeCounter;
+import org.hackystat.sensor.ant.vcs.LineIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the line counting of GenericDiffCounter, which uses MyersDiff, with the JRCS diff
+ * engine it replaced, including the patch-and-compare check that used to run on every file. The
+ * input is a synthetic source file with the blank lines and braces that real files repeat, and a
+ * revision of it in which the given percentage of lines were inserted, deleted or replaced.
+ * <p>
+ * The decoded and indexed benchmarks start from the raw bytes of both versions, as the SVN
+ * sensor does, and also count the lines of the revision: decoded splits the bytes into strings
+ * first, while indexed works on a LineIndex of each version.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffCounterBenchmark {
+
+  /** The number of lines of the original file. */
+  @Param({ "1000", "10000", "50000" })
+  public int lines;
+
+  /** The percentage of lines edited in the revision. */
+  @Param({ "2", "30" })
+  public int editPercent;
+
+  /** The original file. */
+  private String[] original;
+
+  /** The revision. */
+  private String[] revised;
+
+  /** The original file, as bytes. */
+  private byte[] originalBytes;
+
+  /** The revision, as bytes. */
+  private byte[] revisedBytes;
+
+  /**
+   * Generates the two versions, the same ones in every run.
+   */
+  @Setup(Level.Trial)
+  public void generate() {
+    Random random = new Random(42);
+    List<String> lines = new ArrayList<String>(this.lines);
+    for (int i = 0; i < this.lines; i++) {
+      lines.add(line(random));
+    }
+    this.original = lines.toArray(new String[lines.size()]);
+    int edits = this.lines * this.editPercent / 100;
+    for (int i = 0; i < edits; i++) {
+      int position = random.nextInt(lines.size());
+      switch (random.nextInt(3)) {
+      case 0:
+        lines.add(position, line(random));
+        break;
+      case 1:
+        lines.remove(position);
+        break;
+      default:
+        lines.set(position, line(random));
+      }
+    }
+    this.revised = lines.toArray(new String[lines.size()]);
+    this.originalBytes = toBytes(this.original);
+    this.revisedBytes = toBytes(this.revised);
+  }
+
+  /**
+   * Counts with GenericDiffCounter.
+   *
+   * @return The counts, so that the work is not optimized away.
+   * @throws Exception If the diff fails.
+   */
+  @Benchmark
+  public int myers() throws Exception {
+    GenericDiffCounter diff = new GenericDiffCounter(this.original, this.revised);
+    return diff.getLinesAdded() + diff.getLinesDeleted();
+  }
+
+  /**
+   * Counts as GenericDiffCounter did before it used MyersDiff.
+   *
+   * @return The counts, so that the work is not optimized away.
+   * @throws Exception If the diff fails.
+   */
+  @Benchmark
+  public int jrcs() throws Exception {
+    Revision revision = new Diff(this.original).diff(this.revised);
+    int count = 0;
+    for (int i = 0; i < revision.size(); i++) {
+      Delta delta = revision.getDelta(i);
+      count += delta.getOriginal().size() + delta.getRevised().size();
+    }
+    if (!Diff.compare(this.revised, revision.patch(this.original))) {
+      throw new Exception("JRCS Diff internal error: files differ after patching.");
+    }
+    return count;
+  }
+
+  /**
+   * Decodes both versions into lines, then counts and diffs them.
+   *
+   * @return The counts, so that the work is not optimized away.
+   * @throws Exception If the diff fails.
+   */
+  @Benchmark
+  public int decoded() throws Exception {
+    String[] from = toLines(this.originalBytes);
+    String[] to = toLines(this.revisedBytes);
+    GenericDiffCounter diff = new GenericDiffCounter(from, to);
+    return new GenericSizeCounter(to).getNumOfTotalLines() + diff.getLinesAdded()
+        + diff.getLinesDeleted();
+  }
+
+  /**
+   * Indexes the lines of both versions, then counts and diffs them.
+   *
+   * @return The counts, so that the work is not optimized away.
+   * @throws Exception If the diff fails.
+   */
+  @Benchmark
+  public int indexed() throws Exception {
+    LineIndex from = new LineIndex(this.originalBytes);
+    LineIndex to = new LineIndex(this.revisedBytes);
+    GenericDiffCounter diff = new GenericDiffCounter(from, to);
+    return new GenericSizeCounter(to).getNumOfTotalLines() + diff.getLinesAdded()
+        + diff.getLinesDeleted();
+  }
+
+  /**
+   * Joins lines into the bytes of a file.
+   *
+   * @param lines The lines.
+   * @return The bytes.
+   */
+  private static byte[] toBytes(String[] lines) {
+    StringBuilder builder = new StringBuilder();
+    for (String line : lines) {
+      builder.append(line).append('\n');
+    }
+    return builder.toString().getBytes();
+  }
+
+  /**
+   * Splits the bytes of a file into lines, as the SVN sensor did before it used LineIndex.
+   *
+   * @param bytes The bytes.
+   * @return The lines.
+   * @throws Exception If reading fails.
+   */
+  private static String[] toLines(byte[] bytes) throws Exception {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(
+        bytes)));
+    String line = reader.readLine();
+    while (line != null) {
+      lines.add(line);
+      line = reader.readLine();
+    }
+    return lines.toArray(new String[lines.size()]);
+  }
+
+  /**
+   * Returns a random source line: often blank or a brace, otherwise a statement.
+   *
+   * @param random The random numbers.
+   * @return The line.
+   */
+  private static String line(Random random) {
+    switch (random.nextInt(8)) {
+    case 0:
+      return "";
+    case 1:
+      return "  }";
+    default:
+      return "    value" + random.nextInt(500) + " = compute(" + random.nextInt(100000) + ");";
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package org.hackystat.sensor.ant.benchmark.jmh;
+
+import java.util.Map;
+
+import org.hackystat.sensorshell.SensorShell;
+import org.hackystat.sensorshell.SensorShellException;
+import org.hackystat.sensorshell.SensorShellProperties;
+
+/**
+ * A SensorShell that counts the sensor data added to it and discards it, so that the benchmarks
+ * measure the sensors rather than the network or the SensorBase.
+ *
+ * @author agent
+ */
+public class NullSensorShell extends SensorShell {
+
+  /** The number of sensor data instances added since creation. */
+  private long numAdded;
+
+  /**
+   * Creates the shell. No SensorBase needs to be running.
+   *
+   * @throws SensorShellException If the test properties cannot be created.
+   */
+  public NullSensorShell() throws SensorShellException {
+    super(SensorShellProperties.getTestInstance("http://localhost:9876/sensorbase/",
+        "benchmark@hackystat.org", "benchmark@hackystat.org"), false, "Benchmark");
+  }
+
+  /**
+   * Counts and discards the sensor data.
+   *
+   * @param keyValMap The sensor data.
+   */
+  @Override
+  public void add(Map<String, String> keyValMap) {
+    this.numAdded++;
+  }
+
+  /**
+   * Does nothing.
+   *
+   * @return Always 0.
+   */
+  @Override
+  public int send() {
+    return 0;
+  }
+
+  /** Does nothing. */
+  @Override
+  public void quit() {
+    // do nothing
+  }
+
+  /**
+   * Returns the number of sensor data instances added since creation.
+   *
+   * @return The count.
+   */
+  public long getNumAdded() {
+    return this.numAdded;
+  }
+}
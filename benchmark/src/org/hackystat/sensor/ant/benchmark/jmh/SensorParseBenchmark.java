@@ -0,0 +1,172 @@
+package org.hackystat.sensor.ant.benchmark.jmh;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.hackystat.sensor.ant.benchmark.BenchmarkData;
+import org.hackystat.sensor.ant.task.HackystatSensorTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the parse-and-map path of each sensor: one operation hands one report file to the
+ * sensor's process method, which parses it and adds the resulting sensor data to a
+ * NullSensorShell. The report files are copies of the files in testdata/, scaled up with
+ * BenchmarkData so that the file system cache, not a single hot file, is exercised. The sensor's
+ * sourcefiles are a synthetic tree with a file for every class and package named in the reports,
+ * so that sensors which drop data for unknown source files measure their mapping step too.
+ * <p>
+ * Run with the gc profiler (as jmh.build.xml does) to get the allocation rate per operation
+ * alongside the throughput. The testdata directory is read from the hackystat.testdata system
+ * property.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SensorParseBenchmark {
+
+  /**
+   * The reports to measure: the testdata subdirectory, the sensor class and its process method.
+   * Clover and Emma share processCoverageXmlFile, and Checkstyle provides processIssueXmlFile.
+   */
+  private static final String[][] REPORTS = {
+    { "junit", "org.hackystat.sensor.ant.junit.JUnitSensor", "processJUnitXmlFile" },
+    { "pmd", "org.hackystat.sensor.ant.pmd.PmdSensor", "processPmdXmlFile" },
+    { "checkstyle", "org.hackystat.sensor.ant.checkstyle.CheckstyleSensor",
+      "processIssueXmlFile" },
+    { "clover", "org.hackystat.sensor.ant.clover.CloverSensor", "processCoverageXmlFile" },
+    { "emma", "org.hackystat.sensor.ant.emma.EmmaSensor", "processCoverageXmlFile" },
+    { "findbugs", "org.hackystat.sensor.ant.findbugs.FindBugsSensor", "processFindBugsXmlFile" },
+    { "javancss", "org.hackystat.sensor.ant.javancss.JavaNcssSensor", "processJavaNcssXmlFile" },
+    { "jdepend", "org.hackystat.sensor.ant.jdepend.JDependSensor", "processJDependXmlFile" },
+    { "dependencyfinder", "org.hackystat.sensor.ant.dependencyfinder.DependencyFinderSensor",
+      "processDependencyFinderXmlFile" },
+  };
+
+  /** The testdata subdirectory of the report to measure. */
+  @Param({ "junit", "pmd", "checkstyle", "clover", "emma", "findbugs", "javancss", "jdepend",
+    "dependencyfinder" })
+  private String report;
+
+  /** Whether the sensor parses with the streaming parser instead of JAXB. */
+  @Param({ "false", "true" })
+  private String streaming;
+
+  /** The number of copies made of each testdata file. */
+  @Param({ "50" })
+  private int copies;
+
+  /** The scaled report files. */
+  private List<File> files;
+
+  /** The root of the synthetic source tree the sensor maps class names into. */
+  private File sourceTree;
+
+  /** The sensor's process method. */
+  private Method processMethod;
+
+  /** The sensor under measurement, recreated for each iteration. */
+  private HackystatSensorTask sensor;
+
+  /** The index of the next file to process. */
+  private int next;
+
+  /**
+   * Makes the scaled copies of the report files and the source tree, and finds the sensor's
+   * process method.
+   *
+   * @throws Exception If the files cannot be copied or the sensor cannot be found.
+   */
+  @Setup(Level.Trial)
+  public void setUpTrial() throws Exception {
+    String[] entry = findReport(this.report);
+    File testdata = new File(System.getProperty("hackystat.testdata", "testdata"));
+    this.files = BenchmarkData.scaleXmlFiles(new File(testdata, entry[0]), this.copies);
+    if (this.files.isEmpty()) {
+      throw new IllegalStateException("No XML files in " + new File(testdata, entry[0]));
+    }
+    this.sourceTree = BenchmarkData.makeSourceTree(new File(testdata, entry[0]));
+    this.processMethod = Class.forName(entry[1]).getDeclaredMethod(entry[2], File.class);
+    // Some of the process methods are package private.
+    this.processMethod.setAccessible(true);
+  }
+
+  /**
+   * Creates a fresh sensor, so that its set of unique timestamps does not grow without bound
+   * across iterations.
+   *
+   * @throws Exception If the sensor cannot be created.
+   */
+  @Setup(Level.Iteration)
+  public void setUpIteration() throws Exception {
+    String[] entry = findReport(this.report);
+    this.sensor = (HackystatSensorTask) Class.forName(entry[1]).newInstance();
+    Project project = new Project();
+    project.init();
+    this.sensor.setProject(project);
+    this.sensor.setStreaming(this.streaming);
+    FileSet fileset = new FileSet();
+    fileset.setProject(project);
+    fileset.setDir(this.sourceTree);
+    fileset.setIncludes("**/*.java");
+    this.sensor.createSourceFiles().addFileSet(fileset);
+    Field shellField = HackystatSensorTask.class.getDeclaredField("sensorShell");
+    shellField.setAccessible(true);
+    shellField.set(this.sensor, new NullSensorShell());
+    this.next = 0;
+  }
+
+  /**
+   * Processes the next report file.
+   *
+   * @return The number of sensor data instances created, so the work cannot be eliminated.
+   * @throws Throwable If the sensor fails.
+   */
+  @Benchmark
+  public Object process() throws Throwable {
+    File file = this.files.get(this.next);
+    this.next = (this.next + 1) % this.files.size();
+    try {
+      return this.processMethod.invoke(this.sensor, file);
+    }
+    catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Returns the REPORTS entry for the passed testdata subdirectory.
+   *
+   * @param name The subdirectory name.
+   * @return The entry.
+   */
+  private static String[] findReport(String name) {
+    for (String[] entry : REPORTS) {
+      if (entry[0].equals(name)) {
+        return entry;
+      }
+    }
+    throw new IllegalArgumentException("Unknown report: " + name);
+  }
+}
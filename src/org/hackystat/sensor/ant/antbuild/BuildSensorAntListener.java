@@ -8,8 +8,6 @@ import java.util.Map;
 import java.util.Stack;
 import java.util.TreeMap;
 
-import javax.xml.datatype.XMLGregorianCalendar;
-
 import org.apache.tools.ant.BuildEvent;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.BuildListener;
@@ -109,8 +107,7 @@ public class BuildSensorAntListener implements BuildListener {
 
     Map<String, String> keyValMap = new TreeMap<String, String>();
     keyValMap.put("Tool", "Ant");
-    XMLGregorianCalendar startTime = LongTimeConverter.convertLongToGregorian(this.startTimeMillis);
-    keyValMap.put("Timestamp", startTime.toString());
+    keyValMap.put("Timestamp", LongTimeConverter.convertLongToString(this.startTimeMillis));
     keyValMap.put("Resource", workingDirectory);
     keyValMap.put("SensorDataType", "Build");
     keyValMap.put("Target", this.lastTargetName);
@@ -124,8 +121,7 @@ public class BuildSensorAntListener implements BuildListener {
     }
 
     // optional
-    XMLGregorianCalendar endTime = LongTimeConverter.convertLongToGregorian(endTimeMillis);
-    keyValMap.put("EndTime", endTime.toString());
+    keyValMap.put("EndTime", LongTimeConverter.convertLongToString(endTimeMillis));
     
     if (this.buildType != null) {
       keyValMap.put("Type", this.buildType);
@@ -7,16 +7,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.apache.tools.ant.BuildException;
 import org.hackystat.sensor.ant.checkstyle.jaxb.Checkstyle;
 import org.hackystat.sensor.ant.checkstyle.jaxb.Error;
+import org.hackystat.sensor.ant.checkstyle.jaxb.ObjectFactory;
+import org.hackystat.sensor.ant.task.DataFileProcessor;
 import org.hackystat.sensor.ant.task.HackystatSensorTask;
+import org.hackystat.sensor.ant.util.JAXBContextRegistry;
 import org.hackystat.sensor.ant.util.LongTimeConverter;
+import org.hackystat.sensor.ant.util.StreamingXmlParser;
+import org.hackystat.sensor.ant.util.XmlReportHandler;
 import org.hackystat.sensorshell.SensorShellException;
 
 /**
@@ -62,15 +64,11 @@ public class CheckstyleSensor extends HackystatSensorTask {
     int numberOfCodeIssues = 0;
     Date startTime = new Date();
     // Iterate though each file, extract the Checkstyle data, send to sensorshell.
-    for (File dataFile : getDataFiles()) {
-      verboseInfo("Processing Checkstyle file: " + dataFile);
-      try {
-        numberOfCodeIssues += this.processIssueXmlFile(dataFile);
+    numberOfCodeIssues = processDataFiles("Checkstyle", new DataFileProcessor() {
+      public int process(File dataFile) {
+        return processIssueXmlFile(dataFile);
       }
-      catch (Exception e) {
-        signalError("Failure processing: " + dataFile, e);
-      }
-    }
+    });
     this.sendAndQuit();
     summaryInfo(startTime, "Checkstyle", numberOfCodeIssues);
   }
@@ -83,37 +81,19 @@ public class CheckstyleSensor extends HackystatSensorTask {
    * @exception BuildException thrown if it fails to process a file.
    */
   public int processIssueXmlFile(File xmlFile) throws BuildException {
-    XMLGregorianCalendar runtimeGregorian = LongTimeConverter.convertLongToGregorian(this.runtime);
+    if (this.streaming) {
+      return processIssueXmlFileStreaming(xmlFile);
+    }
+    String runtimeString = LongTimeConverter.convertLongToString(this.runtime);
     try {
-      JAXBContext context = JAXBContext
-          .newInstance(org.hackystat.sensor.ant.checkstyle.jaxb.ObjectFactory.class);
-      Unmarshaller unmarshaller = context.createUnmarshaller();
-
-      Checkstyle checkstyle = (Checkstyle) unmarshaller.unmarshal(xmlFile);
+      Checkstyle checkstyle = (Checkstyle) JAXBContextRegistry.unmarshal(ObjectFactory.class,
+          xmlFile);
       // list of file elements in the checkstyle result file
       List<org.hackystat.sensor.ant.checkstyle.jaxb.File> checkedFiles = checkstyle
           .getFile();
       
       int codeIssueCount = 0;
       for (org.hackystat.sensor.ant.checkstyle.jaxb.File file : checkedFiles) {
-        // Fully qualified name of the file checked
-        String fileName = file.getName();
-
-        // Base unique timestamp off of the runtime (which is when it start running)
-        long uniqueTstamp = this.tstampSet.getUniqueTstamp(this.runtime);
-
-        // Get altered time as XMLGregorianCalendar
-        XMLGregorianCalendar uniqueTstampGregorian = LongTimeConverter
-            .convertLongToGregorian(uniqueTstamp);
-        
-        // Add required information to the sensor key-val map
-        Map<String, String> keyValMap = new HashMap<String, String>();
-        keyValMap.put("Tool", "Checkstyle");
-        keyValMap.put("SensorDataType", "CodeIssue");
-        keyValMap.put("Timestamp", uniqueTstampGregorian.toString());
-        keyValMap.put("Runtime", runtimeGregorian.toString());
-        keyValMap.put("Resource", fileName);
-        
         Map<String, Integer> issueCounts = new HashMap<String, Integer>();
         
         // gets all error elements for the file
@@ -121,28 +101,10 @@ public class CheckstyleSensor extends HackystatSensorTask {
         
         // file has errors, send one entry per error
         for (Error error : errors) {
-          String source = error.getSource();
-          
-          String[] tokens = source.split("\\.");
-          String rule = tokens[tokens.length - 1];
-          
-          if (issueCounts.containsKey(rule)) {
-            Integer count = issueCounts.get(rule);
-            issueCounts.put(rule, ++count);
-          }
-          else {
-            // no mapping, first occurrence
-            issueCounts.put(rule, 1);
-          }
-        }
-        
-        // Add the issue counts to the key-val map
-        for (Entry<String, Integer> entry : issueCounts.entrySet()) {
-          String typeKey = TYPE + entry.getKey();
-          keyValMap.put(typeKey, entry.getValue().toString());
+          countIssue(issueCounts, error.getSource());
         }
         
-        this.sensorShell.add(keyValMap);
+        addCodeIssue(file.getName(), issueCounts, runtimeString);
         codeIssueCount++;
       }
       return codeIssueCount;
@@ -154,4 +116,124 @@ public class CheckstyleSensor extends HackystatSensorTask {
       throw new BuildException(errMsgPrefix + "Failure in SensorShell " + xmlFile, f);
     }
   }
+
+  /**
+   * Parses a Checkstyle XML file with the streaming parser and sends the code issue instances to
+   * the shell. The sensor data is identical to that produced by the JAXB path.
+   * 
+   * @param xmlFile The XML file name to be processed.
+   * @return The number of issues that have been processed in this XML file.
+   * @exception BuildException thrown if it fails to process a file.
+   */
+  private int processIssueXmlFileStreaming(File xmlFile) throws BuildException {
+    CheckstyleHandler handler = 
+      new CheckstyleHandler(LongTimeConverter.convertLongToString(this.runtime));
+    try {
+      StreamingXmlParser.parse(xmlFile, handler);
+      return handler.codeIssueCount;
+    }
+    catch (SensorShellException f) {
+      throw new BuildException(errMsgPrefix + "Failure in SensorShell " + xmlFile, f);
+    }
+    catch (Exception e) {
+      throw new BuildException(errMsgPrefix + "Failure parsing " + xmlFile, e);
+    }
+  }
+
+  /**
+   * Increments the count of the rule named by the passed Checkstyle error source.
+   * 
+   * @param issueCounts The issue counts for a file, keyed by rule name.
+   * @param source The source of the error, a fully qualified Checkstyle check class name.
+   */
+  private static void countIssue(Map<String, Integer> issueCounts, String source) {
+    String[] tokens = source.split("\\.");
+    String rule = tokens[tokens.length - 1];
+    
+    if (issueCounts.containsKey(rule)) {
+      Integer count = issueCounts.get(rule);
+      issueCounts.put(rule, ++count);
+    }
+    else {
+      // no mapping, first occurrence
+      issueCounts.put(rule, 1);
+    }
+  }
+
+  /**
+   * Creates the CodeIssue sensor data for a single checked file and adds it to the shell.
+   * 
+   * @param fileName Fully qualified name of the file checked.
+   * @param issueCounts The issue counts for the file, keyed by rule name.
+   * @param runtimeString The runtime of this sensor.
+   * @throws SensorShellException If the shell could not accept the data.
+   */
+  private void addCodeIssue(String fileName, Map<String, Integer> issueCounts, 
+      String runtimeString) throws SensorShellException {
+    // Base unique timestamp off of the runtime (which is when it start running)
+    long uniqueTstamp = this.getUniqueTstamp(this.runtime);
+
+    // Get altered time as an xsd:dateTime string
+    String uniqueTstampString = LongTimeConverter.convertLongToString(uniqueTstamp);
+    
+    // Add required information to the sensor key-val map
+    Map<String, String> keyValMap = new HashMap<String, String>();
+    keyValMap.put("Tool", "Checkstyle");
+    keyValMap.put("SensorDataType", "CodeIssue");
+    keyValMap.put("Timestamp", uniqueTstampString);
+    keyValMap.put("Runtime", runtimeString);
+    keyValMap.put("Resource", fileName);
+    
+    // Add the issue counts to the key-val map
+    for (Entry<String, Integer> entry : issueCounts.entrySet()) {
+      String typeKey = TYPE + entry.getKey();
+      keyValMap.put(typeKey, entry.getValue().toString());
+    }
+    
+    this.addSensorData(keyValMap);
+  }
+
+  /**
+   * Receives the file and error elements from the streaming parser. A CodeIssue entry is sent to
+   * the shell when the closing tag of each file element is reached.
+   */
+  private class CheckstyleHandler extends XmlReportHandler {
+    /** The runtime of this sensor. */
+    private final String runtimeString;
+    /** Fully qualified name of the file being checked. */
+    private String fileName;
+    /** The issue counts for the file being checked. */
+    private Map<String, Integer> issueCounts;
+    /** The number of file elements processed so far. */
+    private int codeIssueCount = 0;
+
+    /**
+     * Creates a handler for one Checkstyle XML file.
+     * @param runtimeString The runtime of this sensor.
+     */
+    CheckstyleHandler(String runtimeString) {
+      this.runtimeString = runtimeString;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String name, String parent, Map<String, String> attributes) {
+      if ("file".equals(name) && "checkstyle".equals(parent)) {
+        this.fileName = attributes.get("name");
+        this.issueCounts = new HashMap<String, Integer>();
+      }
+      else if ("error".equals(name) && "file".equals(parent)) {
+        countIssue(this.issueCounts, attributes.get("source"));
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String name, String parent, String text) throws SensorShellException {
+      if ("file".equals(name) && "checkstyle".equals(parent)) {
+        addCodeIssue(this.fileName, this.issueCounts, this.runtimeString);
+        this.codeIssueCount++;
+      }
+    }
+  }
 }
\ No newline at end of file
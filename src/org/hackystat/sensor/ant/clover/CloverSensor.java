@@ -4,20 +4,22 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.apache.tools.ant.BuildException;
+import org.hackystat.sensor.ant.clover.jaxb.Class;
 import org.hackystat.sensor.ant.clover.jaxb.Coverage;
 import org.hackystat.sensor.ant.clover.jaxb.File;
 import org.hackystat.sensor.ant.clover.jaxb.Metrics;
+import org.hackystat.sensor.ant.clover.jaxb.ObjectFactory;
 import org.hackystat.sensor.ant.clover.jaxb.Package;
 import org.hackystat.sensor.ant.clover.jaxb.Project;
+import org.hackystat.sensor.ant.task.DataFileProcessor;
 import org.hackystat.sensor.ant.task.HackystatSensorTask;
-import org.hackystat.sensor.ant.util.JavaClass2FilePathMapper;
+import org.hackystat.sensor.ant.util.JAXBContextRegistry;
 import org.hackystat.sensor.ant.util.LongTimeConverter;
+import org.hackystat.sensor.ant.util.StreamingXmlParser;
+import org.hackystat.sensor.ant.util.XmlReportHandler;
 import org.hackystat.sensorshell.SensorShellException;
 
 /**
@@ -28,9 +30,6 @@ import org.hackystat.sensorshell.SensorShellException;
  */
 public class CloverSensor extends HackystatSensorTask {
 
-  /** The mapper used to map class names to file paths. */
-  private JavaClass2FilePathMapper javaClass2FilePathMapper;
-  
   /** The name of this tool. */
   private static String tool = "Clover";
   
@@ -62,15 +61,11 @@ public class CloverSensor extends HackystatSensorTask {
     int numberOfEntries = 0;
     Date startTime = new Date();
     
-    for (java.io.File dataFile : getDataFiles()) {
-      verboseInfo("Processing Clover file: " + dataFile);
-      try {
-        numberOfEntries += this.processCoverageXmlFile(dataFile);
-      }
-      catch (Exception e) {
-        signalError("Failure processing Clover file: " + dataFile, e);
+    numberOfEntries = processDataFiles("Clover", new DataFileProcessor() {
+      public int process(java.io.File dataFile) {
+        return processCoverageXmlFile(dataFile);
       }
-    }
+    });
     this.sendAndQuit();
     summaryInfo(startTime, "Coverage", numberOfEntries);
   }
@@ -100,19 +95,17 @@ public class CloverSensor extends HackystatSensorTask {
    * @return The number of coverage entries in this XML file.
    */
   public int processCoverageXmlFile(java.io.File xmlFile) throws BuildException {
-    XMLGregorianCalendar runtimeGregorian = LongTimeConverter.convertLongToGregorian(this.runtime);
+    if (this.streaming) {
+      return processCoverageXmlFileStreaming(xmlFile);
+    }
+    String runtimeString = LongTimeConverter.convertLongToString(this.runtime);
     // The start time for all entries will be approximated by the XML file's last mod time.
     // The shell will ensure that it's unique by tweaking the millisecond field.
     long startTime = xmlFile.lastModified();
 
-
     try {
-      JAXBContext context = 
-        JAXBContext.newInstance(org.hackystat.sensor.ant.clover.jaxb.ObjectFactory.class);
-      Unmarshaller unmarshaller = context.createUnmarshaller();
-      
       // clover report
-      Coverage coverage = (Coverage) unmarshaller.unmarshal(xmlFile);
+      Coverage coverage = (Coverage) JAXBContextRegistry.unmarshal(ObjectFactory.class, xmlFile);
       Project project = coverage.getProject();
       
       int coverageEntriesCount = 0;
@@ -120,64 +113,7 @@ public class CloverSensor extends HackystatSensorTask {
         String packageName = packageReport.getName();
         
         for (File file : packageReport.getFile()) {
-          String fileName = file.getName();
-          Metrics metrics = file.getMetrics();
-          String className = file.getClazz().getName();
-          String javaClassName = packageName + '.' + className;
-          String javaSourceFilePath = fileName;
-          // for some reason sometimes file names can be fully qualified. 
-          // not sure how to configure clover to do that. if its not fully 
-          // qualified then we try to use the mapping. 
-          if (javaSourceFilePath.length() <= (className + ".java").length()) {
-            javaSourceFilePath = this.getJavaClass2FilePathMapper().getFilePath(javaClassName);
-            if (javaSourceFilePath == null) {
-              verboseInfo("Warning: Unable to find java source file path for class '" 
-                  + javaClassName + "'. Using empty string as the resource.");
-              javaSourceFilePath = "";
-            }
-          }
-          
-          // Alter startTime to guarantee uniqueness.
-          long uniqueTstamp = this.tstampSet.getUniqueTstamp(startTime);
-
-          // Get altered start time as XMLGregorianCalendar
-          XMLGregorianCalendar startTimeGregorian = 
-            LongTimeConverter.convertLongToGregorian(uniqueTstamp);
-
-          Map<String, String> keyValMap = new HashMap<String, String>();
-          keyValMap.put("Tool", "Clover");
-          keyValMap.put("SensorDataType", "Coverage");
-
-          // Required
-          keyValMap.put("Runtime", runtimeGregorian.toString());
-          keyValMap.put("Timestamp", startTimeGregorian.toString());
-          keyValMap.put("Resource", javaSourceFilePath);
-
-          // Optional
-          keyValMap.put("ClassName", javaClassName);
-                        
-          int total = metrics.getConditionals();
-          int covered = metrics.getCoveredconditionals();
-          keyValMap.put("conditional_Covered", String.valueOf(covered));
-          keyValMap.put("conditional_Uncovered", String.valueOf(total - covered));
-          
-          total = metrics.getElements();
-          covered = metrics.getCoveredelements();
-          keyValMap.put("element_Covered", String.valueOf(covered));
-          keyValMap.put("element_Uncovered", String.valueOf(total - covered));
-
-          total = metrics.getStatements();
-          covered = metrics.getCoveredstatements();
-          keyValMap.put("statement_Covered", String.valueOf(covered));
-          keyValMap.put("statement_Uncovered", String.valueOf(total - covered));
-
-          total = metrics.getMethods();
-          covered = metrics.getCoveredmethods();
-          keyValMap.put("method_Covered", String.valueOf(covered));
-          keyValMap.put("method_Uncovered", String.valueOf(total - covered));
-
-          // add data to sensorshell
-          this.sensorShell.add(keyValMap); 
+          addCoverage(packageName, file, startTime, runtimeString);
           coverageEntriesCount++;
         }
       }
@@ -192,14 +128,179 @@ public class CloverSensor extends HackystatSensorTask {
   }
 
   /**
-   * Get a java class to file path mapper.
-   * @return The mapper.
+   * Parses a Clover XML file with the streaming parser and sends the data to the shell. Only the
+   * file element currently being read is held in memory, and the sensor data is identical to 
+   * that produced by the JAXB path.
+   * 
+   * @param xmlFile The XML file name to be processed.
+   * @exception BuildException if any error.
+   * @return The number of coverage entries in this XML file.
    */
-  private JavaClass2FilePathMapper getJavaClass2FilePathMapper() {
-    if (this.javaClass2FilePathMapper == null) {
-      this.javaClass2FilePathMapper = new JavaClass2FilePathMapper(this.getSourceFiles());
+  private int processCoverageXmlFileStreaming(java.io.File xmlFile) throws BuildException {
+    CloverHandler handler = new CloverHandler(xmlFile.lastModified(), 
+        LongTimeConverter.convertLongToString(this.runtime));
+    try {
+      StreamingXmlParser.parse(xmlFile, handler);
+      return handler.coverageEntriesCount;
+    }
+    catch (SensorShellException f) {
+      throw new BuildException(errMsgPrefix + "Failure in SensorShell " + xmlFile, f);
+    }
+    catch (Exception e) {
+      throw new BuildException(errMsgPrefix + "Failure parsing " + xmlFile, e);
+    }
+  }
+
+  /**
+   * Creates the Coverage sensor data for a single Clover file element and adds it to the shell.
+   * 
+   * @param packageName The name of the package containing the file.
+   * @param file The file element, whose metrics and class children are used.
+   * @param startTime The start time for the entry, before being made unique.
+   * @param runtimeString The runtime of this sensor.
+   * @throws SensorShellException If the shell could not accept the data.
+   */
+  private void addCoverage(String packageName, File file, long startTime,
+      String runtimeString) throws SensorShellException {
+    String fileName = file.getName();
+    Metrics metrics = file.getMetrics();
+    String className = file.getClazz().getName();
+    String javaClassName = packageName + '.' + className;
+    String javaSourceFilePath = fileName;
+    // for some reason sometimes file names can be fully qualified. 
+    // not sure how to configure clover to do that. if its not fully 
+    // qualified then we try to use the mapping. 
+    if (javaSourceFilePath.length() <= (className + ".java").length()) {
+      javaSourceFilePath = this.getJavaClass2FilePathMapper().getFilePath(javaClassName);
+      if (javaSourceFilePath == null) {
+        verboseInfo("Warning: Unable to find java source file path for class '" 
+            + javaClassName + "'. Using empty string as the resource.");
+        javaSourceFilePath = "";
+      }
+    }
+    
+    // Alter startTime to guarantee uniqueness.
+    long uniqueTstamp = this.getUniqueTstamp(startTime);
+
+    // Get altered start time as an xsd:dateTime string
+    String startTimeString = LongTimeConverter.convertLongToString(uniqueTstamp);
+
+    Map<String, String> keyValMap = new HashMap<String, String>();
+    keyValMap.put("Tool", "Clover");
+    keyValMap.put("SensorDataType", "Coverage");
+
+    // Required
+    keyValMap.put("Runtime", runtimeString);
+    keyValMap.put("Timestamp", startTimeString);
+    keyValMap.put("Resource", javaSourceFilePath);
+
+    // Optional
+    keyValMap.put("ClassName", javaClassName);
+                  
+    int total = metrics.getConditionals();
+    int covered = metrics.getCoveredconditionals();
+    keyValMap.put("conditional_Covered", String.valueOf(covered));
+    keyValMap.put("conditional_Uncovered", String.valueOf(total - covered));
+    
+    total = metrics.getElements();
+    covered = metrics.getCoveredelements();
+    keyValMap.put("element_Covered", String.valueOf(covered));
+    keyValMap.put("element_Uncovered", String.valueOf(total - covered));
+
+    total = metrics.getStatements();
+    covered = metrics.getCoveredstatements();
+    keyValMap.put("statement_Covered", String.valueOf(covered));
+    keyValMap.put("statement_Uncovered", String.valueOf(total - covered));
+
+    total = metrics.getMethods();
+    covered = metrics.getCoveredmethods();
+    keyValMap.put("method_Covered", String.valueOf(covered));
+    keyValMap.put("method_Uncovered", String.valueOf(total - covered));
+
+    // add data to sensorshell
+    this.addSensorData(keyValMap); 
+  }
+
+  /**
+   * Receives the package, file, metrics, and class elements of the project element from the
+   * streaming parser. Each file element is rebuilt as its (small) JAXB object so that it can be
+   * passed to the same addCoverage() method used by the JAXB path. The testproject element is
+   * ignored, just as it is by the JAXB path.
+   */
+  private class CloverHandler extends XmlReportHandler {
+    /** The start time for all entries, approximated by the XML file's last mod time. */
+    private final long startTime;
+    /** The runtime of this sensor. */
+    private final String runtimeString;
+    /** Whether we are inside a package element of the project element. */
+    private boolean inPackage = false;
+    /** The name of the current package. */
+    private String packageName;
+    /** The current file element. */
+    private File file;
+    /** The number of coverage entries processed so far. */
+    private int coverageEntriesCount = 0;
+
+    /**
+     * Creates a handler for one Clover XML file.
+     * @param startTime The start time for all entries.
+     * @param runtimeString The runtime of this sensor.
+     */
+    CloverHandler(long startTime, String runtimeString) {
+      this.startTime = startTime;
+      this.runtimeString = runtimeString;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String name, String parent, Map<String, String> attributes) {
+      if ("package".equals(name) && "project".equals(parent)) {
+        this.inPackage = true;
+        this.packageName = attributes.get("name");
+      }
+      else if ("file".equals(name) && "package".equals(parent) && this.inPackage) {
+        this.file = new File();
+        this.file.setName(attributes.get("name"));
+      }
+      else if ("class".equals(name) && "file".equals(parent) && this.file != null) {
+        Class clazz = new Class();
+        clazz.setName(attributes.get("name"));
+        this.file.setClazz(clazz);
+      }
+      else if ("metrics".equals(name) && "file".equals(parent) && this.file != null) {
+        Metrics metrics = new Metrics();
+        metrics.setConditionals(toInteger(attributes.get("conditionals")));
+        metrics.setCoveredconditionals(toInteger(attributes.get("coveredconditionals")));
+        metrics.setElements(toInteger(attributes.get("elements")));
+        metrics.setCoveredelements(toInteger(attributes.get("coveredelements")));
+        metrics.setStatements(toInteger(attributes.get("statements")));
+        metrics.setCoveredstatements(toInteger(attributes.get("coveredstatements")));
+        metrics.setMethods(toInteger(attributes.get("methods")));
+        metrics.setCoveredmethods(toInteger(attributes.get("coveredmethods")));
+        this.file.setMetrics(metrics);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String name, String parent, String text) throws SensorShellException {
+      if ("package".equals(name) && "project".equals(parent)) {
+        this.inPackage = false;
+      }
+      else if ("file".equals(name) && "package".equals(parent) && this.file != null) {
+        addCoverage(this.packageName, this.file, this.startTime, this.runtimeString);
+        this.coverageEntriesCount++;
+        this.file = null;
+      }
+    }
+
+    /**
+     * Converts an integer attribute value in the same way as the JAXB binding.
+     * @param value The attribute value, possibly null.
+     * @return The Integer, or null if the attribute was absent.
+     */
+    private Integer toInteger(String value) {
+      return (value == null) ? null : Integer.valueOf(value.trim());
     }
-    return this.javaClass2FilePathMapper;
   }
-  
 }
\ No newline at end of file
@@ -7,17 +7,21 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.datatype.XMLGregorianCalendar;
-
 import org.apache.tools.ant.BuildException;
 import org.hackystat.sensor.ant.dependencyfinder.jaxb.Dependencies;
+import org.hackystat.sensor.ant.dependencyfinder.jaxb.Inbound;
+import org.hackystat.sensor.ant.dependencyfinder.jaxb.ObjectFactory;
+import org.hackystat.sensor.ant.dependencyfinder.jaxb.Outbound;
 import org.hackystat.sensor.ant.dependencyfinder.jaxb.Package;
 import org.hackystat.sensor.ant.dependencyfinder.jaxb.Class;
+import org.hackystat.sensor.ant.task.DataFileProcessor;
 import org.hackystat.sensor.ant.task.HackystatSensorTask;
+import org.hackystat.sensor.ant.util.JAXBContextRegistry;
 import org.hackystat.sensor.ant.util.JavaClass2FilePathMapper;
-import org.hackystat.utilities.tstamp.Tstamp;
+import org.hackystat.sensor.ant.util.LongTimeConverter;
+import org.hackystat.sensor.ant.util.StreamingXmlParser;
+import org.hackystat.sensor.ant.util.XmlReportHandler;
+import org.hackystat.sensorshell.SensorShellException;
 
 /**
  * Implements an Ant task that parses the XML files generated by DependencyFinder. 
@@ -56,15 +60,11 @@ public class DependencyFinderSensor extends HackystatSensorTask {
     this.setupSensorShell();
     int numberOfEntries = 0;
     Date startTime = new Date();
-    for (File dataFile : getDataFiles()) {
-      try {
-        verboseInfo("Processing DependencyFinder file: " + dataFile);
-        numberOfEntries += this.processDependencyFinderXmlFile(dataFile);
-      }
-      catch (Exception e) {
-        signalError("Failure processing: " + dataFile, e);
+    numberOfEntries = processDataFiles("DependencyFinder", new DataFileProcessor() {
+      public int process(File dataFile) {
+        return processDependencyFinderXmlFile(dataFile);
       }
-    }
+    });
     // We've collected the data, now send it. 
     this.sendAndQuit();
     summaryInfo(startTime, "Coupling", numberOfEntries);
@@ -78,19 +78,19 @@ public class DependencyFinderSensor extends HackystatSensorTask {
    * @throws BuildException If problems occur.
    */
   int processDependencyFinderXmlFile(File xmlFile) throws BuildException {
+    if (this.streaming) {
+      return processDependencyFinderXmlFileStreaming(xmlFile);
+    }
     // The start time for all entries will be approximated by the XML file's last mod time.
     // Use the TstampSet to make it unique.
     long startTime = xmlFile.lastModified();
     int count = 0;
     try {
-      JAXBContext context = JAXBContext
-      .newInstance(org.hackystat.sensor.ant.dependencyfinder.jaxb.ObjectFactory.class);
-      Unmarshaller unmarshaller = context.createUnmarshaller();
-
       // DependencyFinder XML report.
-      Dependencies dependencies = (Dependencies) unmarshaller.unmarshal(xmlFile);
+      Dependencies dependencies = (Dependencies) JAXBContextRegistry.unmarshal(ObjectFactory.class,
+          xmlFile);
       // Construct a mapper from class names to their file path.
-      JavaClass2FilePathMapper mapper = new JavaClass2FilePathMapper(getSourceFiles());
+      JavaClass2FilePathMapper mapper = this.getJavaClass2FilePathMapper();
       List<Package> packages = new ArrayList<Package>();
       if (dependencies.getPackage() != null) { 
         packages = dependencies.getPackage();
@@ -102,26 +102,7 @@ public class DependencyFinderSensor extends HackystatSensorTask {
           classList = packageElement.getClazz();
         }
         for (Class classElement : classList) {
-          String resource = mapper.getFilePath(classElement.getName());
-
-          if (resource != null) {
-            long tstamp = this.tstampSet.getUniqueTstamp(startTime);
-            XMLGregorianCalendar tstampXml = Tstamp.makeTimestamp(tstamp);
-            XMLGregorianCalendar runtimeXml = Tstamp.makeTimestamp(this.runtime);
-            // Create the sensor data instance key/value map.
-            Map<String, String> keyValMap = new HashMap<String, String>();
-            // Required for all sensor data
-            keyValMap.put("Tool", tool);
-            keyValMap.put("SensorDataType", "Coupling");
-            keyValMap.put("Runtime", runtimeXml.toString());
-            keyValMap.put("Timestamp", tstampXml.toString());
-            keyValMap.put("Resource", resource);
-            // Expected for "Coupling" sensor data. 
-            keyValMap.put("Type", "class");
-            keyValMap.put("Afferent", String.valueOf(getAfferent(classElement))); 
-            keyValMap.put("Efferent", String.valueOf(getEfferent(classElement)));
-            // add data to sensorshell
-            this.sensorShell.add(keyValMap);
+          if (addCoupling(mapper, classElement, startTime)) {
             count++;
           }
         }
@@ -133,6 +114,62 @@ public class DependencyFinderSensor extends HackystatSensorTask {
     return count;
   }
 
+  /**
+   * Processes a single DependencyFinder XML data file with the streaming parser, generating the
+   * same sensor data as the JAXB path.
+   * 
+   * @param xmlFile The file containing the DependencyFinder data.
+   * @return The number of Coupling instances generated.
+   * @throws BuildException If problems occur.
+   */
+  private int processDependencyFinderXmlFileStreaming(File xmlFile) throws BuildException {
+    try {
+      DependencyFinderHandler handler = new DependencyFinderHandler(
+          this.getJavaClass2FilePathMapper(), xmlFile.lastModified());
+      StreamingXmlParser.parse(xmlFile, handler);
+      return handler.count;
+    }
+    catch (Throwable e) {
+      throw new BuildException(errMsgPrefix + "Failure: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Creates the Coupling sensor data for a single class element and adds it to the shell. 
+   * Classes whose source file cannot be found are skipped.
+   * 
+   * @param mapper The mapper from class names to their file path.
+   * @param classElement The class element.
+   * @param startTime The start time for the entry, before being made unique.
+   * @return True if sensor data was generated for this class.
+   * @throws SensorShellException If the shell could not accept the data.
+   */
+  private boolean addCoupling(JavaClass2FilePathMapper mapper, Class classElement, 
+      long startTime) throws SensorShellException {
+    String resource = mapper.getFilePath(classElement.getName());
+    if (resource == null) {
+      return false;
+    }
+    long tstamp = this.getUniqueTstamp(startTime);
+    String tstampString = LongTimeConverter.convertLongToString(tstamp);
+    String runtimeString = LongTimeConverter.convertLongToString(this.runtime);
+    // Create the sensor data instance key/value map.
+    Map<String, String> keyValMap = new HashMap<String, String>();
+    // Required for all sensor data
+    keyValMap.put("Tool", tool);
+    keyValMap.put("SensorDataType", "Coupling");
+    keyValMap.put("Runtime", runtimeString);
+    keyValMap.put("Timestamp", tstampString);
+    keyValMap.put("Resource", resource);
+    // Expected for "Coupling" sensor data. 
+    keyValMap.put("Type", "class");
+    keyValMap.put("Afferent", String.valueOf(getAfferent(classElement))); 
+    keyValMap.put("Efferent", String.valueOf(getEfferent(classElement)));
+    // add data to sensorshell
+    this.addSensorData(keyValMap);
+    return true;
+  }
+
   /**
    * Gets the Afferent (inbound) number of couplings.
    * @param classElement The class element to count.
@@ -150,4 +187,65 @@ public class DependencyFinderSensor extends HackystatSensorTask {
   private int getEfferent(Class classElement) {
     return (classElement.getOutbound() == null) ? 0 : classElement.getOutbound().size();
   }
+
+  /**
+   * Receives the package and class elements from the streaming parser. Each class element is
+   * rebuilt as a JAXB Class holding its name and one empty entry per inbound and outbound
+   * dependency, which is all that addCoupling() looks at. The feature elements nested inside a
+   * class, which have their own name, inbound, and outbound children, are ignored.
+   */
+  private class DependencyFinderHandler extends XmlReportHandler {
+    /** The mapper from class names to their file path. */
+    private final JavaClass2FilePathMapper mapper;
+    /** The start time for all entries, approximated by the XML file's last mod time. */
+    private final long startTime;
+    /** The current class element. */
+    private Class classElement;
+    /** The number of Coupling instances generated so far. */
+    private int count = 0;
+
+    /**
+     * Creates a handler for one DependencyFinder XML file.
+     * @param mapper The mapper from class names to their file path.
+     * @param startTime The start time for all entries.
+     */
+    DependencyFinderHandler(JavaClass2FilePathMapper mapper, long startTime) {
+      this.mapper = mapper;
+      this.startTime = startTime;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String name, String parent, Map<String, String> attributes) {
+      if ("class".equals(name) && "package".equals(parent)) {
+        this.classElement = new Class();
+      }
+      else if ("inbound".equals(name) && "class".equals(parent) && this.classElement != null) {
+        this.classElement.getInbound().add(new Inbound());
+      }
+      else if ("outbound".equals(name) && "class".equals(parent) && this.classElement != null) {
+        this.classElement.getOutbound().add(new Outbound());
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean wantsText(String name, String parent) {
+      return "name".equals(name) && "class".equals(parent);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String name, String parent, String text) throws SensorShellException {
+      if ("name".equals(name) && "class".equals(parent) && this.classElement != null) {
+        this.classElement.setName(text);
+      }
+      else if ("class".equals(name) && "package".equals(parent)) {
+        if (addCoupling(this.mapper, this.classElement, this.startTime)) {
+          this.count++;
+        }
+        this.classElement = null;
+      }
+    }
+  }
 }
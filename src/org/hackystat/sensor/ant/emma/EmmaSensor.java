@@ -5,22 +5,23 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.apache.tools.ant.BuildException;
 import org.hackystat.sensor.ant.emma.jaxb.All;
 import org.hackystat.sensor.ant.emma.jaxb.Class;
 import org.hackystat.sensor.ant.emma.jaxb.Coverage;
 import org.hackystat.sensor.ant.emma.jaxb.Data;
+import org.hackystat.sensor.ant.emma.jaxb.ObjectFactory;
 import org.hackystat.sensor.ant.emma.jaxb.Package;
 import org.hackystat.sensor.ant.emma.jaxb.Report;
 import org.hackystat.sensor.ant.emma.jaxb.Srcfile;
+import org.hackystat.sensor.ant.task.DataFileProcessor;
 import org.hackystat.sensor.ant.task.HackystatSensorTask;
-import org.hackystat.sensor.ant.util.JavaClass2FilePathMapper;
+import org.hackystat.sensor.ant.util.JAXBContextRegistry;
 import org.hackystat.sensor.ant.util.LongTimeConverter;
+import org.hackystat.sensor.ant.util.StreamingXmlParser;
+import org.hackystat.sensor.ant.util.XmlReportHandler;
 import org.hackystat.sensorshell.SensorShellException;
 
 
@@ -32,9 +33,6 @@ import org.hackystat.sensorshell.SensorShellException;
  */
 public class EmmaSensor extends HackystatSensorTask {
 
-  /** The mapper used to map class names to file paths. */
-  private JavaClass2FilePathMapper javaClass2FilePathMapper;
-  
   /** The name of this tool. */
   private static String tool = "Emma";
   
@@ -65,15 +63,11 @@ public class EmmaSensor extends HackystatSensorTask {
     this.setupSensorShell();
     int numberOfEntries = 0;
     Date startTime = new Date();
-    for (File dataFile : this.getDataFiles()) {
-      verboseInfo("Processing Emma file: " + dataFile);
-      try {
-        numberOfEntries += this.processCoverageXmlFile(dataFile);
-      }
-      catch (Exception e) {
-        signalError("Failure processing: " + dataFile, e);
+    numberOfEntries = processDataFiles("Emma", new DataFileProcessor() {
+      public int process(File dataFile) {
+        return processCoverageXmlFile(dataFile);
       }
-    }
+    });
     this.sendAndQuit();
     summaryInfo(startTime, "Coverage", numberOfEntries);
   }
@@ -98,17 +92,16 @@ public class EmmaSensor extends HackystatSensorTask {
    * @return The number of coverage entries in this XML file.
    */
   public int processCoverageXmlFile(File xmlFile) {
-    XMLGregorianCalendar runtimeGregorian = LongTimeConverter.convertLongToGregorian(this.runtime);
+    if (this.streaming) {
+      return processCoverageXmlFileStreaming(xmlFile);
+    }
+    String runtimeString = LongTimeConverter.convertLongToString(this.runtime);
     // The start time for all entries will be approximated by the XML file's last mod time.
     // The shell will ensure that it's unique by tweaking the millisecond field.
     long startTime = xmlFile.lastModified();
     try {
-      JAXBContext context = 
-        JAXBContext.newInstance(org.hackystat.sensor.ant.emma.jaxb.ObjectFactory.class);
-      Unmarshaller unmarshaller = context.createUnmarshaller();
-      
       // emma report
-      Report report = (Report) unmarshaller.unmarshal(xmlFile);
+      Report report = (Report) JAXBContextRegistry.unmarshal(ObjectFactory.class, xmlFile);
       Data data = report.getData();
       All allData = data.getAll();
       
@@ -117,50 +110,7 @@ public class EmmaSensor extends HackystatSensorTask {
         String packageName = packageReport.getName();
         for (Srcfile srcfile : packageReport.getSrcfile()) {
           for (Class classReport : srcfile.getClazz()) {
-            String className = classReport.getName();
-            String javaClassName = packageName + '.' + className;
-            String javaSourceFilePath = 
-              this.getJavaClass2FilePathMapper().getFilePath(javaClassName);
-            if (javaSourceFilePath == null) {
-              verboseInfo("Warning: Unable to find java source file path for class '" 
-                  + javaClassName + "'. Use empty string for file path.");
-              javaSourceFilePath = "";
-            }
-            
-            // Alter startTime to guarantee uniqueness.
-            long uniqueTstamp = this.tstampSet.getUniqueTstamp(startTime);
-
-            // Get altered start time as XMLGregorianCalendar
-            XMLGregorianCalendar startTimeGregorian = 
-              LongTimeConverter.convertLongToGregorian(uniqueTstamp);
-
-            Map<String, String> keyValMap = new HashMap<String, String>();
-            keyValMap.put("Tool", "Emma");
-            keyValMap.put("SensorDataType", "Coverage");
-
-            // Required
-            keyValMap.put("Runtime", runtimeGregorian.toString());
-            keyValMap.put("Timestamp", startTimeGregorian.toString());
-            keyValMap.put("Resource", javaSourceFilePath);
-
-            // Optional
-            keyValMap.put("ClassName", javaClassName);
-                          
-            
-            for (Coverage coverage : classReport.getCoverage()) {
-              String type = coverage.getType();
-              String granularity = type.substring(0, type.indexOf(", %"));
-              String value = coverage.getValue();
-              String coveredString = value.substring(value.indexOf('(') + 1, value.indexOf('/'));
-              String totalString = value.substring(value.indexOf('/') + 1, value.indexOf(')'));
-              double covered = new Double(coveredString); 
-              double total = new Double(totalString);
-
-              keyValMap.put(granularity  + "_Covered", String.valueOf(covered));
-              keyValMap.put(granularity + "_Uncovered", String.valueOf(total - covered));
-            }
-            
-            this.sensorShell.add(keyValMap); // add data to sensorshell
+            addCoverage(packageName, classReport, startTime, runtimeString);
             coverageEntriesCount++;
           }
         }
@@ -176,13 +126,142 @@ public class EmmaSensor extends HackystatSensorTask {
   }
 
   /**
-   * Get a java class to file path mapper.
-   * @return The mapper.
+   * Parses an Emma XML file with the streaming parser and sends the data to the shell. Only the
+   * class element currently being read is held in memory, and the sensor data is identical to
+   * that produced by the JAXB path.
+   * 
+   * @param xmlFile The XML file name to be processed.
+   * @return The number of coverage entries in this XML file.
+   */
+  private int processCoverageXmlFileStreaming(File xmlFile) {
+    EmmaHandler handler = new EmmaHandler(xmlFile.lastModified(), 
+        LongTimeConverter.convertLongToString(this.runtime));
+    try {
+      StreamingXmlParser.parse(xmlFile, handler);
+      return handler.coverageEntriesCount;
+    }
+    catch (SensorShellException e) {
+      throw new BuildException(errMsgPrefix + "Sensor processing problem " + xmlFile, e);
+    }
+    catch (Exception e) {
+      throw new BuildException(errMsgPrefix + "Parsing problem " + xmlFile, e);
+    }
+  }
+
+  /**
+   * Creates the Coverage sensor data for a single Emma class element and adds it to the shell.
+   * 
+   * @param packageName The name of the package containing the class.
+   * @param classReport The class element, whose coverage children are used.
+   * @param startTime The start time for the entry, before being made unique.
+   * @param runtimeString The runtime of this sensor.
+   * @throws SensorShellException If the shell could not accept the data.
+   */
+  private void addCoverage(String packageName, Class classReport, long startTime,
+      String runtimeString) throws SensorShellException {
+    String className = classReport.getName();
+    String javaClassName = packageName + '.' + className;
+    String javaSourceFilePath = 
+      this.getJavaClass2FilePathMapper().getFilePath(javaClassName);
+    if (javaSourceFilePath == null) {
+      verboseInfo("Warning: Unable to find java source file path for class '" 
+          + javaClassName + "'. Use empty string for file path.");
+      javaSourceFilePath = "";
+    }
+    
+    // Alter startTime to guarantee uniqueness.
+    long uniqueTstamp = this.getUniqueTstamp(startTime);
+
+    // Get altered start time as an xsd:dateTime string
+    String startTimeString = LongTimeConverter.convertLongToString(uniqueTstamp);
+
+    Map<String, String> keyValMap = new HashMap<String, String>();
+    keyValMap.put("Tool", "Emma");
+    keyValMap.put("SensorDataType", "Coverage");
+
+    // Required
+    keyValMap.put("Runtime", runtimeString);
+    keyValMap.put("Timestamp", startTimeString);
+    keyValMap.put("Resource", javaSourceFilePath);
+
+    // Optional
+    keyValMap.put("ClassName", javaClassName);
+    
+    for (Coverage coverage : classReport.getCoverage()) {
+      String type = coverage.getType();
+      String granularity = type.substring(0, type.indexOf(", %"));
+      String value = coverage.getValue();
+      String coveredString = value.substring(value.indexOf('(') + 1, value.indexOf('/'));
+      String totalString = value.substring(value.indexOf('/') + 1, value.indexOf(')'));
+      double covered = new Double(coveredString); 
+      double total = new Double(totalString);
+
+      keyValMap.put(granularity  + "_Covered", String.valueOf(covered));
+      keyValMap.put(granularity + "_Uncovered", String.valueOf(total - covered));
+    }
+    
+    this.addSensorData(keyValMap); // add data to sensorshell
+  }
+
+  /**
+   * Receives the package, class, and coverage elements of the all element from the streaming
+   * parser. Each class element is rebuilt as its (small) JAXB object, without its method 
+   * children, so that it can be passed to the same addCoverage() method used by the JAXB path.
    */
-  private JavaClass2FilePathMapper getJavaClass2FilePathMapper() {
-    if (this.javaClass2FilePathMapper == null) {
-      this.javaClass2FilePathMapper = new JavaClass2FilePathMapper(this.getSourceFiles());
+  private class EmmaHandler extends XmlReportHandler {
+    /** The start time for all entries, approximated by the XML file's last mod time. */
+    private final long startTime;
+    /** The runtime of this sensor. */
+    private final String runtimeString;
+    /** Whether we are inside a package element of the all element. */
+    private boolean inPackage = false;
+    /** The name of the current package. */
+    private String packageName;
+    /** The current class element. */
+    private Class classReport;
+    /** The number of coverage entries processed so far. */
+    private int coverageEntriesCount = 0;
+
+    /**
+     * Creates a handler for one Emma XML file.
+     * @param startTime The start time for all entries.
+     * @param runtimeString The runtime of this sensor.
+     */
+    EmmaHandler(long startTime, String runtimeString) {
+      this.startTime = startTime;
+      this.runtimeString = runtimeString;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String name, String parent, Map<String, String> attributes) {
+      if ("package".equals(name) && "all".equals(parent)) {
+        this.inPackage = true;
+        this.packageName = attributes.get("name");
+      }
+      else if ("class".equals(name) && "srcfile".equals(parent) && this.inPackage) {
+        this.classReport = new Class();
+        this.classReport.setName(attributes.get("name"));
+      }
+      else if ("coverage".equals(name) && "class".equals(parent) && this.classReport != null) {
+        Coverage coverage = new Coverage();
+        coverage.setType(attributes.get("type"));
+        coverage.setValue(attributes.get("value"));
+        this.classReport.getCoverage().add(coverage);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String name, String parent, String text) throws SensorShellException {
+      if ("package".equals(name) && "all".equals(parent)) {
+        this.inPackage = false;
+      }
+      else if ("class".equals(name) && "srcfile".equals(parent) && this.classReport != null) {
+        addCoverage(this.packageName, this.classReport, this.startTime, this.runtimeString);
+        this.coverageEntriesCount++;
+        this.classReport = null;
+      }
     }
-    return this.javaClass2FilePathMapper;
   }
 }
\ No newline at end of file
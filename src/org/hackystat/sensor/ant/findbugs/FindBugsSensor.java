@@ -10,17 +10,19 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.apache.tools.ant.BuildException;
 import org.hackystat.sensor.ant.findbugs.jaxb.BugCollection;
 import org.hackystat.sensor.ant.findbugs.jaxb.BugInstance;
+import org.hackystat.sensor.ant.findbugs.jaxb.ObjectFactory;
 import org.hackystat.sensor.ant.findbugs.jaxb.SourceLine;
+import org.hackystat.sensor.ant.task.DataFileProcessor;
 import org.hackystat.sensor.ant.task.HackystatSensorTask;
+import org.hackystat.sensor.ant.util.JAXBContextRegistry;
 import org.hackystat.sensor.ant.util.LongTimeConverter;
+import org.hackystat.sensor.ant.util.StreamingXmlParser;
+import org.hackystat.sensor.ant.util.XmlReportHandler;
 import org.hackystat.sensorshell.SensorShellException;
 
 /**
@@ -64,15 +66,11 @@ public class FindBugsSensor extends HackystatSensorTask {
     int numberOfTests = 0;
     Date startTime = new Date();
     // Iterate though each file, extract the FindBugs data, send to sensorshell.
-    for (File dataFile : getDataFiles()) {
-      try {
-        verboseInfo("Processing FindBugs file: " + dataFile);
-        numberOfTests += processFindBugsXmlFile(dataFile);
+    numberOfTests = processDataFiles("FindBugs", new DataFileProcessor() {
+      public int process(File dataFile) {
+        return processFindBugsXmlFile(dataFile);
       }
-      catch (Exception e) {
-        signalError("Failure processing: " + dataFile, e);
-      }
-    }
+    });
     this.sendAndQuit();
     summaryInfo(startTime, "CodeIssues", numberOfTests);
   }
@@ -85,20 +83,25 @@ public class FindBugsSensor extends HackystatSensorTask {
    * @return The number of test cases in this XML file.
    */
   public int processFindBugsXmlFile(File xmlFile) throws BuildException {
-    XMLGregorianCalendar runtimeGregorian = LongTimeConverter.convertLongToGregorian(new Date()
-        .getTime());
+    String runtimeString = LongTimeConverter.convertLongToString(new Date().getTime());
     // The start time for all entries will be approximated by the XML file's last mod time.
     // The shell will ensure that it's unique by tweaking the millisecond field.
     long startTime = xmlFile.lastModified();
     try {
-      JAXBContext context = JAXBContext
-          .newInstance(org.hackystat.sensor.ant.findbugs.jaxb.ObjectFactory.class);
-      Unmarshaller unmarshaller = context.createUnmarshaller();
-
-      BugCollection bugCollection = (BugCollection) unmarshaller.unmarshal(xmlFile);
-      Set<String> allSrcFiles = new HashSet<String>(bugCollection.getProject().getSrcDir());
-
-      List<BugInstance> bugInstanceCollection = bugCollection.getBugInstance();
+      Set<String> allSrcFiles;
+      List<BugInstance> bugInstanceCollection;
+      if (this.streaming) {
+        FindBugsHandler handler = new FindBugsHandler();
+        StreamingXmlParser.parse(xmlFile, handler);
+        allSrcFiles = new HashSet<String>(handler.srcDirs);
+        bugInstanceCollection = handler.bugInstances;
+      }
+      else {
+        BugCollection bugCollection = (BugCollection) JAXBContextRegistry.unmarshal(
+            ObjectFactory.class, xmlFile);
+        allSrcFiles = new HashSet<String>(bugCollection.getProject().getSrcDir());
+        bugInstanceCollection = bugCollection.getBugInstance();
+      }
 
       // Sort all the bugs by the file they are from
       HashMap<String, List<BugInstance>> fileToBugs = new HashMap<String, List<BugInstance>>();
@@ -133,16 +136,16 @@ public class FindBugsSensor extends HackystatSensorTask {
       int codeIssueCount = 0;
       for (Entry<String, List<BugInstance>> entry : fileToBugs.entrySet()) {
         // Alter startTime to guarantee uniqueness.
-        long uniqueTstamp = this.tstampSet.getUniqueTstamp(startTime);
+        long uniqueTstamp = this.getUniqueTstamp(startTime);
 
-        // Get altered start time as XMLGregorianCalendar
-        XMLGregorianCalendar timestamp = LongTimeConverter.convertLongToGregorian(uniqueTstamp);
+        // Get altered start time as an xsd:dateTime string
+        String timestamp = LongTimeConverter.convertLongToString(uniqueTstamp);
 
         Map<String, String> keyValMap = new HashMap<String, String>();
         keyValMap.put("Tool", "FindBugs");
         keyValMap.put("SensorDataType", "CodeIssue");
-        keyValMap.put("Runtime", runtimeGregorian.toString());
-        keyValMap.put("Timestamp", timestamp.toString());
+        keyValMap.put("Runtime", runtimeString);
+        keyValMap.put("Timestamp", timestamp);
         keyValMap.put("Resource", entry.getKey());
 
         HashMap<String, Integer> issueCounts = new HashMap<String, Integer>();
@@ -165,7 +168,7 @@ public class FindBugsSensor extends HackystatSensorTask {
           keyValMap.put(typeKey, issueCountEntry.getValue().toString());
         }
 
-        this.sensorShell.add(keyValMap);
+        this.addSensorData(keyValMap);
         codeIssueCount++;
       }
 
@@ -173,20 +176,20 @@ public class FindBugsSensor extends HackystatSensorTask {
       allSrcFiles.removeAll(fileToBugs.keySet());
       for (String srcFile : allSrcFiles) {
         // Alter startTime to guarantee uniqueness.
-        long uniqueTstamp = this.tstampSet.getUniqueTstamp(startTime);
+        long uniqueTstamp = this.getUniqueTstamp(startTime);
 
-        // Get altered start time as XMLGregorianCalendar
-        XMLGregorianCalendar timestamp = LongTimeConverter.convertLongToGregorian(uniqueTstamp);
+        // Get altered start time as an xsd:dateTime string
+        String timestamp = LongTimeConverter.convertLongToString(uniqueTstamp);
 
         Map<String, String> keyValMap = new HashMap<String, String>();
         // Required
         keyValMap.put("Tool", "FindBugs");
         keyValMap.put("SensorDataType", "CodeIssue");
-        keyValMap.put("Runtime", runtimeGregorian.toString());
-        keyValMap.put("Timestamp", timestamp.toString());
+        keyValMap.put("Runtime", runtimeString);
+        keyValMap.put("Timestamp", timestamp);
         keyValMap.put("Resource", srcFile);
 
-        this.sensorShell.add(keyValMap); // add data to sensorshell
+        this.addSensorData(keyValMap); // add data to sensorshell
         codeIssueCount++;
       }
       return codeIssueCount;
@@ -197,6 +200,9 @@ public class FindBugsSensor extends HackystatSensorTask {
     catch (SensorShellException f) {
       throw new BuildException(errMsgPrefix + "Failure in SensorShell " + xmlFile, f);
     }
+    catch (Exception e) {
+      throw new BuildException(errMsgPrefix + "Failure parsing " + xmlFile, e);
+    }
   }
 
   /**
@@ -223,4 +229,54 @@ public class FindBugsSensor extends HackystatSensorTask {
     }
     return null;
   }
+
+  /**
+   * Receives the SrcDir and BugInstance elements from the streaming parser. Each BugInstance is
+   * kept only as a small JAXB object holding its category, type, and the sourcepath of its
+   * top-level SourceLine, which is all that the sensor looks at. SourceLine elements nested
+   * inside the Class, Method, and Field children of a BugInstance are ignored, just as they are
+   * by the JAXB binding.
+   */
+  private static class FindBugsHandler extends XmlReportHandler {
+    /** The source files listed in the Project element. */
+    private final List<String> srcDirs = new ArrayList<String>();
+    /** The bug instances read so far. */
+    private final List<BugInstance> bugInstances = new ArrayList<BugInstance>();
+    /** The current BugInstance element. */
+    private BugInstance bugInstance;
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String name, String parent, Map<String, String> attributes) {
+      if ("BugInstance".equals(name) && "BugCollection".equals(parent)) {
+        this.bugInstance = new BugInstance();
+        this.bugInstance.setCategory(attributes.get("category"));
+        this.bugInstance.setType(attributes.get("type"));
+        this.bugInstances.add(this.bugInstance);
+      }
+      else if ("SourceLine".equals(name) && "BugInstance".equals(parent) 
+          && this.bugInstance != null) {
+        SourceLine sourceLine = new SourceLine();
+        sourceLine.setSourcepath(attributes.get("sourcepath"));
+        this.bugInstance.setSourceLine(sourceLine);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean wantsText(String name, String parent) {
+      return "SrcDir".equals(name) && "Project".equals(parent);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String name, String parent, String text) {
+      if ("SrcDir".equals(name) && "Project".equals(parent)) {
+        this.srcDirs.add(text);
+      }
+      else if ("BugInstance".equals(name) && "BugCollection".equals(parent)) {
+        this.bugInstance = null;
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -24,6 +24,8 @@ public class CcnData {
   /** Maps the fully qualified Java file to a list of ints indicating its methods' ccn's. */
   private Map<File, List<Integer>> file2Ccns = new HashMap<File, List<Integer>>();
   private Map<File, Integer> file2TotalLines = new HashMap<File, Integer>();
+  /** The Java files whose CCN numbers are to be found. */
+  private List<File> files;
   
   /**
    * Constructs the File2CcnList, which is a mapping from a Java file path to a list of integers
@@ -32,29 +34,47 @@ public class CcnData {
    * @param functions The Functions object contains CCN data. 
    */
   public CcnData(List<File> files, Functions functions) {
+    this(files);
     for (Function function : functions.getFunction()) {
-      String methodSignature = function.getName();
-      File javaFile = findJavaFile(files, methodSignature);
-      // Update our data structure only if we found a Java file corresponding to the method sig.
-      if (javaFile != null) {
-        // First, add the found ccn value to our list of ccn values. 
-        if (!file2Ccns.containsKey(javaFile)) {
-          file2Ccns.put(javaFile, new ArrayList<Integer>());
-          file2TotalLines.put(javaFile, 0);
-        }
-        // Second, update the mapping from file to TotalLines.
-        file2Ccns.get(javaFile).add(function.getCcn().intValue());
-        int lines = 0;
-        try {
-          lines = Integer.valueOf(function.getNcss());
-        }
-        catch (Exception e) {
-          System.out.println("Warning: could not make an integer from: " +
-              function.getNcss() + ". Ignoring this value for NCSS");
-        }
-        int newTotalLines = file2TotalLines.get(javaFile) + lines;
-        file2TotalLines.put(javaFile, newTotalLines);
+      addFunction(function);
+    }
+  }
+
+  /**
+   * Constructs an empty File2CcnList, to which the CCN data is supplied one function at a time
+   * via addFunction(). This supports streaming through the JavaNCSS report.
+   * @param files The Java files whose CCN numbers are to be found.
+   */
+  public CcnData(List<File> files) {
+    this.files = files;
+  }
+
+  /**
+   * Adds the CCN and NCSS values of a single function to the data for its Java file.  
+   * @param function The function element from the JavaNCSS report.
+   */
+  public final void addFunction(Function function) {
+    String methodSignature = function.getName();
+    File javaFile = findJavaFile(files, methodSignature);
+    // Update our data structure only if we found a Java file corresponding to the method sig.
+    if (javaFile != null) {
+      // First, add the found ccn value to our list of ccn values. 
+      if (!file2Ccns.containsKey(javaFile)) {
+        file2Ccns.put(javaFile, new ArrayList<Integer>());
+        file2TotalLines.put(javaFile, 0);
+      }
+      // Second, update the mapping from file to TotalLines.
+      file2Ccns.get(javaFile).add(function.getCcn().intValue());
+      int lines = 0;
+      try {
+        lines = Integer.valueOf(function.getNcss());
+      }
+      catch (Exception e) {
+        System.out.println("Warning: could not make an integer from: " +
+            function.getNcss() + ". Ignoring this value for NCSS");
       }
+      int newTotalLines = file2TotalLines.get(javaFile) + lines;
+      file2TotalLines.put(javaFile, newTotalLines);
     }
   }
 
@@ -1,18 +1,22 @@
 package org.hackystat.sensor.ant.javancss;
 
 import java.io.File;
+import java.math.BigInteger;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.datatype.XMLGregorianCalendar;
-
 import org.apache.tools.ant.BuildException;
+import org.hackystat.sensor.ant.javancss.jaxb.Function;
 import org.hackystat.sensor.ant.javancss.jaxb.Javancss;
+import org.hackystat.sensor.ant.javancss.jaxb.ObjectFactory;
+import org.hackystat.sensor.ant.task.DataFileProcessor;
 import org.hackystat.sensor.ant.task.HackystatSensorTask;
-import org.hackystat.utilities.tstamp.Tstamp;
+import org.hackystat.sensor.ant.util.JAXBContextRegistry;
+import org.hackystat.sensor.ant.util.LongTimeConverter;
+import org.hackystat.sensor.ant.util.StreamingXmlParser;
+import org.hackystat.sensor.ant.util.XmlReportHandler;
+import org.hackystat.sensorshell.SensorShellException;
 
 /**
  * Implements an Ant task that parses the XML files generated by JavaNCSS. The Ant Task sends the
@@ -51,15 +55,11 @@ public class JavaNcssSensor extends HackystatSensorTask {
     this.setupSensorShell();
     int numberOfEntries = 0;
     Date startTime = new Date();
-    for (File dataFile : getDataFiles()) {
-      try {
-        verboseInfo("Processing JavaNCSS file: " + dataFile);
-        numberOfEntries += this.processJavaNcssXmlFile(dataFile);
-      }
-      catch (Exception e) {
-        signalError("Failure processing: " + dataFile, e);
+    numberOfEntries = processDataFiles("JavaNCSS", new DataFileProcessor() {
+      public int process(File dataFile) {
+        return processJavaNcssXmlFile(dataFile);
       }
-    }
+    });
     // We've collected the data, now send it. 
     this.sendAndQuit();
     summaryInfo(startTime, "FileMetric", numberOfEntries);
@@ -73,44 +73,114 @@ public class JavaNcssSensor extends HackystatSensorTask {
    * @throws BuildException If problems occur.
    */
   int processJavaNcssXmlFile(File xmlFile) throws BuildException {
-    // The start time for all entries will be approximated by the XML file's last mod time.
-    // Use the TstampSet to make it unique.
-    long startTime = xmlFile.lastModified();
-    int count = 0;
     try {
-      JAXBContext context = JAXBContext
-          .newInstance(org.hackystat.sensor.ant.javancss.jaxb.ObjectFactory.class);
-      Unmarshaller unmarshaller = context.createUnmarshaller();
-
-      // JavaNCSS report.
-      Javancss javancss = (Javancss) unmarshaller.unmarshal(xmlFile);
-      // Construct the mapping from Java file paths to their CCN data.
-      CcnData ccnData = new CcnData(getSourceFiles(), javancss.getFunctions());
-
-      for (File resource : ccnData.getFiles()) {
-        long tstamp = this.tstampSet.getUniqueTstamp(startTime);
-        XMLGregorianCalendar tstampXml = Tstamp.makeTimestamp(tstamp);
-        XMLGregorianCalendar runtimeXml = Tstamp.makeTimestamp(this.runtime);
-        // Create the sensor data instance key/value map.
-        Map<String, String> keyValMap = new HashMap<String, String>();
-        // Required
-        keyValMap.put("Tool", "JavaNCSS");
-        keyValMap.put("SensorDataType", "FileMetric");
-        keyValMap.put("Runtime", runtimeXml.toString());
-        keyValMap.put("Timestamp", tstampXml.toString());
-        keyValMap.put("Resource", resource.getAbsolutePath());
-        // Expected
-        keyValMap.put("TotalLines", String.valueOf(ccnData.getTotalLines(resource)));
-        // Optional, but of course the whole point of this sensor.
-        keyValMap.put("CyclomaticComplexityList", ccnData.getCcnData(resource));
-        // add data to sensorshell
-        this.sensorShell.add(keyValMap);
-        count++;
+      CcnData ccnData;
+      if (this.streaming) {
+        // Construct the mapping one function element at a time as the report is read.
+        ccnData = new CcnData(getSourceFiles());
+        StreamingXmlParser.parse(xmlFile, new JavaNcssHandler(ccnData));
       }
-      return count;
+      else {
+        // JavaNCSS report.
+        Javancss javancss = (Javancss) JAXBContextRegistry.unmarshal(ObjectFactory.class, 
+            xmlFile);
+        // Construct the mapping from Java file paths to their CCN data.
+        ccnData = new CcnData(getSourceFiles(), javancss.getFunctions());
+      }
+      // The start time for all entries will be approximated by the XML file's last mod time.
+      // Use the TstampSet to make it unique.
+      return addFileMetrics(ccnData, xmlFile.lastModified());
     }
     catch (Exception e) {
       throw new BuildException(errMsgPrefix + "Failure: " + e.getMessage(), e);
     }
   }
+
+  /**
+   * Generates one FileMetric sensor data instance for each Java file in the passed CcnData.
+   * 
+   * @param ccnData The mapping from Java files to their CCN data.
+   * @param startTime The start time for all entries, before being made unique.
+   * @return The number of FileMetrics instances generated.
+   * @throws SensorShellException If the shell could not accept the data.
+   */
+  private int addFileMetrics(CcnData ccnData, long startTime) throws SensorShellException {
+    int count = 0;
+    for (File resource : ccnData.getFiles()) {
+      long tstamp = this.getUniqueTstamp(startTime);
+      String tstampString = LongTimeConverter.convertLongToString(tstamp);
+      String runtimeString = LongTimeConverter.convertLongToString(this.runtime);
+      // Create the sensor data instance key/value map.
+      Map<String, String> keyValMap = new HashMap<String, String>();
+      // Required
+      keyValMap.put("Tool", "JavaNCSS");
+      keyValMap.put("SensorDataType", "FileMetric");
+      keyValMap.put("Runtime", runtimeString);
+      keyValMap.put("Timestamp", tstampString);
+      keyValMap.put("Resource", resource.getAbsolutePath());
+      // Expected
+      keyValMap.put("TotalLines", String.valueOf(ccnData.getTotalLines(resource)));
+      // Optional, but of course the whole point of this sensor.
+      keyValMap.put("CyclomaticComplexityList", ccnData.getCcnData(resource));
+      // add data to sensorshell
+      this.addSensorData(keyValMap);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Receives the function elements of the top-level functions element from the streaming 
+   * parser, and adds each one to the CcnData as soon as it has been read. The per-package and
+   * per-object summaries elsewhere in the report are ignored.
+   */
+  private static class JavaNcssHandler extends XmlReportHandler {
+    /** The CcnData being built. */
+    private final CcnData ccnData;
+    /** The current function element. */
+    private Function function;
+
+    /**
+     * Creates a handler that adds the functions it reads to the passed CcnData.
+     * @param ccnData The CcnData.
+     */
+    JavaNcssHandler(CcnData ccnData) {
+      this.ccnData = ccnData;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String name, String parent, Map<String, String> attributes) {
+      if ("function".equals(name) && "functions".equals(parent)) {
+        this.function = new Function();
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean wantsText(String name, String parent) {
+      return "function".equals(parent) 
+          && ("name".equals(name) || "ncss".equals(name) || "ccn".equals(name));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String name, String parent, String text) {
+      if ("function".equals(parent) && this.function != null) {
+        if ("name".equals(name)) {
+          this.function.setName(text);
+        }
+        else if ("ncss".equals(name)) {
+          this.function.setNcss(text);
+        }
+        else if ("ccn".equals(name)) {
+          this.function.setCcn(new BigInteger(text.trim()));
+        }
+      }
+      else if ("function".equals(name) && "functions".equals(parent)) {
+        this.ccnData.addFunction(this.function);
+        this.function = null;
+      }
+    }
+  }
 }
@@ -1,20 +1,25 @@
 package org.hackystat.sensor.ant.jdepend;
 
 import java.io.File;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.datatype.XMLGregorianCalendar;
-
 import org.apache.tools.ant.BuildException;
 import org.hackystat.sensor.ant.jdepend.jaxb.JDepend;
+import org.hackystat.sensor.ant.jdepend.jaxb.ObjectFactory;
+import org.hackystat.sensor.ant.jdepend.jaxb.Stats;
+import org.hackystat.sensor.ant.task.DataFileProcessor;
+import org.hackystat.sensor.ant.task.FileSetScanCache;
 import org.hackystat.sensor.ant.task.HackystatSensorTask;
-import org.hackystat.utilities.tstamp.Tstamp;
+import org.hackystat.sensor.ant.util.JAXBContextRegistry;
+import org.hackystat.sensor.ant.util.LongTimeConverter;
+import org.hackystat.sensor.ant.util.StreamingXmlParser;
+import org.hackystat.sensor.ant.util.XmlReportHandler;
+import org.hackystat.sensorshell.SensorShellException;
 import org.hackystat.sensor.ant.jdepend.jaxb.Package;
 
 /**
@@ -54,15 +59,11 @@ public class JDependSensor extends HackystatSensorTask {
     this.setupSensorShell();
     int numberOfEntries = 0;
     Date startTime = new Date();
-    for (File dataFile : getDataFiles()) {
-      try {
-        verboseInfo("Processing JDepend file: " + dataFile);
-        numberOfEntries += this.processJDependXmlFile(dataFile);
-      }
-      catch (Exception e) {
-        signalError("Failure processing: " + dataFile, e);
+    numberOfEntries = processDataFiles("JDepend", new DataFileProcessor() {
+      public int process(File dataFile) {
+        return processJDependXmlFile(dataFile);
       }
-    }
+    });
     // We've collected the data, now send it. 
     this.sendAndQuit();
     summaryInfo(startTime, "Coupling", numberOfEntries);
@@ -76,19 +77,18 @@ public class JDependSensor extends HackystatSensorTask {
    * @throws BuildException If problems occur.
    */
   int processJDependXmlFile(File xmlFile) throws BuildException {
+    if (this.streaming) {
+      return processJDependXmlFileStreaming(xmlFile);
+    }
     // The start time for all entries will be approximated by the XML file's last mod time.
     // Use the TstampSet to make it unique.
     long startTime = xmlFile.lastModified();
     int count = 0;
     try {
-      JAXBContext context = JAXBContext
-          .newInstance(org.hackystat.sensor.ant.jdepend.jaxb.ObjectFactory.class);
-      Unmarshaller unmarshaller = context.createUnmarshaller();
-
       // JDepend report.
-      JDepend jdepend = (JDepend) unmarshaller.unmarshal(xmlFile);
+      JDepend jdepend = (JDepend) JAXBContextRegistry.unmarshal(ObjectFactory.class, xmlFile);
       // Construct the mapping from Java file paths to their CCN data.
-      Package2Path package2path = new Package2Path(getSourceFiles());
+      Package2Path package2path = getPackage2Path();
       List<Package> packageElements = new ArrayList<Package>();
       if ((jdepend.getPackages() != null) &&
           (jdepend.getPackages().getPackage() != null)) {
@@ -96,25 +96,7 @@ public class JDependSensor extends HackystatSensorTask {
       }
 
       for (Package packageElement : packageElements) {
-        String resource = package2path.getPath(packageElement.getName());
-        if ((packageElement.getStats() != null) &&  (resource != null)) {
-          long tstamp = this.tstampSet.getUniqueTstamp(startTime);
-          XMLGregorianCalendar tstampXml = Tstamp.makeTimestamp(tstamp);
-          XMLGregorianCalendar runtimeXml = Tstamp.makeTimestamp(this.runtime);
-          // Create the sensor data instance key/value map.
-          Map<String, String> keyValMap = new HashMap<String, String>();
-          // Required for all sensor data
-          keyValMap.put("Tool", tool);
-          keyValMap.put("SensorDataType", "Coupling");
-          keyValMap.put("Runtime", runtimeXml.toString());
-          keyValMap.put("Timestamp", tstampXml.toString());
-          keyValMap.put("Resource", resource);
-          // Expected for "Coupling" sensor data. 
-          keyValMap.put("Type", "package");
-          keyValMap.put("Afferent", String.valueOf(packageElement.getStats().getCa().intValue())); 
-          keyValMap.put("Efferent", String.valueOf(packageElement.getStats().getCe().intValue())); 
-          // add data to sensorshell
-          this.sensorShell.add(keyValMap);
+        if (addCoupling(package2path, packageElement, startTime)) {
           count++;
         }
       }
@@ -124,4 +106,136 @@ public class JDependSensor extends HackystatSensorTask {
       throw new BuildException(errMsgPrefix + "Failure: " + e.getMessage(), e);
     }
   }
+
+  /**
+   * Processes the JDepend XML data file with the streaming parser, generating the same sensor 
+   * data as the JAXB path.
+   * 
+   * @param xmlFile The file containing the JDepend data.
+   * @return The number of Coupling instances generated.
+   * @throws BuildException If problems occur.
+   */
+  private int processJDependXmlFileStreaming(File xmlFile) throws BuildException {
+    try {
+      JDependHandler handler = new JDependHandler(getPackage2Path(), 
+          xmlFile.lastModified());
+      StreamingXmlParser.parse(xmlFile, handler);
+      return handler.count;
+    }
+    catch (Throwable e) {
+      throw new BuildException(errMsgPrefix + "Failure: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Creates the Coupling sensor data for a single JDepend Package element and adds it to the 
+   * shell. Packages without statistics, or whose source directory cannot be found, are skipped.
+   * 
+   * @param package2path The mapping from package names to source directories.
+   * @param packageElement The Package element.
+   * @param startTime The start time for the entry, before being made unique.
+   * @return True if sensor data was generated for this package.
+   * @throws SensorShellException If the shell could not accept the data.
+   */
+  private boolean addCoupling(Package2Path package2path, Package packageElement, 
+      long startTime) throws SensorShellException {
+    String resource = package2path.getPath(packageElement.getName());
+    if ((packageElement.getStats() == null) || (resource == null)) {
+      return false;
+    }
+    long tstamp = this.getUniqueTstamp(startTime);
+    String tstampString = LongTimeConverter.convertLongToString(tstamp);
+    String runtimeString = LongTimeConverter.convertLongToString(this.runtime);
+    // Create the sensor data instance key/value map.
+    Map<String, String> keyValMap = new HashMap<String, String>();
+    // Required for all sensor data
+    keyValMap.put("Tool", tool);
+    keyValMap.put("SensorDataType", "Coupling");
+    keyValMap.put("Runtime", runtimeString);
+    keyValMap.put("Timestamp", tstampString);
+    keyValMap.put("Resource", resource);
+    // Expected for "Coupling" sensor data. 
+    keyValMap.put("Type", "package");
+    keyValMap.put("Afferent", String.valueOf(packageElement.getStats().getCa().intValue())); 
+    keyValMap.put("Efferent", String.valueOf(packageElement.getStats().getCe().intValue())); 
+    // add data to sensorshell
+    this.addSensorData(keyValMap);
+    return true;
+  }
+
+  /**
+   * Returns the mapping from packages to source directories, which is shared with the other
+   * sensors that use the same source files in this build.
+   * 
+   * @return The Package2Path instance.
+   */
+  private Package2Path getPackage2Path() {
+    return getSourceFileIndex("Package2Path", new FileSetScanCache.IndexBuilder<Package2Path>() {
+      public Package2Path build(List<File> files) {
+        return new Package2Path(files);
+      }
+    });
+  }
+
+  /**
+   * Receives the Package elements of the Packages element from the streaming parser. Each one
+   * is rebuilt as a JAXB Package holding just its name and its Ca and Ce statistics, so that it
+   * can be passed to the same addCoupling() method used by the JAXB path. Package elements
+   * nested inside DependsUpon, UsedBy, and Cycles are ignored.
+   */
+  private class JDependHandler extends XmlReportHandler {
+    /** The mapping from package names to source directories. */
+    private final Package2Path package2path;
+    /** The start time for all entries, approximated by the XML file's last mod time. */
+    private final long startTime;
+    /** The current Package element. */
+    private Package packageElement;
+    /** The number of Coupling instances generated so far. */
+    private int count = 0;
+
+    /**
+     * Creates a handler for one JDepend XML file.
+     * @param package2path The mapping from package names to source directories.
+     * @param startTime The start time for all entries.
+     */
+    JDependHandler(Package2Path package2path, long startTime) {
+      this.package2path = package2path;
+      this.startTime = startTime;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String name, String parent, Map<String, String> attributes) {
+      if ("Package".equals(name) && "Packages".equals(parent)) {
+        this.packageElement = new Package();
+        this.packageElement.setName(attributes.get("name"));
+      }
+      else if ("Stats".equals(name) && "Package".equals(parent) && this.packageElement != null) {
+        this.packageElement.setStats(new Stats());
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean wantsText(String name, String parent) {
+      return ("Ca".equals(name) || "Ce".equals(name)) && "Stats".equals(parent);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String name, String parent, String text) throws SensorShellException {
+      if ("Ca".equals(name) && "Stats".equals(parent) && this.packageElement != null) {
+        this.packageElement.getStats().setCa(new BigInteger(text.trim()));
+      }
+      else if ("Ce".equals(name) && "Stats".equals(parent) && this.packageElement != null) {
+        this.packageElement.getStats().setCe(new BigInteger(text.trim()));
+      }
+      else if ("Package".equals(name) && "Packages".equals(parent)) {
+        if (addCoupling(this.package2path, this.packageElement, this.startTime)) {
+          this.count++;
+        }
+        this.packageElement = null;
+      }
+    }
+  }
 }
@@ -7,19 +7,21 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.apache.tools.ant.BuildException;
 import org.hackystat.sensor.ant.junit.jaxb.Error;
 import org.hackystat.sensor.ant.junit.jaxb.Failure;
+import org.hackystat.sensor.ant.junit.jaxb.ObjectFactory;
 import org.hackystat.sensor.ant.junit.jaxb.Testcase;
 import org.hackystat.sensor.ant.junit.jaxb.Testsuite;
+import org.hackystat.sensor.ant.task.DataFileProcessor;
 import org.hackystat.sensor.ant.task.HackystatSensorTask;
+import org.hackystat.sensor.ant.util.JAXBContextRegistry;
 import org.hackystat.sensor.ant.util.JavaClass2FilePathMapper;
 import org.hackystat.sensor.ant.util.LongTimeConverter;
+import org.hackystat.sensor.ant.util.StreamingXmlParser;
+import org.hackystat.sensor.ant.util.XmlReportHandler;
 import org.hackystat.sensorshell.SensorShellException;
 
 /**
@@ -34,9 +36,6 @@ import org.hackystat.sensorshell.SensorShellException;
  */
 public class JUnitSensor extends HackystatSensorTask {
 
-  /** The class to file path mapper. */
-  private JavaClass2FilePathMapper javaClass2FilePathMapper;
-
   /** The name of this tool. */
   private static String tool = "JUnit";
 
@@ -70,15 +69,11 @@ public class JUnitSensor extends HackystatSensorTask {
     int numberOfTests = 0;
     Date startTime = new Date();
     // Iterate though each file, extract the JUnit data, send to sensorshell.
-    for (File dataFile : getDataFiles()) {
-      verboseInfo("Processing JUnit file: " + dataFile);
-      try {
-        numberOfTests += processJUnitXmlFile(dataFile);
-      }
-      catch (Exception e) {
-        signalError("Failure processing: " + dataFile, e);
+    numberOfTests = processDataFiles("JUnit", new DataFileProcessor() {
+      public int process(File dataFile) {
+        return processJUnitXmlFile(dataFile);
       }
-    }
+    });
     this.sendAndQuit();
     summaryInfo(startTime, "UnitTest", numberOfTests);
   }
@@ -91,27 +86,19 @@ public class JUnitSensor extends HackystatSensorTask {
    * @return The number of test cases in this XML file.
    */
   public int processJUnitXmlFile(File xmlFile) throws BuildException {
-    XMLGregorianCalendar runtimeGregorian = LongTimeConverter.convertLongToGregorian(this.runtime);
+    if (this.streaming) {
+      return processJUnitXmlFileStreaming(xmlFile);
+    }
+    String runtimeString = LongTimeConverter.convertLongToString(this.runtime);
     try {
-      JAXBContext context = JAXBContext
-          .newInstance(org.hackystat.sensor.ant.junit.jaxb.ObjectFactory.class);
-      Unmarshaller unmarshaller = context.createUnmarshaller();
-
       // One JUnit test suite per file
-      Testsuite suite = (Testsuite) unmarshaller.unmarshal(xmlFile);
+      Testsuite suite = (Testsuite) JAXBContextRegistry.unmarshal(ObjectFactory.class, xmlFile);
       String testClassName = suite.getName();
       // The start time for all entries will be approximated by the XML file's last mod time.
       // The shell will ensure that it's unique by tweaking the millisecond field.
       long startTime = xmlFile.lastModified();
       List<Testcase> testcases = suite.getTestcase();
       for (Testcase testcase : testcases) {
-        // Test case name
-        String testCaseName = testcase.getName();
-
-        // Get the stop time
-        double elapsedTime = testcase.getTime();
-        long elapsedTimeMillis = (long) (elapsedTime * 1000);
-
         // Make a list of error strings.
         // This should always be a list of zero or one elements.
         List<String> stringErrorList = new ArrayList<String>();
@@ -128,52 +115,165 @@ public class JUnitSensor extends HackystatSensorTask {
           stringFailureList.add(failure.getMessage());
         }
 
-        String result = "pass";
-        if (!stringErrorList.isEmpty() || !stringFailureList.isEmpty()) {
-          result = "fail";
-        }
+        // Some reports omit the time of a test case, which we then take to be zero.
+        double elapsedTime = (testcase.getTime() == null) ? 0 : testcase.getTime();
+        addTestCase(testClassName, testcase.getName(), elapsedTime, stringErrorList,
+            stringFailureList, startTime, runtimeString);
+      }
+      return testcases.size();
+    }
+    catch (JAXBException e) {
+      throw new BuildException(errMsgPrefix + "Failure in JAXB " + xmlFile, e);
+    }
+    catch (SensorShellException f) {
+      throw new BuildException(errMsgPrefix + "Failure in SensorShell " + xmlFile, f);
+    }
+  }
+
+  /**
+   * Parses a JUnit XML file with the streaming parser and sends the JUnitEntry instances to the
+   * shell. The sensor data is identical to that produced by the JAXB path, but the system-out and
+   * system-err elements, which can be very large, are never held in memory.
+   * 
+   * @param xmlFile The XML file name to be processed.
+   * @exception BuildException if any error.
+   * @return The number of test cases in this XML file.
+   */
+  private int processJUnitXmlFileStreaming(File xmlFile) throws BuildException {
+    JUnitHandler handler = new JUnitHandler(xmlFile.lastModified(),
+        LongTimeConverter.convertLongToString(this.runtime));
+    try {
+      StreamingXmlParser.parse(xmlFile, handler);
+      return handler.numTestCases;
+    }
+    catch (SensorShellException f) {
+      throw new BuildException(errMsgPrefix + "Failure in SensorShell " + xmlFile, f);
+    }
+    catch (Exception e) {
+      throw new BuildException(errMsgPrefix + "Failure parsing " + xmlFile, e);
+    }
+  }
+
+  /**
+   * Creates the UnitTest sensor data for a single test case and adds it to the shell.
+   * 
+   * @param testClassName The fully qualified name of the test class.
+   * @param testCaseName The name of the test case.
+   * @param elapsedTime The elapsed time of the test case in seconds.
+   * @param stringErrorList The error messages, a list of zero or one elements.
+   * @param stringFailureList The failure messages, a list of zero or one elements.
+   * @param startTime The start time for the test case, before being made unique.
+   * @param runtimeString The runtime of this sensor.
+   * @throws SensorShellException If the shell could not accept the data.
+   */
+  private void addTestCase(String testClassName, String testCaseName, double elapsedTime,
+      List<String> stringErrorList, List<String> stringFailureList, long startTime,
+      String runtimeString) throws SensorShellException {
+    long elapsedTimeMillis = (long) (elapsedTime * 1000);
 
-        String name = testClassName + "." + testCaseName;
-        // Alter startTime to guarantee uniqueness.
-        long uniqueTstamp = this.tstampSet.getUniqueTstamp(startTime);
+    String result = "pass";
+    if (!stringErrorList.isEmpty() || !stringFailureList.isEmpty()) {
+      result = "fail";
+    }
 
-        // Get altered start time as XMLGregorianCalendar
-        XMLGregorianCalendar startTimeGregorian = LongTimeConverter
-            .convertLongToGregorian(uniqueTstamp);
+    String name = testClassName + "." + testCaseName;
+    // Alter startTime to guarantee uniqueness.
+    long uniqueTstamp = this.getUniqueTstamp(startTime);
 
-        Map<String, String> keyValMap = new HashMap<String, String>();
-        keyValMap.put("Tool", "JUnit");
-        keyValMap.put("SensorDataType", "UnitTest");
+    // Get altered start time as an xsd:dateTime string
+    String startTimeString = LongTimeConverter.convertLongToString(uniqueTstamp);
 
-        // Required
-        keyValMap.put("Runtime", runtimeGregorian.toString());
-        keyValMap.put("Timestamp", startTimeGregorian.toString());
-        keyValMap.put("Name", name);
-        keyValMap.put("Resource", testCaseToPath(testClassName));
-        keyValMap.put("Result", result);
+    Map<String, String> keyValMap = new HashMap<String, String>();
+    keyValMap.put("Tool", "JUnit");
+    keyValMap.put("SensorDataType", "UnitTest");
 
-        // Optional
-        keyValMap.put("ElapsedTime", Long.toString(elapsedTimeMillis));
-        keyValMap.put("TestName", testClassName);
-        keyValMap.put("TestCaseName", testCaseName);
+    // Required
+    keyValMap.put("Runtime", runtimeString);
+    keyValMap.put("Timestamp", startTimeString);
+    keyValMap.put("Name", name);
+    keyValMap.put("Resource", testCaseToPath(testClassName));
+    keyValMap.put("Result", result);
 
-        if (!stringFailureList.isEmpty()) {
-          keyValMap.put("FailureString", stringFailureList.get(0));
-        }
+    // Optional
+    keyValMap.put("ElapsedTime", Long.toString(elapsedTimeMillis));
+    keyValMap.put("TestName", testClassName);
+    keyValMap.put("TestCaseName", testCaseName);
 
-        if (!stringErrorList.isEmpty()) {
-          keyValMap.put("ErrorString", stringErrorList.get(0));
-        }
+    if (!stringFailureList.isEmpty()) {
+      keyValMap.put("FailureString", stringFailureList.get(0));
+    }
 
-        this.sensorShell.add(keyValMap); // add data to sensorshell
-      }
-      return testcases.size();
+    if (!stringErrorList.isEmpty()) {
+      keyValMap.put("ErrorString", stringErrorList.get(0));
     }
-    catch (JAXBException e) {
-      throw new BuildException(errMsgPrefix + "Failure in JAXB " + xmlFile, e);
+
+    this.addSensorData(keyValMap); // add data to sensorshell
+  }
+
+  /**
+   * Receives the testsuite, testcase, error, and failure elements from the streaming parser.
+   * A test case is sent to the shell when its closing tag is reached.
+   */
+  private class JUnitHandler extends XmlReportHandler {
+    /** The start time for all entries, approximated by the XML file's last mod time. */
+    private final long startTime;
+    /** The runtime of this sensor. */
+    private final String runtimeString;
+    /** The name of the test suite, which is the fully qualified test class name. */
+    private String testClassName;
+    /** The name of the current test case. */
+    private String testCaseName;
+    /** The elapsed time in seconds of the current test case. */
+    private double elapsedTime;
+    /** The error message of the current test case, if it has an error element. */
+    private List<String> stringErrorList;
+    /** The failure message of the current test case, if it has a failure element. */
+    private List<String> stringFailureList;
+    /** The number of test cases processed so far. */
+    private int numTestCases = 0;
+
+    /**
+     * Creates a handler for one JUnit XML file.
+     * @param startTime The start time for all entries.
+     * @param runtimeString The runtime of this sensor.
+     */
+    JUnitHandler(long startTime, String runtimeString) {
+      this.startTime = startTime;
+      this.runtimeString = runtimeString;
     }
-    catch (SensorShellException f) {
-      throw new BuildException(errMsgPrefix + "Failure in SensorShell " + xmlFile, f);
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String name, String parent, Map<String, String> attributes) {
+      if ("testsuite".equals(name) && parent == null) {
+        this.testClassName = attributes.get("name");
+      }
+      else if ("testcase".equals(name) && "testsuite".equals(parent)) {
+        this.testCaseName = attributes.get("name");
+        String time = attributes.get("time");
+        this.elapsedTime = (time == null) ? 0 : Double.parseDouble(time.trim());
+        this.stringErrorList = new ArrayList<String>();
+        this.stringFailureList = new ArrayList<String>();
+      }
+      // As with the JAXB binding, a second error or failure element replaces the first.
+      else if ("error".equals(name) && "testcase".equals(parent)) {
+        this.stringErrorList.clear();
+        this.stringErrorList.add(attributes.get("message"));
+      }
+      else if ("failure".equals(name) && "testcase".equals(parent)) {
+        this.stringFailureList.clear();
+        this.stringFailureList.add(attributes.get("message"));
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String name, String parent, String text) throws SensorShellException {
+      if ("testcase".equals(name) && "testsuite".equals(parent)) {
+        addTestCase(this.testClassName, this.testCaseName, this.elapsedTime,
+            this.stringErrorList, this.stringFailureList, this.startTime, this.runtimeString);
+        this.numTestCases++;
+      }
     }
   }
 
@@ -191,16 +291,4 @@ public class JUnitSensor extends HackystatSensorTask {
     JavaClass2FilePathMapper mapper = this.getJavaClass2FilePathMapper();
     return mapper.getFilePath(testCaseName);
   }
-
-  /**
-   * Get a java class to file path mapper.
-   * 
-   * @return The mapper.
-   */
-  private JavaClass2FilePathMapper getJavaClass2FilePathMapper() {
-    if (this.javaClass2FilePathMapper == null) {
-      this.javaClass2FilePathMapper = new JavaClass2FilePathMapper(getSourceFiles());
-    }
-    return this.javaClass2FilePathMapper;
-  }
 }
\ No newline at end of file
@@ -0,0 +1,233 @@
+package org.hackystat.sensor.ant.perforce;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The files of a changelist, with their types and diff summaries, parsed one line at a time from
+ * the output of "p4 describe -ds", so that a whole changelist takes a single p4 process. Typical
+ * output, as returned by P4Process.readLine(), looks like this:
+ * <pre>
+ * Change 1234 by philip_johnson@client on 2008/07/14 10:20:30
+ *
+ * Fixed the build.
+ *
+ * Affected files ...
+ *
+ * ... //depot/project/Foo.java#2 edit
+ * ... //depot/project/Logo.gif#1 add
+ *
+ * Differences ...
+ *
+ * ==== //depot/project/Foo.java#2 (text) ====
+ *
+ * add 2 chunks 6 lines
+ * deleted 0 chunks 0 lines
+ * changed 3 chunks 8 / 10 lines
+ * </pre>
+ *
+ * Since P4Process runs p4 with -s, the affected files come without their leading "... ".
+ * Perforce only shows differences for some actions, such as edits and integrations, so files
+ * without a complete summary must be diffed separately.
+ *
+ * @author agent
+ */
+final class ChangeListDescription {
+
+  /** The line that starts the list of affected files. */
+  private static final String AFFECTED_FILES = "Affected files ...";
+  /** The line that starts the differences. */
+  private static final String DIFFERENCES = "Differences ...";
+
+  /** The affected files, in the order listed. */
+  private List<FileDescription> files = new ArrayList<FileDescription>();
+  /** The affected files, by depot path. */
+  private Map<String, FileDescription> filesByPath = new HashMap<String, FileDescription>();
+  /** True once the list of affected files has started. */
+  private boolean inAffectedFiles = false;
+  /** True once the differences have started. */
+  private boolean inDifferences = false;
+  /** The file whose differences are being parsed, or null. */
+  private FileDescription currentFile = null;
+
+  /**
+   * Parses the next line of the describe output. Lines of the changelist description are
+   * ignored, even if they look like file lines.
+   * @param line The line, without its p4 -s tag.
+   */
+  void parseLine(String line) {
+    if (this.inDifferences) {
+      if (line.startsWith("==== ") && line.endsWith(" ====")) {
+        this.parseDiffHeader(line.substring(5, line.length() - 5));
+      }
+      else if (this.currentFile != null && line.length() > 0) {
+        this.currentFile.parseSummaryLine(line);
+      }
+    }
+    else if (DIFFERENCES.equals(line) && this.inAffectedFiles) {
+      this.inDifferences = true;
+    }
+    else if (this.inAffectedFiles) {
+      // With p4 -s, the "... " of affected files becomes an info1 tag, which readLine() strips.
+      String text = line.startsWith("... ") ? line.substring(4) : line;
+      if (text.startsWith("//")) {
+        this.parseAffectedFile(text);
+      }
+    }
+    else if (AFFECTED_FILES.equals(line)) {
+      this.inAffectedFiles = true;
+    }
+  }
+
+  /**
+   * Parses an affected file, such as "//depot/project/Foo.java#2 edit".
+   * @param text The line without any leading "... ".
+   */
+  private void parseAffectedFile(String text) {
+    int hash = text.lastIndexOf('#');
+    int space = text.indexOf(' ', hash);
+    if (hash > 0 && space > hash) {
+      FileDescription file = new FileDescription(text.substring(0, hash),
+          Integer.parseInt(text.substring(hash + 1, space)), text.substring(space + 1));
+      this.files.add(file);
+      this.filesByPath.put(file.getDepotPath(), file);
+    }
+  }
+
+  /**
+   * Parses the header of a file's differences, such as "//depot/project/Foo.java#2 (text)".
+   * @param text The line without its leading and trailing "====".
+   */
+  private void parseDiffHeader(String text) {
+    int hash = text.lastIndexOf('#');
+    int typeStart = text.lastIndexOf(" (");
+    this.currentFile = null;
+    if (hash > 0 && typeStart > hash && text.endsWith(")")) {
+      this.currentFile = this.filesByPath.get(text.substring(0, hash));
+      if (this.currentFile != null) {
+        this.currentFile.setType(text.substring(typeStart + 2, text.length() - 1));
+      }
+    }
+  }
+
+  /**
+   * Returns the affected files, in the order listed.
+   * @return The files.
+   */
+  List<FileDescription> getFiles() {
+    return this.files;
+  }
+
+  /**
+   * A file affected by the changelist.
+   */
+  static final class FileDescription {
+    /** The depot path. */
+    private String depotPath;
+    /** The revision submitted in the changelist. */
+    private int revision;
+    /** The action, such as "edit" or "add". */
+    private String action;
+    /** The file type from the differences, or null if they do not show the file. */
+    private String type = null;
+    /** The number of summary lines parsed, of the three that make a complete summary. */
+    private int summaryLines = 0;
+    /** The lines added, deleted, and modified. */
+    private Integer[] lineInfo = { 0, 0, 0 };
+    /** The lines added minus the lines deleted, counting both sides of changed lines. */
+    private int lineDelta = 0;
+
+    /**
+     * Creates a file without a diff summary.
+     * @param depotPath The depot path.
+     * @param revision The revision submitted in the changelist.
+     * @param action The action.
+     */
+    FileDescription(String depotPath, int revision, String action) {
+      this.depotPath = depotPath;
+      this.revision = revision;
+      this.action = action;
+    }
+
+    /**
+     * Sets the type found in the header of the file's differences.
+     * @param type The type, such as "text" or "binary".
+     */
+    void setType(String type) {
+      this.type = type;
+    }
+
+    /**
+     * Adds the counts of a diff summary line to this file's line info.
+     * @param line The line, such as "add 2 chunks 6 lines".
+     */
+    void parseSummaryLine(String line) {
+      String changeType = line.split("\\s")[0];
+      if ("add".equals(changeType) || "deleted".equals(changeType)
+          || "changed".equals(changeType)) {
+        PerforceCommitProcessor.processDiff2Line(line, this.lineInfo);
+        this.lineDelta = PerforceCommitProcessor.getLineDelta(line, this.lineDelta);
+        this.summaryLines++;
+      }
+    }
+
+    /**
+     * Returns the depot path.
+     * @return The depot path.
+     */
+    String getDepotPath() {
+      return this.depotPath;
+    }
+
+    /**
+     * Returns the revision submitted in the changelist.
+     * @return The revision.
+     */
+    int getRevision() {
+      return this.revision;
+    }
+
+    /**
+     * Returns the action, such as "edit" or "add".
+     * @return The action.
+     */
+    String getAction() {
+      return this.action;
+    }
+
+    /**
+     * Returns true if the describe output settled the type and, for text files, the diff
+     * summary of this file, so that it need not be diffed separately.
+     * @return True if the description is complete.
+     */
+    boolean isComplete() {
+      return this.type != null && (!this.isTextFile() || this.summaryLines >= 3);
+    }
+
+    /**
+     * Returns true if the type of the file is 'text'.
+     * @return True if the file is text.
+     */
+    boolean isTextFile() {
+      return "text".equals(this.type);
+    }
+
+    /**
+     * Returns the lines added, deleted, and modified.
+     * @return A three-tuple containing the lines added, deleted, and modified for this file.
+     */
+    Integer[] getLineInfo() {
+      return this.lineInfo;
+    }
+
+    /**
+     * Returns the change in the number of lines of the file since the previous revision.
+     * @return The lines added minus the lines deleted.
+     */
+    int getLineDelta() {
+      return this.lineDelta;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package org.hackystat.sensor.ant.perforce;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the size in lines of text file revisions, keyed by depot path and revision, so that
+ * a revision's size is only printed from the server once. Since a submitted revision never
+ * changes, a size never goes stale. There is one file per Perforce server, holding one
+ * "path#revision", tab, size line per revision. When the cache holds more than its maximum
+ * number of sizes, the ones added first are dropped.
+ * <p>
+ * A file that cannot be read is treated as empty, so a damaged file only costs the p4 print
+ * commands needed to rebuild it. Without a directory, the sizes are only kept in memory. The
+ * cache may be used by several threads at once.
+ *
+ * @author agent
+ */
+final class FileSizeCache {
+
+  /** The default maximum number of sizes. */
+  static final int DEFAULT_MAXIMUM_SIZE = 200000;
+
+  /** The file holding the sizes, or null if they are only kept in memory. */
+  private final File file;
+
+  /** The maximum number of sizes. */
+  private final int maximumSize;
+
+  /** The sizes, by "path#revision", in the order added. */
+  private final Map<String, Integer> sizes = new LinkedHashMap<String, Integer>();
+
+  /** True if the sizes differ from the file. */
+  private boolean modified = false;
+
+  /**
+   * Loads the size cache of a Perforce server from the passed directory, if the file exists.
+   *
+   * @param dir The directory holding the cache files, or null to keep the sizes in memory.
+   * @param port The port of the server, such as "public.perforce.com:1666".
+   * @param maximumSize The maximum number of sizes.
+   */
+  FileSizeCache(File dir, String port, int maximumSize) {
+    this.file = (dir == null) ? null
+        : new File(dir, port.replaceAll("[^A-Za-z0-9.\\-]", "_") + ".sizes");
+    this.maximumSize = maximumSize;
+    if (this.file != null && this.file.exists()) {
+      try {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+            this.file), "UTF-8"));
+        try {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            int tab = line.lastIndexOf('\t');
+            this.sizes.put(line.substring(0, tab), Integer.valueOf(line.substring(tab + 1)));
+          }
+        }
+        finally {
+          reader.close();
+        }
+      }
+      catch (IOException e) {
+        this.sizes.clear();
+      }
+      catch (RuntimeException e) {
+        // A line without a tab or a size.
+        this.sizes.clear();
+      }
+    }
+  }
+
+  /**
+   * Returns the default directory for cache files, .hackystat/perforce in the user's home
+   * directory.
+   *
+   * @return The directory.
+   */
+  static File getDefaultDirectory() {
+    return new File(new File(System.getProperty("user.home"), ".hackystat"), "perforce");
+  }
+
+  /**
+   * Returns the size of a file revision.
+   *
+   * @param depotPath The depot path of the file.
+   * @param revision The revision.
+   * @return The size in lines, or -1 if it is not known.
+   */
+  synchronized int getSize(String depotPath, int revision) {
+    Integer size = this.sizes.get(depotPath + "#" + revision);
+    return (size == null) ? -1 : size.intValue();
+  }
+
+  /**
+   * Sets the size of a file revision, dropping the sizes added first if the cache is full.
+   *
+   * @param depotPath The depot path of the file.
+   * @param revision The revision.
+   * @param size The size in lines.
+   */
+  synchronized void setSize(String depotPath, int revision, int size) {
+    Integer oldSize = this.sizes.put(depotPath + "#" + revision, size);
+    if (oldSize == null || oldSize.intValue() != size) {
+      this.modified = true;
+    }
+    Iterator<Integer> iterator = this.sizes.values().iterator();
+    for (int excess = this.sizes.size() - this.maximumSize; excess > 0; excess--) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Returns the number of sizes in the cache.
+   *
+   * @return The number of sizes.
+   */
+  synchronized int size() {
+    return this.sizes.size();
+  }
+
+  /**
+   * Writes the sizes to the file if they have changed and are not kept in memory only. They are
+   * written to a temporary file which then replaces the old one, so an interrupted save never
+   * leaves a truncated file.
+   *
+   * @throws IOException If the file cannot be written.
+   */
+  synchronized void save() throws IOException {
+    if (this.file == null || !this.modified) {
+      return;
+    }
+    File dir = this.file.getAbsoluteFile().getParentFile();
+    if (!dir.exists() && !dir.mkdirs()) {
+      throw new IOException("Could not create directory " + dir);
+    }
+    File tempFile = new File(dir, this.file.getName() + ".tmp");
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile),
+        "UTF-8"));
+    try {
+      for (Map.Entry<String, Integer> entry : this.sizes.entrySet()) {
+        writer.write(entry.getKey());
+        writer.write('\t');
+        writer.write(entry.getValue().toString());
+        writer.write('\n');
+      }
+    }
+    finally {
+      writer.close();
+    }
+    // File.renameTo() does not replace an existing file on all platforms.
+    if (!tempFile.renameTo(this.file)) {
+      if (!this.file.delete() || !tempFile.renameTo(this.file)) {
+        throw new IOException("Could not replace " + this.file);
+      }
+    }
+    this.modified = false;
+  }
+
+  /**
+   * Returns the file holding the sizes.
+   *
+   * @return The file, or null if the sizes are only kept in memory.
+   */
+  File getFile() {
+    return this.file;
+  }
+}
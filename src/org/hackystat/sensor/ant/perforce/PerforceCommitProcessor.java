@@ -1,9 +1,19 @@
 package org.hackystat.sensor.ant.perforce;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.perforce.api.Change;
 import com.perforce.api.Client;
@@ -15,12 +25,25 @@ import com.perforce.api.Utils;
 /**
  * Provides the interface to Perforce for the sensor. This code accomplishes the following:
  * <ul>
- * <li> Defines a new Client with a view that maps to the Perforce depot directory of interest.  
- * <li> Obtains the set of ChangeLists for a specified date interval.
+ * <li> Defines a new Client with a view that maps to the Perforce depot directory of interest, 
+ * or reuses a named Client, only updating its view if it does not map that directory.  
+ * <li> Obtains the set of ChangeLists for a specified date interval, a page at a time.
  * <li> Finds the set of files committed in each change list. 
  * <li> Performs a diff on each file to get a count of lines added, modified, and changed.
  * </ul>
  * 
+ * By default, the files, their types and their diff summaries are obtained for a whole
+ * changelist at once with "p4 describe -ds". Files the description does not settle, and all
+ * files if batch describe is turned off, are checked with a "p4 files" and a "p4 diff2" each.
+ * Changelists can be processed concurrently by several worker threads, each running its own p4
+ * processes; the results are still handed over in changelist order, as each one completes, so
+ * that only a page of changelists is ever held in memory.
+ * 
+ * The size of each text file revision is kept in a cache that persists between runs. On a miss,
+ * the size of an edited or integrated revision is derived from the size of the revision before
+ * or after it and the diff summary, so "p4 print" is only run for revisions that cannot be
+ * derived.
+ * 
  * Note that you must create a P4Environment instance and initialize it properly before 
  * invoking the PerforceCommitProcessor.  
  * 
@@ -36,12 +59,31 @@ public class PerforceCommitProcessor {
   private Env env;
   /** The Client workspace that will be created based upon the depotPath. */
   private Client client;
+  /** True if the Client is a named one kept between runs, which cleanup must not delete. */
+  private boolean isClientReused = false;
   /** The set of changelists and associated information we will build in this processor. */  
   private List<PerforceChangeListData> changeListDataList = new ArrayList<PerforceChangeListData>();
   
   /** Controls whether the -dw option is passed to diff2. */
   private boolean ignoreWhitespace = false;
   
+  /** Controls whether each changelist is described with a single p4 describe. */
+  private boolean batchDescribe = true;
+  
+  /** The number of changelists processed concurrently. */
+  private int threads = 1;
+  
+  /** The maximum number of changelists obtained with each p4 changes. */
+  private int pageSize = 1000;
+  
+  /** The directory holding the file size cache, or null to keep it in memory. */
+  private File stateDirectory = FileSizeCache.getDefaultDirectory();
+  /** The sizes of text file revisions, created on first use. */
+  private FileSizeCache fileSizeCache;
+  /** The file sizes found in the cache, derived from a diff summary, and printed. */
+  private AtomicInteger[] fileSizeCounts = { new AtomicInteger(), new AtomicInteger(), 
+      new AtomicInteger() };
+  
   /** Disable the default public no-arg constructor. */
   @SuppressWarnings("unused")
   private PerforceCommitProcessor () {
@@ -55,9 +97,31 @@ public class PerforceCommitProcessor {
    * @throws Exception If problems occur instantiating this environment. 
    */
   public PerforceCommitProcessor(P4Environment p4Environment, String depotPath) throws Exception {
+    this(p4Environment, depotPath, null);
+  }
+  
+  /**
+   * Instantiates a PerforceCommitProcessor with the passed P4Environment instance and depotPath,
+   * working in the named Client, which is kept between runs. This avoids creating and deleting
+   * a Client on every run. The Client's spec is only written if it does not exist yet or its 
+   * view does not map exactly the depotPath, so processors with different depot paths should 
+   * not share a Client name.
+   * @param p4Environment The p4Environment. 
+   * @param depotPath The depot path this processor will work on. 
+   * @param clientName The name of the Client to reuse, or null to create a temporary one.
+   * @throws Exception If problems occur instantiating this environment. 
+   */
+  public PerforceCommitProcessor(P4Environment p4Environment, String depotPath, 
+      String clientName) throws Exception {
     this.env = p4Environment.getEnv();
     this.depotPath = depotPath;
-    this.client = createClient(env, depotPath);
+    if (clientName == null) {
+      this.client = createClient(env, depotPath);
+    }
+    else {
+      this.client = reuseClient(env, depotPath, clientName);
+      this.isClientReused = true;
+    }
     this.env.setClient(this.client.getName());
   }
   
@@ -79,52 +143,247 @@ public class PerforceCommitProcessor {
     client.commit();
     return client;
   }
+  
+  /**
+   * Returns the named Client, first creating it or updating its view with a spec like the one 
+   * createClient() writes, unless "p4 client -o" shows that it already maps the depotPath.
+   * @param env The Env instance to be used to check and update this client.
+   * @param depotPath The depotPath this Client must map.
+   * @param clientName The name of the Client.
+   * @return The Client.
+   * @throws Exception if problems occur. 
+   */
+  private Client reuseClient(Env env, String depotPath, String clientName) throws Exception {
+    Client client = new Client(env, clientName);
+    List<String> spec = new ArrayList<String>();
+    P4Process p = new P4Process(env);
+    p.exec(new String[] { "p4", "client", "-o", clientName });
+    String line;
+    while (null != (line = p.readLine())) {
+      spec.add(line);
+    }
+    p.close();
+    if (!hasView(spec, clientName, depotPath)) {
+      client.setRoot(System.getProperty("user.home") + "/perforcesensorsketch");
+      client.addView(depotPath, "//" + clientName + "/...");
+      client.commit();
+    }
+    return client;
+  }
+  
+  /**
+   * Returns true if the output of "p4 client -o" shows an existing Client whose view is the
+   * single mapping of the depotPath that createClient() would write. P4 prints a default spec, 
+   * without an Access field, for Clients that do not exist.
+   * @param spec The lines of the Client spec, as returned by P4Process.readLine().
+   * @param clientName The name of the Client.
+   * @param depotPath The depotPath the Client must map.
+   * @return True if the Client exists with the expected view.
+   */
+  static boolean hasView(List<String> spec, String clientName, String depotPath) {
+    boolean exists = false;
+    boolean inView = false;
+    List<String> view = new ArrayList<String>();
+    for (String line : spec) {
+      if (line.matches("[A-Za-z]+:.*")) {
+        exists |= line.startsWith("Access:");
+        inView = "View:".equals(line);
+      }
+      else if (inView && line.length() > 0 && !line.startsWith("#")) {
+        // Mappings are quoted when their paths contain spaces.
+        view.add(line.replace("\"", ""));
+      }
+    }
+    return exists && view.size() == 1
+        && view.get(0).equals(depotPath + " //" + clientName + "/...");
+  }
 
   
   /**
-   * Processes any ChangeLists that were submitted between startData and endDate to the depotPath.
+   * Processes any ChangeLists that were submitted between startData and endDate to the depotPath,
+   * adding their data to the list returned by getChangeListDataList().
    * @param startDate The start date, in YYYY/MM/DD format. 
    * @param endDate The end date, in YYYY/MM/DD format. 
    * @throws Exception If problems occur. 
    */
-  @SuppressWarnings("unchecked") // Vector in Perforce Java API is not generic.
   public void processChangeLists(String startDate, String endDate) throws Exception {
-    int maximumChanges = 1000;
+    this.processChangeLists(startDate, endDate, new ChangeListHandler() {
+      public void handleChangeList(PerforceChangeListData changeListData) {
+        changeListDataList.add(changeListData);
+      }
+    });
+  }
+  
+  /**
+   * Processes any ChangeLists that were submitted between startData and endDate to the depotPath,
+   * passing the data of each one to the handler as soon as it and all newer ones are done, 
+   * newest first. The changelists are obtained a page at a time, each page ending just below the
+   * oldest changelist of the previous one, so that no changelist is missed however many there 
+   * are.
+   * @param startDate The start date, in YYYY/MM/DD format. 
+   * @param endDate The end date, in YYYY/MM/DD format. 
+   * @param handler The handler of the changelist data.
+   * @throws Exception If problems occur, including any exception thrown by the handler. 
+   */
+  public void processChangeLists(String startDate, String endDate, ChangeListHandler handler)
+    throws Exception {
     boolean useIntegrations = true;
     String startTime = startDate + " 00:00:00";
     String endTime = endDate + " 23:59:59";
-    Change[] changes = Change.getChanges(env, depotPath, maximumChanges, startTime, endTime,
-        useIntegrations, null);
-    for (Change changelist : changes) {
-      String owner = changelist.getUser().getId();
-      PerforceChangeListData changeListData = new PerforceChangeListData(owner, changelist
-          .getNumber(), changelist.getModtimeString());
-      changelist.sync();
-      Vector<FileEntry> files = changelist.getFileEntries();
-      for (FileEntry fileEntry : files) {
-        //fileEntry.sync(); // not sure if this is needed. Maybe changelist.sync() is good enough.
-        
-        // Changelists can contain files not in the user-specified depotPath, so only process 
-        // files in the changelist that match the depotPath. 
-        if (Utils.wildPathMatch(this.depotPath, fileEntry.getDepotPath())) {
-          // Set up defaults for size info for binary files.
-          Integer[] lineInfo = { 0, 0, 0 };
-          int totalLoc = 0;
-          // Calculate real values for text files.
-          if (isTextFile(fileEntry.getDepotPath(), changelist.getNumber())) {
-            lineInfo = getFileChangeInfo(fileEntry);
-            totalLoc = getFileSize(changelist.getNumber(), fileEntry.getDepotPath());
+    ExecutorService executor = (this.threads > 1) ? Executors.newFixedThreadPool(this.threads,
+        new WorkerThreadFactory()) : null;
+    // The changelists being processed by the workers, in the order submitted.
+    LinkedList<Future<PerforceChangeListData>> inProgress = 
+      new LinkedList<Future<PerforceChangeListData>>();
+    try {
+      Change[] changes;
+      do {
+        changes = Change.getChanges(env, depotPath, this.pageSize, startTime, endTime,
+            useIntegrations, null);
+        int oldestNumber = Integer.MAX_VALUE;
+        for (final Change changelist : changes) {
+          oldestNumber = Math.min(oldestNumber, changelist.getNumber());
+          if (executor == null) {
+            handler.handleChangeList(this.processChangeList(changelist));
+          }
+          else {
+            inProgress.add(executor.submit(new Callable<PerforceChangeListData>() {
+              public PerforceChangeListData call() throws Exception {
+                return processChangeList(changelist);
+              }
+            }));
+            // Keep at most two changelists per worker in progress, handing them over in order.
+            while (inProgress.size() > 2 * this.threads) {
+              handler.handleChangeList(getResult(inProgress.removeFirst()));
+            }
+          }
+        }
+        // The next page ends with the changelist just below the oldest one of this page.
+        endTime = "@" + (oldestNumber - 1);
+      } while (changes.length >= this.pageSize && !"@0".equals(endTime));
+      while (!inProgress.isEmpty()) {
+        handler.handleChangeList(getResult(inProgress.removeFirst()));
+      }
+    }
+    finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+  
+  /**
+   * Gets the files and line counts of one changelist.
+   * @param changelist The changelist.
+   * @return The changelist data.
+   * @throws Exception If problems occur.
+   */
+  private PerforceChangeListData processChangeList(Change changelist) throws Exception {
+    String owner = changelist.getUser().getId();
+    PerforceChangeListData changeListData = new PerforceChangeListData(owner, changelist
+        .getNumber(), changelist.getModtimeString());
+    if (this.batchDescribe) {
+      this.processDescription(changelist.getNumber(), changeListData);
+    }
+    else {
+      this.processFileEntries(changelist, changeListData);
+    }
+    return changeListData;
+  }
+  
+  /**
+   * Waits for a worker to finish processing a changelist.
+   * @param future The result of the worker.
+   * @return The changelist data.
+   * @throws Exception The exception thrown by the worker, if any.
+   */
+  private static PerforceChangeListData getResult(Future<PerforceChangeListData> future)
+    throws Exception {
+    try {
+      return future.get();
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+  
+  /**
+   * Adds the data of each file in the changelist, getting the file list, types and diff
+   * summaries from a single p4 describe, and falling back to per file commands only for the 
+   * files whose type or diff summary the description does not show.
+   * @param changelist The changelist number.
+   * @param changeListData The data to add the files to.
+   * @throws Exception If problems occur.
+   */
+  private void processDescription(int changelist, PerforceChangeListData changeListData)
+    throws Exception {
+    ChangeListDescription description = this.runDescribeCommand(changelist);
+    for (ChangeListDescription.FileDescription file : description.getFiles()) {
+      String fileDepotPath = file.getDepotPath();
+      if (Utils.wildPathMatch(this.depotPath, fileDepotPath)) {
+        Integer[] lineInfo = { 0, 0, 0 };
+        int totalLoc = 0;
+        boolean isText = file.isComplete() ? file.isTextFile() 
+            : isTextFile(fileDepotPath, changelist);
+        if (isText) {
+          int lineDelta = file.getLineDelta();
+          if (file.isComplete()) {
+            lineInfo = file.getLineInfo();
           }
-          changeListData.addFileData(fileEntry.getDepotPath(), lineInfo[0], lineInfo[1],
-              lineInfo[2], totalLoc);
+          else {
+            String difference = runDiff2Command(fileDepotPath, file.getRevision());
+            lineInfo = processDiff2Output(difference);
+            lineDelta = getLineDelta(difference);
+          }
+          totalLoc = getFileSize(changelist, fileDepotPath, file.getRevision(), file.getAction(),
+              lineDelta);
+        }
+        changeListData.addFileData(fileDepotPath, lineInfo[0], lineInfo[1], lineInfo[2], 
+            totalLoc);
+      }
+    }
+  }
+  
+  /**
+   * Adds the data of each file in the changelist, running p4 files and p4 diff2 for each one.
+   * @param changelist The changelist.
+   * @param changeListData The data to add the files to.
+   * @throws Exception If problems occur.
+   */
+  @SuppressWarnings("unchecked") // Vector in Perforce Java API is not generic.
+  private void processFileEntries(Change changelist, PerforceChangeListData changeListData)
+    throws Exception {
+    changelist.sync();
+    Vector<FileEntry> files = changelist.getFileEntries();
+    for (FileEntry fileEntry : files) {
+      //fileEntry.sync(); // not sure if this is needed. Maybe changelist.sync() is good enough.
+      
+      // Changelists can contain files not in the user-specified depotPath, so only process 
+      // files in the changelist that match the depotPath. 
+      if (Utils.wildPathMatch(this.depotPath, fileEntry.getDepotPath())) {
+        // Set up defaults for size info for binary files.
+        Integer[] lineInfo = { 0, 0, 0 };
+        int totalLoc = 0;
+        // Calculate real values for text files, from the revision listed in the changelist.
+        if (isTextFile(fileEntry.getDepotPath(), changelist.getNumber())) {
+          int revision = fileEntry.getHeadRev();
+          String difference = runDiff2Command(fileEntry.getDepotPath(), revision);
+          lineInfo = processDiff2Output(difference);
+          totalLoc = getFileSize(changelist.getNumber(), fileEntry.getDepotPath(), revision,
+              fileEntry.getHeadAction(), getLineDelta(difference));
         }
+        changeListData.addFileData(fileEntry.getDepotPath(), lineInfo[0], lineInfo[1],
+            lineInfo[2], totalLoc);
       }
-      this.changeListDataList.add(changeListData);
     }
   }
   
   /**
    * Retrieve the list of PerforceChangeListData instances associated with this instance. 
+   * Only processChangeLists(String, String) adds to this list.
    * @return The list of PerforceChangeListData instances.  
    */
   public List<PerforceChangeListData> getChangeListDataList() {
@@ -139,22 +398,42 @@ public class PerforceCommitProcessor {
   public void setIgnoreWhitespace(boolean ignoreWhitespace) {
     this.ignoreWhitespace = ignoreWhitespace;
   }
-
+  
   /**
-   * Finds out the lines added, deleted, and changed for the passed file.
-   * 
-   * @param entry The FileEntry from the change list.
-   * @return A three-tuple containing the lines added, deleted, and modified for this file.
-   * @throws Exception If problems occur.   
-   */
-  private Integer[] getFileChangeInfo(FileEntry entry) throws Exception {
-    entry.sync();
-    String depotPath = entry.getDepotPath();
-    Integer[] ints = {0, 0, 0};
-    int revision = entry.getHeadRev();
-    String difference = runDiff2Command(depotPath, revision);
-    ints = processDiff2Output(difference);
-    return ints;
+   * Controls whether the files, types and diff summaries of each changelist are obtained with
+   * a single p4 describe, instead of a p4 files and a p4 diff2 for each file. Default: true.
+   * @param batchDescribe True to describe each changelist with a single p4 describe. 
+   */
+  public void setBatchDescribe(boolean batchDescribe) {
+    this.batchDescribe = batchDescribe;
+  }
+  
+  /**
+   * Sets the maximum number of changelists obtained with each p4 changes. Larger date ranges 
+   * are processed in several pages of this size. Default: 1000.
+   * @param pageSize The page size.
+   */
+  public void setPageSize(int pageSize) {
+    this.pageSize = Math.max(1, pageSize);
+  }
+  
+  /**
+   * Sets the directory holding the file size cache of each Perforce server, so that the sizes
+   * of file revisions are remembered between runs. Call this before processing any changelists. 
+   * Defaults to .hackystat/perforce in the user's home directory.
+   * @param stateDirectory The directory, or null to keep nothing between runs.
+   */
+  public void setStateDirectory(File stateDirectory) {
+    this.stateDirectory = stateDirectory;
+  }
+  
+  /**
+   * Sets the number of changelists processed concurrently by processChangeLists(), each on its
+   * own worker thread with its own p4 processes. Default: 1.
+   * @param threads The number of threads. 
+   */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
   }
 
   /**
@@ -181,6 +460,33 @@ public class PerforceCommitProcessor {
   }
   
   
+  /**
+   * Invokes the p4 describe command to obtain the files of a changelist with their types and
+   * diff summaries. The output is parsed as it is read, without being held in memory. 
+   * @param changelist The changelist number.
+   * @return The parsed description.
+   * @throws Exception If problems occur.
+   */
+  private ChangeListDescription runDescribeCommand(int changelist) throws Exception {
+    List<String> cmd = new ArrayList<String>();
+    cmd.add("p4");
+    cmd.add("describe");
+    cmd.add("-ds");
+    if (this.ignoreWhitespace) {
+      cmd.add("-dw");
+    }
+    cmd.add(String.valueOf(changelist));
+    ChangeListDescription description = new ChangeListDescription();
+    P4Process p = new P4Process(this.env);
+    p.exec(cmd.toArray(new String[cmd.size()]));
+    String line;
+    while (null != (line = p.readLine())) {
+      description.parseLine(line);
+    }
+    p.close();
+    return description;
+  }
+  
   /**
    * Invokes the p4 program with the specified arguments, and returns the output as a string.
    * @param cmd The command to be invoked. 
@@ -234,6 +540,66 @@ public class PerforceCommitProcessor {
     return loc;
   }
   
+  /**
+   * Returns the size in LOC of a text file revision, from the file size cache if possible. 
+   * Otherwise, the size of an edited or integrated revision is derived from the cached size of 
+   * the previous revision and the line delta, and only if that is not cached either is the file
+   * printed. Each size found also settles the size of the previous revision, so that changelists
+   * can be processed newest first.
+   * @param changelist The changelist revision we want file size for. 
+   * @param file The file we want stats for. Should be in the form of a depot path.  
+   * @param revision The revision of the file submitted in the changelist.
+   * @param action The action on the file in the changelist, such as "edit".
+   * @param lineDelta The lines added minus the lines deleted since the previous revision.
+   * @return The number of lines in this file. 
+   * @throws Exception if problems occur. 
+   */
+  private int getFileSize(int changelist, String file, int revision, String action, 
+      int lineDelta) throws Exception {
+    FileSizeCache cache = this.getFileSizeCache();
+    boolean isDerivable = revision > 1 && ("edit".equals(action) || "integrate".equals(action));
+    int size = cache.getSize(file, revision);
+    int previousSize = isDerivable ? cache.getSize(file, revision - 1) : -1;
+    if (size >= 0) {
+      this.fileSizeCounts[0].incrementAndGet();
+    }
+    else if (previousSize >= 0 && previousSize + lineDelta >= 0) {
+      size = previousSize + lineDelta;
+      this.fileSizeCounts[1].incrementAndGet();
+    }
+    else {
+      size = this.getFileSize(changelist, file);
+      this.fileSizeCounts[2].incrementAndGet();
+    }
+    cache.setSize(file, revision, size);
+    if (isDerivable && size - lineDelta >= 0) {
+      cache.setSize(file, revision - 1, size - lineDelta);
+    }
+    return size;
+  }
+  
+  /**
+   * Gets the file size cache of the Perforce server, loading it on first use.
+   * @return The cache.
+   */
+  private synchronized FileSizeCache getFileSizeCache() {
+    if (this.fileSizeCache == null) {
+      this.fileSizeCache = new FileSizeCache(this.stateDirectory, this.env.getPort(), 
+          FileSizeCache.DEFAULT_MAXIMUM_SIZE);
+    }
+    return this.fileSizeCache;
+  }
+  
+  /**
+   * Returns how the sizes of text files were found: in the cache, derived from a diff summary,
+   * or printed.
+   * @return The statistics, for printing.
+   */
+  public String getStatistics() {
+    return String.format("File sizes: %d cached, %d derived, %d printed", 
+        this.fileSizeCounts[0].get(), this.fileSizeCounts[1].get(), this.fileSizeCounts[2].get());
+  }
+  
   /**
    * Calls the p4 program to get file type for the specified file, and returns true if
    * the file type is 'text'. 
@@ -278,36 +644,127 @@ public class PerforceCommitProcessor {
     Integer[] ints = { 0, 0, 0 };
     String[] lines = output.split("\\n");
     for (String line : lines) {
-      String[] tokens = line.split("\\s");
-      String changeType = tokens[0];
-      if ("add".equals(changeType)) {
-        ints[0] += Integer.valueOf(tokens[3]);
-      }
-      if ("deleted".equals(changeType)) {
-        ints[1] += Integer.valueOf(tokens[3]);
-      }
-      if ("changed".equals(changeType)) {
-        int changedLinesDeleted = Integer.valueOf(tokens[3]);
-        int changedLinesAdded = Integer.valueOf(tokens[5]);
-        int min = Math.min(changedLinesAdded, changedLinesDeleted);
-        int diff = Math.abs(changedLinesDeleted - changedLinesAdded);
-        ints[2] += min;
-        ints[0] += diff;
-      }
+      processDiff2Line(line, ints);
     }
     return ints;
   }
   
+  /**
+   * Adds the counts of one line of diff2 summary output, such as "add 2 chunks 6 lines", to the
+   * lines added, deleted, and changed.  Lines of other kinds are ignored. 
+   * See processDiff2Output() for the treatment of changed lines.
+   * @param line The line of diff2 output.
+   * @param ints The lines added, deleted, and changed so far, which are updated. 
+   */
+  static void processDiff2Line(String line, Integer[] ints) {
+    String[] tokens = line.split("\\s");
+    String changeType = tokens[0];
+    if ("add".equals(changeType)) {
+      ints[0] += Integer.valueOf(tokens[3]);
+    }
+    if ("deleted".equals(changeType)) {
+      ints[1] += Integer.valueOf(tokens[3]);
+    }
+    if ("changed".equals(changeType)) {
+      int changedLinesDeleted = Integer.valueOf(tokens[3]);
+      int changedLinesAdded = Integer.valueOf(tokens[5]);
+      int min = Math.min(changedLinesAdded, changedLinesDeleted);
+      int diff = Math.abs(changedLinesDeleted - changedLinesAdded);
+      ints[2] += min;
+      ints[0] += diff;
+    }
+  }
+  
+  /**
+   * Returns the lines added minus the lines deleted according to diff2 summary output, 
+   * counting both sides of changed regions.
+   * @param output The diff2 command output.
+   * @return The change in the number of lines of the file.
+   */
+  private static int getLineDelta(String output) {
+    int lineDelta = 0;
+    for (String line : output.split("\\n")) {
+      lineDelta += getLineDelta(line, 0);
+    }
+    return lineDelta;
+  }
+  
+  /**
+   * Adds the change in the number of lines of one line of diff2 summary output, such as 
+   * "changed 3 chunks 8 / 10 lines", to a running total. Lines of other kinds add nothing.
+   * @param line The line of diff2 output.
+   * @param lineDelta The lines added minus the lines deleted so far.
+   * @return The updated lines added minus lines deleted.
+   */
+  static int getLineDelta(String line, int lineDelta) {
+    String[] tokens = line.split("\\s");
+    String changeType = tokens[0];
+    if ("add".equals(changeType)) {
+      return lineDelta + Integer.valueOf(tokens[3]);
+    }
+    if ("deleted".equals(changeType)) {
+      return lineDelta - Integer.valueOf(tokens[3]);
+    }
+    if ("changed".equals(changeType)) {
+      return lineDelta + Integer.valueOf(tokens[5]) - Integer.valueOf(tokens[3]);
+    }
+    return lineDelta;
+  }
+  
   /**
    * This method should be invoked at the end of the sensor run, and will delete the client
-   * created for this task as well as invoke the Perforce library cleanUp() method.
+   * created for this task, unless it is a reused one, as well as invoke the Perforce library 
+   * cleanUp() method. It also
+   * saves the file size cache, only warning if it cannot be saved since it is just a cache.
    * @throws Exception If problems occur. 
    */
   public void cleanup() throws Exception {
-    this.runDeleteClientCommand(this.client);
+    if (this.fileSizeCache != null) {
+      try {
+        this.fileSizeCache.save();
+      }
+      catch (IOException e) {
+        System.out.println("Warning: Could not save " + this.fileSizeCache.getFile() + ": "
+            + e.getMessage());
+      }
+    }
+    if (!this.isClientReused) {
+      this.runDeleteClientCommand(this.client);
+    }
     Utils.cleanUp();
   }
 
+  /**
+   * Receives the data of the changelists found by processChangeLists().
+   */
+  public interface ChangeListHandler {
+    /**
+     * Handles the data of one changelist.
+     * @param changeListData The changelist data.
+     * @throws Exception If the data cannot be handled, which ends processChangeLists().
+     */
+    void handleChangeList(PerforceChangeListData changeListData) throws Exception;
+  }
+
+  /**
+   * Creates daemon worker threads, so that a hung p4 process never prevents Ant from exiting.
+   */
+  private static class WorkerThreadFactory implements ThreadFactory {
+    /** The number of threads created so far. */
+    private int count = 0;
+
+    /**
+     * Creates a new worker thread.
+     * @param runnable The runnable for the thread.
+     * @return The thread.
+     */
+    public synchronized Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "hackystat-p4-" + (++this.count));
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
   /**
    * Exercises the methods in this class manually.  Useful as a way to check that you have
    * configured your p4 environment correctly if you are having problems with the sensor. 
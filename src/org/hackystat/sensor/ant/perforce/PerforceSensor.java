@@ -10,6 +10,7 @@ import java.util.Map;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
+import org.hackystat.sensor.ant.util.LongTimeConverter;
 import org.hackystat.sensorshell.SensorShell;
 import org.hackystat.sensorshell.SensorShellException;
 import org.hackystat.sensorshell.SensorShellProperties;
@@ -17,7 +18,6 @@ import org.hackystat.sensorshell.usermap.SensorShellMap;
 import org.hackystat.sensorshell.usermap.SensorShellMapException;
 import org.hackystat.utilities.email.ValidateEmailSyntax;
 import org.hackystat.utilities.time.period.Day;
-import org.hackystat.utilities.tstamp.Tstamp;
 import org.hackystat.utilities.tstamp.TstampSet;
 
 /**
@@ -41,6 +41,10 @@ public class PerforceSensor extends Task {
   private Date fromDate, toDate;
   private boolean isVerbose = false;
   private boolean ignoreWhitespace = false;
+  private boolean batchDescribe = true;
+  private int threads = 4;
+  private File stateDir;
+  private String clientName;
   private String tool = "perforce";
   
   /** Initialize a new instance of a PerforceSensor. */
@@ -82,6 +86,44 @@ public class PerforceSensor extends Task {
     this.ignoreWhitespace = ignoreWhitespace;
   }
 
+  /**
+   * True if the files, types, and diff summaries of each changelist should be obtained with a 
+   * single p4 describe, rather than with a p4 files and a p4 diff2 for each file. Default: true.
+   * @param batchDescribe True to describe each changelist with a single p4 describe.
+   */
+  public void setBatchDescribe(boolean batchDescribe) {
+    this.batchDescribe = batchDescribe;
+  }
+
+  /**
+   * Sets the number of changelists processed concurrently, each with its own p4 processes.
+   * The commit data is still sent in changelist order. Default is 4.
+   * @param threads The number of threads.
+   */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Sets the directory holding the file in which the sensor remembers the sizes of the file
+   * revisions of each Perforce server between runs. Defaults to .hackystat/perforce in the 
+   * user's home directory.
+   * @param stateDir The directory.
+   */
+  public void setStateDir(File stateDir) {
+    this.stateDir = stateDir;
+  }
+
+  /**
+   * Sets the name of a Perforce client workspace to reuse on every run, instead of creating and
+   * deleting a temporary one. Its view is only rewritten when it does not map depotPath, so 
+   * each depotPath should have its own client name. Default: none (temporary client).
+   * @param clientName The client name.
+   */
+  public void setClientName(String clientName) {
+    this.clientName = (clientName.length() == 0) ? null : clientName;
+  }
+
   /**
    * Sets a string to be prepended to the file path in commit metric. Recall
    * that Perforce sensor gets the depotPath to the file, 
@@ -311,29 +353,27 @@ public class PerforceSensor extends Task {
       p4Env.setP4SystemDrive(this.p4SysDrive);
       p4Env.setP4SystemRoot(this.p4SysRoot);
       p4Env.setVerbose(false); // could set this to true for lots of p4 debugging output. 
-      PerforceCommitProcessor processor = new PerforceCommitProcessor(p4Env, this.depotPath);
+      PerforceCommitProcessor processor = new PerforceCommitProcessor(p4Env, this.depotPath,
+          this.clientName);
       processor.setIgnoreWhitespace(this.ignoreWhitespace);
-      processor.processChangeLists(dateFormat.format(this.fromDate), 
-          dateFormat.format(this.toDate));
-      int entriesAdded = 0;
-      TstampSet tstampSet = new TstampSet();
-      for (PerforceChangeListData data : processor.getChangeListDataList()) {
-        if (this.isVerbose) {
-          System.out.printf("Retrieved Perforce changelist: %d%n", data.getId());
-        }
-        String author = data.getOwner();
-        Date commitTime = data.getModTime();
-        for (PerforceChangeListData.PerforceFileData fileData : data.getFileData()) {
-          SensorShell shell = this.getShell(shellCache, shellMap, author);
-          this.processCommitEntry(shell, author, tstampSet
-              .getUniqueTstamp(commitTime.getTime()), commitTime, data.getId(), fileData);
-          entriesAdded++;
-        }
+      processor.setBatchDescribe(this.batchDescribe);
+      processor.setThreads(this.threads);
+      if (this.stateDir != null) {
+        processor.setStateDirectory(this.stateDir);
+      }
+      ChangeListSender sender = new ChangeListSender(shellCache, shellMap);
+      try {
+        processor.processChangeLists(dateFormat.format(this.fromDate), 
+            dateFormat.format(this.toDate), sender);
+      }
+      finally {
+        // Always make sure you call cleanup() at the end. 
+        processor.cleanup();
       }
-      // Always make sure you call cleanup() at the end. 
-      processor.cleanup();
+      int entriesAdded = sender.entriesAdded;
       if (this.isVerbose) {
         System.out.println("Found " + entriesAdded + " commit records.");
+        System.out.println(processor.getStatistics());
       }
 
       // Send the sensor data after all entries have been processed.
@@ -351,6 +391,50 @@ public class PerforceSensor extends Task {
     }
   }
 
+  /**
+   * Sends the file data of each changelist to the shell of its owner, as the changelists arrive
+   * from the PerforceCommitProcessor.
+   */
+  private class ChangeListSender implements PerforceCommitProcessor.ChangeListHandler {
+    /** The shells used so far, keyed by owner. */
+    private final Map<String, SensorShell> shellCache;
+    /** The shells built from the UserMap. */
+    private final SensorShellMap shellMap;
+    /** Makes the timestamps of the commit entries unique. */
+    private final TstampSet tstampSet = new TstampSet();
+    /** The number of commit entries added to shells. */
+    private int entriesAdded = 0;
+
+    /**
+     * Creates the sender.
+     * @param shellCache The shells used so far, keyed by owner.
+     * @param shellMap The shells built from the UserMap.
+     */
+    ChangeListSender(Map<String, SensorShell> shellCache, SensorShellMap shellMap) {
+      this.shellCache = shellCache;
+      this.shellMap = shellMap;
+    }
+
+    /**
+     * Adds the file data of the changelist to the shell of its owner.
+     * @param data The changelist data.
+     * @throws Exception If there is any error.
+     */
+    public void handleChangeList(PerforceChangeListData data) throws Exception {
+      if (isVerbose) {
+        System.out.printf("Retrieved Perforce changelist: %d%n", data.getId());
+      }
+      String author = data.getOwner();
+      Date commitTime = data.getModTime();
+      for (PerforceChangeListData.PerforceFileData fileData : data.getFileData()) {
+        SensorShell shell = getShell(this.shellCache, this.shellMap, author);
+        processCommitEntry(shell, author, this.tstampSet
+            .getUniqueTstamp(commitTime.getTime()), commitTime, data.getId(), fileData);
+        this.entriesAdded++;
+      }
+    }
+  }
+
   /**
    * Returns the shell associated with the specified author. The shellCache is
    * used to store SensorShell instances associated with the specified user. The
@@ -420,12 +504,12 @@ public class PerforceSensor extends Task {
       file += fileData.getFileName();
 
       Map<String, String> pMap = new HashMap<String, String>();
-      String timestampString = Tstamp.makeTimestamp(timestamp).toString();
+      String timestampString = LongTimeConverter.convertLongToString(timestamp);
       pMap.put("SensorDataType", "Commit");
       pMap.put("Resource", file);
       pMap.put("Tool", "Perforce");
       pMap.put("Timestamp", timestampString);
-      pMap.put("Runtime", Tstamp.makeTimestamp(commitTime.getTime()).toString());
+      pMap.put("Runtime", LongTimeConverter.convertLongToString(commitTime.getTime()));
       pMap.put("totalLines", String.valueOf(fileData.getTotalLines()));
       pMap.put("linesAdded", String.valueOf(fileData.getLinesAdded()));
       pMap.put("linesDeleted", String.valueOf(fileData.getLinesDeleted()));
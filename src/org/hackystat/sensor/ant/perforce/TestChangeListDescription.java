@@ -0,0 +1,79 @@
+package org.hackystat.sensor.ant.perforce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the parsing of p4 describe -ds output.
+ *
+ * @author agent
+ */
+public class TestChangeListDescription {
+
+  /**
+   * The output of p4 describe -ds, with affected files both as p4 prints them and as
+   * P4Process.readLine() returns them.
+   */
+  private static final String[] OUTPUT = {
+    "Change 1234 by philip_johnson@client on 2008/07/14 10:20:30",
+    "",
+    "Fixed the build.",
+    "... //depot/project/NotAFile.java#9 edit",
+    "",
+    "Affected files ...",
+    "",
+    "... //depot/project/Foo.java#2 edit",
+    "//depot/project/Logo.gif#3 edit",
+    "//depot/project/New File.java#1 add",
+    "",
+    "Differences ...",
+    "",
+    "==== //depot/project/Foo.java#2 (text) ====",
+    "",
+    "add 2 chunks 6 lines",
+    "deleted 0 chunks 0 lines",
+    "changed 3 chunks 8 / 10 lines",
+    "",
+    "==== //depot/project/Logo.gif#3 (binary) ====",
+    "",
+  };
+
+  /**
+   * Tests that files, types and summaries are parsed, and that files Perforce shows no
+   * differences for are left incomplete.
+   */
+  @Test
+  public void testParse() {
+    ChangeListDescription description = new ChangeListDescription();
+    for (String line : OUTPUT) {
+      description.parseLine(line);
+    }
+    List<ChangeListDescription.FileDescription> files = description.getFiles();
+    assertEquals("Checking files", 3, files.size());
+
+    ChangeListDescription.FileDescription text = files.get(0);
+    assertEquals("Checking path", "//depot/project/Foo.java", text.getDepotPath());
+    assertEquals("Checking revision", 2, text.getRevision());
+    assertEquals("Checking action", "edit", text.getAction());
+    assertTrue("Checking complete", text.isComplete());
+    assertTrue("Checking text", text.isTextFile());
+    assertArrayEquals("Checking line info", new Integer[] { 8, 0, 8 }, text.getLineInfo());
+    assertEquals("Checking line delta", 8, text.getLineDelta());
+
+    ChangeListDescription.FileDescription binary = files.get(1);
+    assertTrue("Checking binary complete", binary.isComplete());
+    assertFalse("Checking binary", binary.isTextFile());
+
+    ChangeListDescription.FileDescription added = files.get(2);
+    assertEquals("Checking path with space", "//depot/project/New File.java",
+        added.getDepotPath());
+    assertEquals("Checking add", "add", added.getAction());
+    assertFalse("Checking no differences", added.isComplete());
+  }
+}
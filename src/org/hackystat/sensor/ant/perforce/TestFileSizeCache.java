@@ -0,0 +1,104 @@
+package org.hackystat.sensor.ant.perforce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the FileSizeCache.
+ *
+ * @author agent
+ */
+public class TestFileSizeCache {
+
+  /** The port of the Perforce server. */
+  private static final String PORT = "perforce.example.com:1666";
+
+  /** The directory holding the cache files. */
+  private File dir;
+
+  /**
+   * Creates an empty directory for the cache files.
+   * @throws IOException If the directory cannot be created.
+   */
+  @Before
+  public void setUp() throws IOException {
+    this.dir = File.createTempFile("TestFileSizeCache", "");
+    this.dir.delete();
+  }
+
+  /** Deletes the directory. */
+  @After
+  public void tearDown() {
+    File[] files = this.dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    this.dir.delete();
+  }
+
+  /**
+   * Tests that sizes survive a save and load, and are kept per server.
+   * @throws IOException If a problem occurs.
+   */
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    FileSizeCache cache = new FileSizeCache(this.dir, PORT, 10);
+    assertEquals("Checking missing size", -1, cache.getSize("//depot/Foo.java", 1));
+    cache.setSize("//depot/Foo.java", 1, 42);
+    cache.setSize("//depot/New File.java", 3, 0);
+    cache.save();
+
+    cache = new FileSizeCache(this.dir, PORT, 10);
+    assertEquals("Checking size", 42, cache.getSize("//depot/Foo.java", 1));
+    assertEquals("Checking path with space", 0, cache.getSize("//depot/New File.java", 3));
+    assertEquals("Checking other revision", -1, cache.getSize("//depot/Foo.java", 2));
+    assertEquals("Checking other server", -1,
+        new FileSizeCache(this.dir, "other:1666", 10).getSize("//depot/Foo.java", 1));
+  }
+
+  /**
+   * Tests that the sizes added first are dropped when the cache is full.
+   */
+  @Test
+  public void testMaximumSize() {
+    FileSizeCache cache = new FileSizeCache(null, PORT, 2);
+    cache.setSize("//depot/Foo.java", 1, 10);
+    cache.setSize("//depot/Foo.java", 2, 11);
+    cache.setSize("//depot/Foo.java", 3, 12);
+    assertEquals("Checking size", 2, cache.size());
+    assertEquals("Checking dropped size", -1, cache.getSize("//depot/Foo.java", 1));
+    assertEquals("Checking kept size", 12, cache.getSize("//depot/Foo.java", 3));
+  }
+
+  /**
+   * Tests that a damaged file and a memory-only cache are treated as empty.
+   * @throws IOException If a problem occurs.
+   */
+  @Test
+  public void testDamagedAndMemoryOnly() throws IOException {
+    FileSizeCache cache = new FileSizeCache(this.dir, PORT, 10);
+    this.dir.mkdirs();
+    Writer writer = new FileWriter(cache.getFile());
+    writer.write("//depot/Foo.java#1\t42\n//depot/Bar.java#1\tnot a number\n");
+    writer.close();
+    assertEquals("Checking damaged file", -1,
+        new FileSizeCache(this.dir, PORT, 10).getSize("//depot/Foo.java", 1));
+
+    cache = new FileSizeCache(null, PORT, 10);
+    assertNull("Checking no file", cache.getFile());
+    cache.setSize("//depot/Foo.java", 1, 1);
+    cache.save();
+    assertEquals("Checking memory size", 1, cache.getSize("//depot/Foo.java", 1));
+  }
+}
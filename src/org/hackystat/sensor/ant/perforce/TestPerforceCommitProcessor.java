@@ -0,0 +1,79 @@
+package org.hackystat.sensor.ant.perforce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the parts of the PerforceCommitProcessor that do not need a Perforce server.
+ *
+ * @author agent
+ */
+public class TestPerforceCommitProcessor {
+
+  /** The depot path of the client views. */
+  private static final String DEPOT_PATH = "//depot/project/...";
+
+  /**
+   * Returns the output of p4 client -o for a client, as returned by P4Process.readLine().
+   * @param exists True if the client exists.
+   * @param view The lines of the view.
+   * @return The lines of the client spec.
+   */
+  private static List<String> getSpec(boolean exists, String... view) {
+    List<String> spec = new ArrayList<String>();
+    spec.add("# A Perforce Client Specification.");
+    spec.add("");
+    spec.add("Client:\thackystat");
+    spec.add("");
+    if (exists) {
+      spec.add("Update:\t2008/07/14 10:20:30");
+      spec.add("");
+      spec.add("Access:\t2008/07/15 10:20:30");
+      spec.add("");
+    }
+    spec.add("Root:\t/home/hackystat/perforcesensorsketch");
+    spec.add("");
+    spec.add("View:");
+    spec.addAll(Arrays.asList(view));
+    spec.add("");
+    return spec;
+  }
+
+  /**
+   * Tests that only an existing client with exactly the expected view is accepted.
+   */
+  @Test
+  public void testHasView() {
+    assertTrue("Checking matching view", PerforceCommitProcessor.hasView(
+        getSpec(true, "//depot/project/... //hackystat/..."), "hackystat", DEPOT_PATH));
+    assertTrue("Checking quoted view", PerforceCommitProcessor.hasView(
+        getSpec(true, "\"//depot/my project/...\" \"//hackystat/...\""), "hackystat",
+        "//depot/my project/..."));
+    assertFalse("Checking missing client", PerforceCommitProcessor.hasView(
+        getSpec(false, "//depot/project/... //hackystat/..."), "hackystat", DEPOT_PATH));
+    assertFalse("Checking other depot path", PerforceCommitProcessor.hasView(
+        getSpec(true, "//depot/other/... //hackystat/..."), "hackystat", DEPOT_PATH));
+    assertFalse("Checking extra mapping", PerforceCommitProcessor.hasView(
+        getSpec(true, "//depot/project/... //hackystat/...", "-//depot/project/x/... "
+            + "//hackystat/x/..."), "hackystat", DEPOT_PATH));
+  }
+
+  /**
+   * Tests the change in the number of lines computed from diff2 summary lines.
+   */
+  @Test
+  public void testGetLineDelta() {
+    int lineDelta = PerforceCommitProcessor.getLineDelta("add 2 chunks 6 lines", 0);
+    lineDelta = PerforceCommitProcessor.getLineDelta("deleted 1 chunks 4 lines", lineDelta);
+    lineDelta = PerforceCommitProcessor.getLineDelta("changed 3 chunks 10 / 8 lines", lineDelta);
+    lineDelta = PerforceCommitProcessor.getLineDelta("Diffing file: //depot/Foo.java", lineDelta);
+    assertEquals("Checking line delta", 0, lineDelta);
+  }
+}
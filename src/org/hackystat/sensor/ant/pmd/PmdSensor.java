@@ -9,17 +9,18 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.apache.tools.ant.BuildException;
 import org.hackystat.sensor.ant.pmd.jaxb.ObjectFactory;
 import org.hackystat.sensor.ant.pmd.jaxb.Pmd;
 import org.hackystat.sensor.ant.pmd.jaxb.Violation;
+import org.hackystat.sensor.ant.task.DataFileProcessor;
 import org.hackystat.sensor.ant.task.HackystatSensorTask;
+import org.hackystat.sensor.ant.util.JAXBContextRegistry;
 import org.hackystat.sensor.ant.util.LongTimeConverter;
+import org.hackystat.sensor.ant.util.StreamingXmlParser;
+import org.hackystat.sensor.ant.util.XmlReportHandler;
 import org.hackystat.sensorshell.SensorShellException;
 
 /**
@@ -66,15 +67,11 @@ public class PmdSensor extends HackystatSensorTask {
     Date startTime = new Date();
 
     // Iterate though each file, extract the PMD data, send to sensorshell.
-    for (File dataFile : getDataFiles()) {
-      verboseInfo("Processing file: " + dataFile);
-      try {
-        numberOfCodeIssues += processPmdXmlFile(dataFile);
+    numberOfCodeIssues = processDataFiles("PMD", new DataFileProcessor() {
+      public int process(File dataFile) {
+        return processPmdXmlFile(dataFile);
       }
-      catch (Exception e) {
-        signalError("Failure processing: " + dataFile, e);
-      }
-    }
+    });
     this.sendAndQuit();
     summaryInfo(startTime, "Code Issue", numberOfCodeIssues);
   }
@@ -87,93 +84,37 @@ public class PmdSensor extends HackystatSensorTask {
    * @exception BuildException if any error.
    */
   public int processPmdXmlFile(File xmlFile) throws BuildException {
-    XMLGregorianCalendar runtimeGregorian = LongTimeConverter.convertLongToGregorian(this.runtime);
+    if (this.streaming) {
+      return processPmdXmlFileStreaming(xmlFile);
+    }
+    String runtimeString = LongTimeConverter.convertLongToString(this.runtime);
 
     try {
-      JAXBContext context = JAXBContext.newInstance(ObjectFactory.class);
-      Unmarshaller unmarshaller = context.createUnmarshaller();
-
       List<File> allSourceFiles = this.getSourceFiles();
       Set<String> filesWithViolations = new HashSet<String>();
 
-      Pmd pmdResults = (Pmd) unmarshaller.unmarshal(xmlFile);
+      Pmd pmdResults = (Pmd) JAXBContextRegistry.unmarshal(ObjectFactory.class, xmlFile);
       List<org.hackystat.sensor.ant.pmd.jaxb.File> files = pmdResults.getFile();
 
       int codeIssueCount = 0;
       verboseInfo("Processing information about files that had PMD issues.");
       for (org.hackystat.sensor.ant.pmd.jaxb.File file : files) {
-        // Base unique timestamp off of the runtime (which is when it started running)
-        long uniqueTstamp = this.tstampSet.getUniqueTstamp(this.runtime);
-        // Get altered time as XMLGregorianCalendar
-        XMLGregorianCalendar uniqueTstampGregorian = LongTimeConverter
-            .convertLongToGregorian(uniqueTstamp);
-
         // derive the full path name from the file name
-        String fileName = file.getName();
-
-        String fullFilePath = this.findSrcFile(allSourceFiles, fileName);
+        String fullFilePath = this.findSrcFile(allSourceFiles, file.getName());
         filesWithViolations.add(fullFilePath);
 
-        Map<String, String> keyValMap = new HashMap<String, String>();
-        // Required
-        keyValMap.put("Tool", "PMD");
-        keyValMap.put("SensorDataType", "CodeIssue");
-        keyValMap.put("Timestamp", uniqueTstampGregorian.toString());
-        keyValMap.put("Runtime", runtimeGregorian.toString());
-        keyValMap.put("Resource", fullFilePath);
-
         HashMap<String, Integer> issueCounts = new HashMap<String, Integer>();
 
         List<Violation> violations = file.getViolation();
         for (Violation violation : violations) {
-          String rule = violation.getRule();
-          String ruleset = violation.getRuleset();
-
-          String key = ruleset + "_" + rule;
-          key = key.replaceAll(" ", ""); // remove spaces
-          if (issueCounts.containsKey(key)) {
-            Integer count = issueCounts.get(key);
-            issueCounts.put(key, ++count);
-          }
-          else {
-            // no previous mapping, add 1st issue to map
-            issueCounts.put(key, 1);
-          }
-        }
-        for (Entry<String, Integer> entry : issueCounts.entrySet()) {
-          String typeKey = TYPE + entry.getKey();
-          keyValMap.put(typeKey, entry.getValue().toString());
-        }
-
-        this.sensorShell.add(keyValMap); // add data to sensorshell
-        codeIssueCount++;
-      }
-
-      // process the zero issues
-      verboseInfo("Generating data for files that did not have PMD issues.");
-      for (File srcFile : getSourceFiles()) {
-        // Skip this entry if we've already processed it above. 
-        if (filesWithViolations.contains(srcFile.getAbsolutePath())) {
-          continue;
+          countIssue(issueCounts, violation.getRule(), violation.getRuleset());
         }
-        // Alter startTime to guarantee uniqueness.
-        long uniqueTstamp = this.tstampSet.getUniqueTstamp(this.runtime);
-
-        // Get altered time as XMLGregorianCalendar
-        XMLGregorianCalendar uniqueTstampGregorian = LongTimeConverter
-            .convertLongToGregorian(uniqueTstamp);
 
-        Map<String, String> keyValMap = new HashMap<String, String>();
-        keyValMap.put("Tool", "PMD");
-        keyValMap.put("SensorDataType", "CodeIssue");
-        keyValMap.put("Timestamp", uniqueTstampGregorian.toString());
-        keyValMap.put("Runtime", runtimeGregorian.toString());
-        keyValMap.put("Resource", srcFile.getAbsolutePath());
-
-        this.sensorShell.add(keyValMap); // add data to sensorshell
+        addCodeIssue(fullFilePath, issueCounts, runtimeString);
         codeIssueCount++;
       }
 
+      codeIssueCount += addZeroIssueFiles(allSourceFiles, filesWithViolations, runtimeString);
       return codeIssueCount;
     }
     catch (JAXBException e) {
@@ -184,6 +125,123 @@ public class PmdSensor extends HackystatSensorTask {
     }
   }
 
+  /**
+   * Parses a PMD XML file with the streaming parser and sends the code issue instances to the
+   * shell. The sensor data is identical to that produced by the JAXB path.
+   * 
+   * @param xmlFile The XML file name to be processed.
+   * @return The number of issues that have been processed in this XML file.
+   * @exception BuildException if any error.
+   */
+  private int processPmdXmlFileStreaming(File xmlFile) throws BuildException {
+    String runtimeString = LongTimeConverter.convertLongToString(this.runtime);
+    List<File> allSourceFiles = this.getSourceFiles();
+    PmdHandler handler = new PmdHandler(allSourceFiles, runtimeString);
+    try {
+      verboseInfo("Processing information about files that had PMD issues.");
+      StreamingXmlParser.parse(xmlFile, handler);
+      return handler.codeIssueCount
+          + addZeroIssueFiles(allSourceFiles, handler.filesWithViolations, runtimeString);
+    }
+    catch (SensorShellException f) {
+      throw new BuildException(errMsgPrefix + "Failure in SensorShell " + xmlFile, f);
+    }
+    catch (Exception e) {
+      throw new BuildException(errMsgPrefix + "Failure parsing " + xmlFile, e);
+    }
+  }
+
+  /**
+   * Increments the count of the passed PMD rule.
+   * 
+   * @param issueCounts The issue counts for a file, keyed by ruleset and rule.
+   * @param rule The rule that was violated.
+   * @param ruleset The ruleset containing the rule.
+   */
+  private static void countIssue(Map<String, Integer> issueCounts, String rule, 
+      String ruleset) {
+    String key = ruleset + "_" + rule;
+    key = key.replaceAll(" ", ""); // remove spaces
+    if (issueCounts.containsKey(key)) {
+      Integer count = issueCounts.get(key);
+      issueCounts.put(key, ++count);
+    }
+    else {
+      // no previous mapping, add 1st issue to map
+      issueCounts.put(key, 1);
+    }
+  }
+
+  /**
+   * Creates the CodeIssue sensor data for a single file with PMD issues and adds it to the shell.
+   * 
+   * @param fullFilePath The full path of the file.
+   * @param issueCounts The issue counts for the file, keyed by ruleset and rule.
+   * @param runtimeString The runtime of this sensor.
+   * @throws SensorShellException If the shell could not accept the data.
+   */
+  private void addCodeIssue(String fullFilePath, Map<String, Integer> issueCounts,
+      String runtimeString) throws SensorShellException {
+    // Base unique timestamp off of the runtime (which is when it started running)
+    long uniqueTstamp = this.getUniqueTstamp(this.runtime);
+    // Get altered time as an xsd:dateTime string
+    String uniqueTstampString = LongTimeConverter.convertLongToString(uniqueTstamp);
+
+    Map<String, String> keyValMap = new HashMap<String, String>();
+    // Required
+    keyValMap.put("Tool", "PMD");
+    keyValMap.put("SensorDataType", "CodeIssue");
+    keyValMap.put("Timestamp", uniqueTstampString);
+    keyValMap.put("Runtime", runtimeString);
+    keyValMap.put("Resource", fullFilePath);
+
+    for (Entry<String, Integer> entry : issueCounts.entrySet()) {
+      String typeKey = TYPE + entry.getKey();
+      keyValMap.put(typeKey, entry.getValue().toString());
+    }
+
+    this.addSensorData(keyValMap); // add data to sensorshell
+  }
+
+  /**
+   * Sends a CodeIssue entry with no issues for each source file that did not appear in the PMD
+   * report.
+   * 
+   * @param allSourceFiles All of the source files.
+   * @param filesWithViolations The full paths of the files that had PMD issues.
+   * @param runtimeString The runtime of this sensor.
+   * @return The number of entries sent.
+   * @throws SensorShellException If the shell could not accept the data.
+   */
+  private int addZeroIssueFiles(List<File> allSourceFiles, Set<String> filesWithViolations, 
+      String runtimeString) throws SensorShellException {
+    int codeIssueCount = 0;
+    // process the zero issues
+    verboseInfo("Generating data for files that did not have PMD issues.");
+    for (File srcFile : allSourceFiles) {
+      // Skip this entry if we've already processed it above. 
+      if (filesWithViolations.contains(srcFile.getAbsolutePath())) {
+        continue;
+      }
+      // Alter startTime to guarantee uniqueness.
+      long uniqueTstamp = this.getUniqueTstamp(this.runtime);
+
+      // Get altered time as an xsd:dateTime string
+      String uniqueTstampString = LongTimeConverter.convertLongToString(uniqueTstamp);
+
+      Map<String, String> keyValMap = new HashMap<String, String>();
+      keyValMap.put("Tool", "PMD");
+      keyValMap.put("SensorDataType", "CodeIssue");
+      keyValMap.put("Timestamp", uniqueTstampString);
+      keyValMap.put("Runtime", runtimeString);
+      keyValMap.put("Resource", srcFile.getAbsolutePath());
+
+      this.addSensorData(keyValMap); // add data to sensorshell
+      codeIssueCount++;
+    }
+    return codeIssueCount;
+  }
+
   /**
    * Finds the full file path of the source path within the src files collection. For example,
    * srcFiles could contain: [c:\foo\src\org\Foo.java, c:\foo\src\org\Bar.java] and the sourcePath
@@ -209,4 +267,55 @@ public class PmdSensor extends HackystatSensorTask {
     }
     return null;
   }
+
+  /**
+   * Receives the file and violation elements from the streaming parser. A CodeIssue entry is
+   * sent to the shell when the closing tag of each file element is reached.
+   */
+  private class PmdHandler extends XmlReportHandler {
+    /** All of the source files, used to derive full paths. */
+    private final List<File> allSourceFiles;
+    /** The runtime of this sensor. */
+    private final String runtimeString;
+    /** The full paths of the files that had PMD issues. */
+    private final Set<String> filesWithViolations = new HashSet<String>();
+    /** The full path of the current file. */
+    private String fullFilePath;
+    /** The issue counts for the current file. */
+    private Map<String, Integer> issueCounts;
+    /** The number of file elements processed so far. */
+    private int codeIssueCount = 0;
+
+    /**
+     * Creates a handler for one PMD XML file.
+     * @param allSourceFiles All of the source files.
+     * @param runtimeString The runtime of this sensor.
+     */
+    PmdHandler(List<File> allSourceFiles, String runtimeString) {
+      this.allSourceFiles = allSourceFiles;
+      this.runtimeString = runtimeString;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String name, String parent, Map<String, String> attributes) {
+      if ("file".equals(name) && "pmd".equals(parent)) {
+        this.fullFilePath = findSrcFile(this.allSourceFiles, attributes.get("name"));
+        this.filesWithViolations.add(this.fullFilePath);
+        this.issueCounts = new HashMap<String, Integer>();
+      }
+      else if ("violation".equals(name) && "file".equals(parent)) {
+        countIssue(this.issueCounts, attributes.get("rule"), attributes.get("ruleset"));
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String name, String parent, String text) throws SensorShellException {
+      if ("file".equals(name) && "pmd".equals(parent)) {
+        addCodeIssue(this.fullFilePath, this.issueCounts, this.runtimeString);
+        this.codeIssueCount++;
+      }
+    }
+  }
 }
\ No newline at end of file
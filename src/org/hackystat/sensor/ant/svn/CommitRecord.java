@@ -7,10 +7,10 @@ import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
 import org.tmatesoft.svn.core.SVNLogEntry;
 import org.tmatesoft.svn.core.SVNLogEntryPath;
 import org.tmatesoft.svn.core.SVNNodeKind;
-import org.tmatesoft.svn.core.io.SVNFileRevision;
 import org.tmatesoft.svn.core.io.SVNRepository;
 
 /**
@@ -22,36 +22,54 @@ import org.tmatesoft.svn.core.io.SVNRepository;
  */
 public class CommitRecord {
 
-  private SVNRepository svnRepository;
+  private SVNRepositoryPool svnRepositoryPool;
+  private FileRevisionCache fileRevisionCache;
+  private LastChangeMap lastChanges;
   private SVNLogEntry svnLogEntry;
   private List<CommitRecordEntry> commitRecordEntries = new ArrayList<CommitRecordEntry>();
 
   /**
    * Constructs this instance.
    * 
-   * @param svnRepository The svn repository.
+   * @param svnRepositoryPool The pool of sessions to the svn repository.
+   * @param fileRevisionCache The cache of file contents of the svn repository.
+   * @param lastChanges The last revisions in which the paths changed, updated with this
+   * revision. Records must be built in revision order.
    * @param svnLogEntry The svn log for a revision.
    * 
    * @throws Exception If there is any error.
    */
-  CommitRecord(SVNRepository svnRepository, SVNLogEntry svnLogEntry) throws Exception {
-    this.svnRepository = svnRepository;
+  CommitRecord(SVNRepositoryPool svnRepositoryPool, FileRevisionCache fileRevisionCache,
+      LastChangeMap lastChanges, SVNLogEntry svnLogEntry) throws Exception {
+    this.svnRepositoryPool = svnRepositoryPool;
+    this.fileRevisionCache = fileRevisionCache;
+    this.lastChanges = lastChanges;
     this.svnLogEntry = svnLogEntry;
-    this.processSvnLogEntry();
+    SVNRepository svnRepository = svnRepositoryPool.acquire();
+    try {
+      this.processSvnLogEntry(svnRepository);
+    }
+    finally {
+      svnRepositoryPool.release(svnRepository);
+    }
   }
 
   /**
    * Process SVN log to extract information about which file/directory gets
    * modified in this revision.
    * 
+   * @param svnRepository The session to the svn repository.
+   * 
    * @throws Exception If there is any error.
    */
-  private void processSvnLogEntry() throws Exception {
+  private void processSvnLogEntry(SVNRepository svnRepository) throws Exception {
     long currentRevision = this.getRevision();
 
     // They are used to handle file or directory renaming.
     TreeMap<String, SVNLogEntryPath> copyPaths = new TreeMap<String, SVNLogEntryPath>();
     TreeSet<String> deletePaths = new TreeSet<String>();
+    List<String> modifiedFiles = new ArrayList<String>();
+    this.lastChanges.removeReplaced(this.svnLogEntry);
 
     for (Object entryValue : this.svnLogEntry.getChangedPaths().values()) {
       SVNLogEntryPath changedPath = (SVNLogEntryPath) entryValue;
@@ -66,8 +84,8 @@ public class CommitRecord {
         // (It seems there is always a 'D' entry')
         // What about resurect of previously deleted file?
         if (copyPath == null) { // newly created
-          this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepository, null, -1,
-              path, currentRevision));
+          this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepositoryPool,
+              this.fileRevisionCache, null, -1, path, currentRevision));
         }
         else { // file rename, check for 'D'
           copyPaths.put(copyPath, changedPath);
@@ -88,29 +106,18 @@ public class CommitRecord {
         // Find out the file name in the previous revision, which might have
         // been changed.
 
-        if (SVNNodeKind.FILE == this.svnRepository.checkPath(path, currentRevision)) {
-          Collection<?> revisions = this.svnRepository.getFileRevisions(path, null, 1,
-              currentRevision);
-          // we should alway find at least one, since change type is 'M'.
-          if (revisions == null || revisions.isEmpty()) {
-            throw new RuntimeException("Inconsistent SVN record. Corrupted SVN repository?");
-          }
-          long thePrevRevisionNumber = -1;
-          SVNFileRevision thePrevFileRevision = null;
-          for (Object revision : revisions) {
-            SVNFileRevision curRevision = (SVNFileRevision) revision;
-            long curRevisionNumber = curRevision.getRevision();
-            if (thePrevRevisionNumber < curRevisionNumber
-                && curRevisionNumber < currentRevision) {
-              thePrevRevisionNumber = curRevisionNumber;
-              thePrevFileRevision = curRevision;
-            }
+        // A file modified in an earlier commit of this run needs no server call at all.
+        if (this.lastChanges.isFile(path)
+            || SVNNodeKind.FILE == svnRepository.checkPath(path, currentRevision)) {
+          long thePrevRevisionNumber = this.lastChanges.getLastChange(path);
+          String thePrevPath = path;
+          if (thePrevRevisionNumber < 0) {
+            thePrevRevisionNumber = this.getPreviousRevision(svnRepository, path);
+            thePrevPath = this.getPathBeforeCopy(path);
           }
-          if (thePrevFileRevision == null) {
-            throw new RuntimeException("Assertion Failed.");
-          }
-          this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepository,
-              thePrevFileRevision.getPath(), thePrevFileRevision.getRevision(), path,
+          modifiedFiles.add(path);
+          this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepositoryPool,
+              this.fileRevisionCache, thePrevPath, thePrevRevisionNumber, path,
               currentRevision));
         }
       }
@@ -119,10 +126,10 @@ public class CommitRecord {
         // added,
         // all within single revision (Note: I CANNOT produce this in SVN).
         // So, it's actually a deletion plus an addition.
-        this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepository, path,
-            currentRevision - 1, null, currentRevision));
-        this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepository, null, -1, path,
-            currentRevision));
+        this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepositoryPool,
+            this.fileRevisionCache, path, currentRevision - 1, null, currentRevision));
+        this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepositoryPool,
+            this.fileRevisionCache, null, -1, path, currentRevision));
       }
       else {
         throw new RuntimeException("Unknown SVN change type.");
@@ -133,15 +140,65 @@ public class CommitRecord {
     for (String deletePath : deletePaths) {
       SVNLogEntryPath addLogEntryPath = copyPaths.get(deletePath);
       if (addLogEntryPath == null) { // true delete
-        this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepository, deletePath,
-            currentRevision - 1, null, currentRevision));
+        this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepositoryPool,
+            this.fileRevisionCache, deletePath, currentRevision - 1, null, currentRevision));
       }
       else { // rename
-        this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepository, addLogEntryPath
-            .getCopyPath(), addLogEntryPath.getCopyRevision(), addLogEntryPath.getPath(),
-            currentRevision));
+        this.commitRecordEntries.add(new CommitRecordEntry(this.svnRepositoryPool,
+            this.fileRevisionCache, addLogEntryPath.getCopyPath(),
+            addLogEntryPath.getCopyRevision(), addLogEntryPath.getPath(), currentRevision));
+      }
+    }
+    this.lastChanges.addChanged(this.svnLogEntry, modifiedFiles);
+  }
+
+  /**
+   * Finds the last revision before this one in which a file changed, following its history
+   * across copies, with a log request for just the two latest revisions of the file.
+   * 
+   * @param svnRepository The session to the svn repository.
+   * @param path The path of the file in this revision.
+   * 
+   * @return The previous revision.
+   * 
+   * @throws Exception If there is any error.
+   */
+  private long getPreviousRevision(SVNRepository svnRepository, String path) throws Exception {
+    final List<Long> revisions = new ArrayList<Long>(2);
+    svnRepository.log(new String[] { path }, this.getRevision(), 0, false, false, 2,
+        new ISVNLogEntryHandler() {
+          public void handleLogEntry(SVNLogEntry logEntry) {
+            revisions.add(logEntry.getRevision());
+          }
+        });
+    // we should alway find two, since change type is 'M'.
+    if (revisions.size() < 2 || revisions.get(0) != this.getRevision()) {
+      throw new RuntimeException("Inconsistent SVN record. Corrupted SVN repository?");
+    }
+    return revisions.get(1);
+  }
+
+  /**
+   * Gets the path a file had before this revision, which differs from its path in this revision
+   * if this revision copied one of its parent directories.
+   * 
+   * @param path The path of the file in this revision.
+   * 
+   * @return The path before this revision.
+   */
+  private String getPathBeforeCopy(String path) {
+    String copyPath = null;
+    String copySourcePath = null;
+    for (Object entryValue : this.svnLogEntry.getChangedPaths().values()) {
+      SVNLogEntryPath changedPath = (SVNLogEntryPath) entryValue;
+      String candidate = changedPath.getPath();
+      if (changedPath.getCopyPath() != null && path.startsWith(candidate + "/")
+          && (copyPath == null || candidate.length() > copyPath.length())) {
+        copyPath = candidate;
+        copySourcePath = changedPath.getCopyPath();
       }
     }
+    return (copyPath == null) ? path : copySourcePath + path.substring(copyPath.length());
   }
 
   /**
@@ -1,17 +1,12 @@
 package org.hackystat.sensor.ant.svn;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
 
 import org.hackystat.sensor.ant.vcs.GenericDiffCounter;
 import org.hackystat.sensor.ant.vcs.GenericSizeCounter;
+import org.hackystat.sensor.ant.vcs.LineIndex;
 import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.io.SVNRepository;
@@ -29,7 +24,8 @@ import org.tmatesoft.svn.core.io.SVNRepository;
  */
 public class CommitRecordEntry {
 
-  private SVNRepository svnRepository;
+  private SVNRepositoryPool svnRepositoryPool;
+  private FileRevisionCache fileRevisionCache;
   private String fromPath, toPath;
   private long fromRevision, toRevision;
 
@@ -43,7 +39,8 @@ public class CommitRecordEntry {
   /**
    * Create this instance. One of fromPath and toPath can be null, but not both.
    * 
-   * @param svnRepository SVN repository.
+   * @param svnRepositoryPool The pool of sessions to the SVN repository.
+   * @param fileRevisionCache The cache of file contents of the SVN repository.
    * @param fromPath The from path.
    * @param fromRevision The from revision.
    * @param toPath The to path.
@@ -51,9 +48,10 @@ public class CommitRecordEntry {
    * 
    * @throws Exception If both fromPath and toPath are null.
    */
-  CommitRecordEntry(SVNRepository svnRepository, String fromPath, long fromRevision,
-      String toPath, long toRevision) throws Exception {
-    this.svnRepository = svnRepository;
+  CommitRecordEntry(SVNRepositoryPool svnRepositoryPool, FileRevisionCache fileRevisionCache,
+      String fromPath, long fromRevision, String toPath, long toRevision) throws Exception {
+    this.svnRepositoryPool = svnRepositoryPool;
+    this.fileRevisionCache = fileRevisionCache;
     this.fromPath = fromPath;
     this.fromRevision = fromRevision;
     this.toPath = toPath;
@@ -182,109 +180,113 @@ public class CommitRecordEntry {
   /**
    * Computes file metrics. Note that if the file is a binary file, either an
    * exception will be thrown or the computed value is invalid. The exact
-   * behavior depends on the underlying metrics computation engine.
+   * behavior depends on the underlying metrics computation engine. The
+   * metrics are computed once, with a session taken from the pool, so any
+   * thread may compute them ahead of their use.
    * 
    * @throws Exception If this entry does not represent a file, or if there is
    * any other error.
    */
-  private void computeStatistics() throws Exception {
-
+  synchronized void computeStatistics() throws Exception {
     if (!this.statisticsComputed) {
-      boolean useToPath = (this.toPath != null);
-
-      // check isFile
-      SVNNodeKind nodeKind = useToPath ? this.svnRepository.checkPath(this.toPath,
-          this.toRevision) : this.svnRepository.checkPath(this.fromPath, this.fromRevision);
-      this.isFile = (nodeKind == SVNNodeKind.FILE);
-      // TODO: this is a hack
-      // It seems that each call of checkPath method will open a new socket
-      // connection,
-      // If this method repeatedly called, OS will return a "address already in
-      // use" exception.
-      // This is underlying JavaSVN issue, the only thing I can do is to force
-      // this
-      // thread to sleep for some time.
-      Thread.sleep(50);
-
-      if (this.isFile) {
-        // check isTextFile
-        TreeMap<String, String> properties = new TreeMap<String, String>();
-        if (useToPath) {
-          this.getVersionedProperties(this.toPath, this.toRevision, properties);
-        }
-        else {
-          this.getVersionedProperties(this.fromPath, this.fromRevision, properties);
-        }
-        String svnFileMineType = properties.get("svn:mime-type");
-        this.isTextFile = (svnFileMineType == null || svnFileMineType.toLowerCase(Locale.ENGLISH)
-            .startsWith("/text"));
+      SVNRepository svnRepository = this.svnRepositoryPool.acquire();
+      try {
+        this.computeStatistics(svnRepository);
+      }
+      finally {
+        this.svnRepositoryPool.release(svnRepository);
+      }
+      this.statisticsComputed = true;
+    }
+  }
 
-        if (this.isTextFile) {
-          byte[] content = useToPath ? this.getVersionedContent(this.toPath, this.toRevision,
-              null) : this.getVersionedContent(this.fromPath, this.fromRevision, null);
-          // compute diff
-          byte[] fromContent = useToPath ? null : content;
-          byte[] toContent = useToPath ? content : null;
+  /**
+   * Computes file metrics using the passed session.
+   * 
+   * @param svnRepository The session to the SVN repository.
+   * 
+   * @throws Exception If there is any error.
+   */
+  private void computeStatistics(SVNRepository svnRepository) throws Exception {
+    boolean useToPath = (this.toPath != null);
 
-          if (fromContent == null && this.fromPath != null) {
-            fromContent = this.getVersionedContent(this.fromPath, this.fromRevision, null);
-          }
+    // check isFile
+    SVNNodeKind nodeKind = useToPath ? svnRepository.checkPath(this.toPath,
+        this.toRevision) : svnRepository.checkPath(this.fromPath, this.fromRevision);
+    this.isFile = (nodeKind == SVNNodeKind.FILE);
 
-          if (toContent == null && this.toPath != null) {
-            toContent = this.getVersionedContent(this.toPath, this.toRevision, null);
-          }
+    if (this.isFile) {
+      // check isTextFile
+      TreeMap<String, String> properties = new TreeMap<String, String>();
+      if (useToPath) {
+        this.getVersionedProperties(svnRepository, this.toPath, this.toRevision, properties);
+      }
+      else {
+        this.getVersionedProperties(svnRepository, this.fromPath, this.fromRevision,
+            properties);
+      }
+      String svnFileMineType = properties.get("svn:mime-type");
+      this.isTextFile = (svnFileMineType == null || svnFileMineType.toLowerCase(Locale.ENGLISH)
+          .startsWith("/text"));
 
-          String[] fromStrings = fromContent == null ? null : this
-              .byteArrayToStringArray(fromContent);
-          String[] toStrings = toContent == null ? null : this
-              .byteArrayToStringArray(toContent);
+      if (this.isTextFile) {
+        // compute diff
+        byte[] fromContent = null;
+        byte[] toContent = null;
+        if (this.fromPath != null) {
+          fromContent = this.getVersionedContent(svnRepository, this.fromPath,
+              this.fromRevision);
+        }
+        if (this.toPath != null) {
+          // Rebuild the new content from the old one when possible, which moves less data.
+          toContent = (fromContent == null) ? this.getVersionedContent(svnRepository,
+              this.toPath, this.toRevision) : this.fileRevisionCache.getContent(svnRepository,
+              this.toPath, this.toRevision, this.fromPath, this.fromRevision, fromContent);
+        }
 
-          if (fromStrings == null) {
-            this.totalLines = new GenericSizeCounter(toStrings).getNumOfTotalLines();
-            this.linesAdded = this.totalLines;
-            this.linesDeleted = 0;
-          }
-          else if (toStrings == null) {
-            this.totalLines = 0;
-            this.linesAdded = 0;
-            this.linesDeleted = new GenericSizeCounter(fromStrings).getNumOfTotalLines();
-          }
-          else {
-            this.totalLines = new GenericSizeCounter(toStrings).getNumOfTotalLines();
-            GenericDiffCounter diff = new GenericDiffCounter(fromStrings, toStrings);
-            this.linesAdded = diff.getLinesAdded();
-            this.linesDeleted = diff.getLinesDeleted();
-          }
+        // Count and diff the lines in place, without decoding them into strings.
+        LineIndex fromLines = (fromContent == null) ? null : new LineIndex(fromContent);
+        LineIndex toLines = (toContent == null) ? null : new LineIndex(toContent);
 
-        } // this.isTextFile
-      } // this.isFile
+        if (fromLines == null) {
+          this.totalLines = new GenericSizeCounter(toLines).getNumOfTotalLines();
+          this.linesAdded = this.totalLines;
+          this.linesDeleted = 0;
+        }
+        else if (toLines == null) {
+          this.totalLines = 0;
+          this.linesAdded = 0;
+          this.linesDeleted = new GenericSizeCounter(fromLines).getNumOfTotalLines();
+        }
+        else {
+          this.totalLines = new GenericSizeCounter(toLines).getNumOfTotalLines();
+          GenericDiffCounter diff = new GenericDiffCounter(fromLines, toLines);
+          this.linesAdded = diff.getLinesAdded();
+          this.linesDeleted = diff.getLinesDeleted();
+        }
 
-      this.statisticsComputed = true;
-    } // this.isStatisticsComputed
+      } // this.isTextFile
+    } // this.isFile
   }
 
   /**
-   * Gets the content for a file at the specified revision.
+   * Gets the content for a file at the specified revision, from the file
+   * revision cache if it holds the content.
+   * @param svnRepository The session to the SVN repository.
    * @param filePath The file path.
    * @param revision The revision number.
-   * @param properties A map to receive SVN properties associated with the file.
-   * Note that this is an output parameter, it's advised that you use an empty
-   * map. Null is a valid value.
    * 
    * @return The content as a byte array.
    * @throws Exception If there is any error.
    */
-  private byte[] getVersionedContent(String filePath, long revision,
-      Map<String, String> properties) throws Exception {
-    ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
-    SVNProperties svnProps = SVNProperties.wrap(properties);
-    this.svnRepository.getFile(filePath, revision, svnProps, output);
-    output.flush();
-    return output.toByteArray();
+  private byte[] getVersionedContent(SVNRepository svnRepository, String filePath,
+      long revision) throws Exception {
+    return this.fileRevisionCache.getContent(svnRepository, filePath, revision);
   }
 
   /**
    * Gets the properties for a file at the specified revision.
+   * @param svnRepository The session to the SVN repository.
    * @param filePath The file path.
    * @param revision The revision number.
    * @param properties A map to receive SVN properties associated with the file.
@@ -292,40 +294,10 @@ public class CommitRecordEntry {
    * map. Null is a valid value.
    * @throws Exception If there is any error.
    */
-  private void getVersionedProperties(String filePath, long revision,
-      Map<String, String> properties) throws Exception {
+  private void getVersionedProperties(SVNRepository svnRepository, String filePath,
+      long revision, Map<String, String> properties) throws Exception {
     SVNProperties svnProps = SVNProperties.wrap(properties);
-    this.svnRepository.getFile(filePath, revision, svnProps, null);
-  }
-
-  /**
-   * Converts a byte array holding text into a string array with each string
-   * represeting one line. TODO: check shits like unicode, text locale, and line
-   * break with \r, \n or both!
-   * 
-   * @param byteArray A byte array holding text.
-   * 
-   * @return The converted string array. Note that if you pass in a byte array
-   * containing binary contents, then the return value is undefined.
-   * 
-   * @throws Exception If there is any error.
-   */
-  private String[] byteArrayToStringArray(byte[] byteArray) throws Exception {
-    List<String> strings = new ArrayList<String>(16);
-    BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(
-        byteArray)));
-    String str = reader.readLine();
-    while (str != null) {
-      strings.add(str);
-      str = reader.readLine();
-    }
-    // convert to vanilla string array
-    int size = strings.size();
-    String[] strs = new String[size];
-    for (int i = 0; i < size; i++) {
-      strs[i] = strings.get(i);
-    }
-    return strs;
+    svnRepository.getFile(filePath, revision, svnProps, null);
   }
 
   /**
@@ -0,0 +1,304 @@
+package org.hackystat.sensor.ant.svn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Rebuilds the content of a file at a revision from its content at an earlier revision and the
+ * binary delta between the two, which the server sends in answer to a diff request. The delta of
+ * a typical commit is a small fraction of the file, so this moves far less data than downloading
+ * the new content when the old content is at hand.
+ * <p>
+ * The server never computes line differences, so the lines added and deleted are still counted
+ * on the rebuilt content. The rebuilt content is checked against the checksum the server sends.
+ *
+ * @author agent
+ */
+final class FileDeltaEditor implements ISVNEditor, ISVNReporterBaton {
+
+  /** The content at the base revision. */
+  private final byte[] baseContent;
+
+  /** The base revision. */
+  private final long baseRevision;
+
+  /** Applies the delta to the base content, or null if no delta has arrived. */
+  private SVNDeltaProcessor deltaProcessor;
+
+  /** Receives the rebuilt content. */
+  private ByteArrayOutputStream content;
+
+  /** The checksum of the rebuilt content, or null if no delta has arrived. */
+  private String contentChecksum;
+
+  /** The checksum of the new content sent by the server, or null if it sent none. */
+  private String expectedChecksum;
+
+  /** True if the server replaced the file instead of sending a delta against the base. */
+  private boolean isAdded = false;
+
+  /** The number of bytes of new data in the delta. */
+  private long deltaBytes = 0;
+
+  /**
+   * Creates an editor for one diff request.
+   *
+   * @param baseContent The content at the base revision.
+   * @param baseRevision The base revision.
+   */
+  FileDeltaEditor(byte[] baseContent, long baseRevision) {
+    this.baseContent = baseContent;
+    this.baseRevision = baseRevision;
+  }
+
+  /**
+   * Gets the content of the file at a revision by applying the delta from its content at the
+   * base revision, possibly under another path. The session is moved to the parent directory of
+   * the base path for the request, and moved back afterwards.
+   *
+   * @param svnRepository The session to use.
+   * @param basePath The path of the file at the base revision.
+   * @param path The path of the file at the revision.
+   * @param revision The revision.
+   * @return The content at the revision.
+   * @throws SVNException If the delta cannot be retrieved, or the rebuilt content does not match
+   * the checksum sent by the server.
+   */
+  byte[] getContent(SVNRepository svnRepository, String basePath, String path, long revision)
+    throws SVNException {
+    SVNURL location = svnRepository.getLocation();
+    SVNURL root = svnRepository.getRepositoryRoot(true);
+    int slash = basePath.lastIndexOf('/');
+    svnRepository.setLocation(root.appendPath(basePath.substring(0, slash), false), false);
+    try {
+      svnRepository.diff(root.appendPath(path, false), revision, this.baseRevision,
+          basePath.substring(slash + 1), true, SVNDepth.EMPTY, true, this, this);
+    }
+    finally {
+      svnRepository.setLocation(location, false);
+    }
+    if (this.deltaProcessor == null) {
+      // No delta means the content did not change.
+      return this.isAdded ? new byte[0] : this.baseContent;
+    }
+    if (this.expectedChecksum != null && !this.expectedChecksum.equals(this.contentChecksum)) {
+      throw new SVNException(SVNErrorMessage.create(SVNErrorCode.CHECKSUM_MISMATCH,
+          "Rebuilt content of " + path + " does not match its checksum"));
+    }
+    return this.content.toByteArray();
+  }
+
+  /**
+   * Returns the number of bytes of new data in the delta, which is roughly what the request
+   * moved over the network.
+   *
+   * @return The number of bytes.
+   */
+  long getDeltaBytes() {
+    return this.deltaBytes;
+  }
+
+  /**
+   * Describes the base of the diff: the file at the base revision.
+   *
+   * @param reporter The reporter.
+   * @throws SVNException If the report fails.
+   */
+  public void report(ISVNReporter reporter) throws SVNException {
+    reporter.setPath("", null, this.baseRevision, SVNDepth.EMPTY, false);
+    reporter.finishReport();
+  }
+
+  /**
+   * Starts applying the delta.
+   *
+   * @param path The path of the file.
+   * @param baseChecksum The checksum of the base content.
+   */
+  public void applyTextDelta(String path, String baseChecksum) {
+    byte[] base = this.isAdded ? new byte[0] : this.baseContent;
+    this.content = new ByteArrayOutputStream(base.length + 4096);
+    this.deltaProcessor = new SVNDeltaProcessor();
+    this.deltaProcessor.applyTextDelta(new ByteArrayInputStream(base), this.content, true);
+  }
+
+  /**
+   * Applies a window of the delta.
+   *
+   * @param path The path of the file.
+   * @param diffWindow The window.
+   * @return The stream receiving the new data of the window.
+   * @throws SVNException If the window cannot be applied.
+   */
+  public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow)
+    throws SVNException {
+    this.deltaBytes += diffWindow.getNewDataLength();
+    return this.deltaProcessor.textDeltaChunk(diffWindow);
+  }
+
+  /**
+   * Finishes applying the delta.
+   *
+   * @param path The path of the file.
+   */
+  public void textDeltaEnd(String path) {
+    this.contentChecksum = this.deltaProcessor.textDeltaEnd();
+  }
+
+  /**
+   * Notes that the server sends the file as a new one, without a base.
+   *
+   * @param path The path of the file.
+   * @param copyFromPath Ignored.
+   * @param copyFromRevision Ignored.
+   */
+  public void addFile(String path, String copyFromPath, long copyFromRevision) {
+    this.isAdded = true;
+  }
+
+  /**
+   * Keeps the checksum of the new content.
+   *
+   * @param path The path of the file.
+   * @param textChecksum The checksum, or null.
+   */
+  public void closeFile(String path, String textChecksum) {
+    this.expectedChecksum = textChecksum;
+  }
+
+  /**
+   * Ignored.
+   *
+   * @param revision Ignored.
+   */
+  public void targetRevision(long revision) {
+    // Not needed.
+  }
+
+  /**
+   * Ignored.
+   *
+   * @param revision Ignored.
+   */
+  public void openRoot(long revision) {
+    // Not needed.
+  }
+
+  /**
+   * Ignored.
+   *
+   * @param path Ignored.
+   * @param revision Ignored.
+   */
+  public void deleteEntry(String path, long revision) {
+    // A replaced file is also added, which is what counts.
+  }
+
+  /**
+   * Ignored.
+   *
+   * @param path Ignored.
+   */
+  public void absentDir(String path) {
+    // Not needed.
+  }
+
+  /**
+   * Ignored.
+   *
+   * @param path Ignored.
+   */
+  public void absentFile(String path) {
+    // Not needed.
+  }
+
+  /**
+   * Ignored.
+   *
+   * @param path Ignored.
+   * @param copyFromPath Ignored.
+   * @param copyFromRevision Ignored.
+   */
+  public void addDir(String path, String copyFromPath, long copyFromRevision) {
+    // Not needed.
+  }
+
+  /**
+   * Ignored.
+   *
+   * @param path Ignored.
+   * @param revision Ignored.
+   */
+  public void openDir(String path, long revision) {
+    // Not needed.
+  }
+
+  /**
+   * Ignored.
+   *
+   * @param name Ignored.
+   * @param value Ignored.
+   */
+  public void changeDirProperty(String name, SVNPropertyValue value) {
+    // Not needed.
+  }
+
+  /**
+   * Ignored.
+   */
+  public void closeDir() {
+    // Not needed.
+  }
+
+  /**
+   * Ignored.
+   *
+   * @param path Ignored.
+   * @param revision Ignored.
+   */
+  public void openFile(String path, long revision) {
+    // Not needed.
+  }
+
+  /**
+   * Ignored.
+   *
+   * @param path Ignored.
+   * @param name Ignored.
+   * @param value Ignored.
+   */
+  public void changeFileProperty(String path, String name, SVNPropertyValue value) {
+    // Not needed.
+  }
+
+  /**
+   * Ignored.
+   *
+   * @return Null.
+   */
+  public SVNCommitInfo closeEdit() {
+    return null;
+  }
+
+  /**
+   * Ignored.
+   */
+  public void abortEdit() {
+    // Not needed.
+  }
+}
@@ -0,0 +1,442 @@
+package org.hackystat.sensor.ant.svn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * A cache of file contents at given revisions of one SVN repository. When a file changes in
+ * consecutive commits, the content at revision N is needed as the new content of one commit and
+ * as the old content of the next, and re-running the sensor over the same revisions needs all of
+ * them again. The cache serves those requests without downloading the content again.
+ * <p>
+ * The cache has two tiers, both least recently used first out and both bounded by size: an
+ * in-memory tier for the current run, and an optional disk tier in a directory of its own per
+ * repository UUID, which lasts between runs. Contents are stored compressed in both tiers, and a
+ * disk file that cannot be read is treated as a miss. Since SVN history never changes, an entry
+ * never goes stale.
+ *
+ * @author agent
+ */
+final class FileRevisionCache {
+
+  /** The characters used to print hashes. */
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /** The suffix of the cache files. */
+  private static final String SUFFIX = ".cache";
+
+  /** The largest total size of the compressed contents held in memory. */
+  private final long maxMemoryBytes;
+
+  /** The largest total size of the cache files, or 0 if there is no disk tier. */
+  private final long maxDiskBytes;
+
+  /** The directory of the disk tier, or null if there is none. */
+  private final File dir;
+
+  /** The compressed contents in memory, keyed by path and revision, in access order. */
+  private final LinkedHashMap<String, byte[]> memory =
+    new LinkedHashMap<String, byte[]>(64, 0.75f, true);
+
+  /** The total size of the compressed contents in memory. */
+  private long memoryBytes = 0;
+
+  /** The sizes of the cache files, keyed by file name, in access order. */
+  private final LinkedHashMap<String, Long> disk =
+    new LinkedHashMap<String, Long>(64, 0.75f, true);
+
+  /** The total size of the cache files. */
+  private long diskBytes = 0;
+
+  /** The number of requests served from memory. */
+  private long memoryHits = 0;
+
+  /** The number of requests served from disk. */
+  private long diskHits = 0;
+
+  /** The number of requests that downloaded the content. */
+  private long misses = 0;
+
+  /** The number of bytes downloaded. */
+  private long downloadedBytes = 0;
+
+  /** True if missing contents are rebuilt from a delta against an earlier content. */
+  private boolean useDeltas = true;
+
+  /** The number of contents rebuilt from a delta. */
+  private long deltas = 0;
+
+  /** The number of bytes of new data in those deltas. */
+  private long deltaBytes = 0;
+
+  /**
+   * Creates a cache, indexing the cache files left in the directory by earlier runs.
+   *
+   * @param parentDir The directory holding a cache directory per repository, or null for no
+   * disk tier.
+   * @param uuid The repository UUID.
+   * @param maxMemoryBytes The largest total size of the compressed contents held in memory.
+   * @param maxDiskBytes The largest total size of the cache files, or 0 for no disk tier.
+   */
+  FileRevisionCache(File parentDir, String uuid, long maxMemoryBytes, long maxDiskBytes) {
+    this.maxMemoryBytes = maxMemoryBytes;
+    this.maxDiskBytes = (parentDir == null) ? 0 : maxDiskBytes;
+    this.dir = (this.maxDiskBytes > 0) ? new File(parentDir, uuid) : null;
+    if (this.dir != null) {
+      this.indexDisk();
+    }
+  }
+
+  /**
+   * Gets the content of a file at a revision, from the cache if possible, or otherwise by
+   * downloading it with the passed session and adding it to the cache.
+   *
+   * @param svnRepository The session to download the content with.
+   * @param path The path of the file.
+   * @param revision The revision.
+   * @return The content.
+   * @throws Exception If the content cannot be downloaded.
+   */
+  byte[] getContent(SVNRepository svnRepository, String path, long revision) throws Exception {
+    String key = revision + ":" + path;
+    byte[] content = this.getCachedContent(key);
+    if (content == null) {
+      ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+      svnRepository.getFile(path, revision, null, output);
+      content = output.toByteArray();
+      synchronized (this) {
+        this.misses++;
+        this.downloadedBytes += content.length;
+      }
+      this.putContent(key, content);
+    }
+    return content;
+  }
+
+  /**
+   * Gets the content of a file at a revision, from the cache if possible, or otherwise by
+   * rebuilding it from its content at an earlier revision and the delta between the two, which
+   * is usually much smaller than the content. If the delta cannot be retrieved, the content is
+   * downloaded in full.
+   *
+   * @param svnRepository The session to download the content with.
+   * @param path The path of the file.
+   * @param revision The revision.
+   * @param basePath The path of the file at the earlier revision.
+   * @param baseRevision The earlier revision.
+   * @param baseContent The content at the earlier revision.
+   * @return The content.
+   * @throws Exception If the content cannot be downloaded.
+   */
+  byte[] getContent(SVNRepository svnRepository, String path, long revision, String basePath,
+      long baseRevision, byte[] baseContent) throws Exception {
+    if (!this.useDeltas) {
+      return this.getContent(svnRepository, path, revision);
+    }
+    String key = revision + ":" + path;
+    byte[] content = this.getCachedContent(key);
+    if (content == null) {
+      FileDeltaEditor editor = new FileDeltaEditor(baseContent, baseRevision);
+      try {
+        content = editor.getContent(svnRepository, basePath, path, revision);
+      }
+      catch (SVNException e) {
+        return this.getContent(svnRepository, path, revision);
+      }
+      synchronized (this) {
+        this.deltas++;
+        this.deltaBytes += editor.getDeltaBytes();
+      }
+      this.putContent(key, content);
+    }
+    return content;
+  }
+
+  /**
+   * Sets whether missing contents are rebuilt from deltas when an earlier content of the file is
+   * at hand. Default is true.
+   *
+   * @param useDeltas True to use deltas.
+   */
+  void setUseDeltas(boolean useDeltas) {
+    this.useDeltas = useDeltas;
+  }
+
+  /**
+   * Returns a one line summary of the requests served by the cache.
+   *
+   * @return The summary.
+   */
+  synchronized String getStatistics() {
+    return "File revision cache: " + (this.memoryHits + this.diskHits) + " hits ("
+        + this.diskHits + " from disk), " + this.misses + " downloads of "
+        + (this.downloadedBytes / 1024) + " KB, " + this.deltas + " deltas of "
+        + (this.deltaBytes / 1024) + " KB.";
+  }
+
+  /**
+   * Adds downloaded content to both tiers.
+   *
+   * @param key The key of the content.
+   * @param content The content.
+   * @throws IOException Never, since the content is compressed in memory.
+   */
+  private void putContent(String key, byte[] content) throws IOException {
+    byte[] compressed = compress(content);
+    synchronized (this) {
+      this.putInMemory(key, compressed);
+    }
+    this.putOnDisk(key, compressed);
+  }
+
+  /**
+   * Looks up the content in memory, then on disk.
+   *
+   * @param key The key of the content.
+   * @return The content, or null if it is not cached.
+   */
+  private byte[] getCachedContent(String key) {
+    byte[] compressed;
+    synchronized (this) {
+      compressed = this.memory.get(key);
+      if (compressed != null) {
+        this.memoryHits++;
+      }
+    }
+    if (compressed == null) {
+      compressed = this.readFromDisk(key);
+      if (compressed == null) {
+        return null;
+      }
+      synchronized (this) {
+        this.diskHits++;
+        this.putInMemory(key, compressed);
+      }
+    }
+    try {
+      return decompress(compressed);
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Adds compressed content to the memory tier, evicting the least recently used contents to stay
+   * within its bound. The caller must hold the lock.
+   *
+   * @param key The key of the content.
+   * @param compressed The compressed content.
+   */
+  private void putInMemory(String key, byte[] compressed) {
+    if (compressed.length > this.maxMemoryBytes) {
+      return;
+    }
+    byte[] old = this.memory.put(key, compressed);
+    this.memoryBytes += compressed.length - ((old == null) ? 0 : old.length);
+    Iterator<byte[]> eldest = this.memory.values().iterator();
+    while (this.memoryBytes > this.maxMemoryBytes) {
+      this.memoryBytes -= eldest.next().length;
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Reads compressed content from its cache file, if there is one.
+   *
+   * @param key The key of the content.
+   * @return The compressed content, or null if it is not on disk.
+   */
+  private byte[] readFromDisk(String key) {
+    if (this.dir == null) {
+      return null;
+    }
+    String name = fileName(key);
+    synchronized (this) {
+      if (this.disk.get(name) == null) {
+        return null;
+      }
+    }
+    File file = new File(this.dir, name);
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        if (!key.equals(in.readUTF())) {
+          // A hash collision.
+          return null;
+        }
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+        // Keep the file's age in step with its use, for the next run.
+        file.setLastModified(System.currentTimeMillis());
+        return compressed;
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes compressed content to its cache file, evicting the least recently used files to stay
+   * within the bound of the disk tier. Failures only mean that the content is not cached.
+   *
+   * @param key The key of the content.
+   * @param compressed The compressed content.
+   */
+  private void putOnDisk(String key, byte[] compressed) {
+    if (this.dir == null || compressed.length > this.maxDiskBytes) {
+      return;
+    }
+    String name = fileName(key);
+    File file = new File(this.dir, name);
+    File tempFile = new File(this.dir, name + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      // Another thread may create the directory at the same time.
+      if (!this.dir.mkdirs() && !this.dir.isDirectory()) {
+        return;
+      }
+      DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile));
+      try {
+        out.writeUTF(key);
+        out.writeInt(compressed.length);
+        out.write(compressed);
+      }
+      finally {
+        out.close();
+      }
+      if (!tempFile.renameTo(file)) {
+        tempFile.delete();
+        return;
+      }
+    }
+    catch (IOException e) {
+      tempFile.delete();
+      return;
+    }
+    List<File> evicted = new ArrayList<File>();
+    synchronized (this) {
+      Long old = this.disk.put(name, file.length());
+      this.diskBytes += file.length() - ((old == null) ? 0 : old.longValue());
+      Iterator<Map.Entry<String, Long>> eldest = this.disk.entrySet().iterator();
+      while (this.diskBytes > this.maxDiskBytes) {
+        Map.Entry<String, Long> entry = eldest.next();
+        this.diskBytes -= entry.getValue();
+        evicted.add(new File(this.dir, entry.getKey()));
+        eldest.remove();
+      }
+    }
+    for (File evictedFile : evicted) {
+      evictedFile.delete();
+    }
+  }
+
+  /**
+   * Builds the index of the cache files from the directory, oldest first.
+   */
+  private void indexDisk() {
+    File[] files = this.dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      public int compare(File file1, File file2) {
+        long time1 = file1.lastModified();
+        long time2 = file2.lastModified();
+        return (time1 < time2) ? -1 : ((time1 == time2) ? 0 : 1);
+      }
+    });
+    for (File file : files) {
+      if (file.getName().endsWith(SUFFIX)) {
+        this.disk.put(file.getName(), file.length());
+        this.diskBytes += file.length();
+      }
+      else if (file.getName().endsWith(".tmp")) {
+        // Left behind by an interrupted run.
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * Returns the name of the cache file for a key: the SHA-1 hash of the key.
+   *
+   * @param key The key.
+   * @return The file name.
+   */
+  private static String fileName(String key) {
+    try {
+      byte[] bytes = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+      char[] chars = new char[bytes.length * 2];
+      for (int i = 0; i < bytes.length; i++) {
+        chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+        chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+      }
+      return new String(chars) + SUFFIX;
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not available", e);
+    }
+    catch (IOException e) {
+      throw new IllegalStateException("UTF-8 is not available", e);
+    }
+  }
+
+  /**
+   * Compresses content.
+   *
+   * @param content The content.
+   * @return The compressed content.
+   * @throws IOException Never, since the content is written to memory.
+   */
+  static byte[] compress(byte[] content) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4 + 16);
+    OutputStream out = new DeflaterOutputStream(bytes);
+    out.write(content);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decompresses content.
+   *
+   * @param compressed The compressed content.
+   * @return The content.
+   * @throws IOException If the compressed content is damaged.
+   */
+  static byte[] decompress(byte[] compressed) throws IOException {
+    InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(compressed.length * 4);
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = in.read(buffer)) > 0) {
+      bytes.write(buffer, 0, count);
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,144 @@
+package org.hackystat.sensor.ant.svn;
+
+import java.util.Collection;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+
+/**
+ * Remembers the last revision in which each path under the repository url changed, as the
+ * commit records of one run are built in revision order, so that the previous revision of a
+ * modified file is usually known without asking the server.
+ * <p>
+ * The map is only trusted while it has seen every revision since it was filled: processing
+ * revisions that do not follow the last ones processed empties it. Paths outside the repository
+ * url are never remembered, since revisions that only change them are not seen at all. A path
+ * that is deleted, replaced or copied over is forgotten along with everything below it, since
+ * its history no longer continues under the same path. The map is used by one thread at a time.
+ *
+ * @author agent
+ */
+final class LastChangeMap {
+
+  /** The path of the repository url relative to the repository root, "" for the root. */
+  private final String urlPath;
+
+  /** The last revision in which each path changed. */
+  private final TreeMap<String, Long> lastChanges = new TreeMap<String, Long>();
+
+  /** The paths known to be files. */
+  private final TreeSet<String> files = new TreeSet<String>();
+
+  /** The revision that must be processed next to keep the map valid. */
+  private long nextRevision = -1;
+
+  /**
+   * Creates an empty map.
+   *
+   * @param urlPath The path of the repository url relative to the repository root, such as
+   * "/trunk", or "" for the root.
+   */
+  LastChangeMap(String urlPath) {
+    this.urlPath = urlPath;
+  }
+
+  /**
+   * Notes that the revisions from startRevision to endRevision are about to be processed,
+   * emptying the map unless they follow the last ones processed.
+   *
+   * @param startRevision The first revision.
+   * @param endRevision The last revision.
+   */
+  void cover(long startRevision, long endRevision) {
+    if (startRevision != this.nextRevision) {
+      this.clear();
+    }
+    this.nextRevision = endRevision + 1;
+  }
+
+  /**
+   * Empties the map, after a failure left some revisions unprocessed.
+   */
+  void clear() {
+    this.lastChanges.clear();
+    this.files.clear();
+    this.nextRevision = -1;
+  }
+
+  /**
+   * Returns the last revision in which a path changed, before the commit being processed.
+   *
+   * @param path The path.
+   * @return The revision, or -1 if it is not known.
+   */
+  long getLastChange(String path) {
+    Long revision = this.lastChanges.get(path);
+    return (revision == null) ? -1 : revision.longValue();
+  }
+
+  /**
+   * Checks whether a path is known to be a file.
+   *
+   * @param path The path.
+   * @return True if the path is known to be a file, false if it is not known.
+   */
+  boolean isFile(String path) {
+    return this.files.contains(path);
+  }
+
+  /**
+   * Forgets the paths that a commit deletes, replaces or copies over, and everything below them.
+   * Call this before looking up the paths of the commit.
+   *
+   * @param logEntry The log entry of the commit.
+   */
+  void removeReplaced(SVNLogEntry logEntry) {
+    for (Object value : logEntry.getChangedPaths().values()) {
+      SVNLogEntryPath changedPath = (SVNLogEntryPath) value;
+      char changeType = changedPath.getType();
+      if (changeType == 'D' || changeType == 'R'
+          || (changeType == 'A' && changedPath.getCopyPath() != null)) {
+        String path = changedPath.getPath();
+        this.lastChanges.remove(path);
+        this.lastChanges.subMap(path + "/", path + "/\uffff").clear();
+        this.files.remove(path);
+        this.files.subSet(path + "/", path + "/\uffff").clear();
+      }
+    }
+  }
+
+  /**
+   * Remembers the paths that a commit adds or modifies. Call this after removeReplaced() and the
+   * lookups of the commit.
+   *
+   * @param logEntry The log entry of the commit.
+   * @param modifiedFiles The paths that the commit modifies and that are known to be files.
+   */
+  void addChanged(SVNLogEntry logEntry, Collection<String> modifiedFiles) {
+    Long revision = Long.valueOf(logEntry.getRevision());
+    for (Object value : logEntry.getChangedPaths().values()) {
+      SVNLogEntryPath changedPath = (SVNLogEntryPath) value;
+      if (changedPath.getType() != 'D' && this.isUnderUrl(changedPath.getPath())) {
+        this.lastChanges.put(changedPath.getPath(), revision);
+      }
+    }
+    for (String path : modifiedFiles) {
+      if (this.isUnderUrl(path)) {
+        this.files.add(path);
+      }
+    }
+  }
+
+  /**
+   * Checks whether a path is the repository url or below it.
+   *
+   * @param path The path.
+   * @return True if it is.
+   */
+  private boolean isUnderUrl(String path) {
+    return this.urlPath.length() == 0 || path.equals(this.urlPath)
+        || path.startsWith(this.urlPath + "/");
+  }
+}
@@ -0,0 +1,154 @@
+package org.hackystat.sensor.ant.svn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * A small properties file that remembers facts about one SVN repository between sensor runs.
+ * There is one file per repository UUID, so the facts are shared by every url (http, svn or
+ * file) that reaches the same repository. Since SVN history never changes, facts about old
+ * revisions never go stale.
+ * <p>
+ * A file that cannot be read is treated as empty, so a damaged file only costs the server calls
+ * needed to rebuild it. Without a directory, the state is only kept in memory.
+ *
+ * @author agent
+ */
+final class RepositoryStateFile {
+
+  /** The file holding the state, or null if the state is only kept in memory. */
+  private final File file;
+
+  /** The state. */
+  private final Properties properties = new Properties();
+
+  /** True if the state differs from the file. */
+  private boolean modified = false;
+
+  /**
+   * Loads the state file for a repository from the passed directory, if the file exists.
+   *
+   * @param dir The directory holding the state files, or null to keep the state in memory.
+   * @param uuid The repository UUID.
+   */
+  RepositoryStateFile(File dir, String uuid) {
+    this.file = (dir == null) ? null : new File(dir, uuid + ".properties");
+    if (this.file != null && this.file.exists()) {
+      try {
+        InputStream in = new FileInputStream(this.file);
+        try {
+          this.properties.load(in);
+        }
+        finally {
+          in.close();
+        }
+      }
+      catch (IOException e) {
+        this.properties.clear();
+      }
+      catch (IllegalArgumentException e) {
+        // A malformed escape sequence.
+        this.properties.clear();
+      }
+    }
+  }
+
+  /**
+   * Returns the default directory for state files, .hackystat/svn in the user's home directory.
+   *
+   * @return The directory.
+   */
+  static File getDefaultDirectory() {
+    return new File(new File(System.getProperty("user.home"), ".hackystat"), "svn");
+  }
+
+  /**
+   * Returns a value as a long.
+   *
+   * @param key The key.
+   * @param defaultValue The value to return if the key is missing or not a number.
+   * @return The value.
+   */
+  long getLong(String key, long defaultValue) {
+    String value = this.properties.getProperty(key);
+    if (value != null) {
+      try {
+        return Long.parseLong(value);
+      }
+      catch (NumberFormatException e) {
+        return defaultValue;
+      }
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Sets a value.
+   *
+   * @param key The key.
+   * @param value The value.
+   */
+  void setLong(String key, long value) {
+    String newValue = String.valueOf(value);
+    if (!newValue.equals(this.properties.setProperty(key, newValue))) {
+      this.modified = true;
+    }
+  }
+
+  /**
+   * Removes a value.
+   *
+   * @param key The key.
+   */
+  void remove(String key) {
+    if (this.properties.remove(key) != null) {
+      this.modified = true;
+    }
+  }
+
+  /**
+   * Writes the state to its file if it has changed and is not kept in memory only. The state is
+   * written to a temporary file which then replaces the old one, so an interrupted save never
+   * leaves a truncated file.
+   *
+   * @throws IOException If the file cannot be written.
+   */
+  void save() throws IOException {
+    if (this.file == null || !this.modified) {
+      return;
+    }
+    File dir = this.file.getAbsoluteFile().getParentFile();
+    if (!dir.exists() && !dir.mkdirs()) {
+      throw new IOException("Could not create directory " + dir);
+    }
+    File tempFile = new File(dir, this.file.getName() + ".tmp");
+    OutputStream out = new FileOutputStream(tempFile);
+    try {
+      this.properties.store(out, "Hackystat SVN sensor repository state");
+    }
+    finally {
+      out.close();
+    }
+    // File.renameTo() does not replace an existing file on all platforms.
+    if (!tempFile.renameTo(this.file)) {
+      if (!this.file.delete() || !tempFile.renameTo(this.file)) {
+        throw new IOException("Could not replace " + this.file);
+      }
+    }
+    this.modified = false;
+  }
+
+  /**
+   * Returns the file holding the state.
+   *
+   * @return The file, or null if the state is only kept in memory.
+   */
+  File getFile() {
+    return this.file;
+  }
+}
@@ -1,13 +1,28 @@
 package org.hackystat.sensor.ant.svn;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNLogEntry;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.dav.http.DefaultHTTPConnectionFactory;
 import org.tmatesoft.svn.core.internal.io.dav.http.IHTTPConnectionFactory;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
@@ -20,7 +35,20 @@ import org.tmatesoft.svn.core.wc.SVNWCUtil;
  * @version $Id$
  */
 public class SVNCommitProcessor {
+  /** The default size of the disk tier of the file revision cache, in megabytes. */
+  public static final int DEFAULT_FILE_CACHE_MEGABYTES = 256;
+  /** The size of the memory tier of the file revision cache, in bytes. */
+  private static final long MEMORY_CACHE_BYTES = 32L * 1024L * 1024L;
+
   private SVNRepository svnRepository;
+  private File stateDirectory = RepositoryStateFile.getDefaultDirectory();
+  private RepositoryStateFile stateFile;
+  private SVNRepositoryPool svnRepositoryPool;
+  private FileRevisionCache fileRevisionCache;
+  private LastChangeMap lastChanges;
+  private long fileCacheBytes = DEFAULT_FILE_CACHE_MEGABYTES * 1024L * 1024L;
+  private boolean useDeltas = true;
+  private int threads = 1;
 
   /**
    * Constructs this instance.
@@ -44,8 +72,12 @@ public class SVNCommitProcessor {
     else if (repositoryUrl.startsWith("svn://")) {
       SVNRepositoryFactoryImpl.setup();
     }
+    else if (repositoryUrl.startsWith("file://")) {
+      // A repository on the local file system, accessed directly without a server.
+      FSRepositoryFactory.setup();
+    }
     else {
-      throw new Exception("Repository url must start with http|https|svn.");
+      throw new Exception("Repository url must start with http|https|svn|file.");
     }
 
     this.svnRepository = SVNRepositoryFactory.create(SVNURL.parseURIEncoded(repositoryUrl));
@@ -71,37 +103,19 @@ public class SVNCommitProcessor {
     // will either raise exception or give an erronous version number.
     // We try to avoid the error here.
 
-    long startLogTime = Long.MAX_VALUE;
-    long endLogTime = Long.MIN_VALUE;
-    SVNLogEntry startLog = null;
-    SVNLogEntry endLog = null;
-
     long latestRevision = this.svnRepository.getLatestRevision();
-    Collection<?> svnLogEntries = this.svnRepository.log(new String[] { "" }, null, 1,
-        latestRevision, true, true);
-    for (Object entry : svnLogEntries) {
-      SVNLogEntry log = (SVNLogEntry) entry;
-      long time = log.getDate().getTime();
-      if (time < startLogTime) {
-        startLogTime = time;
-        startLog = log;
-      }
-      if (time > endLogTime) {
-        endLogTime = time;
-        endLog = log;
-      }
-    }
+    long[] commitTimeBounds = this.getCommitTimeBounds(latestRevision);
 
-    if (startLog == null && endLog == null) {
+    if (commitTimeBounds == null) {
       // we cannot determine revision time bounds, give JavaSVN a shot
       return this.svnRepository.getDatedRevision(date);
     }
     else {
       long targetTime = date.getTime();
-      if (targetTime < startLogTime) {
+      if (targetTime < commitTimeBounds[0]) {
         return 0;
       }
-      else if (endLogTime < targetTime) {
+      else if (commitTimeBounds[1] < targetTime) {
         return latestRevision;
       }
       else {
@@ -110,6 +124,189 @@ public class SVNCommitProcessor {
     }
   }
 
+  /**
+   * Gets the times of the first and the last commit under the repository url, up to the
+   * specified revision. Commit times increase with the revision number, so the first commit is
+   * found with a log request for one entry in ascending order, and the last with one in
+   * descending order. The bounds are kept in the state file of the repository, and later calls
+   * only look at the revisions committed since, so a sensor run needs a constant number of
+   * requests however long the history is.
+   * 
+   * @param latestRevision The latest revision.
+   * 
+   * @return The first and last commit times, or null if there are no commits.
+   * 
+   * @throws Exception If there is any error.
+   */
+  private long[] getCommitTimeBounds(long latestRevision) throws Exception {
+    RepositoryStateFile state = this.getStateFile();
+    String prefix = this.getStateKeyPrefix("bounds");
+    long checkedRevision = state.getLong(prefix + "checkedRevision", 0);
+    if (checkedRevision > latestRevision) {
+      // The repository has been replaced by an older copy with the same UUID.
+      state.remove(prefix + "firstTime");
+      state.remove(prefix + "lastTime");
+      checkedRevision = 0;
+    }
+    if (checkedRevision < latestRevision) {
+      if (state.getLong(prefix + "firstTime", -1) < 0) {
+        SVNLogEntry firstLog = this.getBoundaryLogEntry(checkedRevision + 1, latestRevision);
+        if (firstLog != null) {
+          state.setLong(prefix + "firstTime", firstLog.getDate().getTime());
+        }
+      }
+      SVNLogEntry lastLog = this.getBoundaryLogEntry(latestRevision, checkedRevision + 1);
+      if (lastLog != null) {
+        state.setLong(prefix + "lastTime", lastLog.getDate().getTime());
+      }
+      state.setLong(prefix + "checkedRevision", latestRevision);
+      this.saveStateFile();
+    }
+    long firstTime = state.getLong(prefix + "firstTime", -1);
+    long lastTime = state.getLong(prefix + "lastTime", -1);
+    return (firstTime < 0 || lastTime < 0) ? null : new long[] { firstTime, lastTime };
+  }
+
+  /**
+   * Gets the log entry of the first commit under the repository url found when walking from
+   * startRevision to endRevision, which may be in either order.
+   * 
+   * @param startRevision The revision to start from.
+   * @param endRevision The revision to end at.
+   * 
+   * @return The log entry, or null if there are no commits in the range.
+   * 
+   * @throws SVNException If there is any error.
+   */
+  private SVNLogEntry getBoundaryLogEntry(long startRevision, long endRevision)
+    throws SVNException {
+    final SVNLogEntry[] boundary = new SVNLogEntry[1];
+    this.svnRepository.log(new String[] { "" }, startRevision, endRevision, false, true, 1,
+        new ISVNLogEntryHandler() {
+          public void handleLogEntry(SVNLogEntry logEntry) {
+            boundary[0] = logEntry;
+          }
+        });
+    return boundary[0];
+  }
+
+  /**
+   * Gets the latest revision of the repository.
+   * 
+   * @return The latest revision number.
+   * 
+   * @throws Exception If there is any error.
+   */
+  public long getLatestRevision() throws Exception {
+    return this.svnRepository.getLatestRevision();
+  }
+
+  /**
+   * Gets the watermark of the repository url, the last revision whose commits have been
+   * processed and sent, from the state file of the repository. A watermark above the latest
+   * revision belongs to a repository that has since been replaced, and is ignored.
+   * 
+   * @return The watermark, or -1 if there is none.
+   * 
+   * @throws Exception If there is any error.
+   */
+  public long getWatermark() throws Exception {
+    long watermark = this.getStateFile().getLong(this.getStateKeyPrefix("watermark") + "revision",
+        -1);
+    return (watermark > this.svnRepository.getLatestRevision()) ? -1 : watermark;
+  }
+
+  /**
+   * Records the watermark of the repository url in the state file of the repository. Call this
+   * only once the commits up to the revision have been sent.
+   * 
+   * @param revision The last revision whose commits have been sent.
+   * 
+   * @throws Exception If there is any error.
+   */
+  public void setWatermark(long revision) throws Exception {
+    this.getStateFile().setLong(this.getStateKeyPrefix("watermark") + "revision", revision);
+    this.saveStateFile();
+  }
+
+  /**
+   * Sets the directory holding the files that remember facts about each repository between
+   * runs, keyed by repository UUID. Defaults to .hackystat/svn in the user's home directory.
+   * 
+   * @param stateDirectory The directory, or null to keep nothing between runs.
+   */
+  public void setStateDirectory(File stateDirectory) {
+    this.stateDirectory = stateDirectory;
+    this.stateFile = null;
+  }
+
+  /**
+   * Sets the size of the disk tier of the file revision cache, which keeps the contents of the
+   * files fetched by the commit records in the cache directory of the state directory, so that
+   * runs over the same revisions do not download them again. Call this before processing any
+   * commit records.
+   * 
+   * @param megabytes The size in megabytes, or 0 to only cache contents in memory.
+   */
+  public void setFileCacheSize(int megabytes) {
+    this.fileCacheBytes = Math.max(0, megabytes) * 1024L * 1024L;
+  }
+
+  /**
+   * Sets whether the commit records fetch the new content of a modified file as a delta against
+   * its old content, which is usually cached, and rebuild it locally, instead of downloading it
+   * in full. Call this before processing any commit records. Default is true.
+   * 
+   * @param useDeltas True to fetch deltas.
+   */
+  public void setDeltaFetch(boolean useDeltas) {
+    this.useDeltas = useDeltas;
+  }
+
+  /**
+   * Gets the state file of the repository, loading it on first use.
+   * 
+   * @return The state file.
+   * 
+   * @throws SVNException If the repository UUID cannot be retrieved.
+   */
+  private RepositoryStateFile getStateFile() throws SVNException {
+    if (this.stateFile == null) {
+      this.stateFile = new RepositoryStateFile(this.stateDirectory,
+          this.svnRepository.getRepositoryUUID(true));
+    }
+    return this.stateFile;
+  }
+
+  /**
+   * Writes the state file, only warning if it cannot be written since it is just a cache.
+   */
+  private void saveStateFile() {
+    try {
+      this.stateFile.save();
+    }
+    catch (IOException e) {
+      System.out.println("Warning: Could not save " + this.stateFile.getFile() + ": "
+          + e.getMessage());
+    }
+  }
+
+  /**
+   * Gets the prefix of the state file keys that describe the repository url, which may point to
+   * a subdirectory of the repository.
+   * 
+   * @param name The name of the facts.
+   * 
+   * @return The key prefix, such as "bounds./trunk.".
+   * 
+   * @throws SVNException If the repository root cannot be retrieved.
+   */
+  private String getStateKeyPrefix(String name) throws SVNException {
+    String rootPath = this.svnRepository.getRepositoryRoot(true).getPath();
+    String path = this.svnRepository.getLocation().getPath().substring(rootPath.length());
+    return name + "." + (path.length() == 0 ? "/" : path) + ".";
+  }
+
   /**
    * Gets commit record for a specified revision. Note that if the repository
    * url supplied in the constructor points to a subdirectory of the repository
@@ -123,6 +320,7 @@ public class SVNCommitProcessor {
    * @throws Exception If there is any error.
    */
   public CommitRecord getCommitRecord(long revision) throws Exception {
+    this.getLastChangeMap().cover(revision, revision);
     Collection<?> svnLogEntries = this.svnRepository.log(new String[] { "" }, null, revision,
         revision, true, true);
 
@@ -136,7 +334,333 @@ public class SVNCommitProcessor {
     }
     else { // exactly 1 svn log entry
       SVNLogEntry logEntry = (SVNLogEntry) svnLogEntries.iterator().next();
-      return new CommitRecord(this.svnRepository, logEntry);
+      try {
+        return new CommitRecord(this.getSVNRepositoryPool(), this.getFileRevisionCache(),
+            this.lastChanges, logEntry);
+      }
+      catch (Exception e) {
+        this.lastChanges.clear();
+        throw e;
+      }
     }
   }
+
+  /**
+   * Gets the commit records for all revisions from startRevision to endRevision, inclusive, with
+   * a single log request, and passes each one to the handler in revision order as soon as its log
+   * entry arrives. Revisions without commits under the repository url are skipped, just as
+   * getCommitRecord() returns null for them.
+   * <p>
+   * The log is streamed over a separate connection, because the handler and the commit records
+   * use the session pool while the log request is still in progress. If threads is greater than
+   * one, the statistics of the commit record entries are computed on that many worker threads,
+   * across entries and revisions, before the records are passed to the handler. At most twice as
+   * many entries as there are threads are in progress at any one time.
+   * 
+   * @param startRevision The first revision.
+   * @param endRevision The last revision.
+   * @param handler The handler that receives the commit records.
+   * 
+   * @return The number of commit records passed to the handler.
+   * 
+   * @throws Exception If there is any error, including an error thrown by the handler.
+   */
+  public int processCommitRecords(long startRevision, long endRevision,
+      CommitRecordHandler handler) throws Exception {
+    if (startRevision > endRevision) {
+      // SVN would return the log in reverse order.
+      return 0;
+    }
+    SVNRepository logRepository = this.getSVNRepositoryPool().createSession();
+    CommitRecordPipeline pipeline = new CommitRecordPipeline(handler);
+    this.getLastChangeMap().cover(startRevision, endRevision);
+    boolean isComplete = false;
+    try {
+      logRepository.log(new String[] { "" }, startRevision, endRevision, true, true, pipeline);
+      pipeline.finish();
+      isComplete = true;
+    }
+    catch (SVNCancelException e) {
+      if (pipeline.failure == null) {
+        throw e;
+      }
+      throw pipeline.failure;
+    }
+    finally {
+      if (!isComplete) {
+        this.lastChanges.clear();
+      }
+      pipeline.shutdown();
+      logRepository.closeSession();
+    }
+    return pipeline.numRecords;
+  }
+
+  /**
+   * Sets the number of threads that compute commit record statistics in processCommitRecords().
+   * That many connections, plus one, are opened to the repository. Must be called before any
+   * commit records are retrieved. Defaults to 1.
+   * 
+   * @param threads The number of threads.
+   */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Gets a one line summary of the connections used to retrieve commit records and of the
+   * requests served by the file revision cache.
+   * 
+   * @return The summary.
+   * 
+   * @throws SVNException If the repository UUID cannot be retrieved.
+   */
+  public String getStatistics() throws SVNException {
+    return this.getSVNRepositoryPool().getStatistics() + " "
+        + this.getFileRevisionCache().getStatistics();
+  }
+
+  /**
+   * Closes the connections to the repository. The processor must not be used afterwards.
+   */
+  public void close() {
+    if (this.svnRepositoryPool != null) {
+      this.svnRepositoryPool.close();
+    }
+    this.svnRepository.closeSession();
+  }
+
+  /**
+   * Gets the pool of sessions used by the commit records, creating it on first use.
+   * 
+   * @return The pool.
+   */
+  private SVNRepositoryPool getSVNRepositoryPool() {
+    if (this.svnRepositoryPool == null) {
+      // One session for the thread that builds the commit records, and one for each worker.
+      this.svnRepositoryPool = new SVNRepositoryPool(this.svnRepository.getLocation(),
+          this.svnRepository.getAuthenticationManager(), this.threads + 1);
+    }
+    return this.svnRepositoryPool;
+  }
+
+  /**
+   * Gets the last revisions in which the paths under the repository url changed, as seen by the
+   * commit records built so far, creating the map on first use.
+   * 
+   * @return The map.
+   * 
+   * @throws SVNException If the repository root cannot be retrieved.
+   */
+  private LastChangeMap getLastChangeMap() throws SVNException {
+    if (this.lastChanges == null) {
+      String rootPath = this.svnRepository.getRepositoryRoot(true).getPath();
+      this.lastChanges = new LastChangeMap(this.svnRepository.getLocation().getPath().substring(
+          rootPath.length()));
+    }
+    return this.lastChanges;
+  }
+
+  /**
+   * Gets the cache of the file contents fetched by the commit records, creating it on first use.
+   * 
+   * @return The cache.
+   * 
+   * @throws SVNException If the repository UUID cannot be retrieved.
+   */
+  private FileRevisionCache getFileRevisionCache() throws SVNException {
+    if (this.fileRevisionCache == null) {
+      File cacheDirectory = (this.stateDirectory == null) ? null
+          : new File(this.stateDirectory, "cache");
+      this.fileRevisionCache = new FileRevisionCache(cacheDirectory,
+          this.svnRepository.getRepositoryUUID(true), MEMORY_CACHE_BYTES, this.fileCacheBytes);
+      this.fileRevisionCache.setUseDeltas(this.useDeltas);
+    }
+    return this.fileRevisionCache;
+  }
+
+  /**
+   * Builds a commit record from each log entry as it arrives, computes the statistics of its
+   * entries on the worker threads, and passes the records to the handler in revision order.
+   */
+  private class CommitRecordPipeline implements ISVNLogEntryHandler {
+    /** The handler that receives the commit records. */
+    private final CommitRecordHandler handler;
+    /** The worker threads, or null if the statistics are computed by the handler. */
+    private final ExecutorService executor;
+    /** The commit records whose statistics are being computed, in revision order. */
+    private final LinkedList<PendingCommitRecord> inProgress =
+      new LinkedList<PendingCommitRecord>();
+    /** The number of entries of the records in progress. */
+    private int numPendingEntries = 0;
+    /** The number of commit records passed to the handler. */
+    private int numRecords = 0;
+    /** The exception that cancelled the log request, if any. */
+    private Exception failure;
+
+    /**
+     * Creates the pipeline.
+     * 
+     * @param handler The handler that receives the commit records.
+     */
+    CommitRecordPipeline(CommitRecordHandler handler) {
+      this.handler = handler;
+      this.executor = (threads > 1) ? Executors.newFixedThreadPool(threads,
+          new WorkerThreadFactory()) : null;
+    }
+
+    /**
+     * Builds the commit record for a log entry and starts computing its statistics.
+     * 
+     * @param logEntry The log entry.
+     * @throws SVNException To cancel the log request if anything fails.
+     */
+    public void handleLogEntry(SVNLogEntry logEntry) throws SVNException {
+      try {
+        CommitRecord commitRecord = new CommitRecord(getSVNRepositoryPool(),
+            getFileRevisionCache(), lastChanges, logEntry);
+        if (this.executor == null) {
+          this.handler.handleCommitRecord(commitRecord);
+          this.numRecords++;
+          return;
+        }
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        // The number of entries of this record already waited for, which are the oldest.
+        int numDone = 0;
+        for (final CommitRecordEntry entry : commitRecord.getCommitRecordEntries()) {
+          while (this.numPendingEntries >= 2 * threads) {
+            if (this.inProgress.isEmpty()) {
+              waitFor(futures.get(numDone++));
+              this.numPendingEntries--;
+            }
+            else {
+              this.handOver();
+            }
+          }
+          futures.add(this.executor.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+              entry.computeStatistics();
+              return null;
+            }
+          }));
+          this.numPendingEntries++;
+        }
+        this.inProgress.add(new PendingCommitRecord(commitRecord,
+            futures.subList(numDone, futures.size())));
+      }
+      catch (Exception e) {
+        this.failure = e;
+        // Stop the log request.
+        throw new SVNCancelException();
+      }
+    }
+
+    /**
+     * Passes the records still in progress to the handler, once the log request is complete.
+     * 
+     * @throws Exception If there is any error.
+     */
+    void finish() throws Exception {
+      while (!this.inProgress.isEmpty()) {
+        this.handOver();
+      }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    void shutdown() {
+      if (this.executor != null) {
+        this.executor.shutdownNow();
+      }
+    }
+
+    /**
+     * Waits for the statistics of the oldest record in progress, then passes it to the handler.
+     * 
+     * @throws Exception If the statistics or the handler fail.
+     */
+    private void handOver() throws Exception {
+      PendingCommitRecord pending = this.inProgress.removeFirst();
+      this.numPendingEntries -= pending.futures.size();
+      for (Future<Object> future : pending.futures) {
+        waitFor(future);
+      }
+      this.handler.handleCommitRecord(pending.commitRecord);
+      this.numRecords++;
+    }
+
+    /**
+     * Waits for the statistics of a commit record entry.
+     * 
+     * @param future The task computing the statistics.
+     * @throws Exception If the statistics fail.
+     */
+    private void waitFor(Future<Object> future) throws Exception {
+      try {
+        future.get();
+      }
+      catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception) {
+          throw (Exception) e.getCause();
+        }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * A commit record along with the tasks computing the statistics of its entries.
+   */
+  private static class PendingCommitRecord {
+    /** The commit record. */
+    private final CommitRecord commitRecord;
+    /** The tasks computing the statistics of its entries. */
+    private final List<Future<Object>> futures;
+
+    /**
+     * Creates the instance.
+     * 
+     * @param commitRecord The commit record.
+     * @param futures The tasks computing the statistics of its entries.
+     */
+    PendingCommitRecord(CommitRecord commitRecord, List<Future<Object>> futures) {
+      this.commitRecord = commitRecord;
+      this.futures = futures;
+    }
+  }
+
+  /**
+   * Creates daemon worker threads, so that a stuck connection never prevents Ant from exiting.
+   */
+  private static class WorkerThreadFactory implements ThreadFactory {
+    /** The number of threads created so far. */
+    private int count = 0;
+
+    /**
+     * Creates a new worker thread.
+     * 
+     * @param runnable The runnable for the thread.
+     * @return The thread.
+     */
+    public synchronized Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "hackystat-svn-" + (++this.count));
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  /**
+   * Receives the commit records found by processCommitRecords().
+   */
+  public interface CommitRecordHandler {
+    /**
+     * Handles one commit record.
+     * 
+     * @param commitRecord The commit record.
+     * 
+     * @throws Exception If the record cannot be handled, which ends processCommitRecords().
+     */
+    void handleCommitRecord(CommitRecord commitRecord) throws Exception;
+  }
 }
@@ -0,0 +1,119 @@
+package org.hackystat.sensor.ant.svn;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+/**
+ * A bounded pool of SVN sessions to one repository url. An SVNRepository keeps its connection
+ * open between requests, so reusing a few sessions instead of opening connections over and over
+ * avoids running out of sockets, and lets several threads talk to the server at once. Each
+ * session is used by one thread at a time.
+ *
+ * @author agent
+ */
+final class SVNRepositoryPool {
+
+  /** The url the sessions are opened to. */
+  private final SVNURL url;
+
+  /** The authentication manager of the sessions, or null for anonymous access. */
+  private final ISVNAuthenticationManager authManager;
+
+  /** The largest number of sessions. */
+  private final int maxSessions;
+
+  /** All sessions created so far. */
+  private final List<SVNRepository> sessions = new ArrayList<SVNRepository>();
+
+  /** The sessions that are not in use. */
+  private final LinkedList<SVNRepository> idleSessions = new LinkedList<SVNRepository>();
+
+  /** The number of times a session was acquired. */
+  private long numAcquired = 0;
+
+  /**
+   * Creates an empty pool. Sessions are created as they are needed.
+   *
+   * @param url The url to open the sessions to.
+   * @param authManager The authentication manager of the sessions, or null.
+   * @param maxSessions The largest number of sessions.
+   */
+  SVNRepositoryPool(SVNURL url, ISVNAuthenticationManager authManager, int maxSessions) {
+    this.url = url;
+    this.authManager = authManager;
+    this.maxSessions = Math.max(1, maxSessions);
+  }
+
+  /**
+   * Creates a session that does not belong to the pool. The caller must close it.
+   *
+   * @return The session.
+   * @throws SVNException If the session cannot be created.
+   */
+  SVNRepository createSession() throws SVNException {
+    SVNRepository session = SVNRepositoryFactory.create(this.url);
+    if (this.authManager != null) {
+      session.setAuthenticationManager(this.authManager);
+    }
+    return session;
+  }
+
+  /**
+   * Takes an idle session from the pool, creating one if the pool is not yet full, or otherwise
+   * waiting until another thread releases one.
+   *
+   * @return The session, which must be passed to release() after use.
+   * @throws SVNException If the session cannot be created.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  synchronized SVNRepository acquire() throws SVNException, InterruptedException {
+    while (this.idleSessions.isEmpty() && this.sessions.size() >= this.maxSessions) {
+      wait();
+    }
+    this.numAcquired++;
+    if (!this.idleSessions.isEmpty()) {
+      return this.idleSessions.removeFirst();
+    }
+    SVNRepository session = createSession();
+    this.sessions.add(session);
+    return session;
+  }
+
+  /**
+   * Returns a session taken with acquire() to the pool.
+   *
+   * @param session The session.
+   */
+  synchronized void release(SVNRepository session) {
+    this.idleSessions.addFirst(session);
+    notifyAll();
+  }
+
+  /**
+   * Closes all sessions. The pool must not be used afterwards.
+   */
+  synchronized void close() {
+    for (SVNRepository session : this.sessions) {
+      session.closeSession();
+    }
+    this.sessions.clear();
+    this.idleSessions.clear();
+  }
+
+  /**
+   * Returns a one line summary of how often the sessions were reused.
+   *
+   * @return The summary.
+   */
+  synchronized String getStatistics() {
+    return "Used " + this.sessions.size() + " SVN sessions (at most " + this.maxSessions
+        + ") for " + this.numAcquired + " tasks.";
+  }
+}
@@ -1,5 +1,6 @@
 package org.hackystat.sensor.ant.svn;
 
+import java.io.File;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -9,13 +10,13 @@ import java.util.Map;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
+import org.hackystat.sensor.ant.util.LongTimeConverter;
 import org.hackystat.sensorshell.SensorShellProperties;
 import org.hackystat.sensorshell.SensorShellException;
 import org.hackystat.sensorshell.SensorShell;
 import org.hackystat.sensorshell.usermap.SensorShellMap;
 import org.hackystat.sensorshell.usermap.SensorShellMapException;
 import org.hackystat.utilities.time.period.Day;
-import org.hackystat.utilities.tstamp.Tstamp;
 import org.hackystat.utilities.tstamp.TstampSet;
 
 /**
@@ -42,6 +43,12 @@ public class SvnSensor extends Task {
   private String tool = "svn";
   private String lastIntervalInMinutesString = "";
   private int lastIntervalInMinutes;
+  private File stateDir;
+  private boolean useWatermark = true;
+  private boolean isRecentWindow = false;
+  private int threads = 4;
+  private int fileCacheSize = SVNCommitProcessor.DEFAULT_FILE_CACHE_MEGABYTES;
+  private boolean deltaFetch = true;
 
   /**
    * Sets the svn repository name. This name can be any string. It's used in
@@ -56,7 +63,7 @@ public class SvnSensor extends Task {
   /**
    * Sets the url to the svn repository. It can points to any subdirectory in
    * the repository. However, note that this sensor only supports http|https|svn
-   * protocol.
+   * protocol, and file urls to repositories on the local file system.
    * 
    * @param repositoryUrl The url to the svn repository.
    */
@@ -154,7 +161,8 @@ public class SvnSensor extends Task {
   }
   
   /**
-   * Sets the last interval in minutes. 
+   * Sets the last interval in minutes. Once a watermark exists, the sensor processes the
+   * revisions after the watermark instead (see setWatermark).
    * 
    * @param lastIntervalInMinutes The preceding interval in minutes to poll.  
    */
@@ -162,6 +170,63 @@ public class SvnSensor extends Task {
     this.lastIntervalInMinutesString = lastIntervalInMinutes;
   }
 
+  /**
+   * Sets the directory holding the files in which the sensor remembers facts about each
+   * repository between runs. Defaults to .hackystat/svn in the user's home directory.
+   * 
+   * @param stateDir The directory.
+   */
+  public void setStateDir(File stateDir) {
+    this.stateDir = stateDir;
+  }
+
+  /**
+   * Sets whether the sensor keeps a watermark, the last revision it has processed and sent.
+   * When fromDate and toDate are not set and a watermark exists, the sensor processes exactly
+   * the revisions after the watermark rather than those of lastIntervalInMinutes or the default
+   * 25 hours, so no commit is processed twice and none is missed however often the sensor runs.
+   * The watermark is kept in the state file of the repository (see stateDir) and only advanced
+   * once all data has been sent. Default is true.
+   * 
+   * @param useWatermark True to keep a watermark.
+   */
+  public void setWatermark(boolean useWatermark) {
+    this.useWatermark = useWatermark;
+  }
+
+  /**
+   * Sets the number of threads that retrieve file contents and compute the line statistics of
+   * commit entries concurrently, across entries and revisions. The sensor opens one more
+   * connection to the repository than there are threads. Default is 4.
+   * 
+   * @param threads The number of threads.
+   */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Sets the size in megabytes of the cache of file contents kept in the cache directory of
+   * stateDir, so that runs over revisions that were processed before, or that touch the same
+   * files, download less. Set it to 0 to keep no contents between runs. Default is 256.
+   * 
+   * @param fileCacheSize The size in megabytes.
+   */
+  public void setFileCacheSize(int fileCacheSize) {
+    this.fileCacheSize = fileCacheSize;
+  }
+
+  /**
+   * Sets whether the new content of a modified file is fetched as a delta against its old
+   * content and rebuilt locally, which moves much less data for large files with small changes.
+   * Set it to false to always download contents in full. Default is true.
+   * 
+   * @param deltaFetch True to fetch deltas.
+   */
+  public void setDeltaFetch(boolean deltaFetch) {
+    this.deltaFetch = deltaFetch;
+  }
+
   /**
    * Checks and make sure all properties are set up correctly.
    * 
@@ -174,11 +239,14 @@ public class SvnSensor extends Task {
     if (this.repositoryUrl == null || this.repositoryUrl.length() == 0) {
       throw new BuildException("Attribute 'repositoryUrl' must be set.");
     }
+    // Only a window that ends now may be replaced by the revisions after the watermark.
+    this.isRecentWindow = false;
 
     // If lastIntervalInMinutes is set, then we define fromDate and toDate appropriately and return.
     if (!this.lastIntervalInMinutesString.equals("")) {
       try {
         this.lastIntervalInMinutes = Integer.parseInt(this.lastIntervalInMinutesString);
+        this.isRecentWindow = true;
         long now = (new Date()).getTime();
         this.toDate = new Date(now);
         long intervalMillis = 1000L * 60 * this.lastIntervalInMinutes;
@@ -193,8 +261,10 @@ public class SvnSensor extends Task {
     // If lastIntervalInMinutes, fromDate, and toDate not set, we extract commit information for
     // the previous 25 hours. (This ensures that running the sensor as part of a daily build
     // should have enough "overlap" to not miss any entries.)
+    // Once a watermark has been recorded, execute() uses it instead of this window.
     // Then return.
     if (this.fromDateString == null && this.toDateString == null) {
+      this.isRecentWindow = true;
       long now = (new Date()).getTime();
       this.toDate = new Date(now);
       long twentyFiveHoursMillis = 1000 * 60 * 60 * 25;
@@ -244,10 +314,6 @@ public class SvnSensor extends Task {
   @Override
   public void execute() throws BuildException {
     this.validateProperties(); // sanity check.
-    if (this.isVerbose) {
-      System.out.printf("Processing commits for %s between %s (exclusive) and %s (inclusive)%n",
-          this.repositoryUrl, this.fromDate, this.toDate);
-    }
 
     try {
       Map<String, SensorShell> shellCache = new HashMap<String, SensorShell>();
@@ -265,44 +331,17 @@ public class SvnSensor extends Task {
       }
       SVNCommitProcessor processor = new SVNCommitProcessor(this.repositoryUrl, this.userName,
           this.password);
-      long startRevision = processor.getRevisionNumber(this.fromDate) + 1;
-      long endRevision = processor.getRevisionNumber(this.toDate);
-      int entriesAdded = 0;
-      TstampSet tstampSet = new TstampSet();
-      for (long revision = startRevision; revision <= endRevision; revision++) {
-        CommitRecord commitRecord = processor.getCommitRecord(revision);
-        if (commitRecord != null) {
-          String author = commitRecord.getAuthor();
-          String message = commitRecord.getMessage();
-          Date commitTime = commitRecord.getCommitTime();
-
-          for (CommitRecordEntry entry : commitRecord.getCommitRecordEntries()) {
-            if (this.isVerbose) {
-              System.out.println("Retrieved SVN data: " + 
-                  commitRecord.toString() + " - " + entry.toString());
-            }
-            // Find the shell, if possible.
-            SensorShell shell = this.getShell(shellCache, shellMap, author);
-            if (shell != null) {
-              this.processCommitEntry(shell, author, message, tstampSet
-                  .getUniqueTstamp(commitTime.getTime()), commitTime, revision, entry);
-              entriesAdded++;
-            }
-          }
-        }
+      if (this.stateDir != null) {
+        processor.setStateDirectory(this.stateDir);
       }
-      if (this.isVerbose) {
-        System.out.println("Found " + entriesAdded + " commit records.");
+      processor.setThreads(this.threads);
+      processor.setFileCacheSize(this.fileCacheSize);
+      processor.setDeltaFetch(this.deltaFetch);
+      try {
+        this.processCommits(processor, shellCache, shellMap);
       }
-
-      // Send the sensor data after all entries have been processed.
-      for (SensorShell shell : shellCache.values()) {
-        if (this.isVerbose) {
-          System.out.println("Sending data to " + shell.getProperties().getSensorBaseUser() + 
-              " at " + shell.getProperties().getSensorBaseHost());
-        }
-        shell.send();
-        shell.quit();
+      finally {
+        processor.close();
       }
     }
     catch (Exception ex) {
@@ -310,6 +349,120 @@ public class SvnSensor extends Task {
     }
   }
 
+  /**
+   * Processes the commits in the range selected by the attributes and the watermark, sends the
+   * sensor data, and advances the watermark.
+   * 
+   * @param processor The commit processor.
+   * @param shellCache The shells used so far, keyed by author.
+   * @param shellMap The shells built from the UserMap.
+   * 
+   * @throws Exception If there is any error.
+   */
+  private void processCommits(SVNCommitProcessor processor, Map<String, SensorShell> shellCache,
+      SensorShellMap shellMap) throws Exception {
+    long watermark = this.useWatermark ? processor.getWatermark() : -1;
+    long startRevision;
+    long endRevision;
+    if (this.isRecentWindow && watermark >= 0) {
+      startRevision = watermark + 1;
+      endRevision = processor.getLatestRevision();
+      if (this.isVerbose) {
+        System.out.printf("Processing commits for %s after watermark revision %d%n",
+            this.repositoryUrl, watermark);
+      }
+    }
+    else {
+      startRevision = processor.getRevisionNumber(this.fromDate) + 1;
+      endRevision = processor.getRevisionNumber(this.toDate);
+      if (this.isVerbose) {
+        System.out.printf("Processing commits for %s between %s (exclusive) and %s "
+            + "(inclusive)%n", this.repositoryUrl, this.fromDate, this.toDate);
+      }
+    }
+    CommitRecordSender sender = new CommitRecordSender(shellCache, shellMap);
+    processor.processCommitRecords(startRevision, endRevision, sender);
+    int entriesAdded = sender.entriesAdded;
+    if (this.isVerbose) {
+      System.out.println("Found " + entriesAdded + " commit records.");
+      System.out.println(processor.getStatistics());
+    }
+
+    // Send the sensor data after all entries have been processed.
+    for (SensorShell shell : shellCache.values()) {
+      if (this.isVerbose) {
+        System.out.println("Sending data to " + shell.getProperties().getSensorBaseUser() + 
+            " at " + shell.getProperties().getSensorBaseHost());
+      }
+      shell.send();
+      shell.quit();
+    }
+
+    // Only advance the watermark over a range that continues from it, so that a run over
+    // explicit dates cannot make the sensor skip the revisions in between.
+    boolean continuesWatermark = (watermark < 0) ? this.isRecentWindow
+        : startRevision <= watermark + 1;
+    if (this.useWatermark && continuesWatermark && endRevision > watermark) {
+      processor.setWatermark(endRevision);
+      if (this.isVerbose) {
+        System.out.println("Watermark advanced to revision " + endRevision);
+      }
+    }
+  }
+
+  /**
+   * Sends the entries of each commit record to the shell of its author, as the records arrive
+   * from the SVNCommitProcessor.
+   */
+  private class CommitRecordSender implements SVNCommitProcessor.CommitRecordHandler {
+    /** The shells used so far, keyed by author. */
+    private final Map<String, SensorShell> shellCache;
+    /** The shells built from the UserMap. */
+    private final SensorShellMap shellMap;
+    /** Makes the timestamps of the commit entries unique. */
+    private final TstampSet tstampSet = new TstampSet();
+    /** The number of commit entries added to shells. */
+    private int entriesAdded = 0;
+
+    /**
+     * Creates the sender.
+     * 
+     * @param shellCache The shells used so far, keyed by author.
+     * @param shellMap The shells built from the UserMap.
+     */
+    CommitRecordSender(Map<String, SensorShell> shellCache, SensorShellMap shellMap) {
+      this.shellCache = shellCache;
+      this.shellMap = shellMap;
+    }
+
+    /**
+     * Adds the entries of the commit record to the shell of its author.
+     * 
+     * @param commitRecord The commit record.
+     * @throws Exception If there is any error.
+     */
+    public void handleCommitRecord(CommitRecord commitRecord) throws Exception {
+      String author = commitRecord.getAuthor();
+      String message = commitRecord.getMessage();
+      Date commitTime = commitRecord.getCommitTime();
+
+      for (CommitRecordEntry entry : commitRecord.getCommitRecordEntries()) {
+        if (isVerbose) {
+          System.out.println("Retrieved SVN data: " + 
+              commitRecord.toString() + " - " + entry.toString());
+        }
+        // Find the shell, if possible.
+        SensorShell shell = getShell(this.shellCache, this.shellMap, author);
+        if (shell != null) {
+          processCommitEntry(shell, author, message, this.tstampSet
+              .getUniqueTstamp(commitTime.getTime()), commitTime, commitRecord.getRevision(),
+              entry);
+          this.entriesAdded++;
+        }
+      }
+    }
+  }
+
   /**
    * Returns the shell associated with the specified author, or null if not found. 
    * The shellCache is
@@ -393,12 +546,12 @@ public class SvnSensor extends Task {
       int linesDeleted = entry.isTextFile() ? entry.getLinesDeleted() : 0;
 
       Map<String, String> pMap = new HashMap<String, String>();
-      String timestampString = Tstamp.makeTimestamp(timestamp).toString();
+      String timestampString = LongTimeConverter.convertLongToString(timestamp);
       pMap.put("SensorDataType", "Commit");
       pMap.put("Resource", file);
       pMap.put("Tool", "Subversion");
       pMap.put("Timestamp", timestampString);
-      pMap.put("Runtime", Tstamp.makeTimestamp(commitTime.getTime()).toString());
+      pMap.put("Runtime", LongTimeConverter.convertLongToString(commitTime.getTime()));
       pMap.put("repository", this.repositoryName);
       pMap.put("totalLines", String.valueOf(totalLines));
       pMap.put("linesAdded", String.valueOf(linesAdded));
@@ -0,0 +1,202 @@
+package org.hackystat.sensor.ant.svn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+/**
+ * Tests the FileRevisionCache against a local repository holding two files.
+ *
+ * @author agent
+ */
+public class TestFileRevisionCache {
+
+  /** The content of the first file. */
+  private static final byte[] FIRST = "first\nfile\n".getBytes();
+
+  /** The content of the second file. */
+  private static final byte[] SECOND = "second\nfile\n".getBytes();
+
+  /** The content of the first file in revision 2. */
+  private static final byte[] CHANGED = "first\nchanged\nfile\n".getBytes();
+
+  /** The directory of the local repository. */
+  private File repositoryDir;
+
+  /** The directory of the disk tier. */
+  private File cacheDir;
+
+  /** A session to the repository. */
+  private SVNRepository svnRepository;
+
+  /**
+   * Creates a local repository with two files in revision 1, and in revision 2 changes the first
+   * and copies it, with another change, to a third.
+   * @throws Exception If the repository cannot be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    FSRepositoryFactory.setup();
+    this.repositoryDir = File.createTempFile("TestFileRevisionCache", "");
+    this.repositoryDir.delete();
+    this.cacheDir = File.createTempFile("TestFileRevisionCache", "");
+    this.cacheDir.delete();
+    SVNURL url = SVNRepositoryFactory.createLocalRepository(this.repositoryDir, true, false);
+    this.svnRepository = SVNRepositoryFactory.create(url);
+    ISVNEditor editor = this.svnRepository.getCommitEditor("Add files", null);
+    editor.openRoot(-1);
+    addFile(editor, "first.txt", FIRST);
+    addFile(editor, "second.txt", SECOND);
+    editor.closeDir();
+    editor.closeEdit();
+    editor = this.svnRepository.getCommitEditor("Change files", null);
+    editor.openRoot(-1);
+    editor.openFile("first.txt", 1);
+    sendContent(editor, "first.txt", FIRST, CHANGED);
+    editor.addFile("copy.txt", "/first.txt", 1);
+    sendContent(editor, "copy.txt", FIRST, SECOND);
+    editor.closeDir();
+    editor.closeEdit();
+  }
+
+  /**
+   * Closes the session and deletes the directories.
+   * @throws IOException If a directory cannot be deleted.
+   */
+  @After
+  public void tearDown() throws IOException {
+    this.svnRepository.closeSession();
+    delete(this.repositoryDir);
+    if (this.cacheDir.exists()) {
+      delete(this.cacheDir);
+    }
+  }
+
+  /**
+   * Tests that contents are served from memory within a run and from disk in the next run.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testMemoryAndDisk() throws Exception {
+    FileRevisionCache cache = new FileRevisionCache(this.cacheDir, "uuid", 1024, 1024 * 1024);
+    assertArrayEquals("Checking download", FIRST, cache.getContent(this.svnRepository,
+        "/first.txt", 1));
+    assertArrayEquals("Checking memory", FIRST, cache.getContent(this.svnRepository,
+        "/first.txt", 1));
+    assertTrue("Checking memory hit", cache.getStatistics().startsWith(
+        "File revision cache: 1 hits (0 from disk), 1 downloads"));
+
+    cache = new FileRevisionCache(this.cacheDir, "uuid", 1024, 1024 * 1024);
+    assertArrayEquals("Checking disk", FIRST, cache.getContent(this.svnRepository,
+        "/first.txt", 1));
+    assertTrue("Checking disk hit", cache.getStatistics().startsWith(
+        "File revision cache: 1 hits (1 from disk), 0 downloads"));
+
+    cache = new FileRevisionCache(this.cacheDir, "other", 1024, 1024 * 1024);
+    cache.getContent(this.svnRepository, "/first.txt", 1);
+    assertTrue("Checking other repository", cache.getStatistics().startsWith(
+        "File revision cache: 0 hits (0 from disk), 1 downloads"));
+  }
+
+  /**
+   * Tests that the disk tier evicts the least recently used file to stay within its bound.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testDiskBound() throws Exception {
+    FileRevisionCache cache = new FileRevisionCache(this.cacheDir, "uuid", 1024, 1024 * 1024);
+    cache.getContent(this.svnRepository, "/first.txt", 1);
+    File[] files = new File(this.cacheDir, "uuid").listFiles();
+    assertEquals("Checking one file", 1, files.length);
+
+    cache = new FileRevisionCache(this.cacheDir, "uuid", 1024, files[0].length() + 10);
+    assertArrayEquals("Checking second", SECOND, cache.getContent(this.svnRepository,
+        "/second.txt", 1));
+    assertEquals("Checking eviction", 1, new File(this.cacheDir, "uuid").listFiles().length);
+    cache.getContent(this.svnRepository, "/first.txt", 1);
+    assertTrue("Checking evicted file downloaded", cache.getStatistics().startsWith(
+        "File revision cache: 0 hits (0 from disk), 2 downloads"));
+  }
+
+  /**
+   * Tests that new contents are rebuilt from deltas against old ones, also across a copy, and
+   * that an unchanged file needs no delta.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testDeltas() throws Exception {
+    FileRevisionCache cache = new FileRevisionCache(null, "uuid", 1024, 0);
+    assertArrayEquals("Checking changed", CHANGED, cache.getContent(this.svnRepository,
+        "/first.txt", 2, "/first.txt", 1, FIRST));
+    assertArrayEquals("Checking copied", SECOND, cache.getContent(this.svnRepository,
+        "/copy.txt", 2, "/first.txt", 1, FIRST));
+    assertArrayEquals("Checking unchanged", SECOND, cache.getContent(this.svnRepository,
+        "/second.txt", 2, "/second.txt", 1, SECOND));
+    assertTrue("Checking deltas", cache.getStatistics().endsWith(
+        "0 downloads of 0 KB, 3 deltas of 0 KB."));
+    assertEquals("Checking session location restored", this.svnRepository.getRepositoryRoot(
+        true), this.svnRepository.getLocation());
+  }
+
+  /**
+   * Adds a file to the root directory.
+   * @param editor The commit editor.
+   * @param name The name of the file.
+   * @param content The content of the file.
+   * @throws Exception If the file cannot be added.
+   */
+  private static void addFile(ISVNEditor editor, String name, byte[] content) throws Exception {
+    editor.addFile(name, null, -1);
+    editor.applyTextDelta(name, null);
+    String checksum = new SVNDeltaGenerator().sendDelta(name, new ByteArrayInputStream(content),
+        editor, true);
+    editor.closeFile(name, checksum);
+  }
+
+  /**
+   * Sends the new content of an opened or copied file as a delta against its old content.
+   * @param editor The commit editor.
+   * @param name The name of the file.
+   * @param oldContent The old content of the file.
+   * @param content The new content of the file.
+   * @throws Exception If the content cannot be sent.
+   */
+  private static void sendContent(ISVNEditor editor, String name, byte[] oldContent,
+      byte[] content) throws Exception {
+    editor.applyTextDelta(name, null);
+    String checksum = new SVNDeltaGenerator().sendDelta(name, new ByteArrayInputStream(
+        oldContent), 0, new ByteArrayInputStream(content), editor, true);
+    editor.closeFile(name, checksum);
+  }
+
+  /**
+   * Deletes a file or directory tree.
+   * @param file The file or directory.
+   * @throws IOException If it cannot be deleted.
+   */
+  private static void delete(File file) throws IOException {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    if (!file.delete()) {
+      throw new IOException("Could not delete " + file);
+    }
+  }
+}
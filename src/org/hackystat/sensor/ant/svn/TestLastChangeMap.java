@@ -0,0 +1,85 @@
+package org.hackystat.sensor.ant.svn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+
+/**
+ * Tests the LastChangeMap.
+ *
+ * @author agent
+ */
+public class TestLastChangeMap {
+
+  /**
+   * Tests that changes are remembered, and forgotten when a parent directory is replaced.
+   */
+  @Test
+  public void testChangesAndReplacements() {
+    LastChangeMap map = new LastChangeMap("/trunk");
+    map.cover(1, 2);
+    SVNLogEntry entry = logEntry(1, new SVNLogEntryPath("/trunk/a/F.java", 'A', null, -1),
+        new SVNLogEntryPath("/branches/G.java", 'A', null, -1));
+    map.removeReplaced(entry);
+    map.addChanged(entry, Collections.<String>emptyList());
+    assertEquals("Checking added", 1, map.getLastChange("/trunk/a/F.java"));
+    assertFalse("Checking not known as file", map.isFile("/trunk/a/F.java"));
+    assertEquals("Checking outside url", -1, map.getLastChange("/branches/G.java"));
+
+    entry = logEntry(2, new SVNLogEntryPath("/trunk/a/F.java", 'M', null, -1));
+    map.removeReplaced(entry);
+    assertEquals("Checking lookup before update", 1, map.getLastChange("/trunk/a/F.java"));
+    map.addChanged(entry, Arrays.asList("/trunk/a/F.java"));
+    assertEquals("Checking modified", 2, map.getLastChange("/trunk/a/F.java"));
+    assertTrue("Checking file", map.isFile("/trunk/a/F.java"));
+
+    map.cover(3, 3);
+    entry = logEntry(3, new SVNLogEntryPath("/trunk/a", 'R', "/trunk/b", 2),
+        new SVNLogEntryPath("/trunk/ab", 'A', null, -1));
+    map.removeReplaced(entry);
+    assertEquals("Checking replaced parent", -1, map.getLastChange("/trunk/a/F.java"));
+    assertFalse("Checking replaced file", map.isFile("/trunk/a/F.java"));
+    map.addChanged(entry, Collections.<String>emptyList());
+    assertEquals("Checking sibling", 3, map.getLastChange("/trunk/ab"));
+  }
+
+  /**
+   * Tests that the map is emptied when revisions are skipped.
+   */
+  @Test
+  public void testGap() {
+    LastChangeMap map = new LastChangeMap("");
+    map.cover(5, 5);
+    SVNLogEntry entry = logEntry(5, new SVNLogEntryPath("/F.java", 'A', null, -1));
+    map.removeReplaced(entry);
+    map.addChanged(entry, Collections.<String>emptyList());
+    map.cover(6, 9);
+    assertEquals("Checking next revisions", 5, map.getLastChange("/F.java"));
+    map.cover(11, 11);
+    assertEquals("Checking gap", -1, map.getLastChange("/F.java"));
+  }
+
+  /**
+   * Creates a log entry.
+   * @param revision The revision.
+   * @param paths The changed paths.
+   * @return The log entry.
+   */
+  private static SVNLogEntry logEntry(long revision, SVNLogEntryPath... paths) {
+    Map<String, SVNLogEntryPath> changedPaths = new HashMap<String, SVNLogEntryPath>();
+    for (SVNLogEntryPath path : paths) {
+      changedPaths.put(path.getPath(), path);
+    }
+    return new SVNLogEntry(changedPaths, revision, "author", new Date(), "message");
+  }
+}
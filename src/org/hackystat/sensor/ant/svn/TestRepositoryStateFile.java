@@ -0,0 +1,89 @@
+package org.hackystat.sensor.ant.svn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the RepositoryStateFile.
+ *
+ * @author agent
+ */
+public class TestRepositoryStateFile {
+
+  /** The directory holding the state files. */
+  private File dir;
+
+  /**
+   * Creates an empty directory for the state files.
+   * @throws IOException If the directory cannot be created.
+   */
+  @Before
+  public void setUp() throws IOException {
+    this.dir = File.createTempFile("TestRepositoryStateFile", "");
+    this.dir.delete();
+  }
+
+  /** Deletes the directory. */
+  @After
+  public void tearDown() {
+    File[] files = this.dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    this.dir.delete();
+  }
+
+  /**
+   * Tests that values survive a save and load, and that removed values are gone.
+   * @throws IOException If a problem occurs.
+   */
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    RepositoryStateFile state = new RepositoryStateFile(this.dir, "uuid");
+    assertEquals("Checking missing value", -1, state.getLong("a", -1));
+    state.setLong("a", 42);
+    state.setLong("b", 7);
+    state.save();
+
+    state = new RepositoryStateFile(this.dir, "uuid");
+    assertEquals("Checking value", 42, state.getLong("a", -1));
+    state.remove("b");
+    state.save();
+
+    state = new RepositoryStateFile(this.dir, "uuid");
+    assertEquals("Checking removed value", -1, state.getLong("b", -1));
+    assertEquals("Checking other repository", -1,
+        new RepositoryStateFile(this.dir, "other").getLong("a", -1));
+  }
+
+  /**
+   * Tests that a damaged file and a memory-only state are treated as empty.
+   * @throws IOException If a problem occurs.
+   */
+  @Test
+  public void testDamagedAndMemoryOnly() throws IOException {
+    this.dir.mkdirs();
+    Writer writer = new FileWriter(new File(this.dir, "uuid.properties"));
+    writer.write("a=not a number\nb=\\u00zz\n");
+    writer.close();
+    assertEquals("Checking damaged file", -1,
+        new RepositoryStateFile(this.dir, "uuid").getLong("a", -1));
+
+    RepositoryStateFile state = new RepositoryStateFile(null, "uuid");
+    assertNull("Checking no file", state.getFile());
+    state.setLong("a", 1);
+    state.save();
+    assertEquals("Checking memory value", 1, state.getLong("a", -1));
+  }
+}
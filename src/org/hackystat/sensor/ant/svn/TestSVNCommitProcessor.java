@@ -0,0 +1,201 @@
+package org.hackystat.sensor.ant.svn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+/**
+ * Tests the SVNCommitProcessor against a local repository accessed through a file url.
+ *
+ * @author agent
+ */
+public class TestSVNCommitProcessor {
+
+  /** The directory of the local repository. */
+  private File repositoryDir;
+
+  /** The state directory of the processor. */
+  private File stateDir;
+
+  /** The url of the local repository. */
+  private SVNURL url;
+
+  /**
+   * Creates a local repository that adds a file in revision 1 and changes it in revision 2.
+   * @throws Exception If the repository cannot be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    FSRepositoryFactory.setup();
+    this.repositoryDir = File.createTempFile("TestSVNCommitProcessor", "");
+    this.repositoryDir.delete();
+    this.stateDir = File.createTempFile("TestSVNCommitProcessor", "");
+    this.stateDir.delete();
+    this.url = SVNRepositoryFactory.createLocalRepository(this.repositoryDir, true, false);
+    SVNRepository svnRepository = SVNRepositoryFactory.create(this.url);
+    try {
+      ISVNEditor editor = svnRepository.getCommitEditor("Add file", null);
+      editor.openRoot(-1);
+      editor.addFile("Foo.java", null, -1);
+      sendContent(editor, "Foo.java", "".getBytes(), "a\nb\nc\n".getBytes());
+      editor.closeDir();
+      editor.closeEdit();
+      editor = svnRepository.getCommitEditor("Change file", null);
+      editor.openRoot(-1);
+      editor.openFile("Foo.java", 1);
+      sendContent(editor, "Foo.java", "a\nb\nc\n".getBytes(), "a\nx\nc\nd\n".getBytes());
+      editor.closeDir();
+      editor.closeEdit();
+    }
+    finally {
+      svnRepository.closeSession();
+    }
+  }
+
+  /**
+   * Deletes the directories.
+   * @throws IOException If a directory cannot be deleted.
+   */
+  @After
+  public void tearDown() throws IOException {
+    delete(this.repositoryDir);
+    if (this.stateDir.exists()) {
+      delete(this.stateDir);
+    }
+  }
+
+  /**
+   * Tests that the commits of a repository on the local file system are processed.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testFileUrl() throws Exception {
+    SVNCommitProcessor processor = new SVNCommitProcessor(this.url.toString(), null, null);
+    try {
+      processor.setStateDirectory(this.stateDir);
+      assertEquals("Checking latest revision", 2, processor.getLatestRevision());
+      CommitRecord commitRecord = processor.getCommitRecord(2);
+      assertEquals("Checking message", "Change file", commitRecord.getMessage());
+      Collection<CommitRecordEntry> entries = commitRecord.getCommitRecordEntries();
+      assertEquals("Checking entries", 1, entries.size());
+      CommitRecordEntry entry = entries.iterator().next();
+      assertTrue("Checking text file", entry.isTextFile());
+      assertEquals("Checking lines added", 2, entry.getLinesAdded());
+      assertEquals("Checking lines deleted", 1, entry.getLinesDeleted());
+      assertEquals("Checking total lines", 4, entry.getTotalLines());
+    }
+    finally {
+      processor.close();
+    }
+  }
+
+  /**
+   * Tests that a commit with more entries than the worker threads may have in progress is passed
+   * to the handler complete, after the earlier commits.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testConcurrentEntries() throws Exception {
+    SVNRepository svnRepository = SVNRepositoryFactory.create(this.url);
+    try {
+      ISVNEditor editor = svnRepository.getCommitEditor("Add files", null);
+      editor.openRoot(-1);
+      for (int i = 0; i < 9; i++) {
+        editor.addFile("Bar" + i + ".java", null, -1);
+        sendContent(editor, "Bar" + i + ".java", "".getBytes(), "a\nb\n".getBytes());
+      }
+      editor.closeDir();
+      editor.closeEdit();
+    }
+    finally {
+      svnRepository.closeSession();
+    }
+    SVNCommitProcessor processor = new SVNCommitProcessor(this.url.toString(), null, null);
+    final List<CommitRecord> commitRecords = new ArrayList<CommitRecord>();
+    try {
+      processor.setThreads(2);
+      int numRecords = processor.processCommitRecords(1, 3,
+          new SVNCommitProcessor.CommitRecordHandler() {
+            public void handleCommitRecord(CommitRecord commitRecord) {
+              commitRecords.add(commitRecord);
+            }
+          });
+      assertEquals("Checking records", 3, numRecords);
+    }
+    finally {
+      processor.close();
+    }
+    for (int i = 0; i < 3; i++) {
+      assertEquals("Checking order", i + 1, commitRecords.get(i).getRevision());
+    }
+    Collection<CommitRecordEntry> entries = commitRecords.get(2).getCommitRecordEntries();
+    assertEquals("Checking entries", 9, entries.size());
+    for (CommitRecordEntry entry : entries) {
+      assertEquals("Checking lines added", 2, entry.getLinesAdded());
+    }
+  }
+
+  /**
+   * Tests that urls of unsupported protocols are rejected.
+   */
+  @Test
+  public void testUnsupportedUrl() {
+    try {
+      new SVNCommitProcessor("ftp://localhost/repository", null, null);
+      fail("ftp urls are not supported.");
+    }
+    catch (Exception e) {
+      assertTrue("Checking message", e.getMessage().startsWith("Repository url must start"));
+    }
+  }
+
+  /**
+   * Sends the new content of an open file and closes it.
+   * @param editor The commit editor.
+   * @param path The path of the file.
+   * @param oldContent The old content.
+   * @param content The new content.
+   * @throws Exception If the content cannot be sent.
+   */
+  private static void sendContent(ISVNEditor editor, String path, byte[] oldContent,
+      byte[] content) throws Exception {
+    editor.applyTextDelta(path, null);
+    String checksum = new SVNDeltaGenerator().sendDelta(path, new ByteArrayInputStream(
+        oldContent), 0, new ByteArrayInputStream(content), editor, true);
+    editor.closeFile(path, checksum);
+  }
+
+  /**
+   * Deletes a file or a directory and its contents.
+   * @param file The file or directory.
+   * @throws IOException If it cannot be deleted.
+   */
+  private static void delete(File file) throws IOException {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    if (!file.delete()) {
+      throw new IOException("Could not delete " + file);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package org.hackystat.sensor.ant.svn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+/**
+ * Tests the SVNRepositoryPool against an empty local repository.
+ *
+ * @author agent
+ */
+public class TestSVNRepositoryPool {
+
+  /** The directory of the local repository. */
+  private File repositoryDir;
+
+  /** The pool. */
+  private SVNRepositoryPool pool;
+
+  /**
+   * Creates a local repository and a pool of at most two sessions to it.
+   * @throws Exception If the repository cannot be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    FSRepositoryFactory.setup();
+    this.repositoryDir = File.createTempFile("TestSVNRepositoryPool", "");
+    this.repositoryDir.delete();
+    SVNURL url = SVNRepositoryFactory.createLocalRepository(this.repositoryDir, true, false);
+    this.pool = new SVNRepositoryPool(url, null, 2);
+  }
+
+  /**
+   * Closes the pool and deletes the repository.
+   * @throws IOException If the repository cannot be deleted.
+   */
+  @After
+  public void tearDown() throws IOException {
+    this.pool.close();
+    delete(this.repositoryDir);
+  }
+
+  /**
+   * Tests that released sessions are reused and that a full pool blocks until one is released.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testReuseAndBound() throws Exception {
+    SVNRepository first = this.pool.acquire();
+    assertEquals("Checking session works", 0, first.getLatestRevision());
+    this.pool.release(first);
+    assertSame("Checking reuse", first, this.pool.acquire());
+    SVNRepository second = this.pool.acquire();
+    assertNotSame("Checking new session", first, second);
+
+    final SVNRepository[] third = new SVNRepository[1];
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          third[0] = pool.acquire();
+        }
+        catch (Exception e) {
+          // third stays null.
+        }
+      }
+    };
+    waiter.start();
+    waiter.join(200);
+    assertTrue("Checking acquire blocks on a full pool", waiter.isAlive());
+    this.pool.release(second);
+    waiter.join(5000);
+    assertFalse("Checking acquire resumes", waiter.isAlive());
+    assertSame("Checking released session handed over", second, third[0]);
+    assertTrue("Checking statistics", this.pool.getStatistics().startsWith("Used 2 SVN sessions"));
+  }
+
+  /**
+   * Deletes a file or directory tree.
+   * @param file The file or directory.
+   * @throws IOException If it cannot be deleted.
+   */
+  private static void delete(File file) throws IOException {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    if (!file.delete()) {
+      throw new IOException("Could not delete " + file);
+    }
+  }
+}
@@ -0,0 +1,249 @@
+package org.hackystat.sensor.ant.task;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A record of the data files whose sensor data has already been sent, used by the incremental
+ * mode of HackystatSensorTask to skip data files that have not changed since the last run.
+ * <p>
+ * Each data file is recorded with its size, last modification time and an MD5 hash of its
+ * contents. A file is unchanged if its size and modification time match the record. If only the
+ * modification time differs (for example, because the report was regenerated with the same
+ * contents), the file is hashed and is unchanged if the hash matches. Unchanged files are thus
+ * normally detected without being read.
+ * <p>
+ * The manifest is stored as a UTF-8 text file with one line per data file:
+ * <pre>
+ * size mtime md5 absolute-path
+ * </pre>
+ * Lines that cannot be parsed are ignored, so a damaged manifest only causes files to be sent
+ * again.
+ *
+ * @author agent
+ */
+public class DataFileManifest {
+
+  /** The first line of every manifest file. */
+  private static final String HEADER = "# Hackystat sensor data file manifest, version 1";
+
+  /** The characters used to print hashes. */
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /** The file that holds the manifest. */
+  private final File manifestFile;
+
+  /** Maps the absolute path of each recorded data file to its entry. */
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  /** True if the entries differ from the manifest file. */
+  private boolean modified = false;
+
+  /**
+   * Creates a manifest backed by the passed file, loading the file if it exists.
+   *
+   * @param manifestFile The manifest file.
+   * @throws IOException If the manifest file exists but cannot be read.
+   */
+  public DataFileManifest(File manifestFile) throws IOException {
+    this.manifestFile = manifestFile;
+    if (manifestFile.exists()) {
+      load();
+    }
+  }
+
+  /**
+   * Returns true if the passed data file has been recorded and has not changed since.
+   *
+   * @param dataFile The data file.
+   * @return True if the file is unchanged.
+   * @throws IOException If the file needed to be hashed but could not be read.
+   */
+  public synchronized boolean isUnchanged(File dataFile) throws IOException {
+    Entry entry = this.entries.get(dataFile.getAbsolutePath());
+    if (entry == null || entry.size != dataFile.length()) {
+      return false;
+    }
+    long lastModified = dataFile.lastModified();
+    if (entry.lastModified == lastModified) {
+      return true;
+    }
+    if (entry.hash.equals(hash(dataFile))) {
+      // Same contents: remember the new time so the file need not be hashed again.
+      entry.lastModified = lastModified;
+      this.modified = true;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Records the current state of a data file whose sensor data has been sent.
+   *
+   * @param dataFile The data file.
+   * @throws IOException If the file cannot be read.
+   */
+  public synchronized void record(File dataFile) throws IOException {
+    // Read the size and time first, so that a file changed during hashing is hashed again later.
+    Entry entry = new Entry(dataFile.length(), dataFile.lastModified(), hash(dataFile));
+    this.entries.put(dataFile.getAbsolutePath(), entry);
+    this.modified = true;
+  }
+
+  /**
+   * Writes the manifest to its file if it has changed since it was loaded or last saved. The
+   * manifest is written to a temporary file which then replaces the old one, so an interrupted
+   * save never leaves a truncated manifest behind.
+   *
+   * @throws IOException If the manifest cannot be written.
+   */
+  public synchronized void save() throws IOException {
+    if (!this.modified) {
+      return;
+    }
+    File dir = this.manifestFile.getAbsoluteFile().getParentFile();
+    if (dir != null && !dir.exists() && !dir.mkdirs()) {
+      throw new IOException("Could not create directory " + dir);
+    }
+    File tempFile = new File(dir, this.manifestFile.getName() + ".tmp");
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile),
+        "UTF-8"));
+    try {
+      writer.write(HEADER);
+      writer.write('\n');
+      for (Map.Entry<String, Entry> mapEntry : this.entries.entrySet()) {
+        Entry entry = mapEntry.getValue();
+        writer.write(entry.size + " " + entry.lastModified + " " + entry.hash + " "
+            + mapEntry.getKey() + "\n");
+      }
+    }
+    finally {
+      writer.close();
+    }
+    // File.renameTo() does not replace an existing file on all platforms.
+    if (!tempFile.renameTo(this.manifestFile)) {
+      if (!this.manifestFile.delete() || !tempFile.renameTo(this.manifestFile)) {
+        throw new IOException("Could not replace " + this.manifestFile);
+      }
+    }
+    this.modified = false;
+  }
+
+  /**
+   * Returns the number of recorded data files.
+   *
+   * @return The number of entries.
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Reads the entries from the manifest file.
+   *
+   * @throws IOException If the file cannot be read.
+   */
+  private void load() throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+        this.manifestFile), "UTF-8"));
+    try {
+      String line = reader.readLine();
+      if (!HEADER.equals(line)) {
+        // An unknown format; start afresh.
+        return;
+      }
+      while ((line = reader.readLine()) != null) {
+        int sizeEnd = line.indexOf(' ');
+        int timeEnd = (sizeEnd < 0) ? -1 : line.indexOf(' ', sizeEnd + 1);
+        int hashEnd = (timeEnd < 0) ? -1 : line.indexOf(' ', timeEnd + 1);
+        if (hashEnd < 0) {
+          continue;
+        }
+        try {
+          long size = Long.parseLong(line.substring(0, sizeEnd));
+          long lastModified = Long.parseLong(line.substring(sizeEnd + 1, timeEnd));
+          this.entries.put(line.substring(hashEnd + 1),
+              new Entry(size, lastModified, line.substring(timeEnd + 1, hashEnd)));
+        }
+        catch (NumberFormatException e) {
+          // Skip the damaged line.
+          continue;
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Returns the MD5 hash of the contents of the passed file, as a hexadecimal string.
+   *
+   * @param file The file.
+   * @return The hash.
+   * @throws IOException If the file cannot be read.
+   */
+  static String hash(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("MD5");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IOException("MD5 is not available: " + e.getMessage());
+    }
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[65536];
+      int count;
+      while ((count = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, count);
+      }
+    }
+    finally {
+      in.close();
+    }
+    byte[] bytes = digest.digest();
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+
+  /**
+   * The recorded state of one data file.
+   */
+  private static class Entry {
+    /** The size of the file in bytes. */
+    private final long size;
+    /** The last modification time of the file. */
+    private long lastModified;
+    /** The MD5 hash of the file's contents. */
+    private final String hash;
+
+    /**
+     * Creates an entry.
+     * @param size The size of the file in bytes.
+     * @param lastModified The last modification time of the file.
+     * @param hash The MD5 hash of the file's contents.
+     */
+    Entry(long size, long lastModified, String hash) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package org.hackystat.sensor.ant.task;
+
+import java.io.File;
+
+/**
+ * Processes a single data file on behalf of a HackystatSensorTask. Sensors pass an instance to
+ * HackystatSensorTask.processDataFiles(), which decides whether the data files are processed
+ * one at a time on the Ant thread or concurrently on a pool of worker threads.
+ * <p>
+ * Implementations must create their sensor data using the task's getUniqueTstamp() and
+ * addSensorData() methods rather than accessing the TstampSet and SensorShell directly, so that
+ * the data can be buffered and sent in order when the files are processed concurrently.
+ * 
+ * @author agent
+ */
+public interface DataFileProcessor {
+
+  /**
+   * Processes the passed data file, creating sensor data for it.
+   * 
+   * @param dataFile The data file.
+   * @return The number of sensor data instances created.
+   * @throws Exception If problems occur processing the file.
+   */
+  int process(File dataFile) throws Exception;
+}
@@ -0,0 +1,241 @@
+package org.hackystat.sensor.ant.task;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * A build-wide cache of FileSet scan results, shared by all of the sensor tasks in a project.
+ * Most builds point every sensor at the same source tree, and without the cache each sensor
+ * walks that tree again with its own DirectoryScanner. The cache is stored as an Ant project
+ * reference, so it lives exactly as long as the build (or the antcall) that created it.
+ * <p>
+ * Scans are keyed by a signature of the FileSet definition: its base directory, its merged
+ * include and exclude patterns, and its default exclude and symbolic link settings. A FileSet
+ * whose definition changes between tasks therefore gets a fresh scan, and the entries made for
+ * its old definition are discarded along with every index derived from them. FileSets with
+ * selectors cannot be summarized this way, and are scanned every time.
+ * <p>
+ * Besides the file lists, the cache holds indexes derived from them (such as a
+ * JavaClass2FilePathMapper), so that those are also built once per build. Indexes must not be
+ * modified once built, since they may be used by several tasks and threads at once.
+ *
+ * @author agent
+ */
+public final class FileSetScanCache {
+
+  /** The id under which the cache is stored in the project's references. */
+  public static final String REFERENCE_ID = "hackystat.sensor.ant.filesetscancache";
+
+  /** The project whose FileSets are scanned. */
+  private final Project project;
+
+  /** Maps each FileSet signature to the files it selects. */
+  private final Map<String, List<File>> scans = new HashMap<String, List<File>>();
+
+  /** Maps each index name and combined FileSet signature to the index built from the files. */
+  private final Map<String, Object> indexes = new HashMap<String, Object>();
+
+  /** The signature each FileSet had when it was last scanned. */
+  private final Map<FileSet, String> lastSignatures = new IdentityHashMap<FileSet, String>();
+
+  /**
+   * Builds an index from the files selected by a list of FileSets.
+   *
+   * @param <T> The type of the index.
+   */
+  public interface IndexBuilder<T> {
+    /**
+     * Builds the index.
+     * @param files The files selected by the FileSets.
+     * @return The index.
+     */
+    T build(List<File> files);
+  }
+
+  /**
+   * Creates a cache for the passed project.
+   * @param project The project.
+   */
+  private FileSetScanCache(Project project) {
+    this.project = project;
+  }
+
+  /**
+   * Returns the cache for the passed project, creating and registering it on first use.
+   *
+   * @param project The project.
+   * @return The project's cache.
+   */
+  public static FileSetScanCache getInstance(Project project) {
+    synchronized (project) {
+      Object reference = project.getReference(REFERENCE_ID);
+      if (reference instanceof FileSetScanCache) {
+        return (FileSetScanCache) reference;
+      }
+      FileSetScanCache cache = new FileSetScanCache(project);
+      // Don't displace a cache registered by a copy of this class from another classloader.
+      if (reference == null) {
+        project.addReference(REFERENCE_ID, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Returns the files selected by the passed FileSets, in FileSet order, scanning only those
+   * FileSets whose current definition has not been scanned before.
+   *
+   * @param filesets The FileSets.
+   * @return A new list of the selected files, resolved against the project.
+   */
+  public List<File> getFiles(List<FileSet> filesets) {
+    List<File> files = new ArrayList<File>();
+    for (FileSet fileset : filesets) {
+      files.addAll(getFiles(fileset));
+    }
+    return files;
+  }
+
+  /**
+   * Returns the index with the passed name built from the files selected by the passed FileSets,
+   * building it with the passed builder if the cache does not yet hold one.
+   *
+   * @param <T> The type of the index.
+   * @param filesets The FileSets.
+   * @param name The name of the index, unique to the type of index built by the builder.
+   * @param builder Builds the index if needed.
+   * @return The index.
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized <T> T getIndex(List<FileSet> filesets, String name,
+      IndexBuilder<T> builder) {
+    StringBuilder key = new StringBuilder(name);
+    for (FileSet fileset : filesets) {
+      String signature = getSignature(fileset);
+      if (signature == null) {
+        // Can't tell whether the files have changed, so don't cache anything derived from them.
+        return builder.build(getFiles(filesets));
+      }
+      key.append('\u0000').append(signature);
+    }
+    String indexKey = key.toString();
+    T index = (T) this.indexes.get(indexKey);
+    if (index == null) {
+      index = builder.build(getFiles(filesets));
+      this.indexes.put(indexKey, index);
+    }
+    return index;
+  }
+
+  /**
+   * Discards all scans and indexes, so that the next request rescans the file system.
+   */
+  public synchronized void clear() {
+    this.scans.clear();
+    this.indexes.clear();
+    this.lastSignatures.clear();
+  }
+
+  /**
+   * Returns the files selected by a single FileSet, from the cache if possible.
+   *
+   * @param fileset The FileSet.
+   * @return The unmodifiable list of files.
+   */
+  private synchronized List<File> getFiles(FileSet fileset) {
+    String signature = getSignature(fileset);
+    if (signature == null) {
+      return scan(fileset);
+    }
+    String lastSignature = this.lastSignatures.put(fileset, signature);
+    if (lastSignature != null && !lastSignature.equals(signature)) {
+      invalidate(lastSignature);
+    }
+    List<File> files = this.scans.get(signature);
+    if (files == null) {
+      files = Collections.unmodifiableList(scan(fileset));
+      this.scans.put(signature, files);
+    }
+    return files;
+  }
+
+  /**
+   * Discards the scan made for the passed signature and every index derived from it.
+   *
+   * @param signature The signature of a FileSet definition that is no longer current.
+   */
+  private void invalidate(String signature) {
+    this.scans.remove(signature);
+    String part = '\u0000' + signature;
+    for (Iterator<String> i = this.indexes.keySet().iterator(); i.hasNext();) {
+      if (i.next().contains(part)) {
+        i.remove();
+      }
+    }
+  }
+
+  /**
+   * Scans the passed FileSet.
+   *
+   * @param fileset The FileSet.
+   * @return The files it selects, resolved against the project.
+   */
+  private List<File> scan(FileSet fileset) {
+    DirectoryScanner ds = fileset.getDirectoryScanner(this.project);
+    ds.scan();
+    String[] includedFiles = ds.getIncludedFiles();
+    List<File> files = new ArrayList<File>(includedFiles.length);
+    for (int i = 0; i < includedFiles.length; i++) {
+      File file = new File(ds.getBasedir(), includedFiles[i]);
+      files.add(this.project.resolveFile(file.getPath()));
+    }
+    return files;
+  }
+
+  /**
+   * Returns a string that identifies the set of files the passed FileSet selects.
+   *
+   * @param fileset The FileSet.
+   * @return The signature, or null if the FileSet uses selectors.
+   */
+  private String getSignature(FileSet fileset) {
+    if (fileset.hasSelectors()) {
+      return null;
+    }
+    StringBuilder signature = new StringBuilder();
+    signature.append(fileset.getDir(this.project).getAbsolutePath());
+    signature.append("|followsymlinks=").append(fileset.isFollowSymlinks());
+    appendPatterns(signature, "|includes=", fileset.mergeIncludes(this.project));
+    appendPatterns(signature, "|excludes=", fileset.mergeExcludes(this.project));
+    if (fileset.getDefaultexcludes()) {
+      appendPatterns(signature, "|defaultexcludes=", DirectoryScanner.getDefaultExcludes());
+    }
+    return signature.toString();
+  }
+
+  /**
+   * Appends a labelled list of patterns to a signature.
+   *
+   * @param signature The signature being built.
+   * @param label The label.
+   * @param patterns The patterns, possibly null.
+   */
+  private static void appendPatterns(StringBuilder signature, String label, String[] patterns) {
+    signature.append(label);
+    if (patterns != null) {
+      for (int i = 0; i < patterns.length; i++) {
+        signature.append(patterns[i]).append(',');
+      }
+    }
+  }
+}
@@ -1,16 +1,33 @@
 package org.hackystat.sensor.ant.task;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.FileSet;
+import org.hackystat.sensor.ant.util.JavaClass2FilePathMapper;
+import org.hackystat.sensor.ant.util.LongTimeConverter;
 import org.hackystat.sensorshell.SensorShell;
 import org.hackystat.sensorshell.SensorShellException;
 import org.hackystat.sensorshell.SensorShellProperties;
@@ -28,6 +45,15 @@ import org.hackystat.utilities.tstamp.TstampSet;
  */
 public abstract class HackystatSensorTask extends Task {
 
+  /** The longest time to wait between retries, in milliseconds. */
+  private static final long MAX_RETRY_WAIT_MILLIS = 300000;
+
+  /** The number of checkpointed instances after which they are sent to confirm them. */
+  private static final int CHECKPOINT_SEND_SIZE = 1000;
+
+  /** The longest time to wait for an aborted background sender to stop, in milliseconds. */
+  private static final long ABORT_TIMEOUT_MILLIS = 5000;
+
   /** The list of datafile element instances found in the task. */
   protected List<DataFiles> dataFilesList = new ArrayList<DataFiles>();
 
@@ -40,6 +66,9 @@ public abstract class HackystatSensorTask extends Task {
   /** Whether or not to throw a BuildException if problems occur during sensor execution. */
   protected boolean failOnError = true;
 
+  /** Whether to parse XML reports with the streaming (StAX) parser rather than with JAXB. */
+  protected boolean streaming = false;
+
   /** Provides a fixed runtime value for use in sensors that need one. */
   protected long runtime = new Date().getTime();
 
@@ -72,9 +101,54 @@ public abstract class HackystatSensorTask extends Task {
   /** The number of times you can retry this sensor before failing. */
   private int retryAttempts = 0;
 
-  /** The amount of time to wait between retries. */
+  /** The amount of time to wait before the first retry, in seconds. */
   private int retryWaitInterval = 1;
 
+  /** The progress of the current execute() call, kept across retries, or null if none. */
+  private RetryCheckpoint checkpoint;
+
+  /** The number of worker threads used to process data files. */
+  private int threads = 1;
+
+  /** Whether to hand sensor data to a background sender rather than to the SensorShell. */
+  private boolean asyncSend = false;
+
+  /** The maximum number of sensor data instances waiting for the background sender. */
+  private int sendQueueSize = 10000;
+
+  /** The longest time, in seconds, to wait for the background sender at the end of the task. */
+  private int flushTimeout = 600;
+
+  /** The background sender, while one is running. */
+  private SensorDataSender sender;
+
+  /** The number of sensor data instances handed to the current background sender. */
+  private long numQueued;
+
+  /** The statistics of the most recent background sender, or null if there was none. */
+  private String senderStatistics;
+
+  /** Whether to skip data files that have not changed since their data was last sent. */
+  private boolean incremental = false;
+
+  /** The manifest file named by the manifestFile attribute, or null to use the default. */
+  private String manifestFileName;
+
+  /** The record of data files already sent, while an incremental run is in progress. */
+  private DataFileManifest dataFileManifest;
+
+  /** The number of unchanged data files skipped by the most recent incremental run. */
+  private int skippedDataFiles = 0;
+
+  /** The buffer for the data file being processed by the current worker thread, if any. */
+  private final ThreadLocal<PendingSensorData> pendingData = new ThreadLocal<PendingSensorData>();
+
+  /** The files in the sourcefiles element, once resolved during the current run. */
+  private volatile List<File> sourceFiles;
+
+  /** The indexes of the source files resolved during the current run, by name. */
+  private final Map<String, Object> sourceFileIndexes = new ConcurrentHashMap<String, Object>();
+
   /**
    * The standard constructor, which will instantiate a SensorShell using the configuration data in
    * sensorshell.properties.
@@ -168,6 +242,18 @@ public abstract class HackystatSensorTask extends Task {
     verboseInfo("verbose is set to: " + this.verbose);
   }
 
+  /**
+   * Set the streaming attribute to "on", "true", or "yes" to parse XML reports with a streaming
+   * parser instead of unmarshalling them into a JAXB object tree. Streaming keeps memory use flat
+   * for very large reports and produces the same sensor data. Default is false.
+   * 
+   * @param mode The new streaming value: should be "on", "true", or "yes" to enable.
+   */
+  public void setStreaming(String mode) {
+    this.streaming = Project.toBoolean(mode);
+    verboseInfo("streaming is set to: " + this.streaming);
+  }
+
   /**
    * Set the retryWaitIntervalSeconds value to an integer, or set to default if the supplied value
    * was not an integer.
@@ -204,37 +290,164 @@ public abstract class HackystatSensorTask extends Task {
     verboseInfo("retryAttempts is set to: " + this.retryAttempts);
   }
 
+  /**
+   * Set the threads value to the number of worker threads that should parse data files
+   * concurrently. The sensor data is still sent to the SensorShell from the Ant thread, in the
+   * same order and with the same timestamps as when the files are processed one at a time.
+   * Defaults to 1 if the supplied value was not a positive integer.
+   * 
+   * @param threadsString The new threads value, an integer, as a string.
+   */
+  public void setThreads(String threadsString) {
+    int newThreads = 1;
+    try {
+      newThreads = Math.max(1, Integer.parseInt(threadsString));
+    }
+    catch (Exception e) {
+      info("Failed to parse attribute threads. Setting to default.");
+    }
+    this.threads = newThreads;
+    verboseInfo("threads is set to: " + this.threads);
+  }
+
+  /**
+   * Set the asyncSend attribute to "on", "true", or "yes" to send sensor data from a background
+   * thread while the data files are still being parsed. The data is sent in batches whose size
+   * adapts to the send latency, and sensors wait whenever sendQueueSize instances are already
+   * waiting to be sent. Default is false.
+   * 
+   * @param mode The new asyncSend value: should be "on", "true", or "yes" to enable.
+   */
+  public void setAsyncSend(String mode) {
+    this.asyncSend = Project.toBoolean(mode);
+    verboseInfo("asyncSend is set to: " + this.asyncSend);
+  }
+
+  /**
+   * Set the sendQueueSize value to the maximum number of sensor data instances that may wait for
+   * the background sender. Defaults to 10000 if the supplied value was not a positive integer.
+   * 
+   * @param sizeString The new sendQueueSize value, an integer, as a string.
+   */
+  public void setSendQueueSize(String sizeString) {
+    int size = 10000;
+    try {
+      size = Integer.parseInt(sizeString);
+    }
+    catch (Exception e) {
+      info("Failed to parse attribute sendQueueSize. Setting to default.");
+    }
+    this.sendQueueSize = (size > 0) ? size : 10000;
+    verboseInfo("sendQueueSize is set to: " + this.sendQueueSize);
+  }
+
+  /**
+   * Set the flushTimeout value to the number of seconds to wait at the end of the task for the
+   * background sender to send the remaining sensor data. Defaults to 600 if the supplied value
+   * was not a positive integer.
+   * 
+   * @param timeoutString The new flushTimeout value, an integer, as a string.
+   */
+  public void setFlushTimeout(String timeoutString) {
+    int timeout = 600;
+    try {
+      timeout = Integer.parseInt(timeoutString);
+    }
+    catch (Exception e) {
+      info("Failed to parse attribute flushTimeout. Setting to default.");
+    }
+    this.flushTimeout = (timeout > 0) ? timeout : 600;
+    verboseInfo("flushTimeout is set to: " + this.flushTimeout);
+  }
+
+  /**
+   * Set the incremental attribute to "on", "true", or "yes" to skip data files whose sensor data
+   * was sent by an earlier run and that have not changed since. The sent data files are recorded
+   * in a manifest file, which is only updated once the data has been handed to the SensorShell.
+   * Default is false.
+   * 
+   * @param mode The new incremental value: should be "on", "true", or "yes" to enable.
+   */
+  public void setIncremental(String mode) {
+    this.incremental = Project.toBoolean(mode);
+    verboseInfo("incremental is set to: " + this.incremental);
+  }
+
+  /**
+   * Set the manifestFile attribute to the file that records the data files already sent in
+   * incremental mode. Defaults to hackystat-[tool]-manifest.txt in the directory named by the
+   * build.dir property, or in the build directory under the project's base directory.
+   * 
+   * @param fileName The manifest file name.
+   */
+  public void setManifestFile(String fileName) {
+    this.manifestFileName = fileName;
+    verboseInfo("manifestFile is set to: " + this.manifestFileName);
+  }
+
   /**
    * The execute() method invoked by Ant. This method invokes the subclass executeInternal() method,
    * and if that method throws an exception, it will retry according to the values of retryAttempts
    * and retryWaitInterval.
+   * <p>
+   * A retry resumes from a checkpoint rather than starting over. Data files that were processed
+   * without error are not parsed again, and the sensor data created from them that was not yet
+   * known to be sent is handed to the SensorShell again, with its original timestamps. The wait
+   * before each retry doubles, starting at retryWaitInterval seconds, with random jitter so that
+   * many builds failing together do not all retry at the same moment.
    * 
    * @throws BuildException If there is an error after all the retries are done.
    */
   @Override
   public void execute() throws BuildException {
-    for (int i = retryAttempts; i >= 0; i--) {
-      try {
-        executeInternal();
-        return;
-      }
-      catch (Exception e) {
-        // If we're all out of retries (or never had any), then just rethrow this exception.
-        if (i == 0) {
-          throw new BuildException(e);
-        }
-        // Else, we indicate what happened, sleep, and go through the loop again.
-        info("Sensor failed: " + e.getMessage());
-        info("Retrying (" + i + " retries remaining.)");
-        info("Pausing for: " + this.retryWaitInterval + " seconds.");
+    // The source files may have changed since an earlier run of this task.
+    this.sourceFiles = null;
+    this.sourceFileIndexes.clear();
+    this.checkpoint = (this.retryAttempts > 0) ? new RetryCheckpoint() : null;
+    Random random = new Random();
+    try {
+      for (int i = retryAttempts; i >= 0; i--) {
         try {
-          Thread.sleep(this.retryWaitInterval * 1000);
+          executeInternal();
+          return;
         }
-        catch (Exception f) {
-          info("Problem trying to sleep. We ignore.");
+        catch (Exception e) {
+          abortSender();
+          // If we're all out of retries (or never had any), then just rethrow this exception.
+          if (i == 0) {
+            throw new BuildException(e);
+          }
+          // Else, we indicate what happened, sleep, and go through the loop again.
+          long waitMillis = getRetryWaitMillis(retryAttempts - i, random);
+          info("Sensor failed: " + e.getMessage());
+          info("Retrying (" + i + " retries remaining.)");
+          info("Pausing for: " + (waitMillis / 1000.0) + " seconds.");
+          try {
+            Thread.sleep(waitMillis);
+          }
+          catch (Exception f) {
+            info("Problem trying to sleep. We ignore.");
+          }
         }
       }
     }
+    finally {
+      this.checkpoint = null;
+    }
+  }
+
+  /**
+   * Returns the time to wait before a retry. The wait is chosen at random between half and all of
+   * retryWaitInterval seconds doubled once for each earlier retry, up to five minutes.
+   * 
+   * @param retry The number of retries already made.
+   * @param random The source of the jitter.
+   * @return The wait in milliseconds.
+   */
+  private long getRetryWaitMillis(int retry, Random random) {
+    long maxWait = Math.min(MAX_RETRY_WAIT_MILLIS, 
+        (this.retryWaitInterval * 1000L) << Math.min(retry, 20));
+    return maxWait / 2 + (long) (random.nextDouble() * (maxWait / 2));
   }
 
   /**
@@ -301,17 +514,78 @@ public abstract class HackystatSensorTask extends Task {
   }
 
   /**
-   * Returns the list of files indicated in the sourcefiles element.
+   * Returns the list of files indicated in the sourcefiles element. The filesets are resolved
+   * once per run of this task. Within a build, the scan is shared with the other sensor tasks
+   * through the FileSetScanCache; a task that is not part of a project scans them itself.
    * 
-   * @return The list of files in the sourcefiles element.
+   * @return The unmodifiable list of files in the sourcefiles element.
    */
   protected List<File> getSourceFiles() {
+    List<File> files = this.sourceFiles;
+    if (files == null) {
+      files = (getProject() == null) ? getFiles(getSourceFileSets()) 
+          : FileSetScanCache.getInstance(getProject()).getFiles(getSourceFileSets());
+      files = Collections.unmodifiableList(files);
+      this.sourceFiles = files;
+    }
+    return files;
+  }
+
+  /**
+   * Returns the index with the passed name built from the files in the sourcefiles element.
+   * The index is resolved once per run of this task. Within a build, it is taken from the
+   * FileSetScanCache, so every sensor that uses the same source files shares one index; a task
+   * that is not part of a project builds its own.
+   * 
+   * @param <T> The type of the index.
+   * @param name The name of the index, unique to the type of index built by the builder.
+   * @param builder Builds the index if it has not been built yet.
+   * @return The index.
+   */
+  @SuppressWarnings("unchecked")
+  protected <T> T getSourceFileIndex(String name, FileSetScanCache.IndexBuilder<T> builder) {
+    T index = (T) this.sourceFileIndexes.get(name);
+    if (index != null) {
+      return index;
+    }
+    synchronized (this.sourceFileIndexes) {
+      index = (T) this.sourceFileIndexes.get(name);
+      if (index == null) {
+        index = (getProject() == null) ? builder.build(getSourceFiles()) 
+            : FileSetScanCache.getInstance(getProject()).getIndex(getSourceFileSets(), name, 
+                builder);
+        this.sourceFileIndexes.put(name, index);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * Returns the JavaClass2FilePathMapper for the files in the sourcefiles element.
+   * 
+   * @return The mapper, shared with the other sensors in this build.
+   */
+  protected JavaClass2FilePathMapper getJavaClass2FilePathMapper() {
+    return getSourceFileIndex("JavaClass2FilePathMapper", 
+        new FileSetScanCache.IndexBuilder<JavaClass2FilePathMapper>() {
+          public JavaClass2FilePathMapper build(List<File> files) {
+            return new JavaClass2FilePathMapper(files);
+          }
+        });
+  }
+
+  /**
+   * Returns the FileSets of all of the nested sourcefiles elements.
+   * 
+   * @return The list of FileSets.
+   */
+  private List<FileSet> getSourceFileSets() {
     List<FileSet> filesets = new ArrayList<FileSet>();
     // Create our list of filesets from all nested SourceFiles.
     for (SourceFiles sourceFiles : this.sourceFilesList) {
       filesets.addAll(sourceFiles.getFileSets());
     }
-    return getFiles(filesets);
+    return filesets;
   }
 
   /**
@@ -353,6 +627,444 @@ public abstract class HackystatSensorTask extends Task {
     return fileList;
   }
 
+  /**
+   * Processes each of the files in the datafiles element with the passed processor, and returns
+   * the total number of sensor data instances created. If the threads attribute is greater than
+   * one, the files are processed concurrently, but the resulting sensor data is handed to the
+   * SensorShell from this thread in data file order. A failure processing one file is passed to
+   * signalError() only once the data for all of the preceding files has been sent, so
+   * failOnError behaves exactly as it does when the files are processed one at a time.
+   * 
+   * @param fileType The type of data file, used in progress messages.
+   * @param processor The processor that creates the sensor data for a single file.
+   * @return The number of sensor data instances created.
+   */
+  protected int processDataFiles(String fileType, DataFileProcessor processor) {
+    List<File> dataFiles = getChangedDataFiles(getDataFiles());
+    int numEntries = resumeFromCheckpoint(dataFiles);
+    if (this.threads <= 1 || dataFiles.size() <= 1) {
+      for (File dataFile : dataFiles) {
+        verboseInfo("Processing " + fileType + " file: " + dataFile);
+        int checkpointMark = markCheckpoint();
+        try {
+          int fileEntries = processor.process(dataFile);
+          numEntries += fileEntries;
+          recordDataFile(dataFile, fileEntries);
+        }
+        catch (Exception e) {
+          rollbackCheckpoint(checkpointMark);
+          signalError("Failure processing: " + dataFile, e);
+        }
+        sendCheckpoint();
+      }
+      return numEntries;
+    }
+    return numEntries + processDataFilesConcurrently(fileType, processor, dataFiles);
+  }
+
+  /**
+   * Returns the data files that must be processed. In incremental mode, this loads the manifest
+   * and leaves out the data files it records as unchanged; otherwise all of the files are
+   * returned.
+   * 
+   * @param dataFiles All of the data files.
+   * @return The data files to process.
+   */
+  private List<File> getChangedDataFiles(List<File> dataFiles) {
+    this.dataFileManifest = null;
+    this.skippedDataFiles = 0;
+    if (!this.incremental) {
+      return dataFiles;
+    }
+    File manifestFile = getManifestFile();
+    try {
+      this.dataFileManifest = new DataFileManifest(manifestFile);
+    }
+    catch (IOException e) {
+      info("Could not read manifest " + manifestFile + ", so processing all data files: "
+          + e.getMessage());
+      return dataFiles;
+    }
+    List<File> changedFiles = new ArrayList<File>();
+    for (File dataFile : dataFiles) {
+      boolean unchanged = false;
+      try {
+        unchanged = this.dataFileManifest.isUnchanged(dataFile);
+      }
+      catch (IOException e) {
+        verboseInfo("Could not check " + dataFile + ": " + e.getMessage());
+      }
+      if (unchanged) {
+        verboseInfo("Skipping unchanged file: " + dataFile);
+        this.skippedDataFiles++;
+      }
+      else {
+        changedFiles.add(dataFile);
+      }
+    }
+    return changedFiles;
+  }
+
+  /**
+   * Returns the manifest file used in incremental mode.
+   * 
+   * @return The manifest file.
+   */
+  private File getManifestFile() {
+    if (this.manifestFileName != null) {
+      return getProject().resolveFile(this.manifestFileName);
+    }
+    String buildDir = getProject().getProperty("build.dir");
+    File dir = (buildDir == null) ? new File(getProject().getBaseDir(), "build") 
+        : getProject().resolveFile(buildDir);
+    return new File(dir, "hackystat-" + this.tool + "-manifest.txt");
+  }
+
+  /**
+   * Records that the passed data file was processed without error, in the retry checkpoint and, 
+   * if running incrementally, in the manifest.
+   * 
+   * @param dataFile The data file.
+   * @param numEntries The number of sensor data instances created from the file.
+   */
+  private void recordDataFile(File dataFile, int numEntries) {
+    if (this.checkpoint != null) {
+      this.checkpoint.completedFiles.put(dataFile, numEntries);
+    }
+    recordInManifest(dataFile);
+  }
+
+  /**
+   * Records the passed data file in the manifest, if running incrementally.
+   * 
+   * @param dataFile The data file.
+   */
+  private void recordInManifest(File dataFile) {
+    if (this.dataFileManifest != null) {
+      try {
+        this.dataFileManifest.record(dataFile);
+      }
+      catch (IOException e) {
+        verboseInfo("Could not record " + dataFile + " in manifest: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Prepares to resume from the retry checkpoint, if this is a retry. Removes the data files that
+   * were already processed from the passed list, recording them in the manifest loaded for this
+   * attempt, and hands the sensor data that was not yet known to be sent to the SensorShell again.
+   * 
+   * @param dataFiles The data files to process, which is modified.
+   * @return The number of sensor data instances created from the removed files.
+   */
+  private int resumeFromCheckpoint(List<File> dataFiles) {
+    if (this.checkpoint == null) {
+      return 0;
+    }
+    int numEntries = 0;
+    for (Iterator<File> i = dataFiles.iterator(); i.hasNext();) {
+      File dataFile = i.next();
+      Integer fileEntries = this.checkpoint.completedFiles.get(dataFile);
+      if (fileEntries != null) {
+        numEntries += fileEntries;
+        recordInManifest(dataFile);
+        i.remove();
+      }
+    }
+    List<Map<String, String>> unsent = this.checkpoint.unsent;
+    if (!unsent.isEmpty()) {
+      verboseInfo("Resending " + unsent.size() + " sensor data instances from the checkpoint.");
+      this.checkpoint.unsent = new ArrayList<Map<String, String>>();
+      this.checkpoint.senderPositions = new ArrayList<Long>();
+      try {
+        for (Map<String, String> keyValMap : unsent) {
+          addToSensorShell(keyValMap);
+        }
+      }
+      catch (SensorShellException e) {
+        signalError("Failure resending checkpointed sensor data", e);
+      }
+    }
+    return numEntries;
+  }
+
+  /**
+   * Returns a mark that rollbackCheckpoint() can return the checkpoint to.
+   * 
+   * @return The mark.
+   */
+  private int markCheckpoint() {
+    return (this.checkpoint == null) ? 0 : this.checkpoint.unsent.size();
+  }
+
+  /**
+   * Drops the sensor data checkpointed since the passed mark, which belongs to a data file that
+   * failed and will be processed again by a retry.
+   * 
+   * @param mark The mark returned by markCheckpoint().
+   */
+  private void rollbackCheckpoint(int mark) {
+    if (this.checkpoint != null) {
+      List<Map<String, String>> unsent = this.checkpoint.unsent;
+      unsent.subList(mark, unsent.size()).clear();
+      List<Long> senderPositions = this.checkpoint.senderPositions;
+      if (!senderPositions.isEmpty()) {
+        senderPositions.subList(mark, senderPositions.size()).clear();
+      }
+    }
+  }
+
+  /**
+   * Sends the checkpointed sensor data once enough of it has accumulated, so that it can be
+   * dropped from the checkpoint. When asyncSend is enabled the background sender owns the
+   * SensorShell, so instead the data that the sender has already sent is dropped.
+   */
+  private void sendCheckpoint() {
+    if (this.checkpoint == null || this.checkpoint.unsent.size() < CHECKPOINT_SEND_SIZE) {
+      return;
+    }
+    if (this.asyncSend) {
+      if (this.sender != null) {
+        // The sender sends the data in the order it was queued, so the instances it has sent
+        // are those queued before the position of the first instance it has not sent.
+        List<Long> senderPositions = this.checkpoint.senderPositions;
+        int numSent = Collections.binarySearch(senderPositions, this.sender.getNumSent());
+        if (numSent < 0) {
+          numSent = -numSent - 1;
+        }
+        this.checkpoint.unsent.subList(0, numSent).clear();
+        senderPositions.subList(0, numSent).clear();
+      }
+      return;
+    }
+    try {
+      this.sensorShell.send();
+      this.checkpoint.unsent.clear();
+    }
+    catch (SensorShellException e) {
+      signalError("Failure sending sensor data", e);
+    }
+  }
+
+  /**
+   * Processes the data files on a pool of worker threads. At most twice as many files as there
+   * are threads are in progress or waiting to be sent at any one time, which bounds the amount
+   * of buffered sensor data.
+   * 
+   * @param fileType The type of data file, used in progress messages.
+   * @param processor The processor that creates the sensor data for a single file.
+   * @param dataFiles The data files.
+   * @return The number of sensor data instances created.
+   */
+  private int processDataFilesConcurrently(String fileType, final DataFileProcessor processor,
+      List<File> dataFiles) {
+    int poolSize = Math.min(this.threads, dataFiles.size());
+    verboseInfo("Processing " + dataFiles.size() + " files with " + poolSize + " threads.");
+    ExecutorService executor = Executors.newFixedThreadPool(poolSize, new WorkerThreadFactory());
+    LinkedList<Future<PendingSensorData>> inProgress = new LinkedList<Future<PendingSensorData>>();
+    int nextFile = 0;
+    int numEntries = 0;
+    try {
+      for (File dataFile : dataFiles) {
+        while (nextFile < dataFiles.size() && inProgress.size() < 2 * poolSize) {
+          final File file = dataFiles.get(nextFile++);
+          inProgress.add(executor.submit(new Callable<PendingSensorData>() {
+            public PendingSensorData call() {
+              return processPending(processor, file);
+            }
+          }));
+        }
+        PendingSensorData pending = inProgress.removeFirst().get();
+        verboseInfo("Processing " + fileType + " file: " + dataFile);
+        int checkpointMark = markCheckpoint();
+        try {
+          int fileEntries = sendPending(pending);
+          numEntries += fileEntries;
+          recordDataFile(dataFile, fileEntries);
+        }
+        catch (Exception e) {
+          rollbackCheckpoint(checkpointMark);
+          signalError("Failure processing: " + dataFile, e);
+        }
+        sendCheckpoint();
+      }
+      return numEntries;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BuildException(errMsgPrefix + "Interrupted while processing data files", e);
+    }
+    catch (ExecutionException e) {
+      throw new BuildException(errMsgPrefix + "Failure processing data files", e.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Runs the processor on a worker thread, buffering the sensor data it creates.
+   * 
+   * @param processor The processor.
+   * @param dataFile The data file to process.
+   * @return The buffered sensor data, along with any exception thrown by the processor.
+   */
+  private PendingSensorData processPending(DataFileProcessor processor, File dataFile) {
+    PendingSensorData pending = new PendingSensorData();
+    this.pendingData.set(pending);
+    try {
+      pending.numEntries = processor.process(dataFile);
+    }
+    catch (Exception e) {
+      pending.exception = e;
+    }
+    finally {
+      this.pendingData.remove();
+    }
+    return pending;
+  }
+
+  /**
+   * Sends the sensor data buffered by a worker thread to the SensorShell. This is where each
+   * entry receives its unique timestamp, in the same order as if the files had been processed
+   * one at a time.
+   * 
+   * @param pending The buffered sensor data.
+   * @return The number of sensor data instances created by the processor.
+   * @throws Exception If the processor failed, or if the SensorShell could not accept the data.
+   */
+  private int sendPending(PendingSensorData pending) throws Exception {
+    for (int i = 0; i < pending.entries.size(); i++) {
+      Map<String, String> keyValMap = pending.entries.get(i);
+      Long requestedTstamp = pending.requestedTstamps.get(i);
+      if (requestedTstamp != null) {
+        long uniqueTstamp = this.tstampSet.getUniqueTstamp(requestedTstamp);
+        if (uniqueTstamp != requestedTstamp.longValue()) {
+          keyValMap.put("Timestamp", LongTimeConverter.convertLongToString(uniqueTstamp));
+        }
+      }
+      addToSensorShell(keyValMap);
+    }
+    if (pending.exception != null) {
+      throw pending.exception;
+    }
+    return pending.numEntries;
+  }
+
+  /**
+   * Returns a unique timestamp based upon the passed one. Sensors that process data files with
+   * processDataFiles() must use this method rather than the TstampSet. When called from a worker
+   * thread, the passed timestamp is returned and only made unique once the data is sent.
+   * 
+   * @param tstamp The timestamp.
+   * @return A timestamp that is unique for this sensor run.
+   */
+  protected long getUniqueTstamp(long tstamp) {
+    PendingSensorData pending = this.pendingData.get();
+    if (pending == null) {
+      return this.tstampSet.getUniqueTstamp(tstamp);
+    }
+    pending.requestedTstamp = tstamp;
+    return tstamp;
+  }
+
+  /**
+   * Adds sensor data to the SensorShell. Sensors that process data files with
+   * processDataFiles() must use this method rather than adding to the SensorShell directly.
+   * When called from a worker thread, the data is buffered until the file has been processed.
+   * 
+   * @param keyValMap The sensor data.
+   * @throws SensorShellException If the SensorShell could not accept the data.
+   */
+  protected void addSensorData(Map<String, String> keyValMap) throws SensorShellException {
+    PendingSensorData pending = this.pendingData.get();
+    if (pending == null) {
+      addToSensorShell(keyValMap);
+    }
+    else {
+      pending.entries.add(keyValMap);
+      pending.requestedTstamps.add(pending.requestedTstamp);
+      pending.requestedTstamp = null;
+    }
+  }
+
+  /**
+   * Hands sensor data to the background sender if asyncSend is enabled, starting the sender on
+   * first use, or otherwise adds it to the SensorShell directly.
+   * 
+   * @param keyValMap The sensor data.
+   * @throws SensorShellException If the data could not be added or queued.
+   */
+  private void addToSensorShell(Map<String, String> keyValMap) throws SensorShellException {
+    if (this.checkpoint != null) {
+      this.checkpoint.unsent.add(keyValMap);
+    }
+    if (!this.asyncSend) {
+      this.sensorShell.add(keyValMap);
+      return;
+    }
+    if (this.sender == null) {
+      this.sender = new SensorDataSender(this.sensorShell, this.sendQueueSize,
+          "hackystat-" + this.tool + "-sender");
+      this.sender.start();
+      this.numQueued = 0;
+    }
+    if (this.checkpoint != null) {
+      this.checkpoint.senderPositions.add(this.numQueued);
+    }
+    this.sender.add(keyValMap);
+    this.numQueued++;
+  }
+
+  /**
+   * Waits for the background sender, if any, to send all of the queued sensor data.
+   * 
+   * @throws SensorShellException If the sender failed, or did not finish within flushTimeout.
+   */
+  private void flushSender() throws SensorShellException {
+    if (this.sender == null) {
+      return;
+    }
+    boolean flushed = false;
+    try {
+      flushed = this.sender.flush(this.flushTimeout * 1000L);
+      this.senderStatistics = this.sender.getStatistics();
+    }
+    finally {
+      if (flushed) {
+        this.sender = null;
+        // All of the checkpointed data has now been sent.
+        if (this.checkpoint != null) {
+          this.checkpoint.unsent.clear();
+          this.checkpoint.senderPositions.clear();
+        }
+      }
+      else {
+        abortSender();
+      }
+    }
+    if (!flushed) {
+      throw new SensorShellException("Sensor data not sent within flushTimeout of " 
+          + this.flushTimeout + " seconds.");
+    }
+  }
+
+  /**
+   * Stops the background sender, if any, discarding the sensor data it has not yet sent. If the
+   * sender thread does not stop, it may still be using the SensorShell, so a new SensorShell is
+   * created for any retry.
+   */
+  private void abortSender() {
+    if (this.sender != null) {
+      if (!this.sender.abort(ABORT_TIMEOUT_MILLIS)) {
+        info("Background sender did not stop, so a new SensorShell will be used.");
+        this.sensorShell = new SensorShell(this.sensorProps, false, this.tool);
+      }
+      this.sender = null;
+    }
+  }
+
   /**
    * Returns true if the user has indicated they want to use the UserMap to obtain the SensorBase
    * host, user, and password. If false, then the sensorshell.properties file should be consulted.
@@ -394,6 +1106,12 @@ public abstract class HackystatSensorTask extends Task {
     Date endTime = new Date();
     long elapsedTime = (endTime.getTime() - startTime.getTime()) / 1000;
     info(numEntries + " " + sdt + " sensor data instances created.");
+    if (this.skippedDataFiles > 0) {
+      info(this.skippedDataFiles + " unchanged data files were skipped.");
+    }
+    if (this.senderStatistics != null) {
+      info("Background sender: " + this.senderStatistics);
+    }
     if (this.sensorShell.hasOfflineData()) {
       info("Some or all of these instances were saved offline and not sent to the server.");
     }
@@ -404,14 +1122,26 @@ public abstract class HackystatSensorTask extends Task {
   }
 
   /**
-   * Sends any accumulated data in the SensorShell to the server and quits the shell.
+   * Sends any accumulated data in the SensorShell to the server and quits the shell. If asyncSend
+   * is enabled, first waits up to flushTimeout seconds for the background sender to finish.
    */
   protected void sendAndQuit() {
     try {
+      flushSender();
       this.sensorShell.quit();
     }
     catch (SensorShellException e) {
       signalError("Problem during quit() of SensorShell", e);
+      return;
+    }
+    if (this.dataFileManifest != null) {
+      try {
+        this.dataFileManifest.save();
+      }
+      catch (IOException e) {
+        info("Could not save manifest " + getManifestFile() + ": " + e.getMessage());
+      }
+      this.dataFileManifest = null;
     }
   }
 
@@ -434,4 +1164,53 @@ public abstract class HackystatSensorTask extends Task {
     }
   }
 
+  /**
+   * The sensor data created by a worker thread for a single data file, waiting to be sent.
+   */
+  private static class PendingSensorData {
+    /** The sensor data, in the order it was created. */
+    private final List<Map<String, String>> entries = new ArrayList<Map<String, String>>();
+    /** For each entry, the timestamp to be made unique, or null if there is none. */
+    private final List<Long> requestedTstamps = new ArrayList<Long>();
+    /** The timestamp most recently requested for the next entry. */
+    private Long requestedTstamp;
+    /** The number of sensor data instances reported by the processor. */
+    private int numEntries;
+    /** The exception thrown by the processor, if any. */
+    private Exception exception;
+  }
+
+  /**
+   * The progress of one execute() call, which lets a retry resume where the failed attempt left
+   * off. The sensor data keeps its unique timestamps, so resending data that did reach the server
+   * replaces it rather than duplicating it.
+   */
+  private static class RetryCheckpoint {
+    /** Maps each data file processed without error to the number of instances it created. */
+    private final Map<File, Integer> completedFiles = new HashMap<File, Integer>();
+    /** The sensor data handed to the SensorShell but not yet known to have been sent. */
+    private List<Map<String, String>> unsent = new ArrayList<Map<String, String>>();
+    /** When asyncSend is enabled, the position of each unsent instance in the sender's queue. */
+    private List<Long> senderPositions = new ArrayList<Long>();
+  }
+
+  /**
+   * Creates the daemon worker threads used to process data files, so that a stuck worker never
+   * prevents Ant from exiting.
+   */
+  private class WorkerThreadFactory implements ThreadFactory {
+    /** The number of threads created so far. */
+    private final AtomicInteger count = new AtomicInteger(0);
+
+    /**
+     * Creates a new worker thread.
+     * @param runnable The runnable for the thread.
+     * @return The thread.
+     */
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "hackystat-" + tool + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
 }
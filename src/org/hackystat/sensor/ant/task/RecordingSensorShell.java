@@ -0,0 +1,79 @@
+package org.hackystat.sensor.ant.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hackystat.sensorshell.SensorShell;
+import org.hackystat.sensorshell.SensorShellException;
+import org.hackystat.sensorshell.SensorShellProperties;
+
+/**
+ * A SensorShell for the tests that records the sensor data added to it instead of sending it,
+ * so that the sensor data created by a task can be checked without a SensorBase.
+ *
+ * @author agent
+ */
+final class RecordingSensorShell extends SensorShell {
+
+  /** The test host, which is never contacted. */
+  static final String HOST = "http://localhost:9876/sensorbase/";
+
+  /** The test user. */
+  static final String USER = "TestAntSensors@hackystat.org";
+
+  /** The sensor data added so far, in order. */
+  private final List<Map<String, String>> sensorData = new ArrayList<Map<String, String>>();
+
+  /**
+   * Creates the shell.
+   * @throws SensorShellException If the shell cannot be created.
+   */
+  RecordingSensorShell() throws SensorShellException {
+    super(SensorShellProperties.getTestInstance(HOST, USER, USER), false, "Test");
+  }
+
+  /**
+   * Records a copy of the sensor data.
+   * @param keyValMap The sensor data.
+   */
+  @Override
+  public synchronized void add(Map<String, String> keyValMap) {
+    this.sensorData.add(new TreeMap<String, String>(keyValMap));
+  }
+
+  /**
+   * Does nothing, since the data is only recorded.
+   * @return Zero.
+   */
+  @Override
+  public int send() {
+    return 0;
+  }
+
+  /**
+   * Does nothing, since the data is only recorded.
+   */
+  @Override
+  public void quit() {
+    // Nothing to send.
+  }
+
+  /**
+   * Returns false, since no data is stored offline.
+   * @return False.
+   */
+  @Override
+  public boolean hasOfflineData() {
+    return false;
+  }
+
+  /**
+   * Returns the sensor data added so far, in the order it was added.
+   * @return The sensor data.
+   */
+  synchronized List<Map<String, String>> getSensorData() {
+    return new ArrayList<Map<String, String>>(this.sensorData);
+  }
+}
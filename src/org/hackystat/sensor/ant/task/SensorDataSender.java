@@ -0,0 +1,286 @@
+package org.hackystat.sensor.ant.task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.hackystat.sensorshell.SensorShell;
+import org.hackystat.sensorshell.SensorShellException;
+
+/**
+ * A pipeline stage between a sensor and its SensorShell. The sensor adds sensor data to a
+ * bounded queue, and a background thread takes the data off the queue in batches, adds each
+ * batch to the SensorShell and sends it. The network time of one batch thus overlaps the parsing
+ * that produces the next one.
+ * <p>
+ * The batch size adapts to the observed send latency: it grows while batches are sent quickly
+ * and data is waiting, and shrinks when a batch takes longer than the target latency. When the
+ * queue is full, add() blocks until the sender catches up, which bounds the memory held by data
+ * waiting to be sent. Once the sender thread fails, every later add() and flush() reports the
+ * failure.
+ * <p>
+ * Only the sender thread uses the SensorShell from start() until flush() or abort() reports that
+ * the thread has stopped, so the SensorShell need not be thread-safe. If the thread cannot be
+ * stopped, for example because a send is stuck on the network, the SensorShell must not be used
+ * again.
+ *
+ * @author agent
+ */
+final class SensorDataSender implements Runnable {
+
+  /** The batch size used for the first batch. */
+  private static final int INITIAL_BATCH_SIZE = 64;
+
+  /** The smallest batch size. */
+  private static final int MIN_BATCH_SIZE = 16;
+
+  /** The largest batch size. */
+  private static final int MAX_BATCH_SIZE = 4096;
+
+  /** The send latency, in milliseconds, that the batch size adapts towards. */
+  private static final long TARGET_LATENCY_MILLIS = 250;
+
+  /** How often, in milliseconds, a blocked add() checks whether the sender has failed. */
+  private static final long POLL_MILLIS = 100;
+
+  /** Marks the end of the sensor data. Compared by identity. */
+  private static final Map<String, String> END = new HashMap<String, String>();
+
+  /** The SensorShell that the data is sent through. */
+  private final SensorShell shell;
+
+  /** The sensor data waiting to be sent. */
+  private final BlockingQueue<Map<String, String>> queue;
+
+  /** The background sender thread. */
+  private final Thread thread;
+
+  /** The exception that stopped the sender thread, if any. */
+  private volatile Throwable failure;
+
+  /** The current batch size. Only used by the sender thread. */
+  private int batchSize = INITIAL_BATCH_SIZE;
+
+  /** The number of batches sent. */
+  private int numBatches;
+
+  /** The number of sensor data instances sent. */
+  private long numSent;
+
+  /** The total time spent adding and sending batches, in nanoseconds. */
+  private long totalLatencyNanos;
+
+  /** The longest time spent adding and sending one batch, in nanoseconds. */
+  private long maxLatencyNanos;
+
+  /** The sum over all batches of the queue depth when the batch was taken. */
+  private long totalQueueDepth;
+
+  /** The largest queue depth seen when a batch was taken. */
+  private int maxQueueDepth;
+
+  /**
+   * Creates a sender. The sender thread is not started until start() is called.
+   *
+   * @param shell The SensorShell to send the data through.
+   * @param capacity The maximum number of sensor data instances waiting to be sent.
+   * @param threadName The name of the sender thread.
+   */
+  SensorDataSender(SensorShell shell, int capacity, String threadName) {
+    this.shell = shell;
+    this.queue = new ArrayBlockingQueue<Map<String, String>>(capacity);
+    this.thread = new Thread(this, threadName);
+    // Never keep Ant from exiting because of a stuck network connection.
+    this.thread.setDaemon(true);
+  }
+
+  /** Starts the sender thread. */
+  void start() {
+    this.thread.start();
+  }
+
+  /**
+   * Queues sensor data for sending, waiting while the queue is full.
+   *
+   * @param keyValMap The sensor data.
+   * @throws SensorShellException If the sender has failed, or the wait was interrupted.
+   */
+  void add(Map<String, String> keyValMap) throws SensorShellException {
+    put(keyValMap, Long.MAX_VALUE);
+  }
+
+  /**
+   * Waits until all queued sensor data has been sent, then stops the sender thread. The timeout
+   * covers the wait for room in the queue for the end marker as well as the wait for the thread.
+   *
+   * @param timeoutMillis The longest time to wait, in milliseconds.
+   * @return True if all of the data was sent, false if the timeout expired first.
+   * @throws SensorShellException If the sender failed, or the wait was interrupted.
+   */
+  boolean flush(long timeoutMillis) throws SensorShellException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    if (!put(END, deadline)) {
+      return false;
+    }
+    try {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining > 0) {
+        this.thread.join(remaining);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SensorShellException("Interrupted while flushing sensor data", e);
+    }
+    checkFailure();
+    return !this.thread.isAlive();
+  }
+
+  /**
+   * Stops the sender thread without waiting for queued data to be sent, and waits for the thread
+   * to stop. A send that does not respond to the interrupt may keep the thread running.
+   *
+   * @param timeoutMillis The longest time to wait for the thread to stop, in milliseconds.
+   * @return True if the thread has stopped, false if it is still using the SensorShell.
+   */
+  boolean abort(long timeoutMillis) {
+    this.queue.clear();
+    // Ends the thread once a send that ignores the interrupt returns.
+    this.queue.offer(END);
+    this.thread.interrupt();
+    try {
+      this.thread.join(timeoutMillis);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return !this.thread.isAlive();
+  }
+
+  /**
+   * Returns the number of sensor data instances sent so far. The instances are sent in the order
+   * in which they were added, so these are the instances added first.
+   *
+   * @return The number of instances sent.
+   */
+  synchronized long getNumSent() {
+    return this.numSent;
+  }
+
+  /**
+   * Returns a one line summary of the queue depth and batch latency.
+   *
+   * @return The summary.
+   */
+  synchronized String getStatistics() {
+    if (this.numBatches == 0) {
+      return "Sent no batches.";
+    }
+    long averageLatencyMillis = this.totalLatencyNanos / this.numBatches / 1000000;
+    return "Sent " + this.numSent + " instances in " + this.numBatches + " batches; "
+        + "batch latency avg " + averageLatencyMillis + " ms, max "
+        + (this.maxLatencyNanos / 1000000) + " ms; queue depth avg "
+        + (this.totalQueueDepth / this.numBatches) + ", max " + this.maxQueueDepth + " of "
+        + (this.queue.size() + this.queue.remainingCapacity()) + ".";
+  }
+
+  /**
+   * Takes batches off the queue and sends them until the end marker is reached.
+   */
+  public void run() {
+    List<Map<String, String>> batch = new ArrayList<Map<String, String>>();
+    try {
+      boolean done = false;
+      while (!done) {
+        batch.add(this.queue.take());
+        this.queue.drainTo(batch, this.batchSize - 1);
+        int queueDepth = batch.size() + this.queue.size();
+        if (batch.get(batch.size() - 1) == END) {
+          batch.remove(batch.size() - 1);
+          done = true;
+        }
+        if (!batch.isEmpty()) {
+          long start = System.nanoTime();
+          for (Map<String, String> keyValMap : batch) {
+            this.shell.add(keyValMap);
+          }
+          this.shell.send();
+          recordBatch(batch.size(), queueDepth, System.nanoTime() - start);
+        }
+        batch.clear();
+      }
+    }
+    catch (Exception e) {
+      this.failure = e;
+    }
+    catch (Error e) {
+      this.failure = e;
+      throw e;
+    }
+  }
+
+  /**
+   * Updates the statistics and adapts the batch size after a batch has been sent.
+   *
+   * @param size The number of sensor data instances in the batch.
+   * @param queueDepth The number of instances waiting when the batch was taken.
+   * @param latencyNanos The time spent adding and sending the batch.
+   */
+  private synchronized void recordBatch(int size, int queueDepth, long latencyNanos) {
+    this.numBatches++;
+    this.numSent += size;
+    this.totalLatencyNanos += latencyNanos;
+    this.maxLatencyNanos = Math.max(this.maxLatencyNanos, latencyNanos);
+    this.totalQueueDepth += queueDepth;
+    this.maxQueueDepth = Math.max(this.maxQueueDepth, queueDepth);
+    long latencyMillis = latencyNanos / 1000000;
+    if (latencyMillis > TARGET_LATENCY_MILLIS) {
+      this.batchSize = Math.max(MIN_BATCH_SIZE, this.batchSize / 2);
+    }
+    else if (latencyMillis < TARGET_LATENCY_MILLIS / 2 && queueDepth > size) {
+      this.batchSize = Math.min(MAX_BATCH_SIZE, this.batchSize * 2);
+    }
+  }
+
+  /**
+   * Puts an element on the queue, waiting while the queue is full but giving up if the sender
+   * fails or the deadline passes in the meantime.
+   *
+   * @param keyValMap The sensor data, or the end marker.
+   * @param deadline The time, in milliseconds since the epoch, after which to give up.
+   * @return True if the element was queued, false if the deadline passed first.
+   * @throws SensorShellException If the sender has failed, or the wait was interrupted.
+   */
+  private boolean put(Map<String, String> keyValMap, long deadline) throws SensorShellException {
+    try {
+      checkFailure();
+      while (!this.queue.offer(keyValMap, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        checkFailure();
+        if (System.currentTimeMillis() >= deadline) {
+          return false;
+        }
+      }
+      return true;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SensorShellException("Interrupted while queueing sensor data", e);
+    }
+  }
+
+  /**
+   * Throws an exception if the sender thread has failed.
+   *
+   * @throws SensorShellException If the sender thread has failed.
+   */
+  private void checkFailure() throws SensorShellException {
+    Throwable e = this.failure;
+    if (e != null) {
+      throw new SensorShellException("Failure sending sensor data: " + e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package org.hackystat.sensor.ant.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the DataFileManifest.
+ *
+ * @author agent
+ */
+public class TestDataFileManifest {
+
+  /** A data file. */
+  private File dataFile;
+
+  /** The manifest file. */
+  private File manifestFile;
+
+  /**
+   * Creates a data file and picks a manifest file name.
+   * @throws IOException If the files cannot be created.
+   */
+  @Before
+  public void setUp() throws IOException {
+    this.dataFile = File.createTempFile("TestDataFileManifest", ".xml");
+    this.manifestFile = File.createTempFile("TestDataFileManifest", ".txt");
+    this.manifestFile.delete();
+    write(this.dataFile, "<report/>");
+  }
+
+  /** Deletes the files. */
+  @After
+  public void tearDown() {
+    this.dataFile.delete();
+    this.manifestFile.delete();
+  }
+
+  /**
+   * Tests that recorded files are unchanged until their contents change, across a save and load.
+   * @throws IOException If a problem occurs.
+   */
+  @Test
+  public void testChanges() throws IOException {
+    DataFileManifest manifest = new DataFileManifest(this.manifestFile);
+    assertFalse("Checking unrecorded file", manifest.isUnchanged(this.dataFile));
+    manifest.record(this.dataFile);
+    manifest.save();
+
+    manifest = new DataFileManifest(this.manifestFile);
+    assertEquals("Checking size", 1, manifest.size());
+    assertTrue("Checking unchanged file", manifest.isUnchanged(this.dataFile));
+
+    // Same contents, new time.
+    this.dataFile.setLastModified(this.dataFile.lastModified() - 60000);
+    assertTrue("Checking touched file", manifest.isUnchanged(this.dataFile));
+
+    // Same size, new contents.
+    write(this.dataFile, "<REPORT/>");
+    assertFalse("Checking changed file", manifest.isUnchanged(this.dataFile));
+  }
+
+  /**
+   * Tests that damaged lines are ignored when the manifest is loaded.
+   * @throws IOException If a problem occurs.
+   */
+  @Test
+  public void testDamagedManifest() throws IOException {
+    DataFileManifest manifest = new DataFileManifest(this.manifestFile);
+    manifest.record(this.dataFile);
+    manifest.save();
+    Writer writer = new FileWriter(this.manifestFile, true);
+    writer.write("not a number\n12 x\n");
+    writer.close();
+    manifest = new DataFileManifest(this.manifestFile);
+    assertEquals("Checking size", 1, manifest.size());
+    assertTrue("Checking unchanged file", manifest.isUnchanged(this.dataFile));
+  }
+
+  /**
+   * Writes a string to a file.
+   * @param file The file.
+   * @param contents The string.
+   * @throws IOException If the file cannot be written.
+   */
+  private static void write(File file, String contents) throws IOException {
+    Writer writer = new FileWriter(file);
+    writer.write(contents);
+    writer.close();
+  }
+}
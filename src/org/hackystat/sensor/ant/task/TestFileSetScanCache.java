@@ -0,0 +1,97 @@
+package org.hackystat.sensor.ant.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the FileSetScanCache.
+ *
+ * @author agent
+ */
+public class TestFileSetScanCache {
+
+  /** The project the filesets belong to. */
+  private Project project;
+
+  /** A fileset over the JUnit test data. */
+  private FileSet fileset;
+
+  /** The number of indexes built by the counting builder. */
+  private int builds;
+
+  /** An index builder that counts its invocations. */
+  private final FileSetScanCache.IndexBuilder<Integer> countingBuilder =
+    new FileSetScanCache.IndexBuilder<Integer>() {
+      public Integer build(List<File> files) {
+        builds++;
+        return Integer.valueOf(files.size());
+      }
+    };
+
+  /** Creates a project with a fileset over the JUnit test data. */
+  @Before
+  public void setUp() {
+    this.project = new Project();
+    this.project.init();
+    this.fileset = new FileSet();
+    this.fileset.setProject(this.project);
+    this.fileset.setDir(new File(System.getProperty("junittestfiles")));
+    this.fileset.setIncludes("*.xml");
+    this.builds = 0;
+  }
+
+  /** Tests that the cache is a project reference and that scans are reused. */
+  @Test
+  public void testReuse() {
+    FileSetScanCache cache = FileSetScanCache.getInstance(this.project);
+    assertSame("Checking reference", cache,
+        this.project.getReference(FileSetScanCache.REFERENCE_ID));
+    assertSame("Checking instance", cache, FileSetScanCache.getInstance(this.project));
+
+    List<FileSet> filesets = new ArrayList<FileSet>();
+    filesets.add(this.fileset);
+    List<File> files = cache.getFiles(filesets);
+    assertTrue("Checking files found", files.size() > 0);
+    assertEquals("Checking rescan", files, cache.getFiles(filesets));
+
+    Integer index = cache.getIndex(filesets, "count", this.countingBuilder);
+    assertEquals("Checking index", files.size(), index.intValue());
+    assertSame("Checking index reuse", index,
+        cache.getIndex(filesets, "count", this.countingBuilder));
+    assertEquals("Checking one build", 1, this.builds);
+  }
+
+  /** Tests that changing a fileset's definition invalidates its scan and derived indexes. */
+  @Test
+  public void testInvalidation() {
+    FileSetScanCache cache = FileSetScanCache.getInstance(this.project);
+    List<FileSet> filesets = new ArrayList<FileSet>();
+    filesets.add(this.fileset);
+    int allFiles = cache.getFiles(filesets).size();
+    cache.getIndex(filesets, "count", this.countingBuilder);
+
+    this.fileset.setExcludes("*.xml");
+    assertEquals("Checking rescan after change", 0, cache.getFiles(filesets).size());
+    assertEquals("Checking index rebuilt", 0,
+        cache.getIndex(filesets, "count", this.countingBuilder).intValue());
+    assertEquals("Checking two builds", 2, this.builds);
+
+    cache.clear();
+    FileSet other = new FileSet();
+    other.setProject(this.project);
+    other.setDir(new File(System.getProperty("junittestfiles")));
+    other.setIncludes("*.xml");
+    filesets.set(0, other);
+    assertEquals("Checking new fileset", allFiles, cache.getFiles(filesets).size());
+  }
+}
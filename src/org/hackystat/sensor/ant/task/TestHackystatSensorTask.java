@@ -0,0 +1,327 @@
+package org.hackystat.sensor.ant.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.hackystat.sensor.ant.util.JavaClass2FilePathMapper;
+import org.hackystat.sensor.ant.util.LongTimeConverter;
+import org.hackystat.sensorshell.SensorShellException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests HackystatSensorTask.
+ *
+ * @author agent
+ */
+public class TestHackystatSensorTask {
+
+  /** The test host, which is never contacted. */
+  private static final String HOST = RecordingSensorShell.HOST;
+
+  /** The test user. */
+  private static final String USER = RecordingSensorShell.USER;
+
+  /** The directory holding the data files. */
+  private File dir;
+
+  /** The manifest file. */
+  private File manifestFile;
+
+  /**
+   * Creates a directory holding four data files.
+   * @throws IOException If the files cannot be created.
+   */
+  @Before
+  public void setUp() throws IOException {
+    this.dir = File.createTempFile("TestHackystatSensorTask", "");
+    this.dir.delete();
+    this.dir.mkdirs();
+    for (String name : new String[] { "a.xml", "b.xml", "c.xml", "d.xml" }) {
+      Writer writer = new FileWriter(new File(this.dir, name));
+      writer.write("<report name=\"" + name + "\"/>");
+      writer.close();
+    }
+    this.manifestFile = new File(this.dir, "manifest.txt");
+  }
+
+  /** Deletes the directory. */
+  @After
+  public void tearDown() {
+    File[] files = this.dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    this.dir.delete();
+  }
+
+  /**
+   * Tests that the files completed by a failed attempt are recorded in the manifest saved by the
+   * retry, even though the retry does not process them again.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testRetryRecordsManifest() throws Exception {
+    FailingTask task = new FailingTask("c.xml");
+    task.setIncremental("true");
+    task.setManifestFile(this.manifestFile.getPath());
+    task.setRetryAttempts("1");
+    task.setRetryWaitInterval("0");
+    task.execute();
+
+    // a and b are only processed by the first attempt, c by both, d only by the retry.
+    assertEquals("Checking processed files", 5, task.processed.size());
+    // The data of a and b was never sent, so the retry hands it to the shell again.
+    assertEquals("Checking sent data", 6, task.shell.getSensorData().size());
+    DataFileManifest manifest = new DataFileManifest(this.manifestFile);
+    assertEquals("Checking manifest size", 4, manifest.size());
+    for (File dataFile : task.getDataFiles()) {
+      assertTrue("Checking " + dataFile, manifest.isUnchanged(dataFile));
+    }
+  }
+
+  /**
+   * Tests that with asyncSend, the checkpoint drops the data that the background sender has
+   * sent, so a retry resends at most the data of the file processed last rather than all of it.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testAsyncSendTrimsCheckpoint() throws Exception {
+    // The number of checkpointed instances after which the checkpoint is trimmed.
+    int entriesPerFile = 1000;
+    FailingTask task = new FailingTask("d.xml");
+    task.entriesPerFile = entriesPerFile;
+    task.setAsyncSend("true");
+    task.setRetryAttempts("1");
+    task.setRetryWaitInterval("0");
+    task.execute();
+
+    List<Map<String, String>> sensorData = task.shell.getSensorData();
+    Set<Map<String, String>> distinctData = new HashSet<Map<String, String>>(sensorData);
+    assertEquals("Checking distinct data", 4 * entriesPerFile, distinctData.size());
+    // Without trimming, the data of a, b, and c would all be resent.
+    assertTrue("Checking resent data", sensorData.size() <= 5 * entriesPerFile);
+  }
+
+  /**
+   * Tests that a task that is not part of a project, as in the sensor tests, can still use its
+   * source files, and resolves their index only once.
+   */
+  @Test
+  public void testNoProject() {
+    HackystatSensorTask task = new HackystatSensorTask(HOST, USER, USER, "Test") {
+      @Override
+      public void executeInternal() {
+        // Never executed.
+      }
+    };
+    assertTrue("Checking source files", task.getSourceFiles().isEmpty());
+    JavaClass2FilePathMapper mapper = task.getJavaClass2FilePathMapper();
+    assertNotNull("Checking mapper", mapper);
+    assertSame("Checking resolved once", mapper, task.getJavaClass2FilePathMapper());
+  }
+
+  /**
+   * Tests that processing the data files on several threads sends the same sensor data, in the
+   * same order and with the same timestamps, as processing them one at a time, and that a
+   * malformed file is reported the same way for both failOnError settings.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testThreads() throws Exception {
+    // Every entry requests the same timestamp, so each one is made unique.
+    for (int i = 0; i < 8; i++) {
+      StringBuilder contents = new StringBuilder();
+      for (int line = 0; line < 8 - i; line++) {
+        contents.append(i == 5 && line == 2 ? "malformed" : "1000").append('\n');
+      }
+      Writer writer = new FileWriter(new File(this.dir, "file" + i + ".txt"));
+      writer.write(contents.toString());
+      writer.close();
+    }
+
+    LineTask sequential = runLineTask("1", "true");
+    LineTask concurrent = runLineTask("4", "true");
+    assertNotNull("Checking failure", sequential.failure);
+    assertNotNull("Checking concurrent failure", concurrent.failure);
+    assertEquals("Checking failure message", sequential.failure.getMessage(),
+        concurrent.failure.getMessage());
+    // Files 0 to 4, and the two entries of file 5 before the malformed line.
+    assertEquals("Checking sent data", 32, sequential.shell.getSensorData().size());
+    assertEquals("Checking concurrent data", sequential.shell.getSensorData(),
+        concurrent.shell.getSensorData());
+
+    sequential = runLineTask("1", "false");
+    concurrent = runLineTask("4", "false");
+    assertNull("Checking no failure", sequential.failure);
+    assertNull("Checking concurrent no failure", concurrent.failure);
+    assertEquals("Checking sent data", 35, sequential.shell.getSensorData().size());
+    assertEquals("Checking concurrent data", sequential.shell.getSensorData(),
+        concurrent.shell.getSensorData());
+  }
+
+  /**
+   * Runs a LineTask over the text files in the test directory.
+   * @param threads The threads attribute.
+   * @param failOnError The failOnError attribute.
+   * @return The task, after it has run.
+   * @throws SensorShellException If the shell cannot be created.
+   */
+  private LineTask runLineTask(String threads, String failOnError) throws SensorShellException {
+    LineTask task = new LineTask();
+    task.setThreads(threads);
+    task.setFailOnError(failOnError);
+    try {
+      task.execute();
+    }
+    catch (BuildException e) {
+      task.failure = e;
+    }
+    return task;
+  }
+
+  /**
+   * A task that sends one sensor data instance for each line of the text files in the test
+   * directory, with the timestamp on the line. The earlier files take longer to process, so
+   * with several threads the files finish out of order.
+   */
+  private class LineTask extends HackystatSensorTask {
+    /** The shell that the sensor data is added to. */
+    private final RecordingSensorShell shell;
+    /** The exception thrown by execute(), if any. */
+    private BuildException failure;
+
+    /**
+     * Creates the task.
+     * @throws SensorShellException If the shell cannot be created.
+     */
+    LineTask() throws SensorShellException {
+      super(HOST, USER, USER, "Test");
+      setVerbose("false");
+      this.shell = new RecordingSensorShell();
+      this.sensorShell = this.shell;
+      Project project = new Project();
+      project.setBaseDir(dir);
+      setProject(project);
+      FileSet fileSet = new FileSet();
+      fileSet.setProject(project);
+      fileSet.setDir(dir);
+      fileSet.setIncludes("*.txt");
+      createDataFiles().addFileSet(fileSet);
+    }
+
+    /** Processes the data files and sends their sensor data. */
+    @Override
+    public void executeInternal() {
+      processDataFiles("test", new DataFileProcessor() {
+        public int process(File dataFile) throws Exception {
+          BufferedReader reader = new BufferedReader(new FileReader(dataFile));
+          int count = 0;
+          try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+              long tstamp = getUniqueTstamp(Long.parseLong(line));
+              Map<String, String> keyValMap = new HashMap<String, String>();
+              keyValMap.put("Timestamp", LongTimeConverter.convertLongToString(tstamp));
+              keyValMap.put("Resource", dataFile.getName());
+              keyValMap.put("Line", String.valueOf(count++));
+              addSensorData(keyValMap);
+              Thread.sleep(count * 2);
+            }
+          }
+          finally {
+            reader.close();
+          }
+          return count;
+        }
+      });
+      sendAndQuit();
+    }
+  }
+
+  /**
+   * A task that processes the data files in the test directory, failing the first time it
+   * processes one of them.
+   */
+  private class FailingTask extends HackystatSensorTask {
+    /** The shell that the sensor data is added to. */
+    private final RecordingSensorShell shell;
+    /** The name of the file that fails once. */
+    private String failingName;
+    /** The files processed, in order. */
+    private final List<File> processed = new ArrayList<File>();
+    /** The number of sensor data instances created for each file. */
+    private int entriesPerFile = 1;
+
+    /**
+     * Creates the task. a.xml and b.xml are listed ahead of c.xml and d.xml, so the first
+     * attempt completes some files before it fails.
+     * @param failingName The name of the file that fails once.
+     * @throws SensorShellException If the shell cannot be created.
+     */
+    FailingTask(String failingName) throws SensorShellException {
+      super(HOST, USER, USER, "Test");
+      this.failingName = failingName;
+      this.shell = new RecordingSensorShell();
+      this.sensorShell = this.shell;
+      Project project = new Project();
+      project.setBaseDir(dir);
+      setProject(project);
+      for (String includes : new String[] { "a.xml,b.xml", "c.xml,d.xml" }) {
+        FileSet fileSet = new FileSet();
+        fileSet.setProject(project);
+        fileSet.setDir(dir);
+        fileSet.setIncludes(includes);
+        createDataFiles().addFileSet(fileSet);
+      }
+    }
+
+    /** Processes the data files and sends their sensor data. */
+    @Override
+    public void executeInternal() {
+      processDataFiles("test", new DataFileProcessor() {
+        public int process(File dataFile) throws Exception {
+          processed.add(dataFile);
+          if (entriesPerFile > 1) {
+            // Gives a background sender time to send the data of the earlier files.
+            Thread.sleep(100);
+          }
+          if (dataFile.getName().equals(failingName)) {
+            failingName = null;
+            throw new Exception("Simulated failure");
+          }
+          for (int i = 0; i < entriesPerFile; i++) {
+            Map<String, String> keyValMap = new HashMap<String, String>();
+            keyValMap.put("Resource", dataFile.getPath());
+            keyValMap.put("Entry", String.valueOf(i));
+            addSensorData(keyValMap);
+          }
+          return entriesPerFile;
+        }
+      });
+      sendAndQuit();
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package org.hackystat.sensor.ant.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hackystat.sensorshell.SensorShell;
+import org.hackystat.sensorshell.SensorShellException;
+import org.hackystat.sensorshell.SensorShellProperties;
+import org.junit.Test;
+
+/**
+ * Tests the SensorDataSender.
+ *
+ * @author agent
+ */
+public class TestSensorDataSender {
+
+  /**
+   * Tests that all queued sensor data is added to the shell in order and sent.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testFlush() throws Exception {
+    RecordingShell shell = new RecordingShell(0, false);
+    // A queue much smaller than the data exercises the back-pressure.
+    SensorDataSender sender = new SensorDataSender(shell, 8, "test-sender");
+    sender.start();
+    for (int i = 0; i < 1000; i++) {
+      sender.add(makeData(i));
+    }
+    assertTrue("Checking flush", sender.flush(10000));
+    assertEquals("Checking count", 1000, shell.added.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("Checking order", String.valueOf(i), shell.added.get(i).get("Index"));
+    }
+    assertTrue("Checking sends", shell.sends > 0);
+    assertTrue("Checking statistics", sender.getStatistics().startsWith("Sent 1000 instances"));
+  }
+
+  /**
+   * Tests that a failure in the sender thread is reported to the producer.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testFailure() throws Exception {
+    SensorDataSender sender = new SensorDataSender(new RecordingShell(0, true), 8,
+        "test-sender");
+    sender.start();
+    try {
+      for (int i = 0; i < 1000; i++) {
+        sender.add(makeData(i));
+      }
+      sender.flush(10000);
+      fail("Sender failure was not reported.");
+    }
+    catch (SensorShellException e) {
+      assertTrue("Checking message", e.getMessage().startsWith("Failure sending sensor data"));
+    }
+  }
+
+  /**
+   * Tests that flush gives up once the timeout expires.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testTimeout() throws Exception {
+    SensorDataSender sender = new SensorDataSender(new RecordingShell(2000, false), 8,
+        "test-sender");
+    sender.start();
+    sender.add(makeData(0));
+    assertFalse("Checking timeout", sender.flush(50));
+    assertTrue("Checking abort", sender.abort(5000));
+  }
+
+  /**
+   * Tests that flush gives up once the timeout expires even if the queue stays full.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testFullQueueTimeout() throws Exception {
+    SensorDataSender sender = new SensorDataSender(new RecordingShell(2000, false), 1,
+        "test-sender");
+    sender.start();
+    // The first instance is being sent, and the second fills the queue.
+    sender.add(makeData(0));
+    sender.add(makeData(1));
+    long start = System.currentTimeMillis();
+    assertFalse("Checking timeout", sender.flush(50));
+    assertTrue("Checking flush time", System.currentTimeMillis() - start < 1000);
+    assertTrue("Checking abort", sender.abort(5000));
+  }
+
+  /**
+   * Tests that abort reports a sender thread that does not stop.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testStuckAbort() throws Exception {
+    RecordingShell shell = new RecordingShell(1000, false);
+    shell.interruptible = false;
+    SensorDataSender sender = new SensorDataSender(shell, 8, "test-sender");
+    sender.start();
+    sender.add(makeData(0));
+    // Wait for the sender thread to start sending the instance.
+    while (shell.sends == 0) {
+      Thread.sleep(10);
+    }
+    assertFalse("Checking stuck abort", sender.abort(50));
+    assertTrue("Checking abort", sender.abort(5000));
+  }
+
+  /**
+   * Creates a sensor data instance.
+   * @param index The index of the instance.
+   * @return The sensor data.
+   */
+  private static Map<String, String> makeData(int index) {
+    Map<String, String> keyValMap = new HashMap<String, String>();
+    keyValMap.put("Index", String.valueOf(index));
+    return keyValMap;
+  }
+
+  /**
+   * A SensorShell that records the data added to it instead of sending it.
+   */
+  private static class RecordingShell extends SensorShell {
+    /** The data added so far. */
+    private final List<Map<String, String>> added = new ArrayList<Map<String, String>>();
+    /** The number of sends. */
+    private volatile int sends;
+    /** How long each send takes, in milliseconds. */
+    private final long sendMillis;
+    /** Whether add() fails. */
+    private final boolean failing;
+    /** Whether an interrupt stops a send. */
+    private boolean interruptible = true;
+
+    /**
+     * Creates the shell.
+     * @param sendMillis How long each send takes, in milliseconds.
+     * @param failing Whether add() fails.
+     * @throws SensorShellException If the shell cannot be created.
+     */
+    RecordingShell(long sendMillis, boolean failing) throws SensorShellException {
+      super(SensorShellProperties.getTestInstance("http://localhost:9876/sensorbase/",
+          "TestSensorDataSender@hackystat.org", "TestSensorDataSender@hackystat.org"), false,
+          "Test");
+      this.sendMillis = sendMillis;
+      this.failing = failing;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void add(Map<String, String> keyValMap) throws SensorShellException {
+      if (this.failing) {
+        throw new SensorShellException("Simulated failure");
+      }
+      this.added.add(keyValMap);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int send() throws SensorShellException {
+      this.sends++;
+      long end = System.currentTimeMillis() + this.sendMillis;
+      for (long wait = this.sendMillis; wait > 0; wait = end - System.currentTimeMillis()) {
+        try {
+          Thread.sleep(wait);
+        }
+        catch (InterruptedException e) {
+          if (this.interruptible) {
+            throw new SensorShellException("Interrupted", e);
+          }
+        }
+      }
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package org.hackystat.sensor.ant.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.hackystat.sensor.ant.checkstyle.CheckstyleSensor;
+import org.hackystat.sensor.ant.clover.CloverSensor;
+import org.hackystat.sensor.ant.dependencyfinder.DependencyFinderSensor;
+import org.hackystat.sensor.ant.emma.EmmaSensor;
+import org.hackystat.sensor.ant.findbugs.FindBugsSensor;
+import org.hackystat.sensor.ant.javancss.JavaNcssSensor;
+import org.hackystat.sensor.ant.jdepend.JDependSensor;
+import org.hackystat.sensor.ant.junit.JUnitSensor;
+import org.hackystat.sensor.ant.pmd.PmdSensor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that each XML sensor sends exactly the same sensor data, in the same order and with the
+ * same timestamps, whether it parses its reports with JAXB or with the streaming parser.
+ *
+ * @author agent
+ */
+public class TestStreamingSensors {
+
+  /** The test host, which is never contacted. */
+  private static final String HOST = RecordingSensorShell.HOST;
+
+  /** The test user. */
+  private static final String USER = RecordingSensorShell.USER;
+
+  /** The runtime given to every sensor, so that the timestamps derived from it match. */
+  private static final long RUNTIME = 1200000000000L;
+
+  /**
+   * Source files for some of the classes in the test reports. DependencyFinder, JavaNCSS and
+   * JDepend only send sensor data for classes whose source files they can find.
+   */
+  private static final String[] SOURCE_FILES = {
+    "org/hackystat/sensor/ant/antbuild/BuildSensorAntListener.java",
+    "org/hackystat/sensor/ant/checkstyle/CheckstyleSensor.java",
+    "org/hackystat/sensor/xmldata/MessageDelegate.java",
+    "org/hackystat/sensor/xmldata/TestXmlDataController.java"
+  };
+
+  /** The directory holding the source files. */
+  private File sourceDir;
+
+  /**
+   * Creates the source files.
+   * @throws IOException If the files cannot be created.
+   */
+  @Before
+  public void setUp() throws IOException {
+    this.sourceDir = File.createTempFile("TestStreamingSensors", "");
+    this.sourceDir.delete();
+    for (String path : SOURCE_FILES) {
+      File file = new File(this.sourceDir, path);
+      file.getParentFile().mkdirs();
+      file.createNewFile();
+    }
+  }
+
+  /** Deletes the source files. */
+  @After
+  public void tearDown() {
+    delete(this.sourceDir);
+  }
+
+  /**
+   * Tests the Checkstyle sensor.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testCheckstyle() throws Exception {
+    assertStreamingMatches(new CheckstyleSensor(HOST, USER, USER),
+        new CheckstyleSensor(HOST, USER, USER), "checkstyletestfiles");
+  }
+
+  /**
+   * Tests the Clover sensor.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testClover() throws Exception {
+    assertStreamingMatches(new CloverSensor(HOST, USER, USER), new CloverSensor(HOST, USER, USER),
+        "clovertestfiles");
+  }
+
+  /**
+   * Tests the DependencyFinder sensor.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testDependencyFinder() throws Exception {
+    assertStreamingMatches(new DependencyFinderSensor(HOST, USER, USER),
+        new DependencyFinderSensor(HOST, USER, USER), "dependencyfindertestfiles");
+  }
+
+  /**
+   * Tests the Emma sensor.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testEmma() throws Exception {
+    assertStreamingMatches(new EmmaSensor(HOST, USER, USER), new EmmaSensor(HOST, USER, USER),
+        "emmatestfiles");
+  }
+
+  /**
+   * Tests the FindBugs sensor.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testFindBugs() throws Exception {
+    assertStreamingMatches(new FindBugsSensor(HOST, USER, USER),
+        new FindBugsSensor(HOST, USER, USER), "findbugstestfiles");
+  }
+
+  /**
+   * Tests the JavaNCSS sensor.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testJavaNcss() throws Exception {
+    assertStreamingMatches(new JavaNcssSensor(HOST, USER, USER),
+        new JavaNcssSensor(HOST, USER, USER), "javancsstestfiles");
+  }
+
+  /**
+   * Tests the JDepend sensor.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testJDepend() throws Exception {
+    assertStreamingMatches(new JDependSensor(HOST, USER, USER),
+        new JDependSensor(HOST, USER, USER), "jdependtestfiles");
+  }
+
+  /**
+   * Tests the JUnit sensor.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testJUnit() throws Exception {
+    assertStreamingMatches(new JUnitSensor(HOST, USER, USER), new JUnitSensor(HOST, USER, USER),
+        "junittestfiles");
+  }
+
+  /**
+   * Tests the JUnit sensor on a report with a test case that has no time, which both parsers
+   * take to be zero.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testJUnitWithoutTime() throws Exception {
+    File testFileDir = new File(this.sourceDir, "junit");
+    testFileDir.mkdirs();
+    Writer writer = new FileWriter(new File(testFileDir, "TEST-org.hackystat.Foo.xml"));
+    writer.write("<testsuite name=\"org.hackystat.Foo\" tests=\"2\">\n"
+        + "  <testcase name=\"testTimed\" time=\"0.5\"/>\n"
+        + "  <testcase name=\"testUntimed\"/>\n"
+        + "</testsuite>\n");
+    writer.close();
+    List<Map<String, String>> sensorData = assertStreamingMatches(
+        new JUnitSensor(HOST, USER, USER), new JUnitSensor(HOST, USER, USER), testFileDir);
+    assertEquals("Checking size", 2, sensorData.size());
+    assertEquals("Checking time", "500", sensorData.get(0).get("ElapsedTime"));
+    assertEquals("Checking missing time", "0", sensorData.get(1).get("ElapsedTime"));
+  }
+
+  /**
+   * Tests the PMD sensor.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testPmd() throws Exception {
+    assertStreamingMatches(new PmdSensor(HOST, USER, USER), new PmdSensor(HOST, USER, USER),
+        "pmdtestfiles");
+  }
+
+  /**
+   * Runs one sensor with JAXB and another of the same kind with the streaming parser over the
+   * XML files in a test directory, and checks that they send the same sensor data. Only the
+   * Runtime values are ignored, since the FindBugs sensor uses the current time for them.
+   * @param jaxbSensor The sensor that uses JAXB.
+   * @param streamingSensor The sensor that uses the streaming parser.
+   * @param testFileProperty The system property naming the directory of test files.
+   * @throws Exception If a problem occurs.
+   */
+  private void assertStreamingMatches(HackystatSensorTask jaxbSensor,
+      HackystatSensorTask streamingSensor, String testFileProperty) throws Exception {
+    File testFileDir = new File(System.getProperty(testFileProperty)).getAbsoluteFile();
+    assertStreamingMatches(jaxbSensor, streamingSensor, testFileDir);
+  }
+
+  /**
+   * Runs one sensor with JAXB and another of the same kind with the streaming parser over the
+   * XML files in a directory, and checks that they send the same sensor data.
+   * @param jaxbSensor The sensor that uses JAXB.
+   * @param streamingSensor The sensor that uses the streaming parser.
+   * @param testFileDir The directory of test files.
+   * @return The sensor data sent, without the Runtime values.
+   * @throws Exception If a problem occurs.
+   */
+  private List<Map<String, String>> assertStreamingMatches(HackystatSensorTask jaxbSensor,
+      HackystatSensorTask streamingSensor, File testFileDir) throws Exception {
+    List<Map<String, String>> jaxbData = run(jaxbSensor, false, testFileDir);
+    assertFalse("Checking JAXB data", jaxbData.isEmpty());
+    assertEquals("Checking streaming data", jaxbData, run(streamingSensor, true, testFileDir));
+    return jaxbData;
+  }
+
+  /**
+   * Runs a sensor over the XML files in a test directory.
+   * @param sensor The sensor.
+   * @param streaming Whether to use the streaming parser.
+   * @param testFileDir The directory of test files.
+   * @return The sensor data sent, without the Runtime values.
+   * @throws Exception If a problem occurs.
+   */
+  private List<Map<String, String>> run(HackystatSensorTask sensor, boolean streaming,
+      File testFileDir) throws Exception {
+    RecordingSensorShell shell = new RecordingSensorShell();
+    sensor.sensorShell = shell;
+    sensor.runtime = RUNTIME;
+    sensor.setVerbose("false");
+    sensor.setStreaming(String.valueOf(streaming));
+    Project project = new Project();
+    project.setBaseDir(this.sourceDir);
+    sensor.setProject(project);
+    sensor.createDataFiles().addFileSet(makeFileSet(project, testFileDir, "*.xml"));
+    sensor.createSourceFiles().addFileSet(makeFileSet(project, this.sourceDir, "**/*.java"));
+    sensor.execute();
+    List<Map<String, String>> sensorData = shell.getSensorData();
+    for (Map<String, String> keyValMap : sensorData) {
+      keyValMap.remove("Runtime");
+    }
+    return sensorData;
+  }
+
+  /**
+   * Creates a FileSet.
+   * @param project The project.
+   * @param dir The base directory.
+   * @param includes The include patterns.
+   * @return The FileSet.
+   */
+  private static FileSet makeFileSet(Project project, File dir, String includes) {
+    FileSet fileSet = new FileSet();
+    fileSet.setProject(project);
+    fileSet.setDir(dir);
+    fileSet.setIncludes(includes);
+    return fileSet;
+  }
+
+  /**
+   * Deletes a file or a directory and its contents.
+   * @param file The file or directory.
+   */
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
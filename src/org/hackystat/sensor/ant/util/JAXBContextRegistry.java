@@ -0,0 +1,163 @@
+package org.hackystat.sensor.ant.util;
+
+import java.io.File;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+/**
+ * A process-wide registry of JAXBContext instances shared by all of the XML report sensors.
+ * Creating a JAXBContext is expensive (it introspects every class reachable from the
+ * ObjectFactory), so each context is built at most once per ObjectFactory class. Since a Class
+ * object is unique to the classloader that defined it, this also means once per classloader.
+ * <p>
+ * JAXBContext is thread-safe, but Unmarshaller is not. The registry therefore also keeps a
+ * small pool of idle Unmarshallers per context. Callers either use the unmarshal() convenience
+ * method, or pair each acquireUnmarshaller() with a releaseUnmarshaller() in a finally block.
+ *
+ * @author agent
+ */
+public final class JAXBContextRegistry {
+
+  /** The maximum number of idle Unmarshallers retained per context. */
+  private static final int MAX_IDLE_UNMARSHALLERS = 16;
+
+  /** Maps each ObjectFactory class to its (lazily created) JAXBContext. */
+  private static final ConcurrentMap<Class<?>, JAXBContext> contexts =
+    new ConcurrentHashMap<Class<?>, JAXBContext>();
+
+  /** Maps each ObjectFactory class to its pool of idle Unmarshallers. */
+  private static final ConcurrentMap<Class<?>, UnmarshallerPool> pools =
+    new ConcurrentHashMap<Class<?>, UnmarshallerPool>();
+
+  /** Private constructor for utility class. */
+  private JAXBContextRegistry() {
+    // do nothing
+  }
+
+  /**
+   * Returns the shared JAXBContext for the passed ObjectFactory class, creating it on first use.
+   *
+   * @param objectFactory The JAXB generated ObjectFactory class for the report schema.
+   * @return The shared JAXBContext.
+   * @throws JAXBException If the context cannot be created.
+   */
+  public static JAXBContext getContext(Class<?> objectFactory) throws JAXBException {
+    JAXBContext context = contexts.get(objectFactory);
+    if (context == null) {
+      // Two threads may race to build the same context; only the first one is retained.
+      JAXBContext newContext = JAXBContext.newInstance(objectFactory);
+      context = contexts.putIfAbsent(objectFactory, newContext);
+      if (context == null) {
+        context = newContext;
+      }
+    }
+    return context;
+  }
+
+  /**
+   * Returns an Unmarshaller for the passed ObjectFactory class for the exclusive use of the
+   * caller. The Unmarshaller should be handed back with releaseUnmarshaller() when done.
+   *
+   * @param objectFactory The JAXB generated ObjectFactory class for the report schema.
+   * @return An Unmarshaller, either pooled or newly created.
+   * @throws JAXBException If the context or the Unmarshaller cannot be created.
+   */
+  public static Unmarshaller acquireUnmarshaller(Class<?> objectFactory) throws JAXBException {
+    Unmarshaller unmarshaller = getPool(objectFactory).poll();
+    if (unmarshaller == null) {
+      unmarshaller = getContext(objectFactory).createUnmarshaller();
+    }
+    return unmarshaller;
+  }
+
+  /**
+   * Returns a previously acquired Unmarshaller to the pool. If the pool is already full, the
+   * Unmarshaller is simply dropped.
+   *
+   * @param objectFactory The ObjectFactory class the Unmarshaller was acquired for.
+   * @param unmarshaller The Unmarshaller, which the caller must no longer use.
+   */
+  public static void releaseUnmarshaller(Class<?> objectFactory, Unmarshaller unmarshaller) {
+    if (unmarshaller != null) {
+      getPool(objectFactory).offer(unmarshaller);
+    }
+  }
+
+  /**
+   * Unmarshals the passed XML file using a pooled Unmarshaller for the passed ObjectFactory.
+   *
+   * @param objectFactory The JAXB generated ObjectFactory class for the report schema.
+   * @param xmlFile The XML report file.
+   * @return The root object of the unmarshalled report.
+   * @throws JAXBException If the file cannot be unmarshalled.
+   */
+  public static Object unmarshal(Class<?> objectFactory, File xmlFile) throws JAXBException {
+    Unmarshaller unmarshaller = acquireUnmarshaller(objectFactory);
+    try {
+      return unmarshaller.unmarshal(xmlFile);
+    }
+    finally {
+      releaseUnmarshaller(objectFactory, unmarshaller);
+    }
+  }
+
+  /**
+   * Returns the Unmarshaller pool associated with the passed ObjectFactory class.
+   *
+   * @param objectFactory The ObjectFactory class.
+   * @return The pool, created if necessary.
+   */
+  private static UnmarshallerPool getPool(Class<?> objectFactory) {
+    UnmarshallerPool pool = pools.get(objectFactory);
+    if (pool == null) {
+      UnmarshallerPool newPool = new UnmarshallerPool();
+      pool = pools.putIfAbsent(objectFactory, newPool);
+      if (pool == null) {
+        pool = newPool;
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * A bounded, lock-free pool of idle Unmarshallers.
+   */
+  private static class UnmarshallerPool {
+    /** The idle Unmarshallers. */
+    private final Queue<Unmarshaller> idle = new ConcurrentLinkedQueue<Unmarshaller>();
+    /** The number of idle Unmarshallers, tracked separately since Queue.size() is O(n). */
+    private final AtomicInteger idleCount = new AtomicInteger(0);
+
+    /**
+     * Removes and returns an idle Unmarshaller.
+     * @return The Unmarshaller, or null if the pool is empty.
+     */
+    Unmarshaller poll() {
+      Unmarshaller unmarshaller = this.idle.poll();
+      if (unmarshaller != null) {
+        this.idleCount.decrementAndGet();
+      }
+      return unmarshaller;
+    }
+
+    /**
+     * Adds an Unmarshaller to the pool unless it is already full.
+     * @param unmarshaller The Unmarshaller.
+     */
+    void offer(Unmarshaller unmarshaller) {
+      if (this.idleCount.incrementAndGet() <= MAX_IDLE_UNMARSHALLERS) {
+        this.idle.offer(unmarshaller);
+      }
+      else {
+        this.idleCount.decrementAndGet();
+      }
+    }
+  }
+}
@@ -30,7 +30,14 @@ public class JavaClass2FilePathMapper {
    */
   private Map<String, String> packagePathMap = new HashMap<String, String>();
 
+  /** Finds the canonical file name ending with a class path, in canonicalfileNames order. */
+  private SuffixIndex fileIndex;
 
+  /** The keys of packagePathMap, in the order in which they were originally searched. */
+  private List<String> packagePaths;
+
+  /** Finds the package path ending with a package name, in packagePaths order. */
+  private SuffixIndex packageIndex;
   
   /**
    * This constructor accepts a list of file names, and processes this list to
@@ -61,6 +68,7 @@ public class JavaClass2FilePathMapper {
       String editedPath = originalPath[0].replace('\\', CANONICAL_SEPARATOR);
       this.packagePathMap.put(editedPath, originalPath[0]);
     }
+    buildIndexes();
   }
   
   /**
@@ -84,9 +92,21 @@ public class JavaClass2FilePathMapper {
       String editedPath = originalPath[0].replace('\\', CANONICAL_SEPARATOR);
       this.packagePathMap.put(editedPath, originalPath[0]);
     }
+    buildIndexes();
   }
     
 
+  /**
+   * Builds the suffix indexes once all of the file names and package paths are known. Package
+   * paths are indexed in the iteration order of packagePathMap, which is the order in which
+   * getPackagePath() used to search them.
+   */
+  private void buildIndexes() {
+    this.fileIndex = new SuffixIndex(this.canonicalfileNames);
+    this.packagePaths = new ArrayList<String>(this.packagePathMap.keySet());
+    this.packageIndex = new SuffixIndex(this.packagePaths);
+  }
+
   /**
    * Recursively traverses the passed directory, invoking "addFile" on all files
    * found.
@@ -134,20 +154,14 @@ public class JavaClass2FilePathMapper {
    * @return The java file name, or null if there is no mapping information.
    */
   public String getFilePath(String fullyQualifiedClassName) {
-    // Note that this uses linear search. Improve if this is too slow.
     String searchString = fullyQualifiedClassName.replace('.', CANONICAL_SEPARATOR);
     int indexOfFirstDollarSign = searchString.indexOf('$');
     if (indexOfFirstDollarSign >= 0) {
       searchString = searchString.substring(0, indexOfFirstDollarSign);
     }
-    int size = this.canonicalfileNames.size();
-    for (int i = 0; i < size; i++) {
-      String canonicalFileName = this.canonicalfileNames.get(i);
-      if (canonicalFileName.endsWith(searchString)) {
-        return this.originalFileNames.get(i);
-      }
-    }
-    return null;
+    // Returns the first file whose canonical name ends with the search string.
+    int index = this.fileIndex.indexOf(searchString);
+    return (index < 0) ? null : this.originalFileNames.get(index);
   }
 
   /**
@@ -170,11 +184,7 @@ public class JavaClass2FilePathMapper {
    */
   public String getPackagePath(String packageName) {
     String tempPackageName = packageName.replace('.', CANONICAL_SEPARATOR);
-    for (String path : this.packagePathMap.keySet()) {
-      if (path.endsWith(tempPackageName)) {
-        return this.packagePathMap.get(path);
-      }
-    }
-    return "";
+    int index = this.packageIndex.indexOf(tempPackageName);
+    return (index < 0) ? "" : this.packagePathMap.get(this.packagePaths.get(index));
   }
 }
@@ -1,6 +1,7 @@
 package org.hackystat.sensor.ant.util;
 
 import java.util.GregorianCalendar;
+import java.util.TimeZone;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
@@ -10,11 +11,51 @@ import org.apache.tools.ant.BuildException;
 
 /**
  * Utilities to convert times represented as a long to other formats.
+ * <p>
+ * The sensors only ever use XmlGregorianCalendar timestamps as strings, so convertLongToString()
+ * formats the xsd:dateTime string directly from the epoch milliseconds into a per-thread buffer,
+ * producing exactly what XmlGregorianCalendar.toString() would. Both conversions are thread-safe
+ * and neither looks up a new DatatypeFactory per call.
  * 
  * @author jsakuda
  *
  */
 public final class LongTimeConverter {
+
+  /** Milliseconds per day. */
+  private static final long MILLIS_PER_DAY = 86400000L;
+
+  /** Milliseconds per minute. */
+  private static final int MILLIS_PER_MINUTE = 60000;
+
+  /** The earliest year formatted directly; all years from here on are proleptic Gregorian. */
+  private static final int MIN_FAST_YEAR = 1583;
+
+  /** The latest year formatted directly; later years need more than four digits. */
+  private static final int MAX_FAST_YEAR = 9999;
+
+  /** One DatatypeFactory per thread, since DatatypeFactory is not specified as thread-safe. */
+  private static final ThreadLocal<DatatypeFactory> factories = 
+    new ThreadLocal<DatatypeFactory>() {
+      @Override
+      protected DatatypeFactory initialValue() {
+        try {
+          return DatatypeFactory.newInstance();
+        }
+        catch (DatatypeConfigurationException e) {
+          throw new BuildException("Error creating DatatypeFactory used for converting tstamp.",
+              e);
+        }
+      }
+    };
+
+  /** One formatter (time zone and character buffer) per thread. */
+  private static final ThreadLocal<Formatter> formatters = new ThreadLocal<Formatter>() {
+    @Override
+    protected Formatter initialValue() {
+      return new Formatter(TimeZone.getDefault());
+    }
+  };
   
   /** Private constructor for utility class. */
   private LongTimeConverter() {
@@ -28,15 +69,131 @@ public final class LongTimeConverter {
    * @return Returns the time passed in as a <code>XmlGregorianCalendar</code>.
    */
   public static XMLGregorianCalendar convertLongToGregorian(long timeInMillis) {
-    DatatypeFactory factory = null;
-    try {
-      factory = DatatypeFactory.newInstance();
-      GregorianCalendar calendar = new GregorianCalendar();
+    GregorianCalendar calendar = new GregorianCalendar();
+    calendar.setTimeInMillis(timeInMillis);
+    return factories.get().newXMLGregorianCalendar(calendar);
+  }
+
+  /**
+   * Converts a time represented in a long to its xsd:dateTime string in the default time zone,
+   * such as 2008-03-25T10:15:30.250-10:00. The result equals 
+   * convertLongToGregorian(timeInMillis).toString().
+   * 
+   * @param timeInMillis The time to convert in milliseconds.
+   * @return Returns the time passed in as an xsd:dateTime string.
+   */
+  public static String convertLongToString(long timeInMillis) {
+    return formatters.get().format(timeInMillis);
+  }
+
+  /**
+   * Formats epoch milliseconds as xsd:dateTime strings in a single time zone. Not thread-safe;
+   * each thread gets its own instance.
+   */
+  static final class Formatter {
+    /** The time zone to format in. */
+    private final TimeZone zone;
+    /** The reusable output buffer; yyyy-MM-ddTHH:mm:ss.SSS+HH:MM is 29 characters. */
+    private final char[] buffer = new char[29];
+
+    /**
+     * Creates a formatter for the passed time zone.
+     * @param zone The time zone.
+     */
+    Formatter(TimeZone zone) {
+      this.zone = zone;
+    }
+
+    /**
+     * Formats the passed time. Times whose zone offset is not a whole number of minutes, or
+     * whose year is outside 1583-9999, are handed to XmlGregorianCalendar instead.
+     * 
+     * @param timeInMillis The time in milliseconds.
+     * @return The xsd:dateTime string.
+     */
+    String format(long timeInMillis) {
+      int offset = this.zone.getOffset(timeInMillis);
+      if (offset % MILLIS_PER_MINUTE != 0) {
+        return formatSlowly(timeInMillis);
+      }
+      long local = timeInMillis + offset;
+      long days = local / MILLIS_PER_DAY;
+      int millisOfDay = (int) (local % MILLIS_PER_DAY);
+      if (millisOfDay < 0) {
+        days--;
+        millisOfDay += MILLIS_PER_DAY;
+      }
+      // Civil date from days since 1970-01-01, using 400 year eras starting on March 1st.
+      long shifted = days + 719468;
+      long era = (shifted >= 0 ? shifted : shifted - 146096) / 146097;
+      int dayOfEra = (int) (shifted - era * 146097);
+      int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+      int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+      int monthIndex = (5 * dayOfYear + 2) / 153;
+      int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+      int month = (monthIndex < 10) ? monthIndex + 3 : monthIndex - 9;
+      long year = era * 400 + yearOfEra + ((month <= 2) ? 1 : 0);
+      if (year < MIN_FAST_YEAR || year > MAX_FAST_YEAR) {
+        return formatSlowly(timeInMillis);
+      }
+
+      char[] buf = this.buffer;
+      int yearInt = (int) year;
+      put2(buf, 0, yearInt / 100);
+      put2(buf, 2, yearInt % 100);
+      buf[4] = '-';
+      put2(buf, 5, month);
+      buf[7] = '-';
+      put2(buf, 8, day);
+      buf[10] = 'T';
+      int seconds = millisOfDay / 1000;
+      put2(buf, 11, seconds / 3600);
+      buf[13] = ':';
+      put2(buf, 14, (seconds / 60) % 60);
+      buf[16] = ':';
+      put2(buf, 17, seconds % 60);
+      buf[19] = '.';
+      int millis = millisOfDay % 1000;
+      buf[20] = (char) ('0' + millis / 100);
+      put2(buf, 21, millis % 100);
+      if (offset == 0) {
+        buf[23] = 'Z';
+        return new String(buf, 0, 24);
+      }
+      int offsetMinutes = offset / MILLIS_PER_MINUTE;
+      if (offsetMinutes < 0) {
+        buf[23] = '-';
+        offsetMinutes = -offsetMinutes;
+      }
+      else {
+        buf[23] = '+';
+      }
+      put2(buf, 24, offsetMinutes / 60);
+      buf[26] = ':';
+      put2(buf, 27, offsetMinutes % 60);
+      return new String(buf, 0, 29);
+    }
+
+    /**
+     * Formats the passed time through XmlGregorianCalendar.
+     * @param timeInMillis The time in milliseconds.
+     * @return The xsd:dateTime string.
+     */
+    private String formatSlowly(long timeInMillis) {
+      GregorianCalendar calendar = new GregorianCalendar(this.zone);
       calendar.setTimeInMillis(timeInMillis);
-      return factory.newXMLGregorianCalendar(calendar);
+      return factories.get().newXMLGregorianCalendar(calendar).toString();
     }
-    catch (DatatypeConfigurationException e) {
-      throw new BuildException("Error creating DatatypeFactory used for converting tstamp.", e);
+
+    /**
+     * Writes a value between 0 and 99 as two digits.
+     * @param buf The buffer.
+     * @param index The index of the first digit.
+     * @param value The value.
+     */
+    private static void put2(char[] buf, int index, int value) {
+      buf[index] = (char) ('0' + value / 10);
+      buf[index + 1] = (char) ('0' + value % 10);
     }
   }
 }
@@ -0,0 +1,122 @@
+package org.hackystat.sensor.ant.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A pull-parser (StAX) engine that walks an XML report exactly once and forwards each element
+ * to an XmlReportHandler. Unlike unmarshalling the report into a JAXB object tree, the memory
+ * used by the parser is bounded by the element nesting depth and the size of any text the
+ * handler asks for, so it is independent of the overall size of the report.
+ *
+ * @author agent
+ */
+public final class StreamingXmlParser {
+
+  /** The size of the read buffer placed in front of the report file. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** The shared factory. XMLInputFactory is thread-safe once configured. */
+  private static final XMLInputFactory factory = createFactory();
+
+  /** Private constructor for utility class. */
+  private StreamingXmlParser() {
+    // do nothing
+  }
+
+  /**
+   * Creates and configures the shared XMLInputFactory.
+   * @return The factory.
+   */
+  private static XMLInputFactory createFactory() {
+    XMLInputFactory newFactory = XMLInputFactory.newInstance();
+    // Reports never need external DTDs, and resolving them could mean network access.
+    newFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    newFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    return newFactory;
+  }
+
+  /**
+   * Parses the passed XML report, invoking the handler for each element.
+   *
+   * @param xmlFile The XML report.
+   * @param handler The handler that receives the element callbacks.
+   * @throws Exception If the file cannot be read or parsed, or if the handler throws.
+   */
+  public static void parse(File xmlFile, XmlReportHandler handler) throws Exception {
+    InputStream stream = new BufferedInputStream(new FileInputStream(xmlFile), BUFFER_SIZE);
+    XMLStreamReader reader = null;
+    try {
+      reader = factory.createXMLStreamReader(stream);
+      parse(reader, handler);
+    }
+    finally {
+      if (reader != null) {
+        reader.close();
+      }
+      stream.close();
+    }
+  }
+
+  /**
+   * Walks the passed reader to the end of the document, invoking the handler for each element.
+   *
+   * @param reader The reader, positioned at the start of the document.
+   * @param handler The handler that receives the element callbacks.
+   * @throws Exception If the document cannot be parsed, or if the handler throws.
+   */
+  private static void parse(XMLStreamReader reader, XmlReportHandler handler) throws Exception {
+    List<String> path = new ArrayList<String>();
+    Map<String, String> attributes = new HashMap<String, String>();
+    StringBuilder text = new StringBuilder();
+    // Non-zero while we are inside an element whose text the handler asked for.
+    int textDepth = 0;
+    while (reader.hasNext()) {
+      switch (reader.next()) {
+      case XMLStreamConstants.START_ELEMENT:
+        String name = reader.getLocalName();
+        String parent = path.isEmpty() ? null : path.get(path.size() - 1);
+        attributes.clear();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+          attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        path.add(name);
+        handler.startElement(name, parent, attributes);
+        if (textDepth == 0 && handler.wantsText(name, parent)) {
+          textDepth = path.size();
+          text.setLength(0);
+        }
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.CDATA:
+      case XMLStreamConstants.SPACE:
+        if (textDepth > 0) {
+          text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+        }
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        String endName = path.remove(path.size() - 1);
+        String endParent = path.isEmpty() ? null : path.get(path.size() - 1);
+        String endText = null;
+        if (textDepth == path.size() + 1) {
+          endText = text.toString();
+          textDepth = 0;
+        }
+        handler.endElement(endName, endParent, endText);
+        break;
+      default:
+        break;
+      }
+    }
+  }
+}
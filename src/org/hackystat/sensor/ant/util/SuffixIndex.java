@@ -0,0 +1,116 @@
+package org.hackystat.sensor.ant.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An index over an ordered list of '/' separated paths that answers the question "which is the
+ * first path that ends with this string?" without scanning every path.
+ * <p>
+ * If the suffix contains a '/', then any path ending with it must have exactly the same last
+ * component as the suffix, so only the paths sharing that last component need to be checked.
+ * Suffixes without a '/' (such as classes in the default package) can match the tail of a longer
+ * last component, so they fall back to a scan over the distinct last components, and the answer
+ * is remembered. In both cases the result is identical to a linear endsWith() scan.
+ * <p>
+ * The index is immutable once built and may be shared between threads.
+ *
+ * @author agent
+ */
+class SuffixIndex {
+
+  /** The separator used in all paths and suffixes. */
+  private static final char SEPARATOR = '/';
+
+  /** Marks a remembered suffix with no matching path, since a ConcurrentMap cannot hold null. */
+  private static final Integer NOT_FOUND = Integer.valueOf(-1);
+
+  /** The indexed paths, in priority order. */
+  private final List<String> paths;
+
+  /** Maps each last path component to the ascending positions of the paths ending with it. */
+  private final Map<String, List<Integer>> positionsByComponent =
+    new HashMap<String, List<Integer>>();
+
+  /** Each distinct last component, in order of its first (lowest) position. */
+  private final List<String> components = new ArrayList<String>();
+
+  /** The answers to previous lookups of suffixes without a separator. */
+  private final ConcurrentMap<String, Integer> fallbackCache =
+    new ConcurrentHashMap<String, Integer>();
+
+  /**
+   * Builds the index.
+   *
+   * @param paths The paths, in the order in which matches should be preferred.
+   */
+  SuffixIndex(List<String> paths) {
+    this.paths = paths;
+    for (int i = 0; i < paths.size(); i++) {
+      String component = lastComponent(paths.get(i));
+      List<Integer> positions = this.positionsByComponent.get(component);
+      if (positions == null) {
+        positions = new ArrayList<Integer>(1);
+        this.positionsByComponent.put(component, positions);
+        this.components.add(component);
+      }
+      positions.add(i);
+    }
+  }
+
+  /**
+   * Returns the position of the first path that ends with the passed suffix.
+   *
+   * @param suffix The suffix, using '/' as the separator.
+   * @return The position of the matching path, or -1 if no path ends with the suffix.
+   */
+  int indexOf(String suffix) {
+    if (suffix.indexOf(SEPARATOR) >= 0) {
+      List<Integer> positions = this.positionsByComponent.get(lastComponent(suffix));
+      if (positions != null) {
+        for (Integer position : positions) {
+          if (this.paths.get(position).endsWith(suffix)) {
+            return position;
+          }
+        }
+      }
+      return -1;
+    }
+    Integer position = this.fallbackCache.get(suffix);
+    if (position == null) {
+      position = scanComponents(suffix);
+      this.fallbackCache.put(suffix, position);
+    }
+    return position;
+  }
+
+  /**
+   * Finds the first path whose last component ends with a suffix that contains no separator.
+   *
+   * @param suffix The suffix.
+   * @return The position of the matching path, or NOT_FOUND.
+   */
+  private Integer scanComponents(String suffix) {
+    // Components are held in order of first position, so the first match is the earliest path.
+    for (String component : this.components) {
+      if (component.endsWith(suffix)) {
+        return this.positionsByComponent.get(component).get(0);
+      }
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * Returns the part of the path following its last separator.
+   *
+   * @param path The path.
+   * @return The last component, which is the whole path if it contains no separator.
+   */
+  private static String lastComponent(String path) {
+    return path.substring(path.lastIndexOf(SEPARATOR) + 1);
+  }
+}
@@ -0,0 +1,50 @@
+package org.hackystat.sensor.ant.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import javax.xml.bind.Unmarshaller;
+
+import org.hackystat.sensor.ant.checkstyle.jaxb.Checkstyle;
+import org.hackystat.sensor.ant.checkstyle.jaxb.ObjectFactory;
+import org.junit.Test;
+
+/**
+ * Tests the JAXBContextRegistry.
+ *
+ * @author agent
+ */
+public class TestJAXBContextRegistry {
+
+  /**
+   * Tests that contexts are created once and that released Unmarshallers are reused.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testContextAndPool() throws Exception {
+    assertSame("Context should be cached", JAXBContextRegistry.getContext(ObjectFactory.class),
+        JAXBContextRegistry.getContext(ObjectFactory.class));
+    Unmarshaller unmarshaller = JAXBContextRegistry.acquireUnmarshaller(ObjectFactory.class);
+    JAXBContextRegistry.releaseUnmarshaller(ObjectFactory.class, unmarshaller);
+    assertSame("Unmarshaller should be pooled", unmarshaller,
+        JAXBContextRegistry.acquireUnmarshaller(ObjectFactory.class));
+  }
+
+  /**
+   * Tests that unmarshalling through the registry matches a freshly created Unmarshaller.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testUnmarshal() throws Exception {
+    File xmlFile = new File(System.getProperty("checkstyletestfiles"), "checkstyle.xml");
+    for (int i = 0; i < 3; i++) {
+      Checkstyle checkstyle = (Checkstyle) JAXBContextRegistry.unmarshal(ObjectFactory.class,
+          xmlFile);
+      Checkstyle expected = (Checkstyle) javax.xml.bind.JAXBContext.newInstance(
+          ObjectFactory.class).createUnmarshaller().unmarshal(xmlFile);
+      assertEquals("Checking file count", expected.getFile().size(), checkstyle.getFile().size());
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.hackystat.sensor.ant.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests the JavaClass2FilePathMapper.
+ *
+ * @author agent
+ */
+public class TestJavaClass2FilePathMapper {
+
+  /** The source files used by the tests, in the order they are passed to the mapper. */
+  private static final String[] FILES = {
+    "/home/src/org/hackystat/Foo.java",
+    "/home/src/org/hackystat/sub/Foo.java",
+    "/home/test/org/hackystat/Foo.java",
+    "/home/src/org/hackystat/BarFoo.java",
+    "/home/src/Default.java",
+    "/home/src/xorg/hackystat/Baz.java",
+  };
+
+  /**
+   * Returns a new mapper over FILES.
+   * @return The mapper.
+   */
+  private JavaClass2FilePathMapper makeMapper() {
+    Set<String> files = new LinkedHashSet<String>();
+    for (String file : FILES) {
+      files.add(file);
+    }
+    return new JavaClass2FilePathMapper(files);
+  }
+
+  /**
+   * Tests class name lookups, which must find the first file whose path ends with the class path.
+   */
+  @Test
+  public void testGetFilePath() {
+    JavaClass2FilePathMapper mapper = makeMapper();
+    assertEquals("Checking first match", FILES[0], mapper.getFilePath("org.hackystat.Foo"));
+    assertEquals("Checking deeper package", FILES[1], mapper.getFilePath("hackystat.sub.Foo"));
+    assertEquals("Checking inner class", FILES[0], mapper.getFilePath("org.hackystat.Foo$Inner"));
+    assertEquals("Checking anonymous class", FILES[3], 
+        mapper.getFilePath("org.hackystat.BarFoo$1"));
+    assertEquals("Checking unaligned package", FILES[5], mapper.getFilePath("org.hackystat.Baz"));
+    assertEquals("Checking default package", FILES[4], mapper.getFilePath("Default"));
+    assertEquals("Checking partial simple name", FILES[0], mapper.getFilePath("oo"));
+    assertNull("Checking missing class", mapper.getFilePath("org.hackystat.Missing"));
+    assertNull("Checking missing package", mapper.getFilePath("com.hackystat.Foo"));
+  }
+
+  /**
+   * Tests package name lookups.
+   */
+  @Test
+  public void testGetPackagePath() {
+    JavaClass2FilePathMapper mapper = makeMapper();
+    assertEquals("Checking package", "/home/src/org/hackystat/sub", 
+        mapper.getPackagePath("org.hackystat.sub"));
+    assertEquals("Checking missing package", "", mapper.getPackagePath("org.missing"));
+  }
+}
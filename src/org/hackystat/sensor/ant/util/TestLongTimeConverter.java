@@ -0,0 +1,57 @@
+package org.hackystat.sensor.ant.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import javax.xml.datatype.DatatypeFactory;
+
+import org.junit.Test;
+
+/**
+ * Tests the LongTimeConverter.
+ *
+ * @author agent
+ */
+public class TestLongTimeConverter {
+
+  /**
+   * Tests that the direct string conversion matches XmlGregorianCalendar.toString() in the
+   * default time zone.
+   */
+  @Test
+  public void testDefaultZone() {
+    long now = System.currentTimeMillis();
+    assertEquals("Checking now", LongTimeConverter.convertLongToGregorian(now).toString(),
+        LongTimeConverter.convertLongToString(now));
+    assertEquals("Checking epoch", LongTimeConverter.convertLongToGregorian(0).toString(),
+        LongTimeConverter.convertLongToString(0));
+  }
+
+  /**
+   * Tests the direct formatter against XmlGregorianCalendar for random times, including times
+   * outside the directly formatted range, in zones with negative, fractional and DST offsets.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testZones() throws Exception {
+    DatatypeFactory factory = DatatypeFactory.newInstance();
+    String[] zoneIds = {"UTC", "Pacific/Honolulu", "America/St_Johns", "Asia/Kolkata", 
+        "Europe/London", "Australia/Lord_Howe"};
+    Random random = new Random(42);
+    for (String zoneId : zoneIds) {
+      TimeZone zone = TimeZone.getTimeZone(zoneId);
+      LongTimeConverter.Formatter formatter = new LongTimeConverter.Formatter(zone);
+      for (int i = 0; i < 5000; i++) {
+        // Roughly years 1000 through 10500.
+        long time = (long) ((random.nextDouble() - 0.6) * 2.7e14);
+        GregorianCalendar calendar = new GregorianCalendar(zone);
+        calendar.setTimeInMillis(time);
+        assertEquals("Checking " + time + " in " + zoneId, 
+            factory.newXMLGregorianCalendar(calendar).toString(), formatter.format(time));
+      }
+    }
+  }
+}
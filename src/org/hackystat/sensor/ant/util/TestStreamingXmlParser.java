@@ -0,0 +1,67 @@
+package org.hackystat.sensor.ant.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.hackystat.sensor.ant.junit.jaxb.ObjectFactory;
+import org.hackystat.sensor.ant.junit.jaxb.Testcase;
+import org.hackystat.sensor.ant.junit.jaxb.Testsuite;
+import org.junit.Test;
+
+/**
+ * Tests the StreamingXmlParser against the JAXB binding of the same report.
+ *
+ * @author agent
+ */
+public class TestStreamingXmlParser {
+
+  /**
+   * Tests that the streaming parser sees the same test cases as the JAXB binding, and that text
+   * is only passed to the handler for the elements that ask for it.
+   * @throws Exception If a problem occurs.
+   */
+  @Test
+  public void testJUnitReport() throws Exception {
+    File xmlFile = new File(System.getProperty("junittestfiles"),
+        "TEST-org.hackystat.core.installer.util.TestProxyProperty.xml");
+    Testsuite suite = (Testsuite) JAXBContextRegistry.unmarshal(ObjectFactory.class, xmlFile);
+    final List<String> names = new ArrayList<String>();
+    final List<String> texts = new ArrayList<String>();
+    StreamingXmlParser.parse(xmlFile, new XmlReportHandler() {
+      @Override
+      public void startElement(String name, String parent, Map<String, String> attributes) {
+        if ("testcase".equals(name) && "testsuite".equals(parent)) {
+          names.add(attributes.get("name"));
+        }
+      }
+
+      @Override
+      public boolean wantsText(String name, String parent) {
+        return "system-out".equals(name);
+      }
+
+      @Override
+      public void endElement(String name, String parent, String text) {
+        if ("system-out".equals(name)) {
+          texts.add(text);
+        }
+        else {
+          assertNull("No text unless requested", text);
+        }
+      }
+    });
+    assertEquals("Checking test case count", suite.getTestcase().size(), names.size());
+    for (int i = 0; i < names.size(); i++) {
+      Testcase testcase = suite.getTestcase().get(i);
+      assertEquals("Checking test case name", testcase.getName(), names.get(i));
+    }
+    assertEquals("Checking system-out", 1, texts.size());
+    assertNotNull("Checking system-out text", texts.get(0));
+  }
+}
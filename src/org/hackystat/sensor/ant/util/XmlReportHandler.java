@@ -0,0 +1,55 @@
+package org.hackystat.sensor.ant.util;
+
+import java.util.Map;
+
+/**
+ * Receives callbacks from the StreamingXmlParser as it walks an XML report. Subclasses override
+ * only the callbacks they need. Each callback is given the name of the parent element, which
+ * lets a handler distinguish, for example, a SourceLine directly under a BugInstance from one
+ * nested inside a Method element.
+ * <p>
+ * The attribute map passed to startElement() is reused by the parser for the next element, so
+ * handlers must copy out any values they want to keep.
+ *
+ * @author agent
+ */
+public abstract class XmlReportHandler {
+
+  /**
+   * Invoked when an element starts.
+   *
+   * @param name The local name of the element.
+   * @param parent The local name of the enclosing element, or null for the root element.
+   * @param attributes The attributes of this element, keyed by local name.
+   * @throws Exception If the handler cannot process this element.
+   */
+  public void startElement(String name, String parent, Map<String, String> attributes)
+    throws Exception {
+    // Default: do nothing.
+  }
+
+  /**
+   * Invoked when an element ends.
+   *
+   * @param name The local name of the element.
+   * @param parent The local name of the enclosing element, or null for the root element.
+   * @param text The text content of the element if wantsText() returned true for it, else null.
+   * @throws Exception If the handler cannot process this element.
+   */
+  public void endElement(String name, String parent, String text) throws Exception {
+    // Default: do nothing.
+  }
+
+  /**
+   * Indicates whether the parser should accumulate the text content of an element. Text is
+   * only buffered for elements where this returns true, so that large bodies such as JUnit's
+   * system-out do not have to be held in memory.
+   *
+   * @param name The local name of the element.
+   * @param parent The local name of the enclosing element.
+   * @return True if endElement() should be passed the element's text.
+   */
+  public boolean wantsText(String name, String parent) {
+    return false;
+  }
+}
@@ -1,5 +1,8 @@
 package org.hackystat.sensor.ant.vcs;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.commons.jrcs.diff.Chunk;
 import org.apache.commons.jrcs.diff.Delta;
 import org.apache.commons.jrcs.diff.Diff;
@@ -7,46 +10,153 @@ import org.apache.commons.jrcs.diff.Revision;
 
 
 /**
- * Diff counter, which wraps around JRCS diff engine. <p>
+ * Diff counter, which counts the lines added and deleted with MyersDiff. <p>
  * Note that if this class is used to diff two text files, then empty lines and
  * comments are considered in diff result. This may or may not be desired.
  * Also note that if you try to diff two binary files, you either get an exception or
- * an incorrect result.
+ * an incorrect result. <p>
+ * For debugging, the counts can be verified against the JRCS diff engine, which also
+ * patches the original with its diff and checks that the result equals the revision.
+ * Verification is off unless the hackystat.sensor.vcs.verifyDiff system property is true
+ * or setVerification(true) is called.
  * 
  * @author Qin ZHANG
  * @version $Id: GenericDiffCounter.java,v 1.1.1.1 2005/10/20 23:56:56 johnson Exp $
  */
 public class GenericDiffCounter {
 
+  private static boolean verification = Boolean.getBoolean("hackystat.sensor.vcs.verifyDiff");
+
   private int linesAdded = 0;
   private int linesDeleted = 0;
   
   /**
-   * Constructs this instance to diff two revisions.
+   * Constructs this instance to diff two revisions. Lines are compared with equals().
    *
    * @param original The original version.
    * @param revised The revision.
-   * @throws Exception If there is error in diff engine.
+   * @throws Exception If verification is on and the JRCS diff engine disagrees.
    */
   public GenericDiffCounter(Object[] original, Object[] revised) throws Exception {
+    // Number the distinct lines, so that the diff compares ints.
+    Map<Object, Integer> lineNumbers = new HashMap<Object, Integer>(original.length * 2 + 16);
+    this.count(toLineNumbers(original, lineNumbers), toLineNumbers(revised, lineNumbers));
+    if (verification) {
+      this.verify(original, revised);
+    }
+  }
+
+  /**
+   * Constructs this instance to diff two revisions whose lines are given as ints, in which
+   * equal ints stand for equal lines.
+   *
+   * @param original The original version.
+   * @param revised The revision.
+   */
+  public GenericDiffCounter(int[] original, int[] revised) {
+    this.count(original, revised);
+  }
+
+  /**
+   * Constructs this instance to diff two revisions of a text file without decoding them.
+   * Lines are compared as their decoded strings would be.
+   *
+   * @param original The index of the original version's lines.
+   * @param revised The index of the revision's lines.
+   * @throws Exception If verification is on and the JRCS diff engine disagrees.
+   */
+  public GenericDiffCounter(LineIndex original, LineIndex revised) throws Exception {
+    int[][] lineNumbers = LineIndex.numberLines(original, revised);
+    this.count(lineNumbers[0], lineNumbers[1]);
+    if (verification) {
+      this.verify(toStrings(original), toStrings(revised));
+    }
+  }
+
+  /**
+   * Turns verification against the JRCS diff engine on or off for all instances.
+   *
+   * @param isOn True to verify.
+   */
+  public static void setVerification(boolean isOn) {
+    verification = isOn;
+  }
+
+  /**
+   * Counts the lines added and deleted.
+   *
+   * @param original The original version.
+   * @param revised The revision.
+   */
+  private void count(int[] original, int[] revised) {
+    int editDistance = MyersDiff.getEditDistance(original, revised);
+    this.linesDeleted = (editDistance + original.length - revised.length) / 2;
+    this.linesAdded = (editDistance - original.length + revised.length) / 2;
+  }
+
+  /**
+   * Numbers each line by its first occurrence in either version.
+   *
+   * @param lines The lines.
+   * @param lineNumbers The numbers of the lines seen so far, updated with new ones.
+   * @return The numbers of the lines.
+   */
+  private static int[] toLineNumbers(Object[] lines, Map<Object, Integer> lineNumbers) {
+    int[] numbers = new int[lines.length];
+    for (int i = 0; i < lines.length; i++) {
+      Integer number = lineNumbers.get(lines[i]);
+      if (number == null) {
+        number = Integer.valueOf(lineNumbers.size());
+        lineNumbers.put(lines[i], number);
+      }
+      numbers[i] = number.intValue();
+    }
+    return numbers;
+  }
+
+  /**
+   * Decodes the lines of an index.
+   *
+   * @param lines The index.
+   * @return The lines.
+   */
+  private static String[] toStrings(LineIndex lines) {
+    String[] strings = new String[lines.getNumOfLines()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = lines.getLine(i);
+    }
+    return strings;
+  }
+
+  /**
+   * Checks the counts against the JRCS diff engine.
+   *
+   * @param original The original version.
+   * @param revised The revision.
+   * @throws Exception If JRCS fails or disagrees.
+   */
+  private void verify(Object[] original, Object[] revised) throws Exception {
     Diff dfEngine = new Diff(original);
     Revision revision = dfEngine.diff(revised);
 
+    int jrcsAdded = 0;
+    int jrcsDeleted = 0;
     for (int i = 0; i < revision.size(); i++) {
       Delta delta = revision.getDelta(i);
       Chunk fromChunk = delta.getOriginal();
       Chunk toChunk = delta.getRevised();
-      this.linesDeleted += fromChunk.size();
-      this.linesAdded += toChunk.size();
+      jrcsDeleted += fromChunk.size();
+      jrcsAdded += toChunk.size();
     }
 
-    //Following is redundant, it only serves to check whether diff is correct.
-    //Since the version of JRCS used is not final, double-checking is always good.
     Object[] reco = revision.patch(original);
     if (!Diff.compare(revised, reco)) {
       throw new Exception("JRCS Diff internal error: files differ after patching.");
     }
-    //END OF redundant code
+    if (jrcsAdded != this.linesAdded || jrcsDeleted != this.linesDeleted) {
+      throw new Exception("Diff mismatch: JRCS counts +" + jrcsAdded + " -" + jrcsDeleted
+          + ", Myers counts +" + this.linesAdded + " -" + this.linesDeleted);
+    }
   }
 
   /**
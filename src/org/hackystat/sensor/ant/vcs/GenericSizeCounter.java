@@ -36,6 +36,20 @@ public class GenericSizeCounter {
     }
   }
 
+  /**
+   * Construct this instance to count the lines of a text file without decoding them.
+   *
+   * @param content The index of the file's lines.
+   */
+  public GenericSizeCounter(LineIndex content) {
+    this.totalLines = content.getNumOfLines();
+    for (int i = 0; i < this.totalLines; i++) {
+      if (!content.isLineWhiteSpace(i)) {
+        this.nonEmptyLines++;
+      }
+    }
+  }
+
   /**
    * Tests whether the line contains white space only or not.
    *
@@ -0,0 +1,277 @@
+package org.hackystat.sensor.ant.vcs;
+
+import java.nio.charset.Charset;
+
+/**
+ * An index of the lines of a text file held in a byte array. The lines are never copied out of
+ * the array: the index keeps the offset at which each line starts and ends, and a 64-bit hash of
+ * each line's characters, which is all that counting and diffing lines needs. Lines end at "\n",
+ * "\r" or "\r\n", as with BufferedReader.readLine(), and a last line without a line terminator
+ * counts as a line if it is not empty.
+ * <p>
+ * Line terminators are found in the bytes, which works for ASCII-compatible encodings such as
+ * UTF-8 and the ISO-8859 family, in which those bytes never appear inside another character.
+ * ASCII lines are hashed and compared byte by byte. The rare lines with other bytes are decoded
+ * for that, so that they compare exactly as decoded strings do, even when the content is binary
+ * or in another encoding and decodes to replacement characters.
+ *
+ * @author agent
+ */
+public final class LineIndex {
+
+  /** The FNV-1a 64-bit offset basis. */
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+  /** The FNV-1a 64-bit prime. */
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /** The content. */
+  private final byte[] content;
+
+  /** The charset used to decode lines with non-ASCII bytes. */
+  private final Charset charset;
+
+  /** The number of lines. */
+  private final int numLines;
+
+  /** The offset at which each line starts. */
+  private final int[] starts;
+
+  /** The offset at which each line ends, before its line terminator. */
+  private final int[] ends;
+
+  /** The hash of each line. */
+  private final long[] hashes;
+
+  /** Whether each line has bytes outside ASCII. */
+  private final boolean[] nonAscii;
+
+  /**
+   * Indexes the lines of content in the platform's default encoding.
+   *
+   * @param content The content, which must not change while the index is used.
+   */
+  public LineIndex(byte[] content) {
+    this(content, Charset.defaultCharset());
+  }
+
+  /**
+   * Indexes the lines of content.
+   *
+   * @param content The content, which must not change while the index is used.
+   * @param charset The encoding of the content.
+   */
+  public LineIndex(byte[] content, Charset charset) {
+    this.content = content;
+    this.charset = charset;
+    int capacity = 16;
+    int[] lineStarts = new int[capacity];
+    int[] lineEnds = new int[capacity];
+    long[] lineHashes = new long[capacity];
+    boolean[] lineNonAscii = new boolean[capacity];
+    int count = 0;
+    int start = 0;
+    long hash = FNV_OFFSET_BASIS;
+    boolean isAscii = true;
+    int length = content.length;
+    for (int i = 0; i <= length; i++) {
+      byte b = (i < length) ? content[i] : (byte) '\n';
+      if (b == '\n' || b == '\r') {
+        if (i == length && start == length) {
+          // No unterminated last line.
+          break;
+        }
+        if (count == capacity) {
+          capacity *= 2;
+          lineStarts = copyOf(lineStarts, capacity);
+          lineEnds = copyOf(lineEnds, capacity);
+          long[] newHashes = new long[capacity];
+          System.arraycopy(lineHashes, 0, newHashes, 0, count);
+          lineHashes = newHashes;
+          boolean[] newNonAscii = new boolean[capacity];
+          System.arraycopy(lineNonAscii, 0, newNonAscii, 0, count);
+          lineNonAscii = newNonAscii;
+        }
+        lineStarts[count] = start;
+        lineEnds[count] = i;
+        lineHashes[count] = isAscii ? hash : hash(new String(content, start, i - start, charset));
+        lineNonAscii[count] = !isAscii;
+        count++;
+        if (b == '\r' && i + 1 < length && content[i + 1] == '\n') {
+          i++;
+        }
+        start = i + 1;
+        hash = FNV_OFFSET_BASIS;
+        isAscii = true;
+      }
+      else {
+        // For ASCII, the same hash as that of the decoded characters.
+        hash = (hash ^ b) * FNV_PRIME;
+        isAscii &= (b >= 0);
+      }
+    }
+    this.numLines = count;
+    this.starts = lineStarts;
+    this.ends = lineEnds;
+    this.hashes = lineHashes;
+    this.nonAscii = lineNonAscii;
+  }
+
+  /**
+   * Returns the number of lines.
+   *
+   * @return The number of lines.
+   */
+  public int getNumOfLines() {
+    return this.numLines;
+  }
+
+  /**
+   * Returns the 64-bit hash of a line's characters. Equal lines have equal hashes, but lines with
+   * equal hashes are not necessarily equal.
+   *
+   * @param line The line, from 0.
+   * @return The hash.
+   */
+  public long getLineHash(int line) {
+    return this.hashes[line];
+  }
+
+  /**
+   * Checks whether a line equals a line of another index.
+   *
+   * @param line The line, from 0.
+   * @param other The other index, which may be this one.
+   * @param otherLine The line of the other index.
+   * @return True if the lines have the same characters.
+   */
+  public boolean lineEquals(int line, LineIndex other, int otherLine) {
+    if (this.hashes[line] != other.hashes[otherLine]) {
+      return false;
+    }
+    if (this.nonAscii[line] || other.nonAscii[otherLine]) {
+      return this.getLine(line).equals(other.getLine(otherLine));
+    }
+    int start = this.starts[line];
+    int length = this.ends[line] - start;
+    int otherStart = other.starts[otherLine];
+    if (other.ends[otherLine] - otherStart != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (this.content[start + i] != other.content[otherStart + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether a line contains white space only, as defined by Character.isWhitespace().
+   * Only lines with non-ASCII bytes are decoded to check.
+   *
+   * @param line The line, from 0.
+   * @return True if the line is empty or contains white space only.
+   */
+  public boolean isLineWhiteSpace(int line) {
+    if (!this.nonAscii[line]) {
+      for (int i = this.starts[line]; i < this.ends[line]; i++) {
+        if (!Character.isWhitespace(this.content[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+    String decoded = this.getLine(line);
+    for (int i = 0; i < decoded.length(); i++) {
+      if (!Character.isWhitespace(decoded.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decodes a line. Only meant for debugging and for the rare lines that need it, since it
+   * copies the line.
+   *
+   * @param line The line, from 0.
+   * @return The line, without its line terminator.
+   */
+  public String getLine(int line) {
+    return new String(this.content, this.starts[line], this.ends[line] - this.starts[line],
+        this.charset);
+  }
+
+  /**
+   * Numbers the distinct lines of two indexes, so that two lines get the same number if and only
+   * if they are equal. The numbers start at 0 and have no gaps, which suits MyersDiff.
+   *
+   * @param original The index of the original version.
+   * @param revised The index of the revised version.
+   * @return The numbers of the lines of the original, followed by those of the revision.
+   */
+  public static int[][] numberLines(LineIndex original, LineIndex revised) {
+    int total = original.numLines + revised.numLines;
+    int tableSize = Integer.highestOneBit(Math.max(total, 8) * 2) * 2;
+    int mask = tableSize - 1;
+    // Each slot holds 1 + the number of a distinct line, or 0 if it is free.
+    int[] table = new int[tableSize];
+    // The index and line at which each distinct line was first seen.
+    LineIndex[] firstIndexes = new LineIndex[total];
+    int[] firstLines = new int[total];
+    int numDistinct = 0;
+    int[][] numbers = { new int[original.numLines], new int[revised.numLines] };
+    LineIndex[] indexes = { original, revised };
+    for (int which = 0; which < 2; which++) {
+      LineIndex index = indexes[which];
+      for (int line = 0; line < index.numLines; line++) {
+        long hash = index.hashes[line];
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (true) {
+          int entry = table[slot];
+          if (entry == 0) {
+            firstIndexes[numDistinct] = index;
+            firstLines[numDistinct] = line;
+            table[slot] = ++numDistinct;
+            numbers[which][line] = numDistinct - 1;
+            break;
+          }
+          if (index.lineEquals(line, firstIndexes[entry - 1], firstLines[entry - 1])) {
+            numbers[which][line] = entry - 1;
+            break;
+          }
+          slot = (slot + 1) & mask;
+        }
+      }
+    }
+    return numbers;
+  }
+
+  /**
+   * Computes the FNV-1a hash of a decoded line's characters.
+   *
+   * @param line The line.
+   * @return The hash.
+   */
+  private static long hash(String line) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < line.length(); i++) {
+      hash = (hash ^ line.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * Copies an array into a longer one.
+   *
+   * @param array The array.
+   * @param length The new length.
+   * @return The copy.
+   */
+  private static int[] copyOf(int[] array, int length) {
+    int[] copy = new int[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+}
@@ -0,0 +1,151 @@
+package org.hackystat.sensor.ant.vcs;
+
+import java.util.Arrays;
+
+/**
+ * Computes the number of lines added and deleted between two versions of a file, with the
+ * O(ND) difference algorithm of E. Myers (1986), where N is the number of lines and D the number
+ * of lines added plus deleted. Lines are given as int arrays, in which equal ints stand for equal
+ * lines. Only the length of the shortest edit script is computed, never the script itself, so
+ * the algorithm needs a single array of O(N) ints.
+ * <p>
+ * Two steps shrink the input before the search, without changing the result: the lines common
+ * to the start and end of both versions are skipped, and lines that occur in only one version,
+ * which can never be matched, are counted as added or deleted right away. The second step makes
+ * heavily edited files, whose new lines are mostly unique, cheap to diff.
+ *
+ * @author agent
+ */
+public final class MyersDiff {
+
+  /** Not instantiated. */
+  private MyersDiff() {
+    // Static methods only.
+  }
+
+  /**
+   * Computes the length of the shortest edit script between two versions, which is the number
+   * of lines deleted from the original plus the number of lines added in the revision. The
+   * number of lines deleted is (d + original.length - revised.length) / 2, and the number added
+   * is (d - original.length + revised.length) / 2.
+   *
+   * @param original The lines of the original version.
+   * @param revised The lines of the revised version.
+   * @return The length of the shortest edit script, d.
+   */
+  public static int getEditDistance(int[] original, int[] revised) {
+    int start = 0;
+    int originalEnd = original.length;
+    int revisedEnd = revised.length;
+    while (start < originalEnd && start < revisedEnd && original[start] == revised[start]) {
+      start++;
+    }
+    while (originalEnd > start && revisedEnd > start
+        && original[originalEnd - 1] == revised[revisedEnd - 1]) {
+      originalEnd--;
+      revisedEnd--;
+    }
+    if (start == originalEnd || start == revisedEnd) {
+      return (originalEnd - start) + (revisedEnd - start);
+    }
+    int[] a = keepCommonLines(original, start, originalEnd, revised, start, revisedEnd);
+    int[] b = keepCommonLines(revised, start, revisedEnd, original, start, originalEnd);
+    int unmatched = (originalEnd - start - a.length) + (revisedEnd - start - b.length);
+    return unmatched + getShortestEditLength(a, b);
+  }
+
+  /**
+   * Returns the lines of a range that also occur in a range of the other version, in order.
+   *
+   * @param lines The lines.
+   * @param start The start of the range of lines, inclusive.
+   * @param end The end of the range of lines, exclusive.
+   * @param other The lines of the other version.
+   * @param otherStart The start of the range of the other version, inclusive.
+   * @param otherEnd The end of the range of the other version, exclusive.
+   * @return The common lines.
+   */
+  private static int[] keepCommonLines(int[] lines, int start, int end, int[] other,
+      int otherStart, int otherEnd) {
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    for (int i = otherStart; i < otherEnd; i++) {
+      min = Math.min(min, other[i]);
+      max = Math.max(max, other[i]);
+    }
+    int[] common = new int[end - start];
+    int numCommon = 0;
+    if ((long) max - min < 4L * (end - start + otherEnd - otherStart)) {
+      // Dense values, such as line numbers: look them up in a table.
+      boolean[] isInOther = new boolean[max - min + 1];
+      for (int i = otherStart; i < otherEnd; i++) {
+        isInOther[other[i] - min] = true;
+      }
+      for (int i = start; i < end; i++) {
+        if (lines[i] >= min && lines[i] <= max && isInOther[lines[i] - min]) {
+          common[numCommon++] = lines[i];
+        }
+      }
+    }
+    else {
+      // Sparse values, such as hash codes: look them up in a sorted copy.
+      int[] sortedOther = new int[otherEnd - otherStart];
+      System.arraycopy(other, otherStart, sortedOther, 0, sortedOther.length);
+      Arrays.sort(sortedOther);
+      for (int i = start; i < end; i++) {
+        if (Arrays.binarySearch(sortedOther, lines[i]) >= 0) {
+          common[numCommon++] = lines[i];
+        }
+      }
+    }
+    if (numCommon == common.length) {
+      return common;
+    }
+    int[] trimmed = new int[numCommon];
+    System.arraycopy(common, 0, trimmed, 0, numCommon);
+    return trimmed;
+  }
+
+  /**
+   * Runs the greedy forward search of Myers' algorithm, which finds the furthest reaching path
+   * on each diagonal for edit lengths 0, 1, 2, ... until one reaches the end of both versions.
+   *
+   * @param a The lines of the original version.
+   * @param b The lines of the revised version.
+   * @return The length of the shortest edit script.
+   */
+  private static int getShortestEditLength(int[] a, int[] b) {
+    int n = a.length;
+    int m = b.length;
+    int max = n + m;
+    if (n == 0 || m == 0) {
+      return max;
+    }
+    // furthest[offset + k] is the furthest x reached on diagonal k = x - y.
+    int offset = max + 1;
+    int[] furthest = new int[2 * max + 3];
+    for (int d = 0; d <= max; d++) {
+      for (int k = -d; k <= d; k += 2) {
+        int x;
+        if (k == -d || (k != d && furthest[offset + k - 1] < furthest[offset + k + 1])) {
+          // A line added in the revision.
+          x = furthest[offset + k + 1];
+        }
+        else {
+          // A line deleted from the original.
+          x = furthest[offset + k - 1] + 1;
+        }
+        int y = x - k;
+        while (x < n && y < m && a[x] == b[y]) {
+          x++;
+          y++;
+        }
+        furthest[offset + k] = x;
+        if (x >= n && y >= m) {
+          return d;
+        }
+      }
+    }
+    return max;
+  }
+}
@@ -0,0 +1,96 @@
+package org.hackystat.sensor.ant.vcs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test case for <code>GenericDiffCounter</code> and <code>MyersDiff</code>.
+ *
+ * @author agent
+ */
+public class TestGenericDiffCounter extends TestCase {
+
+  /**
+   * Turns verification against JRCS off again.
+   */
+  @Override
+  protected void tearDown() {
+    GenericDiffCounter.setVerification(false);
+  }
+
+  /**
+   * Tests simple edits.
+   * @throws Exception If test fails.
+   */
+  public void testEdits() throws Exception {
+    String[] original = new String[] { "a", "b", "c", "d" };
+    assertCounts(original, new String[] { "a", "b", "c", "d" }, 0, 0);
+    assertCounts(original, new String[] { "a", "x", "c", "d", "e" }, 2, 1);
+    assertCounts(original, new String[] { "d", "c", "b", "a" }, 3, 3);
+    assertCounts(original, new String[0], 0, 4);
+    assertCounts(new String[0], original, 4, 0);
+    assertCounts(new String[] { "a", null, "a" }, new String[] { null, "a" }, 0, 1);
+  }
+
+  /**
+   * Tests random heavily edited files with repeated lines against JRCS.
+   * @throws Exception If the counts differ.
+   */
+  public void testAgainstJrcs() throws Exception {
+    GenericDiffCounter.setVerification(true);
+    Random random = new Random(42);
+    for (int i = 0; i < 200; i++) {
+      List<String> original = new ArrayList<String>();
+      int size = random.nextInt(60);
+      for (int j = 0; j < size; j++) {
+        original.add("line " + random.nextInt(15));
+      }
+      List<String> revised = new ArrayList<String>(original);
+      int edits = random.nextInt(30);
+      for (int j = 0; j < edits; j++) {
+        int position = revised.isEmpty() ? 0 : random.nextInt(revised.size());
+        int kind = random.nextInt(3);
+        if (kind == 0 || revised.isEmpty()) {
+          revised.add(position, "line " + random.nextInt(20));
+        }
+        else if (kind == 1) {
+          revised.remove(position);
+        }
+        else {
+          revised.set(position, "line " + random.nextInt(20));
+        }
+      }
+      // Throws if JRCS counts differently.
+      new GenericDiffCounter(original.toArray(), revised.toArray());
+    }
+  }
+
+  /**
+   * Tests lines given as sparse ints, such as hash codes.
+   */
+  public void testSparseInts() {
+    int[] original = new int[] { -2000000000, 7, 1999999999, 7, 123456789 };
+    int[] revised = new int[] { 7, 1999999999, 42, 7, -2000000000 };
+    GenericDiffCounter diff = new GenericDiffCounter(original, revised);
+    assertEquals("The lines added are incorrect.", 2, diff.getLinesAdded());
+    assertEquals("The lines deleted are incorrect.", 2, diff.getLinesDeleted());
+  }
+
+  /**
+   * Checks the counts of a diff.
+   * @param original The original version.
+   * @param revised The revision.
+   * @param added The expected number of lines added.
+   * @param deleted The expected number of lines deleted.
+   * @throws Exception If the diff fails.
+   */
+  private static void assertCounts(Object[] original, Object[] revised, int added, int deleted)
+    throws Exception {
+    GenericDiffCounter diff = new GenericDiffCounter(original, revised);
+    assertEquals("The lines added are incorrect.", added, diff.getLinesAdded());
+    assertEquals("The lines deleted are incorrect.", deleted, diff.getLinesDeleted());
+  }
+}
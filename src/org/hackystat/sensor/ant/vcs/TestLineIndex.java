@@ -0,0 +1,142 @@
+package org.hackystat.sensor.ant.vcs;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test case for <code>LineIndex</code> and the counters that use it.
+ *
+ * @author agent
+ */
+public class TestLineIndex extends TestCase {
+
+  /** The encoding of the test content. */
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Tests that lines are split as BufferedReader.readLine() splits them.
+   * @throws Exception If test fails.
+   */
+  public void testLines() throws Exception {
+    String[] texts = { "", "\n", "a", "a\n", "a\r\nb", "a\rb\r", "\r\n\r\n", "\n\r", "a\n\nb\n",
+        "x\u00e9y\r\n\u00e9" };
+    for (String text : texts) {
+      LineIndex index = new LineIndex(text.getBytes(UTF8), UTF8);
+      List<String> expected = readLines(text);
+      assertEquals("Checking line count of " + text, expected.size(), index.getNumOfLines());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals("Checking line of " + text, expected.get(i), index.getLine(i));
+      }
+    }
+  }
+
+  /**
+   * Tests the white space check and the size counter.
+   */
+  public void testWhiteSpace() {
+    String text = "  \t\n\nx\n\u00a0\n\u2003 \n\u00e9\n";
+    LineIndex index = new LineIndex(text.getBytes(UTF8), UTF8);
+    assertTrue("Checking blank", index.isLineWhiteSpace(0));
+    assertTrue("Checking empty", index.isLineWhiteSpace(1));
+    assertFalse("Checking text", index.isLineWhiteSpace(2));
+    assertFalse("Checking no-break space", index.isLineWhiteSpace(3));
+    assertTrue("Checking em space", index.isLineWhiteSpace(4));
+    assertFalse("Checking non-ASCII text", index.isLineWhiteSpace(5));
+    GenericSizeCounter counter = new GenericSizeCounter(index);
+    assertEquals("Checking total lines", 6, counter.getNumOfTotalLines());
+    assertEquals("Checking non-empty lines", 3, counter.getNumOfNonEmptyLines());
+  }
+
+  /**
+   * Tests line comparison and numbering, including lines whose hashes are equal.
+   */
+  public void testNumbering() {
+    LineIndex original = new LineIndex("a\nb\na\n\n".getBytes(UTF8), UTF8);
+    LineIndex revised = new LineIndex("b\r\nc\n\na".getBytes(UTF8), UTF8);
+    assertTrue("Checking equal lines", original.lineEquals(1, revised, 0));
+    assertFalse("Checking different lines", original.lineEquals(0, revised, 1));
+    int[][] numbers = LineIndex.numberLines(original, revised);
+    assertEquals("Checking original", "[0, 1, 0, 2]", toString(numbers[0]));
+    assertEquals("Checking revised", "[1, 3, 2, 0]", toString(numbers[1]));
+  }
+
+  /**
+   * Tests that malformed lines compare as their decoded strings do.
+   */
+  public void testMalformed() {
+    LineIndex original = new LineIndex(new byte[] { 'a', (byte) 0xff, '\n' }, UTF8);
+    LineIndex revised = new LineIndex(new byte[] { 'a', (byte) 0xfe, '\n' }, UTF8);
+    assertEquals("Checking decoding", "a\ufffd", original.getLine(0));
+    assertTrue("Checking malformed lines", original.lineEquals(0, revised, 0));
+  }
+
+  /**
+   * Tests diffs of random files against the JRCS diff engine.
+   * @throws Exception If the counts differ.
+   */
+  public void testDiffAgainstJrcs() throws Exception {
+    GenericDiffCounter.setVerification(true);
+    try {
+      Random random = new Random(7);
+      String[] endings = { "\n", "\r\n", "\r" };
+      for (int i = 0; i < 100; i++) {
+        StringBuilder original = new StringBuilder();
+        StringBuilder revised = new StringBuilder();
+        int size = random.nextInt(80);
+        for (int j = 0; j < size; j++) {
+          String line = "line " + random.nextInt(12) + endings[random.nextInt(3)];
+          original.append(line);
+          int kind = random.nextInt(6);
+          if (kind == 0) {
+            revised.append("new " + random.nextInt(5) + "\n");
+          }
+          else if (kind != 1) {
+            revised.append(line);
+          }
+        }
+        // Throws if JRCS counts differently.
+        new GenericDiffCounter(new LineIndex(original.toString().getBytes(UTF8), UTF8),
+            new LineIndex(revised.toString().getBytes(UTF8), UTF8));
+      }
+    }
+    finally {
+      GenericDiffCounter.setVerification(false);
+    }
+  }
+
+  /**
+   * Reads the lines of a text with BufferedReader.
+   * @param text The text.
+   * @return The lines.
+   * @throws Exception If reading fails.
+   */
+  private static List<String> readLines(String text) throws Exception {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new StringReader(text));
+    String line = reader.readLine();
+    while (line != null) {
+      lines.add(line);
+      line = reader.readLine();
+    }
+    return lines;
+  }
+
+  /**
+   * Formats an int array.
+   * @param values The ints.
+   * @return The ints, as "[a, b]".
+   */
+  private static String toString(int[] values) {
+    StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < values.length; i++) {
+      builder.append(i == 0 ? "" : ", ").append(values[i]);
+    }
+    return builder.append(']').toString();
+  }
+}